@@ -0,0 +1,144 @@
+package org.sqlite;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.Collator;
+import java.util.Comparator;
+
+import org.sqlite.core.Codes;
+import org.sqlite.core.DB;
+
+/**
+ * Registers user-defined collating sequences, used by
+ * <code>ORDER BY x COLLATE name</code>, comparisons and indexes.
+ *
+ * <p>Three kinds of collation are supported, from fastest to most flexible:</p>
+ * <ul>
+ * <li>Built-in collations ({@link #ASCII_FOLDED}, {@link #NATURAL} and
+ * {@link #NATURAL_FOLDED}) compare the UTF-8 bytes natively, without calling
+ * Java.</li>
+ * <li>A {@link Collator} is used through sort keys: the key of a string is
+ * computed in Java the first time the string is compared and kept in a
+ * bounded native cache, so repeated comparisons of the same strings, as in a
+ * sort or an index build, compare cached keys natively.</li>
+ * <li>A {@link Comparator} is called for every comparison.</li>
+ * </ul>
+ *
+ * Eg.
+ *
+ * <pre>
+ *      Collation.create(conn, "numeric", Collation.NATURAL_FOLDED);
+ *      Collation.create(conn, "fr", Collator.getInstance(Locale.FRENCH));
+ *      conn.createStatement().executeQuery("select name from files order by name collate numeric");
+ * </pre>
+ *
+ * @see <a href="https://www.sqlite.org/c3ref/create_collation.html">https://www.sqlite.org/c3ref/create_collation.html</a>
+ */
+public final class Collation
+{
+    /**
+     * Orders ASCII letters case-insensitively, then strings that differ only
+     * in case with upper case first. Unlike NOCASE, differently cased strings
+     * are not equal, so they can coexist in a unique index.
+     */
+    public static final int ASCII_FOLDED   = 2;
+
+    /**
+     * Orders runs of digits by their numeric value, e.g. "file2" before
+     * "file10", and everything else by code point. Numbers that differ only
+     * in leading zeros are ordered shortest first.
+     */
+    public static final int NATURAL        = 1;
+
+    /**
+     * Combines {@link #NATURAL} and {@link #ASCII_FOLDED}.
+     */
+    public static final int NATURAL_FOLDED = NATURAL | ASCII_FOLDED;
+
+    private Collation() {
+    }
+
+    /**
+     * Registers a built-in collation under the given name.
+     * @param conn The connection to register the collation on.
+     * @param name The name of the collation.
+     * @param collation One of {@link #ASCII_FOLDED}, {@link #NATURAL} and {@link #NATURAL_FOLDED}.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library does not support collations.
+     * @throws SQLException
+     */
+    public static void create(Connection conn, String name, int collation) throws SQLException {
+        if (collation != ASCII_FOLDED && collation != NATURAL && collation != NATURAL_FOLDED) {
+            throw new SQLException("invalid collation: " + collation);
+        }
+        create(conn, name, null, collation);
+    }
+
+    /**
+     * Registers a collation comparing the sort keys of a {@link Collator}.
+     * The collator is copied, so later changes to it have no effect.
+     * @param conn The connection to register the collation on.
+     * @param name The name of the collation.
+     * @param collator The collator, e.g. <code>Collator.getInstance(Locale.GERMAN)</code>.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library does not support collations.
+     * @throws SQLException
+     */
+    public static void create(Connection conn, String name, Collator collator) throws SQLException {
+        if (collator == null) {
+            throw new SQLException("collator must not be null");
+        }
+        create(conn, name, (Collator) collator.clone(), DB.COLLATION_SORT_KEY);
+    }
+
+    /**
+     * Registers a collation calling a comparator for every comparison.
+     * @param conn The connection to register the collation on.
+     * @param name The name of the collation.
+     * @param comparator A comparator consistent with equals. Comparisons
+     *        cannot fail: if it throws, the strings compare equal.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library does not support collations.
+     * @throws SQLException
+     */
+    public static void create(Connection conn, String name, Comparator<String> comparator) throws SQLException {
+        if (comparator == null) {
+            throw new SQLException("comparator must not be null");
+        }
+        create(conn, name, comparator, DB.COLLATION_COMPARATOR);
+    }
+
+    /**
+     * Removes a collation registered on the given connection.
+     * @param conn The connection to remove the collation from.
+     * @param name The name of the collation.
+     * @throws SQLException
+     */
+    public static void destroy(Connection conn, String name) throws SQLException {
+        checkConnection(conn, name);
+        ((SQLiteConnection) conn).getDatabase().destroy_collation(name);
+    }
+
+    private static void create(Connection conn, String name, Object collation, int kind) throws SQLException {
+        checkConnection(conn, name);
+        if (((SQLiteConnection) conn).getDatabase().create_collation(name, collation, kind) != Codes.SQLITE_OK) {
+            throw new SQLException("error creating collation");
+        }
+    }
+
+    private static void checkConnection(Connection conn, String name) throws SQLException {
+        if (conn == null || !(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (name == null || name.length() > 255) {
+            throw new SQLException("invalid collation name: '" + name + "'");
+        }
+    }
+
+    /**
+     * Called by the native library to compute the sort key of a string.
+     */
+    static byte[] sortKey(Collator collator, String s) {
+        return collator.getCollationKey(s).toByteArray();
+    }
+}
@@ -0,0 +1,13 @@
+package org.sqlite;
+
+/**
+ * A scalar SQL function of two real arguments returning a real, registered
+ * with {@link Function#createDoubleBinary(java.sql.Connection, String, DoubleBinaryFunction, int)}.
+ * The arguments are converted natively and passed without going through
+ * {@link Function}; a NULL argument returns NULL without calling the function.
+ */
+public interface DoubleBinaryFunction {
+
+  double apply(double a, double b);
+
+}
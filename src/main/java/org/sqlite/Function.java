@@ -20,6 +20,7 @@ import org.sqlite.core.DB;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 
 /** Provides an interface for creating SQLite user-defined functions.
  *
@@ -125,6 +126,100 @@ public abstract class Function
         }
     }
 
+    /**
+     * Registers a function of one integer argument. The argument is converted
+     * and passed natively, without the per-call bookkeeping of {@link #xFunc()}.
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param f The function to register.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC}
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support typed functions.
+     */
+    public static final void createLongUnary(Connection conn, String name, LongUnaryFunction f, int flags)
+            throws SQLException {
+        createTyped(conn, name, f, DB.UDF_LONG_UNARY, flags);
+    }
+
+    /**
+     * Registers a function of two real arguments. The arguments are converted
+     * and passed natively, without the per-call bookkeeping of {@link #xFunc()}.
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param f The function to register.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC}
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support typed functions.
+     */
+    public static final void createDoubleBinary(Connection conn, String name, DoubleBinaryFunction f, int flags)
+            throws SQLException {
+        createTyped(conn, name, f, DB.UDF_DOUBLE_BINARY, flags);
+    }
+
+    /**
+     * Registers a function of one text argument. The argument is converted
+     * and passed natively, without the per-call bookkeeping of {@link #xFunc()}.
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param f The function to register.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC}
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support typed functions.
+     */
+    public static final void createText(Connection conn, String name, TextFunction f, int flags)
+            throws SQLException {
+        createTyped(conn, name, f, DB.UDF_TEXT, flags);
+    }
+
+    /**
+     * Registers an aggregate function of one numeric argument whose state is
+     * kept in native memory, or a window function if it extends
+     * {@link PrimitiveAggregate.Window}.
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param f The aggregate to register.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC}
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support primitive aggregates.
+     */
+    public static final void createAggregate(Connection conn, String name, PrimitiveAggregate f, int flags)
+            throws SQLException {
+        checkCreate(conn, name, f);
+
+        int rc = ((SQLiteConnection) conn).getDatabase().create_aggregate(name, f, flags);
+        if (rc != Codes.SQLITE_OK) {
+            throw new SQLException("error creating function");
+        }
+    }
+
+    /**
+     * Registers a typed function.
+     */
+    private static void createTyped(Connection conn, String name, Object f, int kind, int flags)
+            throws SQLException {
+        checkCreate(conn, name, f);
+
+        int rc = ((SQLiteConnection) conn).getDatabase().create_typed_function(name, f, kind, flags);
+        if (rc != Codes.SQLITE_OK) {
+            throw new SQLException("error creating function");
+        }
+    }
+
+    private static void checkCreate(Connection conn, String name, Object f) throws SQLException {
+        if (conn == null || !(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (f == null) {
+            throw new SQLException("function must not be null");
+        }
+        if (name == null || name.length() > 255) {
+            throw new SQLException("invalid function name: '"+name+"'");
+        }
+    }
+
     /**
      * Removes a named function from the given connection.
      * @param conn The connection to remove the function from.
@@ -0,0 +1,13 @@
+package org.sqlite;
+
+/**
+ * A scalar SQL function of one integer argument returning an integer,
+ * registered with {@link Function#createLongUnary(java.sql.Connection, String, LongUnaryFunction, int)}.
+ * The argument is converted natively and passed without going through
+ * {@link Function}; a NULL argument returns NULL without calling the function.
+ */
+public interface LongUnaryFunction {
+
+  long apply(long value);
+
+}
@@ -0,0 +1,113 @@
+package org.sqlite;
+
+/**
+ * A user-defined aggregate function of one numeric argument whose state is a
+ * fixed number of long and double slots, registered with
+ * {@link Function#createAggregate(java.sql.Connection, String, PrimitiveAggregate, int)}.
+ *
+ * <p>Unlike {@link Function.Aggregate}, no object is cloned per group: the
+ * slots of each group live in native memory and are passed to the callbacks
+ * in arrays, initially zero. Argument values are buffered per group and
+ * passed to {@link #step(long[], double[], double[], int)} up to
+ * <code>batchSize</code> at a time. NULL arguments are skipped.</p>
+ *
+ * Eg. an average:
+ *
+ * <pre>
+ *      Function.createAggregate(conn, "avg2", new PrimitiveAggregate(1, 1, 64) {
+ *          protected void step(long[] longs, double[] doubles, double[] values, int count) {
+ *              longs[0] += count;
+ *              for (int i = 0; i &lt; count; i++) doubles[0] += values[i];
+ *          }
+ *          protected Object value(long[] longs, double[] doubles) {
+ *              return longs[0] == 0 ? null : doubles[0] / longs[0];
+ *          }
+ *      }, 0);
+ * </pre>
+ *
+ * <p>The arrays are shared by all groups, so callbacks must not keep them nor
+ * run queries that use the same function. Primitive aggregates need a native
+ * library with aggregate contexts of native memory; there is no fallback
+ * that copies state objects per group.</p>
+ */
+public abstract class PrimitiveAggregate
+{
+    private final int longSlots;
+    private final int doubleSlots;
+    private final int batchSize;
+
+    /**
+     * @param longSlots The number of long slots of the state of a group.
+     * @param doubleSlots The number of double slots of the state of a group.
+     * @param batchSize The largest number of values passed to one step call.
+     */
+    protected PrimitiveAggregate(int longSlots, int doubleSlots, int batchSize) {
+        if (longSlots < 0 || doubleSlots < 0 || longSlots + doubleSlots > 1024) {
+            throw new IllegalArgumentException("invalid number of slots: " + longSlots + ", " + doubleSlots);
+        }
+        if (batchSize < 1 || batchSize > 4096) {
+            throw new IllegalArgumentException("invalid batch size: " + batchSize);
+        }
+        this.longSlots = longSlots;
+        this.doubleSlots = doubleSlots;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param longSlots The number of long slots of the state of a group.
+     * @param doubleSlots The number of double slots of the state of a group.
+     */
+    protected PrimitiveAggregate(int longSlots, int doubleSlots) {
+        this(longSlots, doubleSlots, 1);
+    }
+
+    public final int longSlots() {
+        return longSlots;
+    }
+
+    public final int doubleSlots() {
+        return doubleSlots;
+    }
+
+    public final int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adds values to the state of a group.
+     * @param longs The long slots of the group.
+     * @param doubles The double slots of the group.
+     * @param values The argument values, in row order.
+     * @param count The number of values.
+     */
+    protected abstract void step(long[] longs, double[] doubles, double[] values, int count);
+
+    /**
+     * Returns the result of a group.
+     * @param longs The long slots of the group.
+     * @param doubles The double slots of the group.
+     * @return A Long, Integer, Double, Float, String, byte[] or null.
+     */
+    protected abstract Object value(long[] longs, double[] doubles);
+
+    /**
+     * A primitive aggregate usable as a window function.
+     */
+    public static abstract class Window extends PrimitiveAggregate
+    {
+        protected Window(int longSlots, int doubleSlots, int batchSize) {
+            super(longSlots, doubleSlots, batchSize);
+        }
+
+        protected Window(int longSlots, int doubleSlots) {
+            super(longSlots, doubleSlots);
+        }
+
+        /**
+         * Removes values that left the window from the state of a group.
+         * Values added before are always passed to step first.
+         * @see PrimitiveAggregate#step(long[], double[], double[], int)
+         */
+        protected abstract void inverse(long[] longs, double[] doubles, double[] values, int count);
+    }
+}
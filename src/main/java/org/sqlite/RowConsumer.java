@@ -0,0 +1,43 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a point lookup executed with
+ * {@link org.sqlite.jdbc3.JDBC3PreparedStatement#executeForEach(long[], RowConsumer)}.
+ */
+public interface RowConsumer {
+
+    /**
+     * Called for every row returned for a key, in key order.
+     * @param index The index of the key in the key array.
+     * @param key The key bound to the first parameter.
+     * @param row The current row; only valid during the call.
+     */
+    void accept(int index, long key, Row row) throws SQLException;
+
+    /**
+     * Column values of the current row. Columns are numbered from 1; types
+     * are the fundamental datatypes of {@link org.sqlite.core.Codes}.
+     */
+    interface Row {
+
+        int getColumnCount();
+
+        int getType(int col) throws SQLException;
+
+        boolean isNull(int col) throws SQLException;
+
+        int getInt(int col) throws SQLException;
+
+        long getLong(int col) throws SQLException;
+
+        double getDouble(int col) throws SQLException;
+
+        String getString(int col) throws SQLException;
+
+        byte[] getBytes(int col) throws SQLException;
+
+    }
+
+}
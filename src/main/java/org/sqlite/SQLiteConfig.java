@@ -167,9 +167,15 @@ public class SQLiteConfig
         pragmaParams.remove(Pragma.OPEN_MODE.pragmaName);
         pragmaParams.remove(Pragma.SHARED_CACHE.pragmaName);
         pragmaParams.remove(Pragma.LOAD_EXTENSION.pragmaName);
+        pragmaParams.remove(Pragma.MEMORY_DATABASE.pragmaName);
+        pragmaParams.remove(Pragma.WARMUP.pragmaName);
+        pragmaParams.remove(Pragma.LOOKASIDE.pragmaName);
         pragmaParams.remove(Pragma.DATE_PRECISION.pragmaName);
         pragmaParams.remove(Pragma.DATE_CLASS.pragmaName);
         pragmaParams.remove(Pragma.DATE_STRING_FORMAT.pragmaName);
+        pragmaParams.remove(Pragma.BATCH_TRANSACTION.pragmaName);
+        pragmaParams.remove(Pragma.REWRITE_BATCHED_INSERTS.pragmaName);
+        pragmaParams.remove(Pragma.TEXT_CACHE.pragmaName);
         pragmaParams.remove(Pragma.PASSWORD.pragmaName);
         pragmaParams.remove(Pragma.HEXKEY_MODE.pragmaName);
         pragmaParams.remove(Pragma.LIMIT_ATTACHED.pragmaName);
@@ -223,6 +229,10 @@ public class SQLiteConfig
             }
         }
 
+        WarmupMode warmup = getWarmup();
+        if (warmup != WarmupMode.NONE && conn instanceof SQLiteConnection) {
+            SQLiteWarmup.warmup((SQLiteConnection) conn, warmup, false);
+        }
     }
 
     /**
@@ -279,6 +289,33 @@ public class SQLiteConfig
         return getBoolean(Pragma.LOAD_EXTENSION, "false");
     }
 
+    /**
+     * @return The size and number of the lookaside slots of the connection;
+     *         null for the default of the native library.
+     * @see #setLookaside(int, int)
+     */
+    public int[] getLookaside() {
+        String lookaside = pragmaTable.getProperty(Pragma.LOOKASIDE.pragmaName);
+        if (lookaside == null) {
+            return null;
+        }
+        int comma = lookaside.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("invalid lookaside: " + lookaside);
+        }
+        return new int[] { Integer.parseInt(lookaside.substring(0, comma).trim()),
+                Integer.parseInt(lookaside.substring(comma + 1).trim()) };
+    }
+
+    /**
+     * @return The name of the shared in-memory database; null if the
+     *         database file of the connection URL is opened.
+     * @see #setMemoryDatabase(String)
+     */
+    public String getMemoryDatabase() {
+        return pragmaTable.getProperty(Pragma.MEMORY_DATABASE.pragmaName);
+    }
+
     /**
      * @return The open mode flags.
      */
@@ -306,6 +343,9 @@ public class SQLiteConfig
         pragmaTable.setProperty(Pragma.DATE_CLASS.pragmaName, defaultConnectionConfig.getDateClass().getValue());
         pragmaTable.setProperty(Pragma.DATE_PRECISION.pragmaName, defaultConnectionConfig.getDatePrecision().getValue());
         pragmaTable.setProperty(Pragma.DATE_STRING_FORMAT.pragmaName, defaultConnectionConfig.getDateStringFormat());
+        pragmaTable.setProperty(Pragma.BATCH_TRANSACTION.pragmaName, Boolean.toString(defaultConnectionConfig.isBatchTransaction()));
+        pragmaTable.setProperty(Pragma.REWRITE_BATCHED_INSERTS.pragmaName, Boolean.toString(defaultConnectionConfig.isRewriteBatchedInserts()));
+        pragmaTable.setProperty(Pragma.TEXT_CACHE.pragmaName, Integer.toString(defaultConnectionConfig.getTextCache()));
 
         return pragmaTable;
     }
@@ -344,6 +384,9 @@ public class SQLiteConfig
         OPEN_MODE("open_mode", "Database open-mode flag", null),
         SHARED_CACHE("shared_cache", "Enable SQLite Shared-Cache mode, native driver only", OnOff),
         LOAD_EXTENSION("enable_load_extension", "Enable SQLite load_extention() function, native driver only", OnOff),
+        LOOKASIDE("lookaside", "Size and number of the lookaside memory slots of the connection, as size,count", null),
+        WARMUP("warmup", "Pages of the database file read into the page cache of the operating system when first opened by the process", toStringArray(WarmupMode.values())),
+        MEMORY_DATABASE("memory_database", "Name of an in-memory database shared by the connections of this process, opened instead of a database file", null),
 
         // Pragmas that can be set after opening the database
         CACHE_SIZE("cache_size"),
@@ -395,6 +438,9 @@ public class SQLiteConfig
         DATE_CLASS("date_class", "\"integer\": (Default) store dates as number of seconds or milliseconds from the Unix Epoch\n\"text\": store dates as a string of text\n\"real\": store dates as Julian Dates", toStringArray(DateClass.values())),
         DATE_STRING_FORMAT("date_string_format", "Format to store and retrieve dates stored as text. Defaults to \"yyyy-MM-dd HH:mm:ss.SSS\"", null),
         BUSY_TIMEOUT("busy_timeout", null),
+        BATCH_TRANSACTION("batch_transaction", "Run each executeBatch() in a single transaction when auto-commit is on", OnOff),
+        REWRITE_BATCHED_INSERTS("rewrite_batched_inserts", "Execute batches of single-row INSERT statements as multi-row INSERT statements", OnOff),
+        TEXT_CACHE("text_cache", "Number of distinct values of each column for which result sets return a shared String; 0 (default) to disable", null),
         HEXKEY_MODE("hexkey_mode", toStringArray(HexKeyMode.values())),
         PASSWORD("password", null);
 
@@ -450,6 +496,25 @@ public class SQLiteConfig
         set(Pragma.SHARED_CACHE, enable);
     }
 
+    /**
+     * Opens a named in-memory database instead of a database file. Every
+     * connection of the process opened with the same name uses the same
+     * database, which lives until the last of them is closed. Unlike
+     * <code>mode=memory&amp;cache=shared</code>, the connections do not share
+     * a cache, so readers are not serialized by table locks.
+     * @param name The name of the database; null to open the database file
+     *        of the connection URL.
+     * @see <a href="https://www.sqlite.org/c3ref/deserialize.html">https://www.sqlite.org/c3ref/deserialize.html</a>
+     */
+    public void setMemoryDatabase(String name) {
+        if (name == null) {
+            pragmaTable.remove(Pragma.MEMORY_DATABASE.pragmaName);
+        }
+        else {
+            setPragma(Pragma.MEMORY_DATABASE, name);
+        }
+    }
+
     /**
      * Enables or disables extension loading.
      * @param enable True to enable; false to disable.
@@ -459,6 +524,25 @@ public class SQLiteConfig
         set(Pragma.LOAD_EXTENSION, enable);
     }
 
+    /**
+     * Sets the lookaside memory of the connection, from which SQLite
+     * allocates its small, short-lived objects without calling malloc. The
+     * bundled native libraries give every connection 8192 slots of 2048
+     * bytes: few small slots suit many idle connections, and more slots a
+     * busy writer that runs out of them. Ignored by native libraries that do
+     * not support it.
+     * @param slotSize The size of each slot in bytes, rounded down to a
+     *        multiple of 8.
+     * @param slotCount The number of slots; 0 to disable lookaside.
+     * @see <a href="https://www.sqlite.org/malloc.html#lookaside">https://www.sqlite.org/malloc.html#lookaside</a>
+     */
+    public void setLookaside(int slotSize, int slotCount) {
+        if (slotSize < 0 || slotCount < 0) {
+            throw new IllegalArgumentException("invalid lookaside: " + slotSize + "," + slotCount);
+        }
+        setPragma(Pragma.LOOKASIDE, slotSize + "," + slotCount);
+    }
+
     /**
      * Sets the read-write mode for the database.
      * @param readOnly True for read-only; otherwise read-write.
@@ -476,6 +560,69 @@ public class SQLiteConfig
         }
     }
 
+    /**
+     * Sets the largest number of bytes of the database file that are
+     * memory-mapped and read without system calls. The size is capped by the
+     * native library, at 1 TB for the bundled builds.
+     * @param bytes The size of the mapping; 0 to disable memory-mapped I/O.
+     * @see <a href="https://www.sqlite.org/pragma.html#pragma_mmap_size">https://www.sqlite.org/pragma.html#pragma_mmap_size</a>
+     * @see <a href="https://www.sqlite.org/mmap.html">https://www.sqlite.org/mmap.html</a>
+     */
+    public void setMmapSize(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("invalid mmap size: " + bytes);
+        }
+        setPragma(Pragma.MMAP_SIZE, Long.toString(bytes));
+    }
+
+    /**
+     * @return The size of the memory mapping; -1 if not set, for the
+     *         default of the native library.
+     */
+    public long getMmapSize() {
+        return Long.parseLong(pragmaTable.getProperty(Pragma.MMAP_SIZE.pragmaName, "-1"));
+    }
+
+    /**
+     * Reads pages of the database file into the page cache of the operating
+     * system when it is first opened by the process, or after it was
+     * replaced, so that the first queries do not wait for the disk. With
+     * memory-mapped I/O, the pages are then mapped without I/O.
+     * @param mode One of {@link WarmupMode}.
+     */
+    public void setWarmup(WarmupMode mode) {
+        setPragma(Pragma.WARMUP, mode.getValue());
+    }
+
+    /**
+     * @return The warmup of the database file.
+     */
+    public WarmupMode getWarmup() {
+        return WarmupMode.getMode(pragmaTable.getProperty(Pragma.WARMUP.pragmaName, WarmupMode.NONE.getValue()));
+    }
+
+    public static enum WarmupMode implements PragmaValue {
+        /** No warmup. */
+        NONE,
+        /**
+         * The schema and the interior pages of every table and index: the
+         * pages visited by every lookup, a small part of the file.
+         */
+        INTERIOR,
+        /**
+         * The whole file, or the memory-mapped part of it if mmap_size is set.
+         */
+        FULL;
+
+        public String getValue() {
+            return name().toLowerCase();
+        }
+
+        public static WarmupMode getMode(String mode) {
+            return valueOf(mode.toUpperCase());
+        }
+    }
+
     /**
      * Changes the maximum number of database disk pages that SQLite will hold
      * in memory at once per open database file.
@@ -963,6 +1110,71 @@ public class SQLiteConfig
         this.defaultConnectionConfig.setDateStringFormat(dateStringFormat);
     }
 
+    /**
+     * Runs each batch in a single transaction when the connection is in
+     * auto-commit mode, instead of committing (and syncing the journal) once
+     * per batch row. Every row runs inside its own savepoint: when a row
+     * fails, its changes are rolled back, the rows before it are committed and
+     * the error is reported as it is without this setting. Batches must not
+     * contain transaction control statements.
+     * @param enable True to enable; false to disable.
+     */
+    public void setBatchTransaction(boolean enable) {
+        this.defaultConnectionConfig.setBatchTransaction(enable);
+    }
+
+    /**
+     * @return True if batches run in a single transaction in auto-commit mode.
+     */
+    public boolean isBatchTransaction() {
+        return this.defaultConnectionConfig.isBatchTransaction();
+    }
+
+    /**
+     * Executes batches of a prepared single-row insert such as
+     * <code>insert into t (a, b) values (?, ?)</code> as multi-row inserts,
+     * with as many rows per statement as the variable number limit allows.
+     * The update count of each row is 1, or Statement.SUCCESS_NO_INFO if some
+     * rows of the statement were not inserted (e.g. by INSERT OR IGNORE).
+     * A failing row rolls back the whole chunk of rows inserted by its
+     * statement, not only itself. Inserts whose row contains a subquery or
+     * which have a clause after the row, such as an upsert or RETURNING, are
+     * still executed row by row.
+     * @param enable True to enable; false to disable.
+     */
+    public void setRewriteBatchedInserts(boolean enable) {
+        this.defaultConnectionConfig.setRewriteBatchedInserts(enable);
+    }
+
+    /**
+     * @return True if batches of single-row inserts are executed as multi-row inserts.
+     */
+    public boolean isRewriteBatchedInserts() {
+        return this.defaultConnectionConfig.isRewriteBatchedInserts();
+    }
+
+    /**
+     * Makes result sets return the same String for every row holding the same
+     * text in a column, up to the given number of distinct values per column,
+     * instead of a new copy per row. Meant for columns of few distinct values,
+     * such as a status or a country code; the cache of a column turns itself
+     * off when less than half of the values read hit it. Values longer than 64
+     * bytes are not cached. Statements can override this setting with
+     * {@link org.sqlite.jdbc3.JDBC3Statement#setTextCache(int, String...)}.
+     * @param maxEntries The number of distinct values cached per column,
+     *        at most 65536; 0 to disable.
+     */
+    public void setTextCache(int maxEntries) {
+        this.defaultConnectionConfig.setTextCache(maxEntries);
+    }
+
+    /**
+     * @return The number of distinct values cached per column; 0 if disabled.
+     */
+    public int getTextCache() {
+        return this.defaultConnectionConfig.getTextCache();
+    }
+
     /**
      * @param milliseconds Connect to DB timeout in milliseconds
      */
@@ -1,10 +1,13 @@
 package org.sqlite;
 
+import org.sqlite.core.Codes;
 import org.sqlite.core.CoreDatabaseMetaData;
 import org.sqlite.core.DB;
 import org.sqlite.core.NativeDB;
+import org.sqlite.core.ScriptResult;
 import org.sqlite.jdbc4.JDBC4DatabaseMetaData;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -12,10 +15,17 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
 
@@ -26,6 +36,11 @@ public abstract class SQLiteConnection
         implements Connection
 {
     private static final String RESOURCE_NAME_PREFIX = ":resource:";
+
+    /** In-memory images of resource databases, by resource address. */
+    private static final Map<String, ByteBuffer> images = new HashMap<String, ByteBuffer>();
+    private static volatile boolean loadImages = true;
+
     private final DB db;
     private CoreDatabaseMetaData meta = null;
     private final SQLiteConnectionConfig connectionConfig;
@@ -180,6 +195,11 @@ public abstract class SQLiteConnection
         String fileName = extractPragmasFromFilename(url, origFileName, newProps);
         SQLiteConfig config = new SQLiteConfig(newProps);
 
+        String memoryDatabase = config.getMemoryDatabase();
+        if (memoryDatabase != null) {
+            fileName = memoryDatabaseFileName(memoryDatabase, fileName);
+        }
+
         // check the path to the file exists
         if (!fileName.isEmpty() && !":memory:".equals(fileName) && !fileName.startsWith("file:") && !fileName.contains("mode=memory")) {
             if (fileName.startsWith(RESOURCE_NAME_PREFIX)) {
@@ -197,6 +217,13 @@ public abstract class SQLiteConnection
                     }
                 }
 
+                if (!"file".equals(resourceAddr.getProtocol()) && loadImages) {
+                    DB db = openImage(url, resourceName, resourceAddr, config);
+                    if (db != null) {
+                        return db;
+                    }
+                }
+
                 try {
                     fileName = extractResource(resourceAddr).getAbsolutePath();
                 }
@@ -229,6 +256,30 @@ public abstract class SQLiteConnection
             }
         }
 
+        return openNative(url, fileName, config);
+    }
+
+    /**
+     * Returns the URI of a named database of the memdb VFS. Names starting
+     * with a slash are shared by the connections of the process; a private
+     * cache keeps them from taking shared-cache table locks.
+     * @param name The name of the database.
+     * @param fileName The database file of the connection URL, which must be
+     *        empty or ":memory:".
+     * @throws SQLException
+     */
+    private static String memoryDatabaseFileName(String name, String fileName) throws SQLException {
+        if (!fileName.isEmpty() && !":memory:".equals(fileName)) {
+            throw new SQLException(String.format("memory database %s cannot be opened with file %s", name, fileName));
+        }
+        if (name.isEmpty() || name.indexOf('?') >= 0 || name.indexOf('#') >= 0 || name.indexOf('%') >= 0
+                || name.indexOf('&') >= 0) {
+            throw new SQLException("invalid memory database name: '" + name + "'");
+        }
+        return (name.charAt(0) == '/' ? "file:" : "file:/") + name + "?vfs=memdb&cache=private";
+    }
+
+    private static DB openNative(String url, String fileName, SQLiteConfig config) throws SQLException {
         // load the native DB
         DB db = null;
         try {
@@ -244,6 +295,94 @@ public abstract class SQLiteConnection
         return db;
     }
 
+    /**
+     * Opens a resource database as a read-only in-memory image, shared by all
+     * connections to the resource. Each connection reads the image in place,
+     * unlike a named memdb database, which would copy it into the SQLite heap
+     * and free it when its last connection closes.
+     * @return The database; null if the native library cannot open images.
+     * @throws SQLException
+     */
+    private static DB openImage(String url, String resourceName, URL resourceAddr, SQLiteConfig config)
+            throws SQLException {
+        ByteBuffer image;
+        try {
+            image = loadImage(resourceAddr);
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("failed to load %s: %s", resourceName, e));
+        }
+
+        DB db = openNative(url, ":memory:", config);
+        try {
+            int rc = db.deserialize("main", image);
+            if (rc != Codes.SQLITE_OK) {
+                throw new SQLException(String.format("failed to load %s: %s", resourceName, rc));
+            }
+            return db;
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            loadImages = false;
+            synchronized (images) {
+                images.clear();
+            }
+            db.close();
+            return null;
+        }
+        catch (SQLException e) {
+            db.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the contents of a resource, read once per JVM into native
+     * memory. Resources of the class path do not change while it runs.
+     * @param resourceAddr The resource address.
+     * @return A direct buffer holding the resource.
+     * @throws IOException
+     */
+    private static ByteBuffer loadImage(URL resourceAddr) throws IOException {
+        String key = resourceAddr.toExternalForm();
+        synchronized (images) {
+            ByteBuffer image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+
+            URLConnection connection = resourceAddr.openConnection();
+            long length = connection.getContentLengthLong();
+            InputStream in = connection.getInputStream();
+            try {
+                if (length >= 0 && length <= Integer.MAX_VALUE) {
+                    image = ByteBuffer.allocateDirect((int) length);
+                    ReadableByteChannel channel = Channels.newChannel(in);
+                    while (image.hasRemaining() && channel.read(image) != -1) {
+                    }
+                    if (image.hasRemaining() || in.read() != -1) {
+                        throw new IOException("resource length changed while reading");
+                    }
+                }
+                else {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int bytesRead;
+                    while ((bytesRead = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, bytesRead);
+                    }
+                    image = ByteBuffer.allocateDirect(out.size());
+                    image.put(out.toByteArray());
+                }
+            }
+            finally {
+                in.close();
+            }
+            image.clear();
+            images.put(key, image);
+            return image;
+        }
+    }
+
     /**
      * Returns a file name from the given resource address.
      * @param resourceAddr The resource address.
@@ -309,6 +448,36 @@ public abstract class SQLiteConnection
         return db;
     }
 
+    /**
+     * Executes the statements of an SQL script, in order, until one fails,
+     * in a single call into the native library. Rows returned by queries are
+     * discarded. A failed statement does not throw; its error is returned
+     * along with the position, changes and time of every executed statement.
+     * @param sql The statements, separated by semicolons.
+     * @return The results of the executed statements.
+     * @throws SQLFeatureNotSupportedException If the native library does not support scripts.
+     * @throws SQLException
+     */
+    public ScriptResult executeScript(String sql) throws SQLException {
+        return executeScript(sql, false);
+    }
+
+    /**
+     * Executes the statements of an SQL script, in order, until one fails.
+     * @param sql The statements, separated by semicolons.
+     * @param transaction True to run the script in a transaction that is
+     *        committed if every statement succeeds and rolled back otherwise;
+     *        only applies in auto-commit mode, the script is part of the
+     *        current transaction otherwise.
+     * @return The results of the executed statements.
+     * @throws SQLException
+     * @see #executeScript(String)
+     */
+    public ScriptResult executeScript(String sql, boolean transaction) throws SQLException {
+        checkOpen();
+        return db.executeScript(sql, transaction && getAutoCommit());
+    }
+
     /**
      * @see java.sql.Connection#getAutoCommit()
      */
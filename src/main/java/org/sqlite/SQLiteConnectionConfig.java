@@ -1,11 +1,13 @@
 package org.sqlite;
 
 import org.sqlite.date.FastDateFormat;
+import org.sqlite.date.FixedDateTime;
 
 import java.sql.Connection;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
 
 import static org.sqlite.SQLiteConfig.DEFAULT_DATE_STRING_FORMAT;
 
@@ -14,17 +16,26 @@ import static org.sqlite.SQLiteConfig.DEFAULT_DATE_STRING_FORMAT;
  */
 public class SQLiteConnectionConfig implements Cloneable
 {
+    /** The largest number of distinct values cached per column, see {@link #setTextCache(int)}. */
+    public static final int MAX_TEXT_CACHE = 65536;
+
     private SQLiteConfig.DateClass dateClass = SQLiteConfig.DateClass.INTEGER;
     private SQLiteConfig.DatePrecision datePrecision = SQLiteConfig.DatePrecision.MILLISECONDS; //Calendar.SECOND or Calendar.MILLISECOND
     private String dateStringFormat = DEFAULT_DATE_STRING_FORMAT;
     private FastDateFormat dateFormat = FastDateFormat.getInstance(dateStringFormat);
+    /** The date format last used with a calendar of another time zone. */
+    private volatile FastDateFormat zonedDateFormat;
+    private boolean fixedDateFormat = true;
 
     private int transactionIsolation = Connection.TRANSACTION_SERIALIZABLE;
     private SQLiteConfig.TransactionMode transactionMode = SQLiteConfig.TransactionMode.DEFERRED;
     private boolean autoCommit = true;
+    private boolean batchTransaction = false;
+    private boolean rewriteBatchedInserts = false;
+    private int textCache = 0;
 
     public static SQLiteConnectionConfig fromPragmaTable(Properties pragmaTable) {
-        return new SQLiteConnectionConfig(
+        SQLiteConnectionConfig config = new SQLiteConnectionConfig(
                 SQLiteConfig.DateClass.getDateClass(pragmaTable.getProperty(SQLiteConfig.Pragma.DATE_CLASS.pragmaName, SQLiteConfig.DateClass.INTEGER.name())),
                 SQLiteConfig.DatePrecision.getPrecision(pragmaTable.getProperty(SQLiteConfig.Pragma.DATE_PRECISION.pragmaName, SQLiteConfig.DatePrecision.MILLISECONDS.name())),
                 pragmaTable.getProperty(SQLiteConfig.Pragma.DATE_STRING_FORMAT.pragmaName, DEFAULT_DATE_STRING_FORMAT),
@@ -32,6 +43,13 @@ public class SQLiteConnectionConfig implements Cloneable
                 SQLiteConfig.TransactionMode.getMode(
                         pragmaTable.getProperty(SQLiteConfig.Pragma.TRANSACTION_MODE.pragmaName, SQLiteConfig.TransactionMode.DEFERRED.name())),
                 true);
+        config.setBatchTransaction(Boolean.parseBoolean(
+                pragmaTable.getProperty(SQLiteConfig.Pragma.BATCH_TRANSACTION.pragmaName, "false")));
+        config.setRewriteBatchedInserts(Boolean.parseBoolean(
+                pragmaTable.getProperty(SQLiteConfig.Pragma.REWRITE_BATCHED_INSERTS.pragmaName, "false")));
+        config.setTextCache(Integer.parseInt(
+                pragmaTable.getProperty(SQLiteConfig.Pragma.TEXT_CACHE.pragmaName, "0")));
+        return config;
     }
 
     public SQLiteConnectionConfig(
@@ -52,7 +70,7 @@ public class SQLiteConnectionConfig implements Cloneable
     }
 
     public SQLiteConnectionConfig copyConfig() {
-        return new SQLiteConnectionConfig(
+        SQLiteConnectionConfig copy = new SQLiteConnectionConfig(
                 dateClass,
                 datePrecision,
                 dateStringFormat,
@@ -60,6 +78,10 @@ public class SQLiteConnectionConfig implements Cloneable
                 transactionMode,
                 autoCommit
         );
+        copy.setBatchTransaction(batchTransaction);
+        copy.setRewriteBatchedInserts(rewriteBatchedInserts);
+        copy.setTextCache(textCache);
+        return copy;
     }
 
     public long getDateMultiplier()
@@ -96,6 +118,17 @@ public class SQLiteConnectionConfig implements Cloneable
     {
         this.dateStringFormat = dateStringFormat;
         this.dateFormat = FastDateFormat.getInstance(dateStringFormat);
+        this.zonedDateFormat = null;
+        this.fixedDateFormat = FixedDateTime.PATTERN.equals(dateStringFormat);
+    }
+
+    /**
+     * @return True if the date string format is the default one, which is
+     *         parsed and printed by {@link FixedDateTime}.
+     */
+    public boolean isFixedDateFormat()
+    {
+        return fixedDateFormat;
     }
 
     public FastDateFormat getDateFormat()
@@ -103,6 +136,36 @@ public class SQLiteConnectionConfig implements Cloneable
         return dateFormat;
     }
 
+    /**
+     * Gets the date format of the connection in a time zone, usually the one
+     * of a calendar passed to a getter or setter. The formats of the default
+     * time zone and of the last other time zone are kept by the connection,
+     * so that repeated calls do not look up the shared format cache.
+     * @param timeZone The time zone; null for the zone of {@link #getDateFormat()},
+     *        the default time zone when the connection was opened.
+     * @return The date format.
+     */
+    public FastDateFormat getDateFormat(TimeZone timeZone)
+    {
+        FastDateFormat format = dateFormat;
+        if (timeZone == null || sameZone(format.getTimeZone(), timeZone)) {
+            return format;
+        }
+        format = zonedDateFormat;
+        if (format != null && sameZone(format.getTimeZone(), timeZone)
+                && format.getPattern().equals(dateStringFormat)) {
+            return format;
+        }
+        format = FastDateFormat.getInstance(dateStringFormat, timeZone);
+        zonedDateFormat = format;
+        return format;
+    }
+
+    private static boolean sameZone(TimeZone a, TimeZone b)
+    {
+        return a == b || a.getID().equals(b.getID()) && a.hasSameRules(b);
+    }
+
     public boolean isAutoCommit()
     {
         return autoCommit;
@@ -113,6 +176,48 @@ public class SQLiteConnectionConfig implements Cloneable
         this.autoCommit = autoCommit;
     }
 
+    public boolean isBatchTransaction()
+    {
+        return batchTransaction;
+    }
+
+    public void setBatchTransaction(boolean batchTransaction)
+    {
+        this.batchTransaction = batchTransaction;
+    }
+
+    public boolean isRewriteBatchedInserts()
+    {
+        return rewriteBatchedInserts;
+    }
+
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts)
+    {
+        this.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
+    public int getTextCache()
+    {
+        return textCache;
+    }
+
+    public void setTextCache(int textCache)
+    {
+        checkTextCache(textCache);
+        this.textCache = textCache;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the number of distinct values cached
+     *         per column is not in [0, 65536].
+     */
+    public static void checkTextCache(int maxEntries)
+    {
+        if (maxEntries < 0 || maxEntries > MAX_TEXT_CACHE) {
+            throw new IllegalArgumentException("invalid text cache size: " + maxEntries);
+        }
+    }
+
     public int getTransactionIsolation()
     {
         return transactionIsolation;
@@ -49,6 +49,8 @@ public class SQLiteDataSource implements DataSource
     private String                url          = JDBC.PREFIX; // use memory database in default
     private String                databaseName = ""; // the name of the current database
 
+    private SQLiteConnection      memoryDatabaseHolder; // keeps the shared in-memory database alive
+
     /**
      * Default constructor.
      */
@@ -110,6 +112,39 @@ public class SQLiteDataSource implements DataSource
         return databaseName;
     }
 
+    /**
+     * Opens a named in-memory database, shared by the connections of this
+     * process, instead of the database file of the URL. The data source keeps
+     * a connection to the database from its first connection until
+     * {@link #releaseMemoryDatabase()}, so the database outlives its pooled
+     * connections.
+     * @param name The name of the database; null to open the database file.
+     * @see SQLiteConfig#setMemoryDatabase(String)
+     */
+    public void setMemoryDatabase(String name) throws SQLException {
+        releaseMemoryDatabase();
+        config.setMemoryDatabase(name);
+    }
+
+    /**
+     * @return The name of the shared in-memory database, if one was set.
+     */
+    public String getMemoryDatabase() {
+        return config.getMemoryDatabase();
+    }
+
+    /**
+     * Closes the connection keeping the shared in-memory database alive. The
+     * database is freed when the last connection to it is closed.
+     * @throws SQLException
+     */
+    public synchronized void releaseMemoryDatabase() throws SQLException {
+        if (memoryDatabaseHolder != null) {
+            memoryDatabaseHolder.close();
+            memoryDatabaseHolder = null;
+        }
+    }
+
     /**
      * Enables or disables the sharing of the database cache and schema data
      * structures between connections to the same database. 
@@ -148,6 +183,36 @@ public class SQLiteDataSource implements DataSource
         config.setCacheSize(numberOfPages);
     }
 
+    /**
+     * Sets the largest number of bytes of the database file that are
+     * memory-mapped.
+     * @param bytes The size of the mapping; 0 to disable memory-mapped I/O.
+     * @see SQLiteConfig#setMmapSize(long)
+     */
+    public void setMmapSize(long bytes) {
+        config.setMmapSize(bytes);
+    }
+
+    /**
+     * Sets the pages of the database file read into the page cache of the
+     * operating system when it is first opened by the process.
+     * @param mode One of "none", "interior" or "full".
+     * @see SQLiteConfig#setWarmup(SQLiteConfig.WarmupMode)
+     */
+    public void setWarmup(String mode) {
+        config.setWarmup(SQLiteConfig.WarmupMode.getMode(mode));
+    }
+
+    /**
+     * Sets the lookaside memory of each connection.
+     * @param slotSize The size of each slot in bytes.
+     * @param slotCount The number of slots; 0 to disable lookaside.
+     * @see SQLiteConfig#setLookaside(int, int)
+     */
+    public void setLookaside(int slotSize, int slotCount) {
+        config.setLookaside(slotSize, slotCount);
+    }
+
     /**
      * Enables or disables case sensitivity for the built-in LIKE operator.
      * @param enable True to enable; false to disable.
@@ -379,6 +444,35 @@ public class SQLiteDataSource implements DataSource
         config.setTransactionMode(transactionMode);
     }
 
+    /**
+     * Runs each batch in a single transaction when the connection is in
+     * auto-commit mode.
+     * @param enable True to enable; false to disable.
+     * @see SQLiteConfig#setBatchTransaction(boolean)
+     */
+    public void setBatchTransaction(boolean enable) {
+        config.setBatchTransaction(enable);
+    }
+
+    /**
+     * Executes batches of single-row inserts as multi-row inserts.
+     * @param enable True to enable; false to disable.
+     * @see SQLiteConfig#setRewriteBatchedInserts(boolean)
+     */
+    public void setRewriteBatchedInserts(boolean enable) {
+        config.setRewriteBatchedInserts(enable);
+    }
+
+    /**
+     * Makes result sets share the Strings of the repeated values of a column.
+     * @param maxEntries The number of distinct values cached per column; 0 to
+     *        disable.
+     * @see SQLiteConfig#setTextCache(int)
+     */
+    public void setTextCache(int maxEntries) {
+        config.setTextCache(maxEntries);
+    }
+
     /**
      * Sets the value of the user-version. It is a big-endian 32-bit signed
      * integer stored in the database header at offset 60. 
@@ -407,9 +501,35 @@ public class SQLiteDataSource implements DataSource
             p.put("user", username);
         if (password != null)
             p.put("pass", password);
+        if (config.getMemoryDatabase() != null) {
+            synchronized (this) {
+                if (memoryDatabaseHolder == null || memoryDatabaseHolder.isClosed()) {
+                    memoryDatabaseHolder = JDBC.createConnection(url, p);
+                }
+            }
+        }
         return JDBC.createConnection(url, p);
     }
 
+    /**
+     * Reads the database file into the page cache of the operating system
+     * now, with the configured warmup or the whole file if none is set, so
+     * that a pool or application can warm up before serving its first
+     * request.
+     * @return The number of bytes read.
+     * @throws SQLException
+     */
+    public long warmup() throws SQLException {
+        SQLiteConfig.WarmupMode mode = config.getWarmup();
+        SQLiteConnection conn = getConnection(null, null);
+        try {
+            return SQLiteWarmup.warmup(conn, mode == SQLiteConfig.WarmupMode.NONE ? SQLiteConfig.WarmupMode.FULL : mode, true);
+        }
+        finally {
+            conn.close();
+        }
+    }
+
     /**
      * @see javax.sql.DataSource#getLogWriter()
      */
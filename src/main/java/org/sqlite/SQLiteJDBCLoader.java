@@ -29,13 +29,28 @@ import org.sqlite.util.StringUtils;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Set the system properties, org.sqlite.lib.path, org.sqlite.lib.name,
@@ -74,12 +89,20 @@ public class SQLiteJDBCLoader {
 
     /**
      * Deleted old native libraries e.g. on Windows the DLL file is not removed
-     * on VM-Exit (bug #80)
+     * on VM-Exit (bug #80). Libraries extracted to the cache keep their .lck
+     * file and are not deleted; temporary files of an extraction are deleted
+     * once they are old enough not to belong to a running extraction.
      */
     static void cleanup() {
-        String tempFolder = getTempDir().getAbsolutePath();
-        File dir = new File(tempFolder);
+        File tempDir = getTempDir().getAbsoluteFile();
+        cleanup(tempDir);
+        File cacheDir = getCacheDir(tempDir);
+        if(cacheDir != null) {
+            cleanup(cacheDir);
+        }
+    }
 
+    private static void cleanup(File dir) {
         File[] nativeLibFiles = dir.listFiles(new FilenameFilter() {
             private final String searchPattern = "sqlite-" + getVersion();
             public boolean accept(File dir, String name) {
@@ -87,9 +110,10 @@ public class SQLiteJDBCLoader {
             }
         });
         if(nativeLibFiles != null) {
+            long staleTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
             for(File nativeLibFile : nativeLibFiles) {
                 File lckFile = new File(nativeLibFile.getAbsolutePath() + ".lck");
-                if(!lckFile.exists()) {
+                if(nativeLibFile.getName().endsWith(".tmp") ? nativeLibFile.lastModified() < staleTime : !lckFile.exists()) {
                     try {
                         nativeLibFile.delete();
                     }
@@ -162,28 +186,17 @@ public class SQLiteJDBCLoader {
         }
     }
 
-    private static boolean contentsEquals(InputStream in1, InputStream in2) throws IOException {
-        if(!(in1 instanceof BufferedInputStream)) {
-            in1 = new BufferedInputStream(in1);
-        }
-        if(!(in2 instanceof BufferedInputStream)) {
-            in2 = new BufferedInputStream(in2);
-        }
-
-        int ch = in1.read();
-        while(ch != -1) {
-            int ch2 = in2.read();
-            if(ch != ch2) {
-                return false;
-            }
-            ch = in1.read();
-        }
-        int ch2 = in2.read();
-        return ch2 == -1;
-    }
-
     /**
-     * Extracts and loads the specified library file to the target folder
+     * Extracts and loads the specified library file to the target folder.
+     * The extracted file is cached in a directory of the target folder that
+     * only the current user can access, under a name derived from the SHA-256
+     * hash of the library, so it is reused by later JVMs instead of being
+     * extracted again. A cached file is loaded only if its hash matches the
+     * library; otherwise it is written to a temporary file and renamed into
+     * place while holding a lock on its .lck file, so concurrent JVMs never
+     * load a partially written library. When the cache cannot be used, the
+     * library is extracted to a private file with a random name, deleted on
+     * exit.
      *
      * @param libFolderForCurrentOS Library path.
      * @param libraryFileName       Library name.
@@ -193,73 +206,182 @@ public class SQLiteJDBCLoader {
     private static boolean extractAndLoadLibraryFile(String libFolderForCurrentOS, String libraryFileName,
                                                      String targetFolder) {
         String nativeLibraryFilePath = libFolderForCurrentOS + "/" + libraryFileName;
-        // Include architecture name in temporary filename in order to avoid conflicts
-        // when multiple JVMs with different architectures running at the same time
-        String uuid = UUID.randomUUID().toString();
-        String extractedLibFileName = String.format("sqlite-%s-%s-%s", getVersion(), uuid, libraryFileName);
-        String extractedLckFileName = extractedLibFileName + ".lck";
-
-        File extractedLibFile = new File(targetFolder, extractedLibFileName);
-        File extractedLckFile = new File(targetFolder, extractedLckFileName);
 
+        byte[] library;
         try {
-            // Extract a native library file into the target directory
-            InputStream reader = SQLiteJDBCLoader.class.getResourceAsStream(nativeLibraryFilePath);
-            if(!extractedLckFile.exists()) {
-                new FileOutputStream(extractedLckFile).close();
-            }
-            FileOutputStream writer = new FileOutputStream(extractedLibFile);
+            library = readResource(nativeLibraryFilePath);
+        }
+        catch(IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        File cacheFolder = getCacheDir(new File(targetFolder));
+        if(cacheFolder != null) {
             try {
-                byte[] buffer = new byte[8192];
-                int bytesRead = 0;
-                while((bytesRead = reader.read(buffer)) != -1) {
-                    writer.write(buffer, 0, bytesRead);
-                }
+                // The hash keeps libraries of different architectures or builds apart
+                byte[] hash = digest(library);
+                String cachedLibFileName = String.format("sqlite-%s-%s-%s", getVersion(), hex(hash), libraryFileName);
+                extractCachedLibraryFile(library, hash, new File(cacheFolder, cachedLibFileName));
+                return loadNativeLibrary(cacheFolder.getAbsolutePath(), cachedLibFileName);
             }
-            finally {
-                // Delete the extracted lib file on JVM exit.
-                extractedLibFile.deleteOnExit();
-                extractedLckFile.deleteOnExit();
-
-
-                if(writer != null) {
-                    writer.close();
-                }
-                if(reader != null) {
-                    reader.close();
-                }
+            catch(IOException e) {
+                // e.g. a lock file of another user: extract a private copy
             }
+        }
 
-            // Set executable (x) flag to enable Java to load the native library
-            extractedLibFile.setReadable(true);
-            extractedLibFile.setWritable(true, true);
-            extractedLibFile.setExecutable(true);
+        try {
+            String extractedLibFileName = String.format("sqlite-%s-%s-%s", getVersion(), UUID.randomUUID(), libraryFileName);
+            File extractedLibFile = new File(targetFolder, extractedLibFileName);
+            File extractedLckFile = new File(targetFolder, extractedLibFileName + ".lck");
+            // Delete the extracted lib file on JVM exit; the .lck file keeps
+            // cleanup() of other JVMs from deleting it before.
+            extractedLckFile.deleteOnExit();
+            extractedLibFile.deleteOnExit();
+            Files.write(extractedLckFile.toPath(), new byte[0], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            writeLibraryFile(library, extractedLibFile);
+            return loadNativeLibrary(targetFolder, extractedLibFileName);
+        }
+        catch(IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
 
-            // Check whether the contents are properly copied from the resource folder
-            {
-                InputStream nativeIn = SQLiteJDBCLoader.class.getResourceAsStream(nativeLibraryFilePath);
-                InputStream extractedLibIn = new FileInputStream(extractedLibFile);
+    /**
+     * Writes the library to the cached file, unless the file already holds it.
+     * @param hash The SHA-256 digest of the library.
+     */
+    static void extractCachedLibraryFile(byte[] library, byte[] hash, File cachedLibFile) throws IOException {
+        File cachedLckFile = new File(cachedLibFile.getPath() + ".lck");
+        FileChannel lck = FileChannel.open(cachedLckFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = lck.lock();
+            try {
+                if(cachedLibFile.length() == library.length
+                        && MessageDigest.isEqual(hash, digest(Files.readAllBytes(cachedLibFile.toPath())))) {
+                    return;
+                }
+                File tmpFile = new File(cachedLibFile.getPath() + "." + UUID.randomUUID() + ".tmp");
                 try {
-                    if(!contentsEquals(nativeIn, extractedLibIn)) {
-                        throw new RuntimeException(String.format("Failed to write a native library file at %s", extractedLibFile));
+                    writeLibraryFile(library, tmpFile);
+                    try {
+                        Files.move(tmpFile.toPath(), cachedLibFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    catch(IOException e) {
+                        // no atomic rename across the file system, or the target is in use (Windows)
+                        Files.move(tmpFile.toPath(), cachedLibFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                     }
                 }
                 finally {
-                    if(nativeIn != null) {
-                        nativeIn.close();
-                    }
-                    if(extractedLibIn != null) {
-                        extractedLibIn.close();
-                    }
+                    tmpFile.delete();
                 }
             }
-            return loadNativeLibrary(targetFolder, extractedLibFileName);
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            lck.close();
+        }
+    }
+
+    /**
+     * Writes the library to a new file.
+     */
+    private static void writeLibraryFile(byte[] library, File file) throws IOException {
+        Files.write(file.toPath(), library, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // Set executable (x) flag to enable Java to load the native library
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+        file.setExecutable(true, true);
+    }
+
+    /**
+     * Returns the cache directory of the current user in the target folder,
+     * creating it if needed. On POSIX file systems the directory must be owned
+     * by the user and closed to the group and others, so no other user can
+     * plant or replace a library in it.
+     * @return The directory; null if it cannot be used safely.
+     */
+    static File getCacheDir(File targetFolder) {
+        String user = System.getProperty("user.name", "");
+        File dir = new File(targetFolder, "sqlite-jdbc-" + user.replaceAll("[^A-Za-z0-9._-]", "_"));
+        Path path = dir.toPath();
+        try {
+            if(!Files.getFileStore(targetFolder.toPath()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.createDirectories(path);
+                return dir;
+            }
+            try {
+                Files.createDirectory(path, PosixFilePermissions.asFileAttribute(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE)));
+            }
+            catch(FileAlreadyExistsException e) {
+                // check it below
+            }
+            PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal owner = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(user);
+            if(!attributes.isDirectory() || !attributes.owner().equals(owner)) {
+                return null;
+            }
+            for(PosixFilePermission permission : attributes.permissions()) {
+                if(permission != PosixFilePermission.OWNER_READ && permission != PosixFilePermission.OWNER_WRITE
+                        && permission != PosixFilePermission.OWNER_EXECUTE) {
+                    return null;
+                }
+            }
+            return dir;
         }
         catch(IOException e) {
-            System.err.println(e.getMessage());
-            return false;
+            return null;
+        }
+        catch(SecurityException e) {
+            return null;
+        }
+        catch(UnsupportedOperationException e) {
+            return null;
         }
+    }
 
+    private static byte[] readResource(String path) throws IOException {
+        InputStream reader = SQLiteJDBCLoader.class.getResourceAsStream(path);
+        if (reader == null) {
+            throw new FileNotFoundException(path);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+            byte[] buffer = new byte[8192];
+            int bytesRead = 0;
+            while((bytesRead = reader.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    static String sha256(byte[] data) {
+        return hex(digest(data));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm is not available: " + e);
+        }
     }
 
     /**
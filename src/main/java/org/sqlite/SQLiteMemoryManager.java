@@ -0,0 +1,430 @@
+package org.sqlite;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.sqlite.core.Codes;
+import org.sqlite.core.DB;
+import org.sqlite.core.NativeDB;
+
+/**
+ * Bounds the native memory used by SQLite in the process, which the JVM
+ * neither sees nor limits.
+ *
+ * <ul>
+ * <li>{@link #setSoftHeapLimit(long)} and {@link #setHardHeapLimit(long)}
+ * limit the memory allocated by all connections.</li>
+ * <li>{@link #setCacheBudget(long)} shares a page cache budget between the
+ * open connections, whose <code>cache_size</code> is adjusted as connections
+ * are opened and closed, instead of each connection using the default
+ * <code>cache_size</code>.</li>
+ * <li>{@link #releaseMemoryOnHeapPressure(double)} frees the unused cache
+ * pages of all connections when the Java heap runs low after a garbage
+ * collection.</li>
+ * <li>{@link #setPageCache(int, int)} and {@link #setMemoryStatus(boolean)}
+ * configure the allocators of SQLite, before the first connection of the
+ * process is opened.</li>
+ * </ul>
+ *
+ * Eg.
+ *
+ * <pre>
+ *      SQLiteMemoryManager.setSoftHeapLimit(256L &lt;&lt; 20);
+ *      SQLiteMemoryManager.setCacheBudget(128L &lt;&lt; 20);
+ *      SQLiteMemoryManager.releaseMemoryOnHeapPressure(0.8);
+ * </pre>
+ *
+ * <p>Connections opened before the budget was set are adjusted as well. The
+ * budget is applied to a connection by the thread using it, when it is
+ * opened and before it prepares its next statement, so an idle connection
+ * keeps its <code>cache_size</code> until it is used again. A connection
+ * whose <code>cache_size</code> was set by the application, in its
+ * configuration or with a pragma, keeps it. Memory releases are applied to
+ * every open connection at once, idle or not.</p>
+ *
+ * @see <a href="https://www.sqlite.org/malloc.html">https://www.sqlite.org/malloc.html</a>
+ */
+public final class SQLiteMemoryManager
+{
+    /** The smallest cache of a connection, in KiB. */
+    private static final long MIN_CACHE_KIB = 128;
+
+    /** The open connections, weakly held for connections never closed. */
+    private static final Set<ConnectionState> databases =
+            Collections.newSetFromMap(new ConcurrentHashMap<ConnectionState, Boolean>());
+    private static final ReferenceQueue<DB> collected = new ReferenceQueue<DB>();
+    private static final AtomicInteger connections = new AtomicInteger();
+
+    /** Incremented whenever the connections have settings to apply. */
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private static final AtomicLong    appliedCacheKiB = new AtomicLong();  // part when last rebalanced; 0 if no budget
+    private static final AtomicLong    releases = new AtomicLong();
+    private static final AtomicBoolean heapListener = new AtomicBoolean();
+    private static final Set<String>   thresholdPools =                     // with a threshold set by us
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static volatile long       cacheBudget;                         // bytes, 0 if none
+
+    private SQLiteMemoryManager() {
+    }
+
+    /**
+     * Sets the amount of memory above which SQLite frees cache pages before
+     * allocating more. Allocations may exceed the soft limit. The heap limits
+     * are only enforced with memory statistics, see
+     * {@link #setMemoryStatus(boolean)}.
+     * @param bytes The limit; 0 for no limit.
+     * @return The previous limit.
+     * @see <a href="https://www.sqlite.org/c3ref/hard_heap_limit64.html">https://www.sqlite.org/c3ref/hard_heap_limit64.html</a>
+     */
+    public static long setSoftHeapLimit(long bytes) throws SQLException {
+        return heapLimit(false, bytes);
+    }
+
+    /**
+     * Sets the amount of memory SQLite never allocates beyond: allocations
+     * then fail with SQLITE_NOMEM.
+     * @param bytes The limit; 0 for no limit.
+     * @return The previous limit.
+     */
+    public static long setHardHeapLimit(long bytes) throws SQLException {
+        return heapLimit(true, bytes);
+    }
+
+    /**
+     * @return The soft heap limit; 0 if none.
+     */
+    public static long getSoftHeapLimit() throws SQLException {
+        return heapLimit(false, -1);
+    }
+
+    /**
+     * @return The hard heap limit; 0 if none.
+     */
+    public static long getHardHeapLimit() throws SQLException {
+        return heapLimit(true, -1);
+    }
+
+    /**
+     * @return The memory allocated by SQLite in the process, in bytes; 0 if
+     *         the native library does not keep memory statistics, -1 if it
+     *         does not support the call.
+     */
+    public static long getMemoryUsed() throws SQLException {
+        try {
+            return NativeDB.memory_used(false, false);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Allocates a pool of page cache memory shared by all connections, from
+     * which pages are taken before falling back to malloc. Must be called
+     * before any connection is opened.
+     * @param pageSize The largest page size of the databases, e.g. 4096.
+     * @param pages The number of pages of the pool.
+     * @throws SQLException If a connection was already opened.
+     * @see <a href="https://www.sqlite.org/c3ref/c_config_covering_index_scan.html#sqliteconfigpagecache">https://www.sqlite.org/c3ref/c_config_covering_index_scan.html#sqliteconfigpagecache</a>
+     */
+    public static void setPageCache(int pageSize, int pages) throws SQLException {
+        if (pageSize < 512 || pageSize > 65536 || pages <= 0) {
+            throw new IllegalArgumentException("invalid page cache: " + pageSize + "," + pages);
+        }
+        config(Codes.SQLITE_CONFIG_PAGECACHE, pageSize, pages);
+    }
+
+    /**
+     * Enables or disables the memory statistics of SQLite, which
+     * {@link #getMemoryUsed()} and the soft heap limit rely on, at the cost of
+     * a mutex per allocation. They are disabled in the bundled native
+     * libraries. Must be called before any connection is opened.
+     * @param enable True to keep memory statistics.
+     * @throws SQLException If a connection was already opened.
+     */
+    public static void setMemoryStatus(boolean enable) throws SQLException {
+        config(Codes.SQLITE_CONFIG_MEMSTATUS, enable ? 1 : 0, 0);
+    }
+
+    private static void config(int op, int arg1, int arg2) throws SQLException {
+        int rc = NativeDB.config(op, arg1, arg2);
+        if (rc == Codes.SQLITE_MISUSE) {
+            throw new SQLException("SQLite is already initialized: the allocators must be configured before the first connection");
+        }
+        if (rc != Codes.SQLITE_OK) {
+            throw new SQLException("error configuring SQLite: " + rc);
+        }
+    }
+
+    /**
+     * Sets the page cache memory shared by the open connections of the
+     * process: each connection gets an equal part, of at least 128 KiB,
+     * unless its <code>cache_size</code> was set by the application.
+     * @param bytes The budget; 0 to stop managing the cache sizes, which then
+     *        keep their last values.
+     */
+    public static synchronized void setCacheBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("invalid cache budget: " + bytes);
+        }
+        cacheBudget = bytes;
+        appliedCacheKiB.set(bytes == 0 ? 0 : shareKiB(connections.get()));
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return The page cache budget; 0 if none.
+     */
+    public static long getCacheBudget() {
+        return cacheBudget;
+    }
+
+    /**
+     * @return The cache size of each connection under the budget, in KiB; 0
+     *         if there is no budget.
+     */
+    public static long getConnectionCacheSize() {
+        return cacheBudget == 0 ? 0 : shareKiB(connections.get());
+    }
+
+    /**
+     * Frees the unused memory of every open connection, like
+     * <code>pragma shrink_memory</code>. Each connection is released while
+     * holding its lock, so this waits for the call in progress on a busy
+     * connection, such as a step of a statement, to return.
+     * @see <a href="https://www.sqlite.org/c3ref/db_release_memory.html">https://www.sqlite.org/c3ref/db_release_memory.html</a>
+     */
+    public static void releaseMemory() {
+        expunge();
+        for (ConnectionState state : databases) {
+            DB db = state.get();
+            if (db == null) {
+                continue;
+            }
+            synchronized (db) {
+                try {
+                    if (!db.isClosed() && db._exec("pragma shrink_memory") == Codes.SQLITE_OK) {
+                        releases.incrementAndGet();
+                    }
+                }
+                catch (SQLException e) {
+                    // closed meanwhile: its memory is freed with it
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of times a connection released its memory.
+     */
+    public static long getReleaseCount() {
+        return releases.get();
+    }
+
+    /**
+     * Releases the memory of the connections when a heap memory pool of the
+     * JVM is still above a fraction of its maximum size after a garbage
+     * collection.
+     *
+     * <p>The collection usage thresholds of the memory pools are settings of
+     * the whole JVM, which monitoring tools may use as well: a threshold is
+     * only installed on the heap pools that have none set, and only the
+     * notifications of these pools release memory. Calling this method again
+     * changes the thresholds installed by it and leaves the others alone.</p>
+     * @param fraction The fraction of the maximum size of the pools, between
+     *        0 and 1.
+     * @see MemoryPoolMXBean#setCollectionUsageThreshold(long)
+     */
+    public static void releaseMemoryOnHeapPressure(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("invalid fraction: " + fraction);
+        }
+        synchronized (thresholdPools) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()
+                        || pool.getUsage().getMax() <= 0) {
+                    continue;
+                }
+                if (thresholdPools.contains(pool.getName()) || pool.getCollectionUsageThreshold() == 0) {
+                    pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * fraction));
+                    thresholdPools.add(pool.getName());
+                }
+            }
+        }
+        if (!heapListener.compareAndSet(false, true)) {
+            return;
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(
+            new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                        return;
+                    }
+                    MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+                    if (thresholdPools.contains(info.getPoolName())) {
+                        releaseMemory();
+                    }
+                }
+            },
+            null, null);
+    }
+
+    /**
+     * The cache budget applied to a connection. It is kept by the connection
+     * and only accessed by the thread using it, while holding the lock of its
+     * {@link DB}.
+     */
+    public static final class ConnectionState extends WeakReference<DB>
+    {
+        private int  version = -1;  // of the settings last applied
+        private long cacheKiB;      // cache_size last set for the budget; 0 if none, -1 if set by the application
+
+        public ConnectionState(DB db) {
+            super(db, collected);
+        }
+    }
+
+    /**
+     * Called by the driver when a connection is opened, before it is
+     * configured.
+     */
+    public static void register(DB db, ConnectionState state) throws SQLException {
+        expunge();
+        if (databases.add(state)) {
+            connections.incrementAndGet();
+            rebalance();
+        }
+        apply(db, state);
+    }
+
+    /**
+     * Called by the driver when a connection is closed.
+     */
+    public static void unregister(ConnectionState state) {
+        if (databases.remove(state)) {
+            connections.decrementAndGet();
+            rebalance();
+        }
+    }
+
+    /**
+     * Forgets the connections that were never closed and were collected.
+     */
+    private static void expunge() {
+        Reference<? extends DB> ref;
+        while ((ref = collected.poll()) != null) {
+            if (databases.remove(ref)) {
+                connections.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Applies to a connection the settings changed since it was last used.
+     * Called by the driver on the thread using the connection.
+     * @param db The connection.
+     * @param state The settings applied to it.
+     */
+    public static void apply(DB db, ConnectionState state) throws SQLException {
+        int current = version.get();
+        if (state.version == current || db.isClosed()) {
+            return;
+        }
+        state.version = current;
+
+        long kib = getConnectionCacheSize();
+        if (kib != 0 && state.cacheKiB >= 0) {
+            if (state.cacheKiB > 0 && db.queryLong("pragma cache_size") != -state.cacheKiB) {
+                state.cacheKiB = -1; // set by the application since
+            }
+            else if (state.cacheKiB == 0 && db.getConfig().toProperties().containsKey(SQLiteConfig.Pragma.CACHE_SIZE.pragmaName)) {
+                state.cacheKiB = -1;
+            }
+            else if (state.cacheKiB != kib) {
+                db._exec("pragma cache_size=" + -kib);
+                state.cacheKiB = kib;
+            }
+        }
+    }
+
+    /**
+     * Has the connections apply their part of the budget once the part last
+     * applied is off by more than a quarter, so that opening many connections
+     * does not adjust every connection each time.
+     */
+    private static void rebalance() {
+        if (cacheBudget == 0) {
+            return;
+        }
+        long kib = shareKiB(connections.get());
+        long applied = appliedCacheKiB.get();
+        if (applied != 0 && Math.abs(kib - applied) * 4 <= kib) {
+            return;
+        }
+        if (appliedCacheKiB.compareAndSet(applied, kib)) {
+            version.incrementAndGet();
+        }
+    }
+
+    private static long shareKiB(int connections) {
+        return Math.max(MIN_CACHE_KIB, cacheBudget / 1024 / Math.max(1, connections));
+    }
+
+    private static long heapLimit(boolean hard, long bytes) throws SQLException {
+        if (bytes < -1) {
+            throw new IllegalArgumentException("invalid heap limit: " + bytes);
+        }
+        try {
+            return NativeDB.heap_limit(hard, bytes);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            // the limits are global: set them through any connection
+            Connection conn = JDBC.createConnection(JDBC.PREFIX + ":memory:", new Properties());
+            try {
+                Statement stat = conn.createStatement();
+                try {
+                    String pragma = hard ? "hard_heap_limit" : "soft_heap_limit";
+                    long previous = -1;
+                    ResultSet rs = stat.executeQuery("pragma " + pragma);
+                    if (rs.next()) {
+                        previous = rs.getLong(1);
+                    }
+                    rs.close();
+                    if (bytes >= 0) {
+                        stat.execute("pragma " + pragma + "=" + bytes);
+                    }
+                    return previous;
+                }
+                finally {
+                    stat.close();
+                }
+            }
+            finally {
+                conn.close();
+            }
+        }
+    }
+}
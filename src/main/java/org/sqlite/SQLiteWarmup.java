@@ -0,0 +1,271 @@
+package org.sqlite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sqlite.SQLiteConfig.WarmupMode;
+
+/**
+ * Reads the pages of a database file into the page cache of the operating
+ * system, so that the first queries after the file was deployed do not wait
+ * for the disk. The file is read by the process, outside of SQLite: the
+ * warmup is best-effort and I/O errors are ignored.
+ *
+ * @see SQLiteConfig#setWarmup(WarmupMode)
+ */
+final class SQLiteWarmup
+{
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The most files remembered as warmed up. */
+    private static final int MAX_FILES = 256;
+
+    /**
+     * The files most recently warmed up by the process, by canonical path,
+     * size and modification time; the least recently warmed up are forgotten.
+     */
+    private static final Map<String, Boolean> warmedUp = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    private final FileChannel channel;
+    private final long        size;
+    private final ByteBuffer  buffer;
+    private int               pageSize;
+
+    private SQLiteWarmup(FileChannel channel, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Warms up the main database file of a connection.
+     * @param conn The connection.
+     * @param mode The pages to read.
+     * @param force True to read the file even if it was already warmed up by
+     *        the process.
+     * @return The number of bytes read.
+     */
+    static long warmup(SQLiteConnection conn, WarmupMode mode, boolean force) throws SQLException {
+        if (mode == WarmupMode.NONE) {
+            return 0;
+        }
+        if (!force) {
+            // the file the connection was opened with: skip the queries below
+            // when it was warmed up already
+            File file = new File(conn.getDatabase().getFileName());
+            if (file.isAbsolute() && file.isFile()) {
+                synchronized (warmedUp) {
+                    if (warmedUp.get(key(mode, file)) != null) {
+                        return 0;
+                    }
+                }
+            }
+        }
+
+        String fileName = null;
+        long mmapSize = 0;
+        List<Long> roots = new ArrayList<Long>();
+        Statement stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("pragma database_list");
+            while (rs.next()) {
+                if ("main".equals(rs.getString(2))) {
+                    fileName = rs.getString(3);
+                }
+            }
+            rs.close();
+            if (fileName == null || fileName.isEmpty()) {
+                return 0; // temporary or in-memory database
+            }
+            rs = stat.executeQuery("pragma mmap_size");
+            if (rs.next()) {
+                mmapSize = rs.getLong(1);
+            }
+            rs.close();
+            if (mode == WarmupMode.INTERIOR) {
+                rs = stat.executeQuery("select rootpage from sqlite_master where rootpage > 0");
+                while (rs.next()) {
+                    roots.add(rs.getLong(1));
+                }
+                rs.close();
+            }
+        }
+        finally {
+            stat.close();
+        }
+
+        File file = new File(fileName);
+        if (!file.isAbsolute() || !file.isFile()) {
+            return 0; // not a local file: a memory or Java file system
+        }
+        synchronized (warmedUp) {
+            if (warmedUp.put(key(mode, file), Boolean.TRUE) != null && !force) {
+                return 0;
+            }
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                if (mode == WarmupMode.FULL) {
+                    SQLiteWarmup w = new SQLiteWarmup(channel, BUFFER_SIZE);
+                    return w.readFile(mmapSize > 0 ? Math.min(mmapSize, w.size) : w.size);
+                }
+                SQLiteWarmup w = new SQLiteWarmup(channel, 65536);
+                return w.readInterior(roots);
+            }
+            finally {
+                channel.close();
+            }
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The key of a file in {@link #warmedUp}.
+     */
+    private static String key(WarmupMode mode, File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        }
+        catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return mode + ":" + path + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Reads the file sequentially, up to a given length.
+     */
+    private long readFile(long length) throws IOException {
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+        return position;
+    }
+
+    /**
+     * Reads the interior pages of the b-trees of the given root pages, level
+     * by level. The leaves are the bulk of the file and are left out: every
+     * b-tree is balanced, so the children of a page are leaves when the first
+     * one is.
+     * @see <a href="https://www.sqlite.org/fileformat2.html#b_tree_pages">https://www.sqlite.org/fileformat2.html#b_tree_pages</a>
+     */
+    private long readInterior(List<Long> roots) throws IOException {
+        if (!readPage(1)) {
+            return 0;
+        }
+        pageSize = (buffer.get(16) & 0xff) << 8 | (buffer.get(17) & 0xff);
+        if (pageSize == 1) {
+            pageSize = 65536;
+        }
+        if (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1) {
+            return 0;
+        }
+        long pageCount = size / pageSize;
+        BitSet visited = new BitSet();
+        visited.set(1);
+        long read = pageSize;
+
+        List<Long> level = new ArrayList<Long>();
+        for (Long root : roots) {
+            if (root > 1 && root <= pageCount && !visited.get(root.intValue())) {
+                visited.set(root.intValue());
+                level.add(root);
+            }
+        }
+        while (!level.isEmpty()) {
+            Collections.sort(level);
+            List<Long> next = new ArrayList<Long>();
+            for (long page : level) {
+                if (!readPage(page)) {
+                    continue;
+                }
+                read += pageSize;
+                int header = page == 1 ? 100 : 0;
+                int type = buffer.get(header);
+                if (type != 2 && type != 5) {
+                    continue; // a leaf
+                }
+                List<Long> children = new ArrayList<Long>();
+                int cells = (buffer.get(header + 3) & 0xff) << 8 | (buffer.get(header + 4) & 0xff);
+                for (int i = 0; i < cells; i++) {
+                    int ptr = header + 12 + 2 * i;
+                    if (ptr + 2 > pageSize) {
+                        break;
+                    }
+                    int cell = (buffer.get(ptr) & 0xff) << 8 | (buffer.get(ptr + 1) & 0xff);
+                    if (cell + 4 <= pageSize) {
+                        children.add(buffer.getInt(cell) & 0xffffffffL);
+                    }
+                }
+                children.add(buffer.getInt(header + 8) & 0xffffffffL);
+
+                // balanced: the children are leaves if the first one is
+                long first = children.get(0);
+                if (first < 2 || first > pageCount || !readPage(first)) {
+                    continue;
+                }
+                read += pageSize;
+                int childType = buffer.get(0);
+                if (childType != 2 && childType != 5) {
+                    continue;
+                }
+                for (long child : children) {
+                    if (child > 1 && child <= pageCount && !visited.get((int) child)) {
+                        visited.set((int) child);
+                        next.add(child);
+                    }
+                }
+            }
+            level = next;
+        }
+        return read;
+    }
+
+    /**
+     * Reads a page into the buffer.
+     * @return False if the page is beyond the end of the file.
+     */
+    private boolean readPage(long page) throws IOException {
+        long position = (page - 1) * (pageSize == 0 ? 0 : pageSize);
+        int length = pageSize == 0 ? 100 : pageSize;
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
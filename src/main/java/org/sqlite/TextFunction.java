@@ -0,0 +1,14 @@
+package org.sqlite;
+
+/**
+ * A scalar SQL function of one text argument returning text, registered
+ * with {@link Function#createText(java.sql.Connection, String, TextFunction, int)}.
+ * The argument is converted natively and passed without going through
+ * {@link Function}; a NULL argument returns NULL without calling the function.
+ * Returning null sets a NULL result.
+ */
+public interface TextFunction {
+
+  String apply(String value);
+
+}
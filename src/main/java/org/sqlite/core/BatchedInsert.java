@@ -0,0 +1,214 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+
+import org.sqlite.SQLiteLimits;
+
+/**
+ * Rewrites a single-row <code>INSERT ... VALUES (?, ...)</code> statement into
+ * multi-row <code>VALUES (?, ...), (?, ...), ...</code> statements, so a batch
+ * inserts many rows per step. Statements are prepared for power-of-two row
+ * counts only and cached by row count, so any batch size is executed with at
+ * most one statement per bit of the largest chunk.
+ */
+final class BatchedInsert
+{
+    /**
+     * Upper bound of rows per statement. Beyond this the time saved per row
+     * is negligible while parsing and program size keep growing.
+     */
+    static final int MAX_ROWS = 1024;
+
+    private final String prefix; // statement up to and including VALUES
+    private final String row;    // the parenthesized row of parameters
+    private final int    params;
+
+    private final long[] handles = new long[Integer.numberOfTrailingZeros(MAX_ROWS) + 1]; // by log2(rows)
+    private int          maxRows = 0;
+
+    private BatchedInsert(String prefix, String row, int params) {
+        this.prefix = prefix;
+        this.row = row;
+        this.params = params;
+    }
+
+    /**
+     * Checks that the statement inserts a single row of anonymous parameters,
+     * e.g. <code>insert into t (a, b) values (?, ?)</code>, with nothing after
+     * the row but a semicolon. Rows with a subquery are not rewritten, since
+     * the rows of a multi-row insert would all see the table before the
+     * statement.
+     * @param sql The SQL of the prepared statement.
+     * @param paramCount The number of parameters of the prepared statement.
+     * @return The rewriter; null if the statement cannot be rewritten.
+     */
+    static BatchedInsert parse(String sql, int paramCount) {
+        if (paramCount < 1) {
+            return null;
+        }
+
+        int len = sql.length();
+        int depth = 0, params = 0;
+        int rowStart = -1, rowEnd = -1;
+        boolean first = true, values = false;
+
+        for (int i = 0; i < len; ) {
+            char c = sql.charAt(i);
+
+            // comments and white space
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? len : end + 1;
+                continue;
+            }
+            if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 2;
+                continue;
+            }
+
+            // only semicolons may follow the row
+            if (rowEnd >= 0) {
+                if (c != ';') {
+                    return null;
+                }
+                i++;
+                continue;
+            }
+
+            switch (c) {
+            case '\'':
+            case '"':
+            case '`':
+            case '[': {
+                int end = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                while (end > 0 && c != '[' && end + 1 < len && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2); // doubled quote
+                }
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 1;
+                break;
+            }
+            case '?':
+                // numbered parameters or parameters outside the row do not repeat per row
+                if (rowStart < 0 || (i + 1 < len && Character.isDigit(sql.charAt(i + 1)))) {
+                    return null;
+                }
+                params++;
+                i++;
+                break;
+            case ':':
+            case '@':
+            case '$':
+                return null; // named parameters
+            case '(':
+                if (values && rowStart < 0) {
+                    rowStart = i;
+                }
+                depth++;
+                i++;
+                break;
+            case ')':
+                depth--;
+                if (depth == 0 && rowStart >= 0) {
+                    rowEnd = i;
+                }
+                i++;
+                break;
+            default:
+                if (!Character.isLetterOrDigit(c) && c != '_') {
+                    if (values && rowStart < 0) {
+                        return null;
+                    }
+                    i++;
+                    break;
+                }
+                int start = i;
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                String word = sql.substring(start, i);
+                if (rowStart >= 0) {
+                    if ("select".equalsIgnoreCase(word) || "values".equalsIgnoreCase(word)
+                            || "with".equalsIgnoreCase(word)) {
+                        return null; // a subquery in the row
+                    }
+                    break; // function names and literals in the row
+                }
+                if (first) {
+                    if (!"insert".equalsIgnoreCase(word) && !"replace".equalsIgnoreCase(word)) {
+                        return null;
+                    }
+                    first = false;
+                }
+                else if (values) {
+                    return null; // e.g. DEFAULT VALUES
+                }
+                else if (depth == 0 && "values".equalsIgnoreCase(word)) {
+                    values = true;
+                }
+                else if (depth == 0 && "select".equalsIgnoreCase(word)) {
+                    return null;
+                }
+            }
+        }
+
+        if (rowEnd < 0 || params != paramCount) {
+            return null;
+        }
+        return new BatchedInsert(sql.substring(0, rowStart), sql.substring(rowStart, rowEnd + 1), paramCount);
+    }
+
+    /**
+     * @return The largest number of rows per statement: a power of two that
+     *         keeps the statement within the variable number and SQL length
+     *         limits of the connection.
+     */
+    int maxRows(DB db) throws SQLException {
+        if (maxRows == 0) {
+            int variables = db.limit(SQLiteLimits.SQLITE_LIMIT_VARIABLE_NUMBER.getId(), -1);
+            int sqlLength = db.limit(SQLiteLimits.SQLITE_LIMIT_SQL_LENGTH.getId(), -1);
+            int rows = Math.min(variables / params, (sqlLength - prefix.length()) / (row.length() + 1));
+            maxRows = Integer.highestOneBit(Math.max(1, Math.min(rows, MAX_ROWS)));
+        }
+        return maxRows;
+    }
+
+    /**
+     * @param rows A power of two up to {@link #maxRows(DB)}.
+     * @return The statement inserting the given number of rows, prepared on first use.
+     */
+    long statement(DB db, int rows) throws SQLException {
+        int k = Integer.numberOfTrailingZeros(rows);
+        if (handles[k] == 0) {
+            StringBuilder sql = new StringBuilder(prefix.length() + rows * (row.length() + 1));
+            sql.append(prefix).append(row);
+            for (int i = 1; i < rows; i++) {
+                sql.append(',').append(row);
+            }
+            handles[k] = db.prepareHandle(sql.toString());
+        }
+        return handles[k];
+    }
+
+    /**
+     * Finalizes the cached statements.
+     */
+    void close(DB db) throws SQLException {
+        for (int k = 0; k < handles.length; k++) {
+            if (handles[k] != 0) {
+                db.finalizeHandle(handles[k]);
+                handles[k] = 0;
+            }
+        }
+    }
+}
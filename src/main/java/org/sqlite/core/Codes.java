@@ -103,4 +103,19 @@ public interface Codes
     public static final int SQLITE_TEXT       =  3;
     public static final int SQLITE_BLOB       =  4;
     public static final int SQLITE_NULL       =  5;
+
+
+    // options of sqlite3_config()
+
+    public static final int SQLITE_CONFIG_PAGECACHE =  7;
+    public static final int SQLITE_CONFIG_MEMSTATUS =  9;
+
+
+    // counters of sqlite3_db_status()
+
+    public static final int SQLITE_DBSTATUS_LOOKASIDE_USED      = 0;
+    public static final int SQLITE_DBSTATUS_CACHE_USED          = 1;
+    public static final int SQLITE_DBSTATUS_LOOKASIDE_HIT       = 4;
+    public static final int SQLITE_DBSTATUS_LOOKASIDE_MISS_SIZE = 5;
+    public static final int SQLITE_DBSTATUS_LOOKASIDE_MISS_FULL = 6;
 }
@@ -0,0 +1,89 @@
+package org.sqlite.core;
+
+/**
+ * Immutable case-insensitive lookup table from column name to column index.
+ * Names are hashed on their case-folded chars and matched with
+ * {@link String#equalsIgnoreCase(String)}, so a lookup allocates nothing.
+ * When several columns share a name the first one wins, as JDBC requires.
+ */
+final class ColumnIndex
+{
+    private final String[] names;
+    private final int[]    hashes;
+    private final int[]    slots; // column index + 1, 0 for an empty slot
+    private final int      mask;
+
+    ColumnIndex(String[] names) {
+        this.names = names;
+        this.hashes = new int[names.length];
+
+        int capacity = 4;
+        while (capacity < names.length * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int col = 0; col < names.length; col++) {
+            String name = names[col];
+            if (name == null) {
+                continue;
+            }
+            int hash = hash(name);
+            hashes[col] = hash;
+            if (find(name, hash) < 0) {
+                int slot = hash & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = col + 1;
+            }
+        }
+    }
+
+    /**
+     * @param name Column name, compared ignoring case.
+     * @return The column index in [0,x-1] form; -1 if there is no such column.
+     */
+    int indexOf(String name) {
+        return find(name, hash(name));
+    }
+
+    private int find(String name, int hash) {
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int col = entry - 1;
+            if (hashes[col] == hash && name.equalsIgnoreCase(names[col])) {
+                return col;
+            }
+        }
+    }
+
+    /**
+     * Hashes the name so that two names equal ignoring case (in the sense of
+     * String.equalsIgnoreCase) have the same hash.
+     */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0, len = name.length(); i < len; ) {
+            int c = name.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                i++;
+            }
+            else {
+                c = name.codePointAt(i);
+                i += Character.charCount(c);
+                c = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            h = 31 * h + c;
+        }
+        // spread the high bits, names often differ only in their last chars
+        return h ^ (h >>> 16);
+    }
+}
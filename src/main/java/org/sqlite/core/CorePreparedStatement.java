@@ -17,19 +17,24 @@
 package org.sqlite.core;
 
 import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteConnectionConfig;
-import org.sqlite.date.FastDateFormat;
+import org.sqlite.date.FixedDateTime;
 import org.sqlite.jdbc4.JDBC4Statement;
 
-import java.sql.Date;
 import java.sql.SQLException;
 import java.util.Calendar;
+import java.util.TimeZone;
 
 public abstract class CorePreparedStatement extends JDBC4Statement
 {
     protected int columnCount;
     protected int paramCount;
     protected int batchQueryCount;
+    protected ParameterBatch params = null;
+
+    private BatchedInsert batchedInsert = null;
+    private boolean       batchedInsertParsed = false;
 
     /**
      * Constructs a prepared statement on a provided connection.
@@ -43,8 +48,9 @@ public abstract class CorePreparedStatement extends JDBC4Statement
         this.sql = sql;
         DB db = conn.getDatabase();
         db.prepare(this);
-        rs.colsMeta = db.column_names(pointer);
-        columnCount = db.column_count(pointer);
+        StatementMetadata meta = getMetadata();
+        rs.colsMeta = meta.names;
+        columnCount = meta.columnCount();
         paramCount = db.bind_parameter_count(pointer);
         batchQueryCount = 0;
         batch = null;
@@ -60,23 +66,64 @@ public abstract class CorePreparedStatement extends JDBC4Statement
             return new int[] {};
         }
 
+        SQLiteConnectionConfig config = getConnectionConfig();
+        BatchedInsert insert = null;
+        if (config.isRewriteBatchedInserts() && batchQueryCount > 1 && generatedKeys == null) {
+            if (!batchedInsertParsed) {
+                batchedInsert = BatchedInsert.parse(sql, paramCount);
+                batchedInsertParsed = true;
+            }
+            insert = batchedInsert;
+        }
+
         try {
-            return conn.getDatabase().executeBatch(pointer, batchQueryCount, paramCount, batch, conn.getAutoCommit());
+            return conn.getDatabase().executeBatch(pointer, insert, generatedKeys, batchQueryCount, paramCount,
+                    params, conn.getAutoCommit(), config.isBatchTransaction());
         }
         finally {
             clearBatch();
         }
     }
 
+    /**
+     * Captures the keys generated by the following executions and batches of
+     * this statement, for {@link java.sql.Statement#getGeneratedKeys()}.
+     * @param columns The key columns returned by the RETURNING clause the
+     *        statement was prepared with; null to capture the rowid of each
+     *        inserted row.
+     */
+    public void returnGeneratedKeys(String[] columns) {
+        generatedKeys = new GeneratedKeys(columns, sql);
+        if (columns != null) {
+            columnCount = 0; // the returned rows are keys, not a result set
+        }
+    }
+
     /**
      * @see org.sqlite.jdbc3.JDBC3Statement#clearBatch() ()
      */
     @Override
     public void clearBatch() throws SQLException {
         super.clearBatch();
+        if (params != null) {
+            params.clear(0, params.capacity());
+        }
         batchQueryCount = 0;
     }
 
+    /**
+     * @see org.sqlite.core.CoreStatement#internalClose()
+     */
+    @Override
+    protected void internalClose() throws SQLException {
+        params = null;
+        if (batchedInsert != null) {
+            batchedInsert.close(conn.getDatabase());
+            batchedInsert = null;
+        }
+        super.internalClose();
+    }
+
     /**
      * @see org.sqlite.jdbc3.JDBC3Statement#getUpdateCount()
      */
@@ -100,31 +147,130 @@ public abstract class CorePreparedStatement extends JDBC4Statement
      */
     protected void batch(int pos, Object value) throws SQLException {
         checkOpen();
-        if (batch == null) {
-            batch = new Object[paramCount];
+        params().set(batchPos + pos - 1, value);
+    }
+
+    /**
+     * Assigns an int value to the parameter at the given position without boxing.
+     * @param pos
+     * @param value
+     * @throws SQLException
+     */
+    protected void batchInt(int pos, int value) throws SQLException {
+        checkOpen();
+        params().setInt(batchPos + pos - 1, value);
+    }
+
+    /**
+     * Assigns a long value to the parameter at the given position without boxing.
+     * @param pos
+     * @param value
+     * @throws SQLException
+     */
+    protected void batchLong(int pos, long value) throws SQLException {
+        checkOpen();
+        params().setLong(batchPos + pos - 1, value);
+    }
+
+    /**
+     * Assigns a double value to the parameter at the given position without boxing.
+     * @param pos
+     * @param value
+     * @throws SQLException
+     */
+    protected void batchDouble(int pos, double value) throws SQLException {
+        checkOpen();
+        params().setDouble(batchPos + pos - 1, value);
+    }
+
+    /**
+     * Assigns an array to a carray(?) parameter, converting arrays of boxed
+     * numbers, strings and byte arrays to long[], double[], String[] or byte[][].
+     * @param pos
+     * @param array
+     * @throws SQLException
+     */
+    protected void batchArray(int pos, Object array) throws SQLException {
+        checkOpen();
+        params().setArray(batchPos + pos - 1, ParameterBatch.toArray(array));
+    }
+
+    /**
+     * Resets the parameter values of the current batch entry to NULL.
+     */
+    protected void clearBatchRow() {
+        if (params != null) {
+            params.clear(batchPos, batchPos + paramCount);
+        }
+    }
+
+    /**
+     * Moves on to the next batch entry, growing the parameter storage as needed.
+     */
+    protected void nextBatchRow() {
+        batchPos += paramCount;
+        batchQueryCount++;
+        params().ensureCapacity(batchPos + paramCount);
+    }
+
+    private ParameterBatch params() {
+        if (params == null) {
+            params = new ParameterBatch(paramCount);
         }
-        batch[batchPos + pos - 1] = value;
+        return params;
     }
 
 
     /**
     * Store the date in the user's preferred format (text, int, or real)
+    * @param calendar The calendar giving the time zone of text dates; null
+    *        for the default time zone at the time of the call.
     */
    protected void setDateByMilliseconds(int pos, Long value, Calendar calendar) throws SQLException {
+       setDateInZone(pos, value, calendar == null ? TimeZone.getDefault() : calendar.getTimeZone());
+   }
+
+   private void setDateInZone(int pos, long value, TimeZone zone) throws SQLException {
        SQLiteConnectionConfig config = conn.getConnectionConfig();
        switch(config.getDateClass()) {
            case TEXT:
-               batch(pos, FastDateFormat.getInstance(config.getDateStringFormat(), calendar.getTimeZone()).format(new Date(value)));
+               if (config.isFixedDateFormat()) {
+                   String text = FixedDateTime.format(FixedDateTime.toLocalMillis(value, zone));
+                   if (text != null) {
+                       batch(pos, text);
+                       break;
+                   }
+               }
+               batch(pos, config.getDateFormat(zone).format(value));
                break;
 
            case REAL:
                // long to Julian date
-               batch(pos, new Double((value/86400000.0) + 2440587.5));
+               batchDouble(pos, FixedDateTime.toJulianDay(value));
                break;
 
            default: //INTEGER:
-               batch(pos, new Long(value / config.getDateMultiplier()));
+               batchLong(pos, value / config.getDateMultiplier());
+       }
+   }
+
+   /**
+    * Store a wall clock date-time of the time zone of the date string format
+    * in the user's preferred format; TEXT in the default format is printed
+    * without converting it to an instant.
+    * @param localMillis The local milliseconds, see {@link FixedDateTime}.
+    */
+   protected void setDateByLocalMillis(int pos, long localMillis) throws SQLException {
+       SQLiteConnectionConfig config = conn.getConnectionConfig();
+       if (config.getDateClass() == SQLiteConfig.DateClass.TEXT && config.isFixedDateFormat()) {
+           String text = FixedDateTime.format(localMillis);
+           if (text != null) {
+               batch(pos, text);
+               return;
+           }
        }
+       TimeZone zone = config.getDateFormat().getTimeZone();
+       setDateInZone(pos, FixedDateTime.toEpochMillis(localMillis, zone), zone);
    }
 
 
@@ -19,8 +19,6 @@ import org.sqlite.SQLiteConnectionConfig;
 
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Implements a JDBC ResultSet.
@@ -39,8 +37,11 @@ public abstract class CoreResultSet implements Codes
     protected int        row      = 0;    // number of current row, starts at 1 (0 is for before loading data)
     protected int        lastCol;         // last column accessed, for wasNull(). -1 if none
 
+    private int          textCacheSize = -1;   // as set by the Statement, -1 for the connection setting
+    private String[]     textCacheColumns;     // as set by the Statement, null for all columns
+    private TextCache[]  textCaches;           // per column, created when first read
+
     public boolean closeStmt;
-    protected Map<String, Integer> columnNameToIndex = null;
 
     /**
      * Default constructor for a given statement.
@@ -112,18 +113,79 @@ public abstract class CoreResultSet implements Codes
     public void checkMeta() throws SQLException {
         checkCol(1);
         if (meta == null) {
-            meta = stmt.getDatbase().column_metadata(stmt.pointer);
+            meta = stmt.getMetadata().attributes(stmt.getDatbase(), stmt.pointer);
+        }
+    }
+
+    /**
+     * @return The cached column metadata of the statement.
+     * @throws SQLException
+     */
+    protected StatementMetadata getStatementMetadata() throws SQLException {
+        return stmt.getMetadata();
+    }
+
+    /**
+     * Reads a column as text, through the cache of its distinct values if
+     * one is configured.
+     * @param col The column, in [0,x-1] form.
+     * @return The value of the column as text.
+     * @throws SQLException
+     */
+    protected String columnText(int col) throws SQLException {
+        DB db = stmt.getDatbase();
+        if (textCaches == null) {
+            textCaches = createTextCaches();
+        }
+        TextCache cache = col < textCaches.length ? textCaches[col] : null;
+        if (cache == null || !cache.isEnabled()) {
+            return db.column_text(stmt.pointer, col);
         }
+        return db.column_text(stmt.pointer, col, cache);
+    }
+
+    /**
+     * Sets the text cache of the result of a query, as configured on the
+     * statement executing it.
+     * @param maxEntries The number of distinct values cached per column; 0 to
+     *        disable, -1 for the setting of the connection.
+     * @param columns The labels of the columns to cache; null for all columns.
+     */
+    public void setTextCache(int maxEntries, String[] columns) {
+        textCacheSize = maxEntries;
+        textCacheColumns = columns;
+        textCaches = null;
+    }
+
+    private TextCache[] createTextCaches() {
+        int size = textCacheSize >= 0 ? textCacheSize : getConnectionConfig().getTextCache();
+        if (size == 0 || cols == null) {
+            return new TextCache[0];
+        }
+        TextCache[] caches = new TextCache[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            if (textCacheColumns == null) {
+                caches[i] = new TextCache(size);
+                continue;
+            }
+            for (String name : textCacheColumns) {
+                if (name.equalsIgnoreCase(cols[i])) {
+                    caches[i] = new TextCache(size);
+                    break;
+                }
+            }
+        }
+        return caches;
     }
 
     public void close() throws SQLException {
         cols = null;
+        textCaches = null;
         colsMeta = null;
         meta = null;
         limitRows = 0;
         row = 0;
         lastCol = -1;
-        columnNameToIndex = null;
 
         if (!open) {
             return;
@@ -143,19 +205,4 @@ public abstract class CoreResultSet implements Codes
 
         open = false;
     }
-
-    protected Integer findColumnIndexInCache(String col) {
-        if (columnNameToIndex == null) {
-            return null;
-        }
-        return columnNameToIndex.get(col);
-    }
-
-    protected int addColumnIndexInCache(String col, int index) {
-        if (columnNameToIndex == null) {
-            columnNameToIndex = new HashMap<String, Integer>(cols.length);
-        }
-        columnNameToIndex.put(col, index);
-        return index;
-    }
 }
@@ -34,6 +34,13 @@ public abstract class CoreStatement implements Codes
     protected Object[]   batch          = null;
     protected boolean    resultsWaiting = false;
 
+    StatementMetadata    metadata       = null; // cached until the statement is finalized or re-prepared
+    private int          metadataPrepares;      // re-prepares of the statement when metadata was loaded
+    protected GeneratedKeys generatedKeys = null; // null unless keys were requested
+
+    protected int        textCacheSize  = -1;   // -1 for the connection setting
+    protected String[]   textCacheColumns = null; // null for all columns
+
     protected CoreStatement(SQLiteConnection c) {
         conn = c;
         rs = new JDBC4ResultSet(this);
@@ -47,6 +54,39 @@ public abstract class CoreStatement implements Codes
         return conn.getConnectionConfig();
     }
 
+    /**
+     * @return The column metadata of the prepared statement, loaded once per statement.
+     * @throws SQLException
+     */
+    protected StatementMetadata getMetadata() throws SQLException {
+        StatementMetadata m = metadata;
+        if (m == null) {
+            checkOpen();
+            DB db = conn.getDatabase();
+            metadataPrepares = db.stmt_reprepares(pointer);
+            metadata = m = db.statement_metadata(pointer);
+        }
+        return m;
+    }
+
+    /**
+     * Returns the column metadata after the statement was executed, reloading
+     * it if SQLite re-prepared the statement since it was loaded, as it does
+     * after a schema change such as ALTER TABLE. The metadata is reloaded on
+     * every call if the native library cannot tell.
+     * @return The column metadata of the statement as executed.
+     * @throws SQLException
+     */
+    protected StatementMetadata getExecutedMetadata() throws SQLException {
+        if (metadata != null) {
+            int prepares = conn.getDatabase().stmt_reprepares(pointer);
+            if (prepares < 0 || prepares != metadataPrepares) {
+                metadata = null;
+            }
+        }
+        return getMetadata();
+    }
+
     /**
      * @throws SQLException If the database is not opened.
      */
@@ -116,6 +156,7 @@ public abstract class CoreStatement implements Codes
     }
 
     protected void internalClose() throws SQLException {
+        generatedKeys = null;
         if (pointer == 0)
             return;
         if (conn.isClosed())
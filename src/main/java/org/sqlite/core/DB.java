@@ -16,9 +16,15 @@
 package org.sqlite.core;
 
 import org.sqlite.*;
+import org.sqlite.date.FixedDateTime;
+import org.sqlite.vtab.Module;
 
+import java.nio.ByteBuffer;
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -49,9 +55,21 @@ public abstract class DB implements Codes
     long                          begin  = 0;
     long                          commit = 0;
 
+    /** The savepoint statement handles of batches run in a single transaction. */
+    private long                  savepoint  = 0;
+    private long                  release    = 0;
+    private long                  rollbackTo = 0;
+    private long                  rollback   = 0;
+
+    /** The "select last_insert_rowid();" statement handle, if the native library lacks the function. */
+    private long                  lastInsertRowid = 0;
+
     /** Tracer for statements to avoid unfinalized statements on db close. */
     private final Map<Long, CoreStatement> stmts  = new HashMap<Long, CoreStatement>();
 
+    /** The settings of the memory manager applied to the connection. */
+    private final SQLiteMemoryManager.ConnectionState memory = new SQLiteMemoryManager.ConnectionState(this);
+
     private final Set<SQLiteUpdateListener> updateListeners = new HashSet<SQLiteUpdateListener>();
     private final Set<SQLiteCommitListener> commitListeners = new HashSet<SQLiteCommitListener>();
 
@@ -67,6 +85,14 @@ public abstract class DB implements Codes
         return url;
     }
 
+    /**
+     * @return The database as passed to sqlite3_open_v2: an absolute path for
+     *         a database file, or a URI, ":memory:" or "" otherwise.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
     public boolean isClosed() {
         return closed.get();
     }
@@ -136,6 +162,27 @@ public abstract class DB implements Codes
      */
     public abstract int total_changes() throws SQLException;
 
+    /**
+     * @return The rowid of the most recent successful INSERT into a rowid table.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/last_insert_rowid.html">https://www.sqlite.org/c3ref/last_insert_rowid.html</a>
+     */
+    public synchronized long last_insert_rowid() throws SQLException {
+        if (lastInsertRowid == 0) {
+            lastInsertRowid = prepareHandle("select last_insert_rowid();");
+        }
+        try {
+            int rc = step(lastInsertRowid);
+            if (rc != SQLITE_ROW) {
+                throwex(rc);
+            }
+            return column_long(lastInsertRowid, 0);
+        }
+        finally {
+            reset(lastInsertRowid);
+        }
+    }
+
     /**
      * Enables or disables the sharing of the database cache and schema data structures between
      * connections to the same database.
@@ -164,6 +211,7 @@ public abstract class DB implements Codes
      * @see <a href="http://www.sqlite.org/c3ref/exec.html">http://www.sqlite.org/c3ref/exec.html</a>
      */
     public final synchronized void exec(String sql, boolean autoCommit) throws SQLException {
+        SQLiteMemoryManager.apply(this, memory);
         long pointer = 0;
         try {
             pointer = prepare(sql);
@@ -201,6 +249,21 @@ public abstract class DB implements Codes
         }
         enable_load_extension(config.isEnabledLoadExtension());
         busy_timeout(config.getBusyTimeout());
+        int[] lookaside = config.getLookaside();
+        if (lookaside != null) {
+            int rc;
+            try {
+                rc = lookaside(lookaside[0], lookaside[1]);
+            }
+            catch (SQLFeatureNotSupportedException e) {
+                rc = SQLITE_OK; // a tuning option only: the compiled-in lookaside is kept
+            }
+            if (rc != SQLITE_OK) {
+                close();
+                throwex(rc, "cannot set lookaside " + lookaside[0] + "," + lookaside[1]);
+            }
+        }
+        SQLiteMemoryManager.register(this, memory);
     }
 
     /**
@@ -236,9 +299,27 @@ public abstract class DB implements Codes
             finalize(commit);
             commit = 0;
         }
+        if (savepoint != 0) {
+            finalize(savepoint);
+            savepoint = 0;
+        }
+        if (release != 0) {
+            finalize(release);
+            release = 0;
+        }
+        if (rollbackTo != 0) {
+            finalize(rollbackTo);
+            rollbackTo = 0;
+        }
+        if (rollback != 0) {
+            finalize(rollback);
+            rollback = 0;
+        }
+        lastInsertRowid = 0; // finalized with the statements above
 
         closed.set(true);
         _close();
+        SQLiteMemoryManager.unregister(memory);
     }
 
     /**
@@ -251,6 +332,7 @@ public abstract class DB implements Codes
         if (stmt.sql == null) {
             throw new NullPointerException();
         }
+        SQLiteMemoryManager.apply(this, memory);
         if (stmt.pointer != 0) {
             finalize(stmt);
         }
@@ -258,6 +340,65 @@ public abstract class DB implements Codes
         stmts.put(new Long(stmt.pointer), stmt);
     }
 
+    /**
+     * Applies the settings of {@link SQLiteMemoryManager} changed since the
+     * connection was last used. Called on the thread using the connection.
+     * @throws SQLException
+     */
+    public final synchronized void applyMemorySettings() throws SQLException {
+        SQLiteMemoryManager.apply(this, memory);
+    }
+
+    /**
+     * Executes a query that returns a single integer, e.g. a pragma.
+     * @param sql The query.
+     * @return The integer in the first column of the first row; 0 if there is none.
+     * @throws SQLException
+     */
+    public final synchronized long queryLong(String sql) throws SQLException {
+        long pointer = prepare(sql);
+        try {
+            int rc = step(pointer);
+            if (rc == SQLITE_ROW) {
+                return column_long(pointer, 0);
+            }
+            if (rc != SQLITE_DONE) {
+                throwex(rc);
+            }
+            return 0;
+        }
+        finally {
+            finalize(pointer);
+        }
+    }
+
+    /**
+     * Compiles an SQL statement that is owned by the driver rather than by a
+     * Statement object. It is finalized when the database is closed unless
+     * it was finalized with {@link #finalizeHandle(long)} before.
+     * @param sql An SQL statement.
+     * @return Pointer to the statement.
+     * @throws SQLException
+     */
+    final synchronized long prepareHandle(String sql) throws SQLException {
+        long pointer = prepare(sql);
+        stmts.put(new Long(pointer), null);
+        return pointer;
+    }
+
+    /**
+     * Destroys a statement compiled with {@link #prepareHandle(String)}.
+     * @param pointer Pointer to the statement.
+     * @throws SQLException
+     */
+    final synchronized void finalizeHandle(long pointer) throws SQLException {
+        Long key = new Long(pointer);
+        if (stmts.containsKey(key)) {
+            stmts.remove(key);
+            finalize(pointer);
+        }
+    }
+
     /**
      * Destroys a statement.
      * @param stmt The statement to destroy.
@@ -276,6 +417,7 @@ public abstract class DB implements Codes
         finally {
             stmts.remove(new Long(stmt.pointer));
             stmt.pointer = 0;
+            stmt.metadata = null;
         }
         return rc;
     }
@@ -368,6 +510,17 @@ public abstract class DB implements Codes
      */
     public abstract int column_count(long stmt) throws SQLException;
 
+    /**
+     * @param stmt Pointer to the statement.
+     * @return The number of times SQLite re-prepared the statement, e.g.
+     *         after a schema change; -1 if the native library cannot tell.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/stmt_status.html">https://www.sqlite.org/c3ref/stmt_status.html</a>
+     */
+    int stmt_reprepares(long stmt) throws SQLException {
+        return -1;
+    }
+
     /**
      * @param stmt Pointer to the statement.
      * @param col Number of column.
@@ -413,6 +566,19 @@ public abstract class DB implements Codes
      */
     public abstract String column_text(long stmt, int col) throws SQLException;
 
+    /**
+     * Reads a TEXT value through the cache of the distinct values of its column.
+     * @param stmt Pointer to the statement.
+     * @param col Number of column.
+     * @param cache The enabled cache of the column.
+     * @return Value of the column as text data type.
+     * @throws SQLException
+     */
+    String column_text(long stmt, int col, TextCache cache) throws SQLException {
+        String text = column_text(stmt, col);
+        return text == null ? null : cache.intern(text);
+    }
+
     /**
      * @param stmt Pointer to the statement.
      * @param col Number of column.
@@ -431,6 +597,19 @@ public abstract class DB implements Codes
      */
     public abstract double column_double(long stmt, int col) throws SQLException;
 
+    /**
+     * Parses a TEXT value in the default date layout.
+     * @param stmt Pointer to the statement.
+     * @param col Number of column.
+     * @return The local milliseconds of the value, see {@link FixedDateTime};
+     *         {@link FixedDateTime#INVALID} if the value is not in the layout.
+     * @throws SQLException
+     */
+    public long column_datetime(long stmt, int col) throws SQLException {
+        String text = column_text(stmt, col);
+        return text == null ? FixedDateTime.INVALID : FixedDateTime.parse(text);
+    }
+
     /**
      * @param stmt Pointer to the statement.
      * @param col Number of column.
@@ -519,6 +698,18 @@ public abstract class DB implements Codes
      */
     abstract int bind_blob(long stmt, int pos, byte[] v) throws SQLException;
 
+    /**
+     * Binds an array to a parameter of the carray table-valued function,
+     * e.g. <code>select * from t where id in carray(?)</code>.
+     * @param stmt Pointer to the statement.
+     * @param pos Index of the SQL parameter to be set.
+     * @param v A long[], double[], String[] or byte[][] array.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a href="http://www.sqlite.org/carray.html">http://www.sqlite.org/carray.html</a>
+     */
+    abstract int bind_array(long stmt, int pos, Object v) throws SQLException;
+
     /**
      * Sets the result of an SQL function as NULL with the pointer to the SQLite database context.
      * @param context Pointer to the SQLite database context.
@@ -654,6 +845,129 @@ public abstract class DB implements Codes
      */
     public abstract int create_function(String name, Function f, int nArgs, int flags) throws SQLException;
 
+    /** Kinds of typed functions, see {@link #create_typed_function(String, Object, int, int)}. */
+    public static final int UDF_LONG_UNARY    = 1;
+    public static final int UDF_DOUBLE_BINARY = 2;
+    public static final int UDF_TEXT          = 3;
+
+    /**
+     * Creates a user defined function whose arguments are converted natively
+     * and passed to the apply method of a function interface.
+     * @param name The function name to be created.
+     * @param f A {@link LongUnaryFunction}, {@link DoubleBinaryFunction} or
+     *        {@link TextFunction}, as given by the kind.
+     * @param kind One of UDF_LONG_UNARY, UDF_DOUBLE_BINARY and UDF_TEXT.
+     * @param flags Extra flags to use when creating the function, such as {@link Function#FLAG_DETERMINISTIC}
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support typed functions.
+     * @throws SQLException
+     */
+    public int create_typed_function(String name, Object f, int kind, int flags) throws SQLException {
+        throw new SQLFeatureNotSupportedException("typed functions");
+    }
+
+    /**
+     * Creates a user defined aggregate function, or window function if it
+     * extends {@link PrimitiveAggregate.Window}, whose state is kept in
+     * native memory.
+     * @param name The function name to be created.
+     * @param f The aggregate.
+     * @param flags Extra flags to use when creating the function, such as {@link Function#FLAG_DETERMINISTIC}
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support primitive aggregates.
+     * @throws SQLException
+     */
+    public int create_aggregate(String name, PrimitiveAggregate f, int flags) throws SQLException {
+        throw new SQLFeatureNotSupportedException("primitive aggregates");
+    }
+
+    /**
+     * Registers a virtual table module implemented in Java.
+     * @param name The name of the module.
+     * @param module The module.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support Java virtual tables.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/create_module.html">https://www.sqlite.org/c3ref/create_module.html</a>
+     */
+    public int create_module(String name, Module module) throws SQLException {
+        throw new SQLFeatureNotSupportedException("virtual tables");
+    }
+
+    /** Kinds of Java collations, see {@link #create_collation(String, Object, int)}. */
+    public static final int COLLATION_COMPARATOR = 16;
+    public static final int COLLATION_SORT_KEY   = 32;
+
+    /**
+     * Registers a collating sequence.
+     * @param name The name of the collation.
+     * @param collation A Comparator for COLLATION_COMPARATOR, a Collator for
+     *        COLLATION_SORT_KEY; null for the built-in collations of {@link Collation}.
+     * @param kind COLLATION_COMPARATOR, COLLATION_SORT_KEY or a built-in collation.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support collations.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/create_collation.html">https://www.sqlite.org/c3ref/create_collation.html</a>
+     */
+    public int create_collation(String name, Object collation, int kind) throws SQLException {
+        throw new SQLFeatureNotSupportedException("collations");
+    }
+
+    /**
+     * Removes a collating sequence.
+     * @param name The name of the collation.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support collations.
+     * @throws SQLException
+     */
+    public int destroy_collation(String name) throws SQLException {
+        throw new SQLFeatureNotSupportedException("collations");
+    }
+
+    /**
+     * Replaces a database of this connection with a read-only in-memory
+     * image. The image is not copied: it is read in place and must stay
+     * unchanged for as long as any connection uses it, so it can be shared by
+     * any number of connections.
+     * @param schema The schema name of the database, e.g. "main".
+     * @param image A direct buffer holding a database file.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support in-memory images.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/deserialize.html">https://www.sqlite.org/c3ref/deserialize.html</a>
+     */
+    public int deserialize(String schema, ByteBuffer image) throws SQLException {
+        throw new SQLFeatureNotSupportedException("deserialize");
+    }
+
+    /**
+     * Replaces the lookaside memory of this connection, from which SQLite
+     * allocates its small, short-lived objects.
+     * @param slotSize The size of each slot in bytes, a multiple of 8.
+     * @param slotCount The number of slots; 0 to disable lookaside.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>;
+     *         SQLITE_BUSY if lookaside memory is in use.
+     * @throws SQLFeatureNotSupportedException If the native library does not support the call.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/c_dbconfig_defensive.html#sqlitedbconfiglookaside">https://www.sqlite.org/c3ref/c_dbconfig_defensive.html#sqlitedbconfiglookaside</a>
+     */
+    public int lookaside(int slotSize, int slotCount) throws SQLException {
+        throw new SQLFeatureNotSupportedException("lookaside");
+    }
+
+    /**
+     * Reads a status counter of this connection.
+     * @param op The counter, e.g. {@link Codes#SQLITE_DBSTATUS_LOOKASIDE_USED}.
+     * @param reset True to reset the highwater mark of the counter.
+     * @return { current value, highwater mark }.
+     * @throws SQLFeatureNotSupportedException If the native library does not support the call.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/db_status.html">https://www.sqlite.org/c3ref/db_status.html</a>
+     */
+    public int[] db_status(int op, boolean reset) throws SQLException {
+        throw new SQLFeatureNotSupportedException("db_status");
+    }
+
     /**
      * De-registers a user defined function
      * @param name Name of the function to de-registered.
@@ -735,6 +1049,26 @@ public abstract class DB implements Codes
         return names;
     }
 
+    /**
+     * Returns the names, declared types, table names and origin column names
+     * of the columns in the result set of a statement.
+     * @param stmt Pointer to the statement.
+     * @return The column metadata of the statement.
+     * @throws SQLException
+     */
+    synchronized StatementMetadata statement_metadata(long stmt) throws SQLException {
+        int count = column_count(stmt);
+        String[] names = new String[count];
+        String[] declTypes = new String[count];
+        String[] tableNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = column_name(stmt, i);
+            declTypes[i] = column_decltype(stmt, i);
+            tableNames[i] = column_table_name(stmt, i);
+        }
+        return new StatementMetadata(names, declTypes, tableNames, new String[count]);
+    }
+
     /**
      * Bind values to prepared statements
      * @param stmt Pointer to the statement.
@@ -770,22 +1104,73 @@ public abstract class DB implements Codes
         else if (v instanceof byte[]) {
             return bind_blob(stmt, pos, (byte[]) v);
         }
+        else if (ParameterBatch.isArray(v)) {
+            return bind_array(stmt, pos, v);
+        }
         else {
             throw new SQLException("unexpected param type: " + v.getClass());
         }
     }
 
+    /**
+     * Binds one row of parameter values to a prepared statement, dispatching
+     * on the type tag of each value.
+     * @param stmt Pointer to the statement.
+     * @param params Parameter values.
+     * @param offset Index of the first value of the row.
+     * @param count Number of parameters of the statement.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    final synchronized int sqlbind(long stmt, ParameterBatch params, int offset, int count) throws SQLException {
+        byte[] tags = params.tags;
+        for (int pos = 1, i = offset; pos <= count; pos++, i++) {
+            int rc;
+            switch (tags[i]) {
+            case ParameterBatch.INT:
+                rc = bind_int(stmt, pos, (int) params.longs[i]);
+                break;
+            case ParameterBatch.LONG:
+                rc = bind_long(stmt, pos, params.longs[i]);
+                break;
+            case ParameterBatch.DOUBLE:
+                rc = bind_double(stmt, pos, params.doubles[i]);
+                break;
+            case ParameterBatch.TEXT:
+                rc = bind_text(stmt, pos, (String) params.refs[i]);
+                break;
+            case ParameterBatch.BLOB:
+                rc = bind_blob(stmt, pos, (byte[]) params.refs[i]);
+                break;
+            case ParameterBatch.ARRAY:
+                rc = bind_array(stmt, pos, params.refs[i]);
+                break;
+            default:
+                rc = bind_null(stmt, pos);
+            }
+            if (rc != SQLITE_OK) {
+                return rc;
+            }
+        }
+        return SQLITE_OK;
+    }
+
     /**
      * Submits a batch of commands to the database for execution.
      * @see java.sql.Statement#executeBatch()
      * @param stmt Pointer of Stmt object.
      * @param count Number of SQL statements.
+     * @param insert Rewriter of a single-row insert into multi-row inserts; null to execute row by row.
+     * @param keys Receives the keys generated by the batch; null if not requested.
      * @param vals Array of parameter values.
+     * @param autoCommit Whether the connection is in auto-commit mode.
+     * @param batchTransaction Whether to run the batch in a single transaction in auto-commit mode.
      * @return Array of the number of rows changed or inserted or deleted for each command if all
      *         commands execute successfully;
      * @throws SQLException
      */
-    final synchronized int[] executeBatch(long stmt, int count, int params, Object[] vals, boolean autoCommit) throws SQLException {
+    final synchronized int[] executeBatch(long stmt, BatchedInsert insert, GeneratedKeys keys, int count, int params,
+            ParameterBatch vals, boolean autoCommit, boolean batchTransaction) throws SQLException {
         if (count < 1) {
             throw new SQLException("count (" + count + ") < 1");
         }
@@ -794,30 +1179,65 @@ public abstract class DB implements Codes
 
         int rc;
         int[] changes = new int[count];
+        int maxRows = insert == null ? 1 : insert.maxRows(this);
+        if (keys != null) {
+            keys.clear();
+        }
+        boolean transaction = beginBatch(autoCommit, batchTransaction);
+        boolean failed = true;
 
         try {
-            for (int i = 0; i < count; i++) {
-                reset(stmt);
-                for (int j = 0; j < params; j++) {
-                    rc = sqlbind(stmt, j, vals[(i * params) + j]);
-                    if (rc != SQLITE_OK) {
-                        throwex(rc);
-                    }
+            for (int i = 0, rows; i < count; i += rows) {
+                rows = Integer.highestOneBit(Math.min(count - i, maxRows));
+                long handle = rows == 1 ? stmt : insert.statement(this, rows);
+                if (transaction) {
+                    beginBatchRow();
+                }
+
+                reset(handle);
+                rc = sqlbind(handle, vals, i * params, rows * params);
+                if (rc != SQLITE_OK) {
+                    throwex(rc);
                 }
 
-                rc = step(stmt);
+                long rowid = keys != null && !keys.isReturning() ? last_insert_rowid() : 0;
+                rc = step(handle);
+                if (rc == SQLITE_ROW && keys != null && keys.isReturning()) {
+                    rc = returnKeys(handle, keys);
+                }
                 if (rc != SQLITE_DONE) {
-                    reset(stmt);
+                    reset(handle);
                     if (rc == SQLITE_ROW) {
                         throw new BatchUpdateException("batch entry " + i + ": query returns results", changes);
                     }
                     throwex(rc);
                 }
 
-                changes[i] = changes();
+                int n = changes();
+                if (keys != null && !keys.isReturning()) {
+                    keys.captureRowid(n, rowid, last_insert_rowid());
+                }
+                if (rows == 1) {
+                    changes[i] = n;
+                }
+                else {
+                    // per-row counts are only known if every row was inserted
+                    Arrays.fill(changes, i, i + rows, n == rows ? 1 : Statement.SUCCESS_NO_INFO);
+                    reset(handle);
+                }
+                if (transaction) {
+                    endBatchRow(false);
+                }
             }
+            failed = false;
         }
         finally {
+            if (transaction) {
+                if (failed) {
+                    endBatchRow(true);
+                }
+                endBatch(failed);
+            }
             ensureAutoCommit(autoCommit);
         }
 
@@ -825,6 +1245,171 @@ public abstract class DB implements Codes
         return changes;
     }
 
+    /**
+     * Executes every statement of an SQL script, in order, until one fails.
+     * Rows returned by queries are discarded.
+     * @param sql The statements, separated by semicolons.
+     * @param transaction True to run the script in a transaction of its own,
+     *        which is rolled back if a statement fails; ignored if a
+     *        transaction is already open.
+     * @return The position, changes and time of every executed statement and
+     *         the error that stopped the script, if any.
+     * @throws SQLException
+     */
+    public final synchronized ScriptResult executeScript(String sql, boolean transaction) throws SQLException {
+        boolean owned = transaction && beginTransaction();
+        long[] results;
+        try {
+            results = exec_script(sql);
+        }
+        catch (SQLException e) {
+            if (owned) {
+                endTransaction(false);
+            }
+            throw e;
+        }
+
+        int count = (results.length - 1) / 4;
+        int rc = (int) results[results.length - 1];
+        SQLException error = rc == SQLITE_OK ? null : newSQLException(rc);
+        if (owned) {
+            endTransaction(error == null);
+        }
+        return new ScriptResult(sql, results, count, error);
+    }
+
+    /**
+     * Executes the statements of a script in a single native call.
+     * @param sql The statements.
+     * @return { start, end, changes, nanos } of each executed statement, with
+     *         char offsets into the script, followed by SQLITE_OK or the error
+     *         that stopped the script at the last statement.
+     * @throws SQLFeatureNotSupportedException If the native library does not support scripts.
+     * @throws SQLException
+     */
+    long[] exec_script(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("scripts");
+    }
+
+    /**
+     * Commits or rolls back a transaction opened with {@link #beginTransaction()}.
+     * A transaction that fails to commit is rolled back.
+     */
+    private void endTransaction(boolean commit) throws SQLException {
+        if (commit) {
+            if (this.commit == 0) {
+                this.commit = prepare("commit;");
+            }
+            int rc = run(this.commit);
+            if (rc == SQLITE_DONE) {
+                return;
+            }
+            SQLException e = newSQLException(rc);
+            rollback();
+            throw e;
+        }
+        rollback();
+    }
+
+    private void rollback() throws SQLException {
+        if (rollback == 0) {
+            rollback = prepare("rollback;");
+        }
+        run(rollback);
+    }
+
+    /**
+     * Starts the transaction of a batch run in auto-commit mode, so that the
+     * batch commits once instead of once per row.
+     * @param autoCommit Whether the connection is in auto-commit mode.
+     * @param batchTransaction Whether batches run in a single transaction.
+     * @return True if a transaction was started; the batch must then run each
+     *         row between {@link #beginBatchRow()} and {@link #endBatchRow(boolean)}
+     *         and finish with {@link #endBatch(boolean)}.
+     * @throws SQLException
+     * @see org.sqlite.SQLiteConfig#setBatchTransaction(boolean)
+     */
+    public final synchronized boolean beginBatch(boolean autoCommit, boolean batchTransaction) throws SQLException {
+        return autoCommit && batchTransaction && beginTransaction();
+    }
+
+    /**
+     * Opens a transaction unless one is already open.
+     * @return True if a transaction was opened.
+     */
+    private boolean beginTransaction() throws SQLException {
+        if (begin == 0) {
+            begin = prepare("begin;");
+        }
+        return run(begin) == SQLITE_DONE; // false if a transaction is already open
+    }
+
+    /**
+     * Opens the savepoint of the next row of a batch transaction.
+     * @throws SQLException
+     */
+    public final synchronized void beginBatchRow() throws SQLException {
+        if (savepoint == 0) {
+            savepoint = prepare("savepoint batch_row;");
+        }
+        int rc = run(savepoint);
+        if (rc != SQLITE_DONE) {
+            throwex(rc);
+        }
+    }
+
+    /**
+     * Releases the savepoint of the current row of a batch transaction.
+     * @param failed True to roll back the changes of the row first.
+     * @throws SQLException
+     */
+    public final synchronized void endBatchRow(boolean failed) throws SQLException {
+        if (failed) {
+            if (rollbackTo == 0) {
+                rollbackTo = prepare("rollback to batch_row;");
+            }
+            run(rollbackTo);
+        }
+        if (release == 0) {
+            release = prepare("release batch_row;");
+        }
+        int rc = run(release);
+        if (rc != SQLITE_DONE && !failed) {
+            throwex(rc);
+        }
+    }
+
+    /**
+     * Commits a batch transaction. The rows completed before a failed row are
+     * committed as well, as they would have been in auto-commit mode.
+     * @param failed True if the batch failed; errors are then not reported so
+     *        that they do not hide the failure of the batch.
+     * @throws SQLException
+     */
+    public final synchronized void endBatch(boolean failed) throws SQLException {
+        try {
+            endTransaction(true);
+        }
+        catch (SQLException e) {
+            if (!failed) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Steps and resets a statement that returns no rows.
+     * @return The result code of the step.
+     */
+    private int run(long stmt) throws SQLException {
+        try {
+            return step(stmt);
+        }
+        finally {
+            reset(stmt);
+        }
+    }
+
     /**
      * @see <a href="http://www.sqlite.org/c_interface.html#sqlite_exec">http://www.sqlite.org/c_interface.html#sqlite_exec</a>
      * @param stmt Stmt object.
@@ -848,6 +1433,67 @@ public abstract class DB implements Codes
             }
         }
 
+        return executeStep(stmt);
+    }
+
+    /**
+     * Binds the first row of parameter values and executes the statement.
+     * @param stmt Stmt object.
+     * @param vals Parameter values; may be null if the statement has none.
+     * @param params Number of parameters of the statement.
+     * @return True if a row of ResultSet is ready; false otherwise.
+     * @throws SQLException
+     */
+    public final synchronized boolean execute(CoreStatement stmt, ParameterBatch vals, int params) throws SQLException {
+        if (vals != null) {
+            int rc = sqlbind(stmt.pointer, vals, 0, params);
+            if (rc != SQLITE_OK) {
+                throwex(rc);
+            }
+        }
+
+        return executeStep(stmt);
+    }
+
+    /**
+     * Executes a query once per key, with the key bound to the first
+     * parameter, and passes every returned row to the consumer.
+     * @param stmt Stmt object.
+     * @param vals Parameter values; the values after the first are bound once
+     *        for all keys. May be null if the statement has one parameter.
+     * @param params Number of parameters of the statement.
+     * @param keys The keys to look up.
+     * @param consumer Receives the rows of each key, in key order.
+     * @throws SQLException
+     */
+    public final synchronized void executeForEach(CoreStatement stmt, ParameterBatch vals, int params, long[] keys,
+            RowConsumer consumer) throws SQLException {
+        if (vals != null && params > 1) {
+            int rc = sqlbind(stmt.pointer, vals, 0, params);
+            if (rc != SQLITE_OK) {
+                throwex(rc);
+            }
+        }
+        try {
+            lookup(stmt.pointer, keys, consumer);
+        }
+        finally {
+            reset(stmt.pointer);
+        }
+        ensureAutoCommit(stmt.conn.getAutoCommit());
+    }
+
+    /**
+     * Binds, steps and resets the statement for every key in native code,
+     * passing the rows to the consumer in chunks.
+     * @throws SQLFeatureNotSupportedException If the native library does not support lookups.
+     * @see #executeForEach(CoreStatement, ParameterBatch, int, long[], RowConsumer)
+     */
+    void lookup(long stmt, long[] keys, RowConsumer consumer) throws SQLException {
+        throw new SQLFeatureNotSupportedException("executeForEach");
+    }
+
+    private boolean executeStep(CoreStatement stmt) throws SQLException {
         int statusCode = step(stmt.pointer);
         switch (statusCode & 0xFF) {
         case SQLITE_DONE:
@@ -900,14 +1546,91 @@ public abstract class DB implements Codes
      * @throws SQLException
      */
     public final synchronized int executeUpdate(CoreStatement stmt, Object[] vals) throws SQLException {
+        GeneratedKeys keys = stmt.generatedKeys;
+        long rowid = 0;
+        if (keys != null) {
+            keys.clear();
+            rowid = keys.isReturning() ? 0 : last_insert_rowid();
+        }
         try {
             if (execute(stmt, vals)) {
-                throw new SQLException("query returns results");
+                finishReturning(stmt, keys);
+            }
+        } finally {
+            if (stmt.pointer != 0) reset(stmt.pointer);
+        }
+        return updated(keys, rowid);
+    }
+
+    /**
+     * Execute an SQL INSERT, UPDATE or DELETE statement with the Stmt object and its
+     * parameter values.
+     * @param stmt Stmt object.
+     * @param vals Parameter values; may be null if the statement has none.
+     * @param params Number of parameters of the statement.
+     * @return Number of database rows that were changed or inserted or deleted by the most
+     *         recently completed SQL.
+     * @throws SQLException
+     */
+    public final synchronized int executeUpdate(CoreStatement stmt, ParameterBatch vals, int params) throws SQLException {
+        GeneratedKeys keys = stmt.generatedKeys;
+        long rowid = 0;
+        if (keys != null) {
+            keys.clear();
+            rowid = keys.isReturning() ? 0 : last_insert_rowid();
+        }
+        try {
+            if (execute(stmt, vals, params)) {
+                finishReturning(stmt, keys);
             }
         } finally {
             if (stmt.pointer != 0) reset(stmt.pointer);
         }
-        return changes();
+        return updated(keys, rowid);
+    }
+
+    /**
+     * Captures the rows of a RETURNING clause after the first step of an
+     * update returned a row, and completes the update.
+     * @throws SQLException If the statement returns rows but no keys were requested.
+     */
+    private void finishReturning(CoreStatement stmt, GeneratedKeys keys) throws SQLException {
+        if (keys == null || !keys.isReturning()) {
+            throw new SQLException("query returns results");
+        }
+        int rc = returnKeys(stmt.pointer, keys);
+        if (rc != SQLITE_DONE) {
+            reset(stmt.pointer);
+            throwex(rc);
+        }
+        reset(stmt.pointer);
+        ensureAutoCommit(stmt.conn.getAutoCommit());
+    }
+
+    /**
+     * Captures the current row and every following row returned by a statement.
+     * @return The result code of the last step.
+     */
+    private int returnKeys(long stmt, GeneratedKeys keys) throws SQLException {
+        int rc;
+        do {
+            keys.addRow(this, stmt);
+            rc = step(stmt);
+        } while (rc == SQLITE_ROW);
+        return rc;
+    }
+
+    /**
+     * @param rowidBefore The last inserted rowid before the update.
+     * @return The number of rows changed by the completed update, after
+     *         capturing the rowid of an inserted row if keys were requested.
+     */
+    private int updated(GeneratedKeys keys, long rowidBefore) throws SQLException {
+        int n = changes();
+        if (keys != null && !keys.isReturning()) {
+            keys.captureRowid(n, rowidBefore, last_insert_rowid());
+        }
+        return n;
     }
 
     abstract void set_commit_listener(boolean enabled) throws SQLException ;
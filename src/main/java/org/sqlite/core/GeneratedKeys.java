@@ -0,0 +1,295 @@
+package org.sqlite.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Keys generated by the executions of a statement that was created with
+ * {@link java.sql.Statement#RETURN_GENERATED_KEYS} or with key column names.
+ * In the first case the rowid of each inserted row is captured with
+ * sqlite3_last_insert_rowid after every step of an INSERT or REPLACE
+ * statement, or of a step that changed the last inserted rowid, so UPDATE,
+ * DELETE, DDL and queries capture no keys; in the second the key columns
+ * are requested with a RETURNING clause and every returned row is captured.
+ * Keys accumulate over the rows of a batch and are cleared on the next
+ * execution.
+ */
+public final class GeneratedKeys implements Codes
+{
+    /** Column label of captured rowids, as returned by <code>select last_insert_rowid()</code>. */
+    public static final String ROWID_COLUMN = "last_insert_rowid()";
+
+    private final String[] columns; // RETURNING columns; null to capture rowids
+    private final boolean  inserts; // the statement is an INSERT or REPLACE
+
+    private long[]   rowids;
+    private Object[] values;        // returned rows, row-major
+    private int      count;         // number of rows
+
+    /**
+     * @param columns Key column names to return; null to capture rowids.
+     * @param sql The statement the keys are generated by.
+     */
+    public GeneratedKeys(String[] columns, String sql) {
+        this.columns = columns == null ? null : columns.clone();
+        this.inserts = sql != null && isInsert(sql);
+        if (columns == null) {
+            rowids = new long[8];
+        }
+        else {
+            values = new Object[8 * Math.max(1, columns.length)];
+        }
+    }
+
+    /**
+     * Appends a RETURNING clause for the given columns to an SQL statement.
+     * @param sql An SQL statement.
+     * @param columns Key column names.
+     * @return The statement returning the key columns; null if the statement
+     *         is not an INSERT, UPDATE, DELETE or REPLACE, or already has a
+     *         RETURNING clause, in which case it is run as it is.
+     */
+    public static String returning(String sql, String[] columns) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("no key columns");
+        }
+        int start = skipSpace(sql, 0);
+        if (!(keywordAt(sql, start, "insert") || keywordAt(sql, start, "replace")
+                || keywordAt(sql, start, "update") || keywordAt(sql, start, "delete"))) {
+            return null;
+        }
+        int end = statementEnd(sql, "returning");
+        if (end < 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(sql.length() + 16 * columns.length);
+        sb.append(sql, 0, end).append(" returning ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(columns[i].replace("\"", "\"\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return True if key columns are returned by a RETURNING clause; false
+     *         if rowids are captured.
+     */
+    public boolean isReturning() {
+        return columns != null;
+    }
+
+    /**
+     * @return The number of captured keys (rows).
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param row Row index in [0, size()-1].
+     * @return The captured rowid.
+     */
+    public long rowid(int row) {
+        return rowids[row];
+    }
+
+    /**
+     * Discards the keys of the previous execution.
+     */
+    public void clear() {
+        if (values != null) {
+            Arrays.fill(values, 0, count * columns.length, null);
+        }
+        count = 0;
+    }
+
+    /**
+     * Captures the rowid of an inserted row.
+     */
+    public void addRowid(long rowid) {
+        if (count == rowids.length) {
+            rowids = Arrays.copyOf(rowids, count << 1);
+        }
+        rowids[count++] = rowid;
+    }
+
+    /**
+     * Captures the rowid of the row inserted by a completed step, if it
+     * inserted one: SQLite keeps the last inserted rowid of the connection
+     * and the number of changes of the last INSERT, UPDATE or DELETE across
+     * other statements, so the rowid is only taken from a step of an INSERT
+     * or REPLACE statement that changed rows, or from a step that changed it,
+     * as a WITH ... INSERT does.
+     * @param changes The number of rows changed, as returned by sqlite3_changes.
+     * @param rowidBefore The last inserted rowid before the step.
+     * @param rowid The last inserted rowid after the step.
+     */
+    public void captureRowid(int changes, long rowidBefore, long rowid) {
+        if (columns == null && changes > 0 && (inserts || rowid != rowidBefore)) {
+            addRowid(rowid);
+        }
+    }
+
+    /**
+     * @param sql An SQL statement.
+     * @return True if the statement starts with INSERT or REPLACE, after
+     *         white space and comments.
+     */
+    static boolean isInsert(String sql) {
+        int i = skipSpace(sql, 0);
+        return keywordAt(sql, i, "insert") || keywordAt(sql, i, "replace");
+    }
+
+    /**
+     * @return The index of the first character at or after i that is neither
+     *         white space nor part of a comment.
+     */
+    private static int skipSpace(String sql, int i) {
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            }
+            else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return True if the keyword, as a whole word, starts at index i.
+     */
+    private static boolean keywordAt(String sql, int i, String keyword) {
+        int end = i + keyword.length();
+        return sql.regionMatches(true, i, keyword, 0, keyword.length())
+                && (end == sql.length() || !isWordChar(sql.charAt(end)));
+    }
+
+    /**
+     * @return The index after the last token of the statement other than a
+     *         semicolon, so trailing comments are left out; -1 if the keyword
+     *         occurs as a whole word outside literals, quoted identifiers and
+     *         comments.
+     */
+    private static int statementEnd(String sql, String keyword) {
+        int i = 0, n = sql.length(), end = 0;
+        while ((i = skipSpace(sql, i)) < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                int close = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                i = close < 0 ? n : close + 1; // a doubled quote reads as two literals
+            }
+            else if (isWordChar(c)) {
+                if (keywordAt(sql, i, keyword)) {
+                    return -1;
+                }
+                while (i < n && isWordChar(sql.charAt(i))) {
+                    i++;
+                }
+            }
+            else {
+                i++;
+            }
+            if (c != ';') {
+                end = i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Captures the current row returned by the RETURNING clause.
+     */
+    void addRow(DB db, long stmt) throws SQLException {
+        int width = columns.length;
+        if ((count + 1) * width > values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        int base = count * width;
+        for (int col = 0; col < width; col++) {
+            switch (db.column_type(stmt, col)) {
+            case SQLITE_INTEGER:
+                values[base + col] = db.column_long(stmt, col);
+                break;
+            case SQLITE_FLOAT:
+                values[base + col] = db.column_double(stmt, col);
+                break;
+            case SQLITE_TEXT:
+                values[base + col] = db.column_text(stmt, col);
+                break;
+            case SQLITE_BLOB:
+                values[base + col] = db.column_blob(stmt, col);
+                break;
+            default:
+                values[base + col] = null;
+            }
+        }
+        count++;
+    }
+
+    /**
+     * @param owner The statement the keys were generated by.
+     * @return A ResultSet over the captured keys, held in memory: it does not
+     *         go back through SQLite, so it reads the same keys however many
+     *         rows a batch inserted.
+     */
+    public ResultSet toResultSet(Statement owner) {
+        if (columns == null) {
+            Object[] keys = new Object[count];
+            for (int row = 0; row < count; row++) {
+                keys[row] = rowids[row];
+            }
+            return new KeysResultSet(owner, new String[] { ROWID_COLUMN }, new int[] { Types.BIGINT }, false,
+                    keys, count);
+        }
+        int[] types = new int[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            types[col] = columnType(col);
+        }
+        return new KeysResultSet(owner, columns.clone(), types, true,
+                Arrays.copyOf(values, count * columns.length), count);
+    }
+
+    /**
+     * @return The JDBC type of the first non-null value returned for a key
+     *         column; {@link Types#NULL} if all values are null.
+     */
+    private int columnType(int col) {
+        for (int row = 0; row < count; row++) {
+            Object value = values[row * columns.length + col];
+            if (value instanceof Long) {
+                return Types.BIGINT;
+            }
+            if (value instanceof Double) {
+                return Types.DOUBLE;
+            }
+            if (value instanceof String) {
+                return Types.VARCHAR;
+            }
+            if (value instanceof byte[]) {
+                return Types.VARBINARY;
+            }
+        }
+        return Types.NULL;
+    }
+}
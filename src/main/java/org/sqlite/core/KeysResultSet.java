@@ -0,0 +1,891 @@
+package org.sqlite.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * A forward-only, read-only ResultSet over generated keys held in memory, so
+ * it needs neither the statement's SQLite handle nor the java.sql.rowset
+ * module, which Android and trimmed runtime images lack. It is also its own
+ * ResultSetMetaData, as JDBC4ResultSet is.
+ */
+final class KeysResultSet implements ResultSet, ResultSetMetaData
+{
+    private final Statement statement;
+    private final String[]  labels;
+    private final int[]     types;
+    private final boolean   nullable;
+    private final Object[]  values;   // row-major
+    private final int       count;    // number of rows
+
+    private int     row;              // current row in [1, count]; 0 before the first
+    private boolean wasNull;
+    private boolean closed;
+
+    /**
+     * @param statement The statement that generated the keys.
+     * @param labels Column labels.
+     * @param types JDBC types of the columns.
+     * @param nullable False if no column holds nulls.
+     * @param values Key values, row-major; Long, Double, String, byte[] or null.
+     * @param count Number of rows.
+     */
+    KeysResultSet(Statement statement, String[] labels, int[] types, boolean nullable, Object[] values, int count) {
+        this.statement = statement;
+        this.labels = labels;
+        this.types = types;
+        this.nullable = nullable;
+        this.values = values;
+        this.count = count;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("ResultSet closed");
+        }
+    }
+
+    private int checkCol(int col) throws SQLException {
+        if (col < 1 || col > labels.length) {
+            throw new SQLException("column " + col + " out of bounds [1," + labels.length + "]");
+        }
+        return col;
+    }
+
+    /**
+     * @return The value of a column of the current row; sets wasNull.
+     */
+    private Object value(int col) throws SQLException {
+        checkOpen();
+        checkCol(col);
+        if (row < 1 || row > count) {
+            throw new SQLException("ResultSet is not positioned on a row");
+        }
+        Object value = values[(row - 1) * labels.length + col - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private SQLException readOnly() {
+        return new SQLException("ResultSet is CONCUR_READ_ONLY");
+    }
+
+    private SQLException forwardOnly() {
+        return new SQLException("ResultSet is TYPE_FORWARD_ONLY");
+    }
+
+    // ResultSet Functions //////////////////////////////////////////
+
+    public boolean next() throws SQLException {
+        checkOpen();
+        if (row <= count) {
+            row++;
+        }
+        return row <= count;
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int findColumn(String col) throws SQLException {
+        checkOpen();
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(col)) {
+                return i + 1;
+            }
+        }
+        throw new SQLException("no such column: '" + col + "'");
+    }
+
+    public Statement getStatement() {
+        return statement;
+    }
+
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkOpen();
+        return this;
+    }
+
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    public int getRow() {
+        return row <= count ? row : 0;
+    }
+
+    public boolean isBeforeFirst() {
+        return row == 0 && count > 0;
+    }
+
+    public boolean isAfterLast() {
+        return row > count && count > 0;
+    }
+
+    public boolean isFirst() {
+        return row == 1 && count > 0;
+    }
+
+    public boolean isLast() {
+        return row == count && count > 0;
+    }
+
+    public int getType() {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    public int getConcurrency() {
+        return CONCUR_READ_ONLY;
+    }
+
+    public int getHoldability() {
+        return CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    public int getFetchDirection() {
+        return FETCH_FORWARD;
+    }
+
+    public void setFetchDirection(int d) throws SQLException {
+        if (d != FETCH_FORWARD) {
+            throw new SQLException("only FETCH_FORWARD direction supported");
+        }
+    }
+
+    public int getFetchSize() {
+        return count;
+    }
+
+    public void setFetchSize(int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("fetch size " + rows + " out of bounds");
+        }
+    }
+
+    public SQLWarning getWarnings() {
+        return null;
+    }
+
+    public void clearWarnings() {}
+
+    public String getCursorName() {
+        return null;
+    }
+
+    public boolean absolute(int row)
+        throws SQLException { throw forwardOnly(); }
+    public void afterLast()
+        throws SQLException { throw forwardOnly(); }
+    public void beforeFirst()
+        throws SQLException { throw forwardOnly(); }
+    public boolean first()
+        throws SQLException { throw forwardOnly(); }
+    public boolean last()
+        throws SQLException { throw forwardOnly(); }
+    public boolean previous()
+        throws SQLException { throw forwardOnly(); }
+    public boolean relative(int rows)
+        throws SQLException { throw forwardOnly(); }
+
+    // DATA ACCESS FUNCTIONS ////////////////////////////////////////
+
+    public Object getObject(int col) throws SQLException {
+        Object value = value(col);
+        return value instanceof byte[] ? ((byte[]) value).clone() : value;
+    }
+
+    public Object getObject(String col) throws SQLException {
+        return getObject(findColumn(col));
+    }
+
+    public <T> T getObject(int col, Class<T> type) throws SQLException {
+        if (type == null) {
+            throw new SQLException("type is null");
+        }
+        Object value = value(col);
+        if (value == null) {
+            return null;
+        }
+        if (type == String.class) {
+            return type.cast(getString(col));
+        }
+        if (type == Long.class) {
+            return type.cast(getLong(col));
+        }
+        if (type == Integer.class) {
+            return type.cast(getInt(col));
+        }
+        if (type == Short.class) {
+            return type.cast(getShort(col));
+        }
+        if (type == Byte.class) {
+            return type.cast(getByte(col));
+        }
+        if (type == Double.class) {
+            return type.cast(getDouble(col));
+        }
+        if (type == Float.class) {
+            return type.cast(getFloat(col));
+        }
+        if (type == Boolean.class) {
+            return type.cast(getBoolean(col));
+        }
+        if (type == BigDecimal.class) {
+            return type.cast(getBigDecimal(col));
+        }
+        if (type == byte[].class) {
+            return type.cast(getBytes(col));
+        }
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+        throw new SQLFeatureNotSupportedException("getObject as " + type.getName());
+    }
+
+    public <T> T getObject(String col, Class<T> type) throws SQLException {
+        return getObject(findColumn(col), type);
+    }
+
+    public String getString(int col) throws SQLException {
+        Object value = value(col);
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value == null ? null : value.toString();
+    }
+
+    public String getString(String col) throws SQLException {
+        return getString(findColumn(col));
+    }
+
+    public long getLong(int col) throws SQLException {
+        Object value = value(col);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong(((String) value).trim());
+            }
+            catch (NumberFormatException e) {
+                return (long) getDouble(col);
+            }
+        }
+        return 0;
+    }
+
+    public long getLong(String col) throws SQLException {
+        return getLong(findColumn(col));
+    }
+
+    public int getInt(int col) throws SQLException {
+        return (int) getLong(col);
+    }
+
+    public int getInt(String col) throws SQLException {
+        return getInt(findColumn(col));
+    }
+
+    public short getShort(int col) throws SQLException {
+        return (short) getLong(col);
+    }
+
+    public short getShort(String col) throws SQLException {
+        return getShort(findColumn(col));
+    }
+
+    public byte getByte(int col) throws SQLException {
+        return (byte) getLong(col);
+    }
+
+    public byte getByte(String col) throws SQLException {
+        return getByte(findColumn(col));
+    }
+
+    public boolean getBoolean(int col) throws SQLException {
+        return getLong(col) != 0;
+    }
+
+    public boolean getBoolean(String col) throws SQLException {
+        return getBoolean(findColumn(col));
+    }
+
+    public double getDouble(int col) throws SQLException {
+        Object value = value(col);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            }
+            catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    public double getDouble(String col) throws SQLException {
+        return getDouble(findColumn(col));
+    }
+
+    public float getFloat(int col) throws SQLException {
+        return (float) getDouble(col);
+    }
+
+    public float getFloat(String col) throws SQLException {
+        return getFloat(findColumn(col));
+    }
+
+    public BigDecimal getBigDecimal(int col) throws SQLException {
+        String value = getString(col);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        }
+        catch (NumberFormatException e) {
+            throw new SQLException("Bad value for type BigDecimal : " + value);
+        }
+    }
+
+    public BigDecimal getBigDecimal(String col) throws SQLException {
+        return getBigDecimal(findColumn(col));
+    }
+
+    @SuppressWarnings("deprecation")
+    public BigDecimal getBigDecimal(int col, int scale) throws SQLException {
+        BigDecimal value = getBigDecimal(col);
+        return value == null ? null : value.setScale(scale, BigDecimal.ROUND_HALF_UP);
+    }
+
+    @SuppressWarnings("deprecation")
+    public BigDecimal getBigDecimal(String col, int scale) throws SQLException {
+        return getBigDecimal(findColumn(col), scale);
+    }
+
+    public byte[] getBytes(int col) throws SQLException {
+        Object value = value(col);
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value == null ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes(String col) throws SQLException {
+        return getBytes(findColumn(col));
+    }
+
+    public InputStream getBinaryStream(int col) throws SQLException {
+        byte[] bytes = getBytes(col);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    public InputStream getBinaryStream(String col) throws SQLException {
+        return getBinaryStream(findColumn(col));
+    }
+
+    public InputStream getAsciiStream(int col) throws SQLException {
+        return getBinaryStream(col);
+    }
+
+    public InputStream getAsciiStream(String col) throws SQLException {
+        return getAsciiStream(findColumn(col));
+    }
+
+    public InputStream getUnicodeStream(int col) throws SQLException {
+        return getBinaryStream(col);
+    }
+
+    public InputStream getUnicodeStream(String col) throws SQLException {
+        return getUnicodeStream(findColumn(col));
+    }
+
+    public Reader getCharacterStream(int col) throws SQLException {
+        String value = getString(col);
+        return value == null ? null : new StringReader(value);
+    }
+
+    public Reader getCharacterStream(String col) throws SQLException {
+        return getCharacterStream(findColumn(col));
+    }
+
+    public Reader getNCharacterStream(int col) throws SQLException {
+        return getCharacterStream(col);
+    }
+
+    public Reader getNCharacterStream(String col) throws SQLException {
+        return getCharacterStream(findColumn(col));
+    }
+
+    public String getNString(int col) throws SQLException {
+        return getString(col);
+    }
+
+    public String getNString(String col) throws SQLException {
+        return getString(findColumn(col));
+    }
+
+    /**
+     * @return The milliseconds of a numeric key, the driver's default date
+     *         representation; keys in other forms are not converted.
+     */
+    private Long millis(int col) throws SQLException {
+        Object value = value(col);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        throw new SQLException("Error parsing date");
+    }
+
+    public Date getDate(int col) throws SQLException {
+        Long millis = millis(col);
+        return millis == null ? null : new Date(millis);
+    }
+
+    public Date getDate(int col, Calendar cal) throws SQLException {
+        return getDate(col);
+    }
+
+    public Date getDate(String col) throws SQLException {
+        return getDate(findColumn(col));
+    }
+
+    public Date getDate(String col, Calendar cal) throws SQLException {
+        return getDate(findColumn(col));
+    }
+
+    public Time getTime(int col) throws SQLException {
+        Long millis = millis(col);
+        return millis == null ? null : new Time(millis);
+    }
+
+    public Time getTime(int col, Calendar cal) throws SQLException {
+        return getTime(col);
+    }
+
+    public Time getTime(String col) throws SQLException {
+        return getTime(findColumn(col));
+    }
+
+    public Time getTime(String col, Calendar cal) throws SQLException {
+        return getTime(findColumn(col));
+    }
+
+    public Timestamp getTimestamp(int col) throws SQLException {
+        Long millis = millis(col);
+        return millis == null ? null : new Timestamp(millis);
+    }
+
+    public Timestamp getTimestamp(int col, Calendar cal) throws SQLException {
+        return getTimestamp(col);
+    }
+
+    public Timestamp getTimestamp(String col) throws SQLException {
+        return getTimestamp(findColumn(col));
+    }
+
+    public Timestamp getTimestamp(String col, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(col));
+    }
+
+    public Array getArray(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Array getArray(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Blob getBlob(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Blob getBlob(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Clob getClob(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Clob getClob(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public NClob getNClob(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public NClob getNClob(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Object getObject(int col, Map<String, Class<?>> map)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Object getObject(String col, Map<String, Class<?>> map)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Ref getRef(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public Ref getRef(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public RowId getRowId(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public RowId getRowId(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public SQLXML getSQLXML(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public SQLXML getSQLXML(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public URL getURL(int col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+    public URL getURL(String col)
+        throws SQLException { throw new SQLFeatureNotSupportedException(); }
+
+    // UPDATES //////////////////////////////////////////////////////
+
+    public boolean rowDeleted() {
+        return false;
+    }
+
+    public boolean rowInserted() {
+        return false;
+    }
+
+    public boolean rowUpdated() {
+        return false;
+    }
+
+    public void cancelRowUpdates()
+        throws SQLException { throw readOnly(); }
+    public void deleteRow()
+        throws SQLException { throw readOnly(); }
+    public void insertRow()
+        throws SQLException { throw readOnly(); }
+    public void moveToCurrentRow()
+        throws SQLException { throw readOnly(); }
+    public void moveToInsertRow()
+        throws SQLException { throw readOnly(); }
+    public void refreshRow()
+        throws SQLException { throw readOnly(); }
+    public void updateRow()
+        throws SQLException { throw readOnly(); }
+    public void updateArray(String c, Array x)
+        throws SQLException { throw readOnly(); }
+    public void updateArray(int c, Array x)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(String c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(String c, InputStream x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(String c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(int c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(int c, InputStream x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateAsciiStream(int c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateBigDecimal(String c, BigDecimal x)
+        throws SQLException { throw readOnly(); }
+    public void updateBigDecimal(int c, BigDecimal x)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(String c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(String c, InputStream x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(String c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(int c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(int c, InputStream x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateBinaryStream(int c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(String c, Blob x)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(String c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(String c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(int c, Blob x)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(int c, InputStream x)
+        throws SQLException { throw readOnly(); }
+    public void updateBlob(int c, InputStream x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateBoolean(String c, boolean x)
+        throws SQLException { throw readOnly(); }
+    public void updateBoolean(int c, boolean x)
+        throws SQLException { throw readOnly(); }
+    public void updateByte(String c, byte x)
+        throws SQLException { throw readOnly(); }
+    public void updateByte(int c, byte x)
+        throws SQLException { throw readOnly(); }
+    public void updateBytes(String c, byte[] x)
+        throws SQLException { throw readOnly(); }
+    public void updateBytes(int c, byte[] x)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(String c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(String c, Reader x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(String c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(int c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(int c, Reader x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateCharacterStream(int c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(String c, Clob x)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(String c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(String c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(int c, Clob x)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(int c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateClob(int c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateDate(String c, Date x)
+        throws SQLException { throw readOnly(); }
+    public void updateDate(int c, Date x)
+        throws SQLException { throw readOnly(); }
+    public void updateDouble(String c, double x)
+        throws SQLException { throw readOnly(); }
+    public void updateDouble(int c, double x)
+        throws SQLException { throw readOnly(); }
+    public void updateFloat(String c, float x)
+        throws SQLException { throw readOnly(); }
+    public void updateFloat(int c, float x)
+        throws SQLException { throw readOnly(); }
+    public void updateInt(String c, int x)
+        throws SQLException { throw readOnly(); }
+    public void updateInt(int c, int x)
+        throws SQLException { throw readOnly(); }
+    public void updateLong(String c, long x)
+        throws SQLException { throw readOnly(); }
+    public void updateLong(int c, long x)
+        throws SQLException { throw readOnly(); }
+    public void updateNCharacterStream(String c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateNCharacterStream(String c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateNCharacterStream(int c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateNCharacterStream(int c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(String c, NClob x)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(String c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(String c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(int c, NClob x)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(int c, Reader x)
+        throws SQLException { throw readOnly(); }
+    public void updateNClob(int c, Reader x, long length)
+        throws SQLException { throw readOnly(); }
+    public void updateNString(String c, String x)
+        throws SQLException { throw readOnly(); }
+    public void updateNString(int c, String x)
+        throws SQLException { throw readOnly(); }
+    public void updateNull(String c)
+        throws SQLException { throw readOnly(); }
+    public void updateNull(int c)
+        throws SQLException { throw readOnly(); }
+    public void updateObject(String c, Object x)
+        throws SQLException { throw readOnly(); }
+    public void updateObject(String c, Object x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateObject(int c, Object x)
+        throws SQLException { throw readOnly(); }
+    public void updateObject(int c, Object x, int length)
+        throws SQLException { throw readOnly(); }
+    public void updateRef(String c, Ref x)
+        throws SQLException { throw readOnly(); }
+    public void updateRef(int c, Ref x)
+        throws SQLException { throw readOnly(); }
+    public void updateRowId(String c, RowId x)
+        throws SQLException { throw readOnly(); }
+    public void updateRowId(int c, RowId x)
+        throws SQLException { throw readOnly(); }
+    public void updateSQLXML(String c, SQLXML x)
+        throws SQLException { throw readOnly(); }
+    public void updateSQLXML(int c, SQLXML x)
+        throws SQLException { throw readOnly(); }
+    public void updateShort(String c, short x)
+        throws SQLException { throw readOnly(); }
+    public void updateShort(int c, short x)
+        throws SQLException { throw readOnly(); }
+    public void updateString(String c, String x)
+        throws SQLException { throw readOnly(); }
+    public void updateString(int c, String x)
+        throws SQLException { throw readOnly(); }
+    public void updateTime(String c, Time x)
+        throws SQLException { throw readOnly(); }
+    public void updateTime(int c, Time x)
+        throws SQLException { throw readOnly(); }
+    public void updateTimestamp(String c, Timestamp x)
+        throws SQLException { throw readOnly(); }
+    public void updateTimestamp(int c, Timestamp x)
+        throws SQLException { throw readOnly(); }
+
+    // ResultSetMetaData Functions //////////////////////////////////
+
+    public int getColumnCount() throws SQLException {
+        checkOpen();
+        return labels.length;
+    }
+
+    public String getColumnLabel(int col) throws SQLException {
+        return labels[checkCol(col) - 1];
+    }
+
+    public String getColumnName(int col) throws SQLException {
+        return labels[checkCol(col) - 1];
+    }
+
+    public int getColumnType(int col) throws SQLException {
+        return types[checkCol(col) - 1];
+    }
+
+    public String getColumnTypeName(int col) throws SQLException {
+        switch (getColumnType(col)) {
+        case Types.BIGINT:
+            return "INTEGER";
+        case Types.DOUBLE:
+            return "REAL";
+        case Types.VARCHAR:
+            return "TEXT";
+        case Types.VARBINARY:
+            return "BLOB";
+        default:
+            return "NULL";
+        }
+    }
+
+    public String getColumnClassName(int col) throws SQLException {
+        switch (getColumnType(col)) {
+        case Types.BIGINT:
+            return Long.class.getName();
+        case Types.DOUBLE:
+            return Double.class.getName();
+        case Types.VARCHAR:
+            return String.class.getName();
+        case Types.VARBINARY:
+            return byte[].class.getName();
+        default:
+            return Object.class.getName();
+        }
+    }
+
+    public int isNullable(int col) throws SQLException {
+        checkCol(col);
+        return nullable ? columnNullableUnknown : columnNoNulls;
+    }
+
+    public boolean isSigned(int col) throws SQLException {
+        int type = getColumnType(col);
+        return type == Types.BIGINT || type == Types.DOUBLE;
+    }
+
+    public boolean isCaseSensitive(int col) throws SQLException {
+        checkCol(col);
+        return true;
+    }
+
+    public int getColumnDisplaySize(int col) throws SQLException {
+        checkCol(col);
+        return Integer.MAX_VALUE;
+    }
+
+    public int getPrecision(int col) throws SQLException {
+        checkCol(col);
+        return 0;
+    }
+
+    public int getScale(int col) throws SQLException {
+        checkCol(col);
+        return 0;
+    }
+
+    public String getCatalogName(int col) throws SQLException {
+        checkCol(col);
+        return "";
+    }
+
+    public String getSchemaName(int col) throws SQLException {
+        checkCol(col);
+        return "";
+    }
+
+    public String getTableName(int col) throws SQLException {
+        checkCol(col);
+        return "";
+    }
+
+    public boolean isAutoIncrement(int col) throws SQLException {
+        checkCol(col);
+        return false;
+    }
+
+    public boolean isCurrency(int col) throws SQLException {
+        checkCol(col);
+        return false;
+    }
+
+    public boolean isSearchable(int col) throws SQLException {
+        checkCol(col);
+        return true;
+    }
+
+    public boolean isReadOnly(int col) throws SQLException {
+        checkCol(col);
+        return true;
+    }
+
+    public boolean isWritable(int col) throws SQLException {
+        checkCol(col);
+        return false;
+    }
+
+    public boolean isDefinitelyWritable(int col) throws SQLException {
+        checkCol(col);
+        return false;
+    }
+
+    // JDBC 4
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (!iface.isInstance(this)) {
+            throw new SQLException(getClass().getName() + " does not wrap " + iface.getName());
+        }
+        return iface.cast(this);
+    }
+
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -18,6 +18,11 @@
 #include <string.h>
 #include <stdint.h>
 #include <assert.h>
+#ifdef _WIN32
+#include <windows.h>
+#else
+#include <time.h>
+#endif
 #include "NativeDB.h"
 #include "sqlite3.h"
 
@@ -88,14 +93,205 @@ static jbyteArray bytesToArray(JNIEnv *env, const char* bytes, jsize length) {
     return array;
 }
 
+// ASCII TRANSCODING KERNELS ////////////////////////////////////////
+//
+// The transcoders below hand every run of 7-bit ASCII to one of these
+// kernels, which copy as many leading ASCII code units as possible and
+// return how many they consumed. The widest implementation supported by
+// the CPU is selected once in JNI_OnLoad.
+
+typedef jsize (*ascii_scan_fn)(const char* src, jsize size);
+typedef jsize (*ascii_widen_fn)(const char* src, jchar* dst, jsize size);
+typedef jsize (*ascii_narrow_fn)(const jchar* src, char* dst, jsize size);
+
+/* Returns the length of the leading run of 7-bit ASCII bytes, testing
+ * eight bytes per iteration. */
+static jsize asciiScan_scalar(const char* src, jsize size) {
+    jsize i = 0;
+    for (; i + 8 <= size; i += 8) {
+        uint64_t w;
+        memcpy(&w, src + i, 8);
+        if (w & UINT64_C(0x8080808080808080)) break;
+    }
+    while (i < size && !(src[i] & 0x80)) i++;
+    return i;
+}
+
+static jsize asciiWiden_scalar(const char* src, jchar* dst, jsize size) {
+    jsize i, n = asciiScan_scalar(src, size);
+    for (i = 0; i < n; i++) dst[i] = (jchar)(uint8_t)src[i];
+    return n;
+}
+
+static jsize asciiNarrow_scalar(const jchar* src, char* dst, jsize size) {
+    jsize i = 0;
+    for (; i + 4 <= size; i += 4) {
+        uint64_t w;
+        memcpy(&w, src + i, 8);
+        if (w & UINT64_C(0xFF80FF80FF80FF80)) break;
+        dst[i] = (char)src[i];
+        dst[i + 1] = (char)src[i + 1];
+        dst[i + 2] = (char)src[i + 2];
+        dst[i + 3] = (char)src[i + 3];
+    }
+    for (; i < size && src[i] < 0x80; i++) dst[i] = (char)src[i];
+    return i;
+}
+
+#if !defined(SQLITE_JDBC_NO_SIMD) && defined(__GNUC__) && (defined(__x86_64__) || defined(__i386__))
+#define SQLITE_JDBC_SIMD_X86
+#include <immintrin.h>
+
+__attribute__((target("sse2")))
+static jsize asciiScan_sse2(const char* src, jsize size) {
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        int mask = _mm_movemask_epi8(_mm_loadu_si128((const __m128i*)(src + i)));
+        if (mask) return i + __builtin_ctz(mask);
+    }
+    return i + asciiScan_scalar(src + i, size - i);
+}
+
+__attribute__((target("sse2")))
+static jsize asciiWiden_sse2(const char* src, jchar* dst, jsize size) {
+    const __m128i zero = _mm_setzero_si128();
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        __m128i v = _mm_loadu_si128((const __m128i*)(src + i));
+        if (_mm_movemask_epi8(v)) break;
+        _mm_storeu_si128((__m128i*)(dst + i), _mm_unpacklo_epi8(v, zero));
+        _mm_storeu_si128((__m128i*)(dst + i + 8), _mm_unpackhi_epi8(v, zero));
+    }
+    return i + asciiWiden_scalar(src + i, dst + i, size - i);
+}
+
+__attribute__((target("sse2")))
+static jsize asciiNarrow_sse2(const jchar* src, char* dst, jsize size) {
+    const __m128i high = _mm_set1_epi16((short)0xFF80), zero = _mm_setzero_si128();
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        __m128i a = _mm_loadu_si128((const __m128i*)(src + i));
+        __m128i b = _mm_loadu_si128((const __m128i*)(src + i + 8));
+        __m128i t = _mm_and_si128(_mm_or_si128(a, b), high);
+        if (_mm_movemask_epi8(_mm_cmpeq_epi16(t, zero)) != 0xFFFF) break;
+        _mm_storeu_si128((__m128i*)(dst + i), _mm_packus_epi16(a, b));
+    }
+    return i + asciiNarrow_scalar(src + i, dst + i, size - i);
+}
+
+__attribute__((target("avx2")))
+static jsize asciiScan_avx2(const char* src, jsize size) {
+    jsize i = 0;
+    for (; i + 32 <= size; i += 32) {
+        int mask = _mm256_movemask_epi8(_mm256_loadu_si256((const __m256i*)(src + i)));
+        if (mask) return i + __builtin_ctz(mask);
+    }
+    return i + asciiScan_sse2(src + i, size - i);
+}
+
+__attribute__((target("avx2")))
+static jsize asciiWiden_avx2(const char* src, jchar* dst, jsize size) {
+    jsize i = 0;
+    for (; i + 32 <= size; i += 32) {
+        __m256i v = _mm256_loadu_si256((const __m256i*)(src + i));
+        if (_mm256_movemask_epi8(v)) break;
+        _mm256_storeu_si256((__m256i*)(dst + i),
+            _mm256_cvtepu8_epi16(_mm256_castsi256_si128(v)));
+        _mm256_storeu_si256((__m256i*)(dst + i + 16),
+            _mm256_cvtepu8_epi16(_mm256_extracti128_si256(v, 1)));
+    }
+    return i + asciiWiden_sse2(src + i, dst + i, size - i);
+}
+
+__attribute__((target("avx2")))
+static jsize asciiNarrow_avx2(const jchar* src, char* dst, jsize size) {
+    const __m256i high = _mm256_set1_epi16((short)0xFF80);
+    jsize i = 0;
+    for (; i + 32 <= size; i += 32) {
+        __m256i a = _mm256_loadu_si256((const __m256i*)(src + i));
+        __m256i b = _mm256_loadu_si256((const __m256i*)(src + i + 16));
+        if (!_mm256_testz_si256(_mm256_or_si256(a, b), high)) break;
+        // packus works per 128-bit lane, so restore the element order
+        _mm256_storeu_si256((__m256i*)(dst + i),
+            _mm256_permute4x64_epi64(_mm256_packus_epi16(a, b), 0xD8));
+    }
+    return i + asciiNarrow_sse2(src + i, dst + i, size - i);
+}
+
+#elif !defined(SQLITE_JDBC_NO_SIMD) && defined(__aarch64__)
+#define SQLITE_JDBC_SIMD_NEON
+#include <arm_neon.h>
+
+static jsize asciiScan_neon(const char* src, jsize size) {
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        if (vmaxvq_u8(vld1q_u8((const uint8_t*)(src + i))) & 0x80) break;
+    }
+    return i + asciiScan_scalar(src + i, size - i);
+}
+
+static jsize asciiWiden_neon(const char* src, jchar* dst, jsize size) {
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        uint8x16_t v = vld1q_u8((const uint8_t*)(src + i));
+        if (vmaxvq_u8(v) & 0x80) break;
+        vst1q_u16((uint16_t*)(dst + i), vmovl_u8(vget_low_u8(v)));
+        vst1q_u16((uint16_t*)(dst + i + 8), vmovl_high_u8(v));
+    }
+    return i + asciiWiden_scalar(src + i, dst + i, size - i);
+}
+
+static jsize asciiNarrow_neon(const jchar* src, char* dst, jsize size) {
+    jsize i = 0;
+    for (; i + 16 <= size; i += 16) {
+        uint16x8_t a = vld1q_u16((const uint16_t*)(src + i));
+        uint16x8_t b = vld1q_u16((const uint16_t*)(src + i + 8));
+        if (vmaxvq_u16(vorrq_u16(a, b)) >= 0x80) break;
+        vst1q_u8((uint8_t*)(dst + i), vcombine_u8(vmovn_u16(a), vmovn_u16(b)));
+    }
+    return i + asciiNarrow_scalar(src + i, dst + i, size - i);
+}
+#endif
+
+static ascii_scan_fn asciiScan = asciiScan_scalar;
+static ascii_widen_fn asciiWiden = asciiWiden_scalar;
+static ascii_narrow_fn asciiNarrow = asciiNarrow_scalar;
+
+static void selectTranscoders()
+{
+#if defined(SQLITE_JDBC_SIMD_X86)
+    __builtin_cpu_init();
+    if (__builtin_cpu_supports("avx2")) {
+        asciiScan = asciiScan_avx2;
+        asciiWiden = asciiWiden_avx2;
+        asciiNarrow = asciiNarrow_avx2;
+    } else if (__builtin_cpu_supports("sse2")) {
+        asciiScan = asciiScan_sse2;
+        asciiWiden = asciiWiden_sse2;
+        asciiNarrow = asciiNarrow_sse2;
+    }
+#elif defined(SQLITE_JDBC_SIMD_NEON)
+    // Advanced SIMD is mandatory on AArch64
+    asciiScan = asciiScan_neon;
+    asciiWiden = asciiWiden_neon;
+    asciiNarrow = asciiNarrow_neon;
+#endif
+}
+
 static jboolean UTF16toUTF8(JNIEnv *env, const jchar* src, char* dst, jsize size, jsize* out) {
     if (out) *out = 0;
     jint sp, i;
     for (sp = 0, i = 0; i < size; ) {
-        uint16_t w1 = src[i++];
+        uint16_t w1 = src[i];
         if (w1 < 0x80) {
-            dst[sp++] = w1;
-        } else if (w1 < 0x800) {
+            // ASCII runs are narrowed without transcoding
+            jsize n = asciiNarrow(src + i, dst + sp, size - i);
+            i += n;
+            sp += n;
+            continue;
+        }
+        i++;
+        if (w1 < 0x800) {
             dst[sp++] = ((w1 >> 6) & 0x1F) ^ 0xC0;
             dst[sp++] = ((w1 >> 0) & 0x3F) ^ 0x80;
         } else if ((w1 < 0xD800) || (w1 > 0xDFFF)) {
@@ -125,10 +321,16 @@ static jboolean UTF8toUTF16(JNIEnv *env, const char* src, jchar* dst, jsize size
     if (out)  *out = 0;
     jint sp, i;
     for (sp = 0, i = 0; i < size; ) {
-        uint8_t w1 = src[i++];
+        uint8_t w1 = src[i];
         if (w1 < 0x80) {
-            dst[sp++] = (jchar)w1;
-        } else if (w1 < 0xE0) {
+            // ASCII runs are widened without transcoding
+            jsize n = asciiWiden(src + i, dst + sp, size - i);
+            i += n;
+            sp += n;
+            continue;
+        }
+        i++;
+        if (w1 < 0xE0) {
             if ((w1 < 0xC0) || (i == size)) return JNI_FALSE;
             uint8_t w2 = src[i++] & 0x3F;
             // if ((w2 & 0xC0) ^ 0x80) return JNI_FALSE;
@@ -162,6 +364,13 @@ static jobject bytesToObject(JNIEnv *env, const char* bytes, jsize length, jint
     }
 
     //STRING C
+    // SQLite strings are NUL terminated, so pure ASCII text without embedded
+    // NULs is valid modified UTF-8 and the JVM builds a compact string from
+    // it directly.
+    if (asciiScan(bytes, length) == length && bytes[length] == '\0'
+            && !memchr(bytes, '\0', length)) {
+        return (*env)->NewStringUTF(env, bytes);
+    }
 #ifdef SQLITE_USE_ALLOCA
     if (length < (SQLITE_JDBC_MAX_ALLOCA >> 1)) {
         jchar chars[length];
@@ -239,6 +448,8 @@ static void sethandle(JNIEnv *env, jobject this, sqlite3 * ref)
 struct UDFData {
     JavaVM *vm;
     jobject func;
+    jmethodID method;      // apply method of typed functions
+    void (*release)(JNIEnv *env, struct UDFData *udf); // frees extra references, if any
     struct UDFData *next;  // linked list of all UDFData instances
 };
 
@@ -452,6 +663,257 @@ void xFinal(sqlite3_context *context)
     (*env)->DeleteGlobalRef(env, *func);
 }
 
+// Typed functions: arguments are converted natively and passed to the
+// apply method of the function interface, and its return value is the
+// result. A NULL argument makes the result NULL without calling apply.
+
+#define UDF_LONG_UNARY    1
+#define UDF_DOUBLE_BINARY 2
+#define UDF_TEXT          3
+
+static JNIEnv * udf_env(struct UDFData *udf)
+{
+    JNIEnv *env = 0;
+    if ((*udf->vm)->GetEnv(udf->vm, (void **)&env, JNI_VERSION_1_2) != JNI_OK) {
+        (*udf->vm)->AttachCurrentThread(udf->vm, (void **)&env, 0);
+    }
+    return env;
+}
+
+static void xLongUnary(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    struct UDFData *udf = (struct UDFData*)sqlite3_user_data(context);
+    JNIEnv *env;
+    jlong result;
+
+    if (sqlite3_value_type(value[0]) == SQLITE_NULL) {
+        sqlite3_result_null(context);
+        return;
+    }
+    env = udf_env(udf);
+    result = (*env)->CallLongMethod(env, udf->func, udf->method, (jlong) sqlite3_value_int64(value[0]));
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    sqlite3_result_int64(context, result);
+}
+
+static void xDoubleBinary(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    struct UDFData *udf = (struct UDFData*)sqlite3_user_data(context);
+    JNIEnv *env;
+    jdouble result;
+
+    if (sqlite3_value_type(value[0]) == SQLITE_NULL || sqlite3_value_type(value[1]) == SQLITE_NULL) {
+        sqlite3_result_null(context);
+        return;
+    }
+    env = udf_env(udf);
+    result = (*env)->CallDoubleMethod(env, udf->func, udf->method,
+        (jdouble) sqlite3_value_double(value[0]), (jdouble) sqlite3_value_double(value[1]));
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    sqlite3_result_double(context, result);
+}
+
+static void xText(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    struct UDFData *udf = (struct UDFData*)sqlite3_user_data(context);
+    JNIEnv *env;
+    const char *bytes;
+    jobject arg, result;
+
+    if (sqlite3_value_type(value[0]) == SQLITE_NULL) {
+        sqlite3_result_null(context);
+        return;
+    }
+    env = udf_env(udf);
+    bytes = (const char *) sqlite3_value_text(value[0]);
+    arg = bytesToObject(env, bytes, sqlite3_value_bytes(value[0]), STRING);
+    if (!arg) {
+        sqlite3_result_error_nomem(context);
+        return;
+    }
+    result = (*env)->CallObjectMethod(env, udf->func, udf->method, arg);
+    (*env)->DeleteLocalRef(env, arg);
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    Java_org_sqlite_core_NativeDB_result_1text0(env, 0, fromref(context), result, STRING);
+    if (result) (*env)->DeleteLocalRef(env, result);
+}
+
+// Primitive aggregates: the state of a group is a fixed number of long and
+// double slots in sqlite3_aggregate_context, so no Java object is created
+// per group. Argument values are buffered in the context and passed to
+// PrimitiveAggregate.step in batches, together with the state, through
+// arrays allocated once per function.
+
+struct PrimitiveAggData {
+    struct UDFData udf;    // first, so free_functions releases the whole struct
+    jmethodID step, inverse, value;
+    jobject longs, doubles, values; // global refs to the arrays passed to Java
+    int nlongs, ndoubles, batch;
+};
+
+struct PrimitiveAggState {
+    int pending;           // buffered values
+    jlong slots[1];        // nlongs longs, then ndoubles doubles, then batch values
+};
+
+#define AGG_DOUBLES(a, st) ((jdouble *) ((st)->slots + (a)->nlongs))
+#define AGG_VALUES(a, st) (AGG_DOUBLES(a, st) + (a)->ndoubles)
+
+static struct PrimitiveAggState * agg_state(sqlite3_context *context, struct PrimitiveAggData *agg, int create)
+{
+    int size = sizeof(struct PrimitiveAggState)
+        + (agg->nlongs + agg->ndoubles + agg->batch) * sizeof(jlong);
+    return (struct PrimitiveAggState *) sqlite3_aggregate_context(context, create ? size : 0);
+}
+
+/* passes the state and count values to a step or inverse method and reads the state back */
+static int agg_call(JNIEnv *env, sqlite3_context *context, struct PrimitiveAggData *agg,
+                    struct PrimitiveAggState *st, jmethodID method, const jdouble *values, int count)
+{
+    if (agg->nlongs) (*env)->SetLongArrayRegion(env, agg->longs, 0, agg->nlongs, st->slots);
+    if (agg->ndoubles) (*env)->SetDoubleArrayRegion(env, agg->doubles, 0, agg->ndoubles, AGG_DOUBLES(agg, st));
+    (*env)->SetDoubleArrayRegion(env, agg->values, 0, count, values);
+    (*env)->CallVoidMethod(env, agg->udf.func, method, agg->longs, agg->doubles, agg->values, count);
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return 0;
+    }
+    if (agg->nlongs) (*env)->GetLongArrayRegion(env, agg->longs, 0, agg->nlongs, st->slots);
+    if (agg->ndoubles) (*env)->GetDoubleArrayRegion(env, agg->doubles, 0, agg->ndoubles, AGG_DOUBLES(agg, st));
+    return 1;
+}
+
+static int agg_flush(JNIEnv *env, sqlite3_context *context, struct PrimitiveAggData *agg,
+                     struct PrimitiveAggState *st)
+{
+    int count = st->pending;
+    if (!count) return 1;
+    st->pending = 0;
+    return agg_call(env, context, agg, st, agg->step, AGG_VALUES(agg, st), count);
+}
+
+static void xPrimitiveStep(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    struct PrimitiveAggData *agg = (struct PrimitiveAggData*)sqlite3_user_data(context);
+    struct PrimitiveAggState *st;
+
+    if (sqlite3_value_type(value[0]) == SQLITE_NULL) return;
+    st = agg_state(context, agg, 1);
+    if (!st) { sqlite3_result_error_nomem(context); return; }
+
+    AGG_VALUES(agg, st)[st->pending++] = sqlite3_value_double(value[0]);
+    if (st->pending == agg->batch) {
+        agg_flush(udf_env(&agg->udf), context, agg, st);
+    }
+}
+
+static void xPrimitiveInverse(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    struct PrimitiveAggData *agg = (struct PrimitiveAggData*)sqlite3_user_data(context);
+    struct PrimitiveAggState *st;
+    JNIEnv *env;
+    jdouble v;
+
+    if (sqlite3_value_type(value[0]) == SQLITE_NULL) return;
+    st = agg_state(context, agg, 1);
+    if (!st) { sqlite3_result_error_nomem(context); return; }
+
+    env = udf_env(&agg->udf);
+    if (!agg_flush(env, context, agg, st)) return;
+    v = sqlite3_value_double(value[0]);
+    agg_call(env, context, agg, st, agg->inverse, &v, 1);
+}
+
+/* sets the result from a Long, Integer, Double, Float, String, byte[] or null */
+static void agg_result(JNIEnv *env, sqlite3_context *context, jobject result)
+{
+    static jclass longclass = 0, intclass = 0, numclass = 0, strclass = 0, bytesclass = 0;
+    static jmethodID longValue = 0, doubleValue = 0;
+
+    if (!longclass) {
+        intclass = (*env)->NewGlobalRef(env, (*env)->FindClass(env, "java/lang/Integer"));
+        numclass = (*env)->NewGlobalRef(env, (*env)->FindClass(env, "java/lang/Number"));
+        strclass = (*env)->NewGlobalRef(env, (*env)->FindClass(env, "java/lang/String"));
+        bytesclass = (*env)->NewGlobalRef(env, (*env)->FindClass(env, "[B"));
+        longValue = (*env)->GetMethodID(env, numclass, "longValue", "()J");
+        doubleValue = (*env)->GetMethodID(env, numclass, "doubleValue", "()D");
+        longclass = (*env)->NewGlobalRef(env, (*env)->FindClass(env, "java/lang/Long"));
+    }
+
+    if (!result) {
+        sqlite3_result_null(context);
+    }
+    else if ((*env)->IsInstanceOf(env, result, longclass) || (*env)->IsInstanceOf(env, result, intclass)) {
+        sqlite3_result_int64(context, (*env)->CallLongMethod(env, result, longValue));
+    }
+    else if ((*env)->IsInstanceOf(env, result, numclass)) {
+        sqlite3_result_double(context, (*env)->CallDoubleMethod(env, result, doubleValue));
+    }
+    else if ((*env)->IsInstanceOf(env, result, strclass)) {
+        Java_org_sqlite_core_NativeDB_result_1text0(env, 0, fromref(context), result, STRING);
+    }
+    else if ((*env)->IsInstanceOf(env, result, bytesclass)) {
+        jsize length = (*env)->GetArrayLength(env, result);
+        jbyte *bytes = (*env)->GetByteArrayElements(env, result, 0);
+        sqlite3_result_blob(context, bytes, length, SQLITE_TRANSIENT);
+        (*env)->ReleaseByteArrayElements(env, result, bytes, JNI_ABORT);
+    }
+    else {
+        sqlite3_result_error(context, "unexpected aggregate result type", -1);
+    }
+}
+
+static void agg_release(JNIEnv *env, struct UDFData *udf)
+{
+    struct PrimitiveAggData *agg = (struct PrimitiveAggData *) udf;
+    (*env)->DeleteGlobalRef(env, agg->longs);
+    (*env)->DeleteGlobalRef(env, agg->doubles);
+    (*env)->DeleteGlobalRef(env, agg->values);
+}
+
+/* xFinal, and xValue of window functions: nothing is released with the state */
+static void xPrimitiveValue(sqlite3_context *context)
+{
+    struct PrimitiveAggData *agg = (struct PrimitiveAggData*)sqlite3_user_data(context);
+    struct PrimitiveAggState *st = agg_state(context, agg, 0);
+    JNIEnv *env = udf_env(&agg->udf);
+    jobject result;
+
+    if (st) {
+        if (!agg_flush(env, context, agg, st)) return;
+        if (agg->nlongs) (*env)->SetLongArrayRegion(env, agg->longs, 0, agg->nlongs, st->slots);
+        if (agg->ndoubles) (*env)->SetDoubleArrayRegion(env, agg->doubles, 0, agg->ndoubles, AGG_DOUBLES(agg, st));
+    }
+    else {
+        // no row in the group: the initial, zero state
+        jlong zeros[8] = { 0 };
+        int i;
+        for (i = 0; i < agg->nlongs; i += 8)
+            (*env)->SetLongArrayRegion(env, agg->longs, i, agg->nlongs - i < 8 ? agg->nlongs - i : 8, zeros);
+        for (i = 0; i < agg->ndoubles; i += 8)
+            (*env)->SetDoubleArrayRegion(env, agg->doubles, i, agg->ndoubles - i < 8 ? agg->ndoubles - i : 8,
+                (jdouble *) zeros);
+    }
+
+    result = (*env)->CallObjectMethod(env, agg->udf.func, agg->value, agg->longs, agg->doubles);
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    agg_result(env, context, result);
+    if (result) (*env)->DeleteLocalRef(env, result);
+}
+
+
 // INITIALISATION ///////////////////////////////////////////////////
 
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
@@ -461,6 +923,8 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
     if (JNI_OK != (*vm)->GetEnv(vm, (void **)&env, JNI_VERSION_1_2))
         return JNI_ERR;
 
+    selectTranscoders();
+
     dbclass = (*env)->FindClass(env, "org/sqlite/core/NativeDB");
     if (!dbclass) return JNI_ERR;
     dbclass = (*env)->NewGlobalRef(env, dbclass);
@@ -505,6 +969,36 @@ JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved)
     if (phandleclass) (*env)->DeleteGlobalRef(env, phandleclass);
 }
 
+// CAPABILITIES
+
+/* features beyond the SQLite C API, as the bits of NativeDB.java */
+#define CAP_STATEMENT_METADATA   (1 << 0)
+#define CAP_LAST_INSERT_ROWID    (1 << 1)
+#define CAP_EXEC_SCRIPT          (1 << 2)
+#define CAP_LOOKUP               (1 << 3)
+#define CAP_BIND_ARRAY           (1 << 4)
+#define CAP_TYPED_FUNCTIONS      (1 << 5)
+#define CAP_PRIMITIVE_AGGREGATES (1 << 6)
+#define CAP_VIRTUAL_TABLES       (1 << 7)
+#define CAP_COLLATIONS           (1 << 8)
+#define CAP_DESERIALIZE          (1 << 9)
+#define CAP_VFS                  (1 << 10)
+#define CAP_MEMORY_STATUS        (1 << 11)
+#define CAP_CONFIG               (1 << 12)
+#define CAP_LOOKASIDE            (1 << 13)
+#define CAP_DATETIME             (1 << 14)
+#define CAP_TEXT_FIND            (1 << 15)
+#define CAP_STMT_STATUS          (1 << 16)
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_capabilities0(
+    JNIEnv *env, jclass cls)
+{
+    return CAP_STATEMENT_METADATA | CAP_LAST_INSERT_ROWID | CAP_EXEC_SCRIPT | CAP_LOOKUP
+        | CAP_BIND_ARRAY | CAP_TYPED_FUNCTIONS | CAP_PRIMITIVE_AGGREGATES | CAP_VIRTUAL_TABLES
+        | CAP_COLLATIONS | CAP_DESERIALIZE | CAP_VFS | CAP_MEMORY_STATUS | CAP_CONFIG
+        | CAP_LOOKASIDE | CAP_DATETIME | CAP_TEXT_FIND | CAP_STMT_STATUS;
+}
+
 // WRAPPERS for sqlite_* functions //////////////////////////////////
 
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_shared_1cache0(
@@ -519,6 +1013,228 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_enable_1load_1extension0(
     return sqlite3_enable_load_extension(gethandle(env, this), enable ? 1 : 0);
 }
 
+// CARRAY table-valued function ////////////////////////////////////
+
+/*
+ * An eponymous virtual table returning the elements of an array bound with
+ * bind_array0, e.g. "select * from t where id in carray(?)". The array is
+ * copied into one allocation when bound and passed to the table with
+ * sqlite3_bind_pointer, so no JNI call is made per element.
+ */
+
+#define CARRAY_POINTER "carray"
+
+#define CARRAY_INT64  1
+#define CARRAY_DOUBLE 2
+#define CARRAY_TEXT   3
+#define CARRAY_BLOB   4
+
+typedef struct carray_values {
+    int type;
+    int n;
+    sqlite3_int64 *longs;   // CARRAY_INT64
+    double *doubles;        // CARRAY_DOUBLE
+    int *offsets;           // CARRAY_TEXT and CARRAY_BLOB: n + 1 offsets into data
+    int *lengths;           // -1 for NULL elements
+    char *data;
+} carray_values;
+
+typedef struct carray_cursor {
+    sqlite3_vtab_cursor base;
+    carray_values *values;
+    int row;
+} carray_cursor;
+
+static int carray_connect(sqlite3 *db, void *aux, int argc, const char *const *argv,
+                          sqlite3_vtab **vtab, char **err)
+{
+    int rc = sqlite3_declare_vtab(db, "CREATE TABLE x(value, pointer hidden)");
+    if (rc != SQLITE_OK) return rc;
+    *vtab = (sqlite3_vtab *) MEMORY_MALLOC(sizeof(sqlite3_vtab));
+    if (!*vtab) return SQLITE_NOMEM;
+    memset(*vtab, 0, sizeof(sqlite3_vtab));
+    return SQLITE_OK;
+}
+
+static int carray_disconnect(sqlite3_vtab *vtab)
+{
+    MEMORY_FREE(vtab);
+    return SQLITE_OK;
+}
+
+static int carray_best_index(sqlite3_vtab *vtab, sqlite3_index_info *info)
+{
+    int i;
+    for (i = 0; i < info->nConstraint; i++) {
+        if (info->aConstraint[i].iColumn == 1
+                && info->aConstraint[i].op == SQLITE_INDEX_CONSTRAINT_EQ
+                && info->aConstraint[i].usable) {
+            info->aConstraintUsage[i].argvIndex = 1;
+            info->aConstraintUsage[i].omit = 1;
+            info->idxNum = 1;
+            info->estimatedCost = 1;
+            info->estimatedRows = 100;
+            return SQLITE_OK;
+        }
+    }
+    info->idxNum = 0; // no array bound: no rows
+    info->estimatedCost = 2147483647;
+    info->estimatedRows = 2147483647;
+    return SQLITE_OK;
+}
+
+static int carray_open(sqlite3_vtab *vtab, sqlite3_vtab_cursor **cursor)
+{
+    carray_cursor *c = (carray_cursor *) MEMORY_MALLOC(sizeof(carray_cursor));
+    if (!c) return SQLITE_NOMEM;
+    memset(c, 0, sizeof(carray_cursor));
+    *cursor = &c->base;
+    return SQLITE_OK;
+}
+
+static int carray_close(sqlite3_vtab_cursor *cursor)
+{
+    MEMORY_FREE(cursor);
+    return SQLITE_OK;
+}
+
+static int carray_filter(sqlite3_vtab_cursor *cursor, int idxNum, const char *idxStr,
+                         int argc, sqlite3_value **argv)
+{
+    carray_cursor *c = (carray_cursor *) cursor;
+    c->values = idxNum == 1 && argc > 0 ? sqlite3_value_pointer(argv[0], CARRAY_POINTER) : NULL;
+    c->row = 0;
+    return SQLITE_OK;
+}
+
+static int carray_next(sqlite3_vtab_cursor *cursor)
+{
+    ((carray_cursor *) cursor)->row++;
+    return SQLITE_OK;
+}
+
+static int carray_eof(sqlite3_vtab_cursor *cursor)
+{
+    carray_cursor *c = (carray_cursor *) cursor;
+    return !c->values || c->row >= c->values->n;
+}
+
+static int carray_column(sqlite3_vtab_cursor *cursor, sqlite3_context *context, int col)
+{
+    carray_cursor *c = (carray_cursor *) cursor;
+    carray_values *v = c->values;
+    int i = c->row;
+
+    if (col != 0) {
+        sqlite3_result_null(context); // the hidden pointer column
+        return SQLITE_OK;
+    }
+    switch (v->type) {
+    case CARRAY_INT64:
+        sqlite3_result_int64(context, v->longs[i]);
+        break;
+    case CARRAY_DOUBLE:
+        sqlite3_result_double(context, v->doubles[i]);
+        break;
+    case CARRAY_TEXT:
+        if (v->lengths[i] < 0) sqlite3_result_null(context);
+        else sqlite3_result_text(context, v->data + v->offsets[i], v->lengths[i], SQLITE_TRANSIENT);
+        break;
+    default:
+        if (v->lengths[i] < 0) sqlite3_result_null(context);
+        else sqlite3_result_blob(context, v->data + v->offsets[i], v->lengths[i], SQLITE_TRANSIENT);
+    }
+    return SQLITE_OK;
+}
+
+static int carray_rowid(sqlite3_vtab_cursor *cursor, sqlite3_int64 *rowid)
+{
+    *rowid = ((carray_cursor *) cursor)->row + 1;
+    return SQLITE_OK;
+}
+
+static sqlite3_module carray_module = {
+    0,                  // iVersion
+    0,                  // xCreate: eponymous only
+    carray_connect,
+    carray_best_index,
+    carray_disconnect,
+    0,                  // xDestroy
+    carray_open,
+    carray_close,
+    carray_filter,
+    carray_next,
+    carray_eof,
+    carray_column,
+    carray_rowid,
+};
+
+static void carray_register(sqlite3 *db)
+{
+    // Ignore failures: queries using carray then fail to prepare.
+    sqlite3_create_module_v2(db, "carray", &carray_module, NULL, NULL);
+}
+
+/*
+ * Binds an array to a carray parameter. values is a long[] or double[], or
+ * for text and blobs the concatenated bytes of all elements, with their
+ * lengths (-1 for NULL) in lengths.
+ */
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1array0(
+    JNIEnv *env, jobject this, jlong stmt, jint pos, jint type, jobject values, jintArray lengths, jint n)
+{
+    size_t size = sizeof(carray_values);
+    jsize bytes = 0;
+    carray_values *v;
+    int i, offset;
+
+    switch (type) {
+    case CARRAY_INT64:
+        size += n * sizeof(sqlite3_int64);
+        break;
+    case CARRAY_DOUBLE:
+        size += n * sizeof(double);
+        break;
+    case CARRAY_TEXT:
+    case CARRAY_BLOB:
+        bytes = (*env)->GetArrayLength(env, values);
+        size += 2 * (n + 1) * sizeof(int) + bytes;
+        break;
+    default:
+        return SQLITE_MISUSE;
+    }
+
+    v = (carray_values *) MEMORY_MALLOC(size);
+    if (!v) return SQLITE_NOMEM;
+    memset(v, 0, sizeof(carray_values));
+    v->type = type;
+    v->n = n;
+
+    switch (type) {
+    case CARRAY_INT64:
+        v->longs = (sqlite3_int64 *) (v + 1);
+        (*env)->GetLongArrayRegion(env, values, 0, n, (jlong *) v->longs);
+        break;
+    case CARRAY_DOUBLE:
+        v->doubles = (double *) (v + 1);
+        (*env)->GetDoubleArrayRegion(env, values, 0, n, v->doubles);
+        break;
+    default:
+        v->offsets = (int *) (v + 1);
+        v->lengths = v->offsets + n + 1;
+        v->data = (char *) (v->lengths + n + 1);
+        (*env)->GetIntArrayRegion(env, lengths, 0, n, v->lengths);
+        (*env)->GetByteArrayRegion(env, values, 0, bytes, (jbyte *) v->data);
+        for (i = 0, offset = 0; i < n; i++) {
+            v->offsets[i] = offset;
+            if (v->lengths[i] > 0) offset += v->lengths[i];
+        }
+        v->offsets[n] = offset;
+    }
+
+    return sqlite3_bind_pointer(toref(stmt), pos, v, CARRAY_POINTER, MEMORY_FREE);
+}
+
 JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1open0(
     JNIEnv *env, jobject this, jobject file, jint flags, jint mode) 
 {
@@ -534,6 +1250,7 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1open0(
     if (sqlite3_open_v2(bytes, &db, flags, NULL) == SQLITE_OK) {
         // Ignore failures, as we can tolerate regular result codes.
         sqlite3_extended_result_codes(db, 1);
+        carray_register(db);
         sethandle(env, this, db);
     } else {
         throwex_code(env, sqlite3_extended_errcode(db));
@@ -627,6 +1344,236 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1exec0(
     return status;
 }
 
+static jlong monotonic_nanos(void)
+{
+#ifdef _WIN32
+    LARGE_INTEGER frequency, counter;
+    QueryPerformanceFrequency(&frequency);
+    QueryPerformanceCounter(&counter);
+    return (jlong) (counter.QuadPart / frequency.QuadPart) * 1000000000LL
+        + (jlong) (counter.QuadPart % frequency.QuadPart) * 1000000000LL / frequency.QuadPart;
+#else
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (jlong) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+#endif
+}
+
+/*
+ * Executes every statement of a script, following the tail of
+ * sqlite3_prepare_v2. Returns { start, end, changes, nanos } for each
+ * executed statement, with byte offsets into the UTF-8 script, followed by
+ * the result code: SQLITE_OK, or the error that stopped the script at the
+ * last statement.
+ */
+JNIEXPORT jlongArray JNICALL Java_org_sqlite_core_NativeDB_exec_1script0(
+    JNIEnv *env, jobject this, jobject sql, jint mode)
+{
+    sqlite3 *db = gethandle(env, this);
+    jsize length = objectLength(env, sql, mode);
+    char *bytes = (char *) MEMORY_MALLOC(length + 1);
+    jlong *results = NULL;
+    jsize count = 0, capacity = 64;
+    jlongArray array = NULL;
+    const char *head, *tail;
+    int rc = SQLITE_OK;
+
+    if (!bytes) {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+    length = objectToBytes(env, sql, length, bytes, mode);
+    results = (jlong *) MEMORY_MALLOC(capacity * sizeof(jlong));
+    if (length == -1 || !results) {
+        MEMORY_FREE(bytes);
+        MEMORY_FREE(results);
+        if (length != -1) throwex_outofmemory(env);
+        return NULL;
+    }
+
+    head = bytes;
+    while (rc == SQLITE_OK && head < bytes + length) {
+        sqlite3_stmt *stmt = NULL;
+        jlong start = monotonic_nanos();
+        int changes = sqlite3_total_changes(db);
+
+        tail = NULL;
+        rc = sqlite3_prepare_v2(db, head, (int) (bytes + length - head), &stmt, &tail);
+        if (rc == SQLITE_OK && !stmt) {
+            head = tail; // white space or comment
+            continue;
+        }
+        if (rc == SQLITE_OK) {
+            while ((rc = sqlite3_step(stmt)) == SQLITE_ROW);
+            if (rc == SQLITE_DONE) rc = SQLITE_OK;
+            sqlite3_finalize(stmt);
+        }
+        else {
+            tail = bytes + length;
+        }
+
+        if (count + 4 >= capacity) {
+            jlong *grown = (jlong *) MEMORY_REALLOC(results, (capacity <<= 1) * sizeof(jlong));
+            if (!grown) {
+                MEMORY_FREE(bytes);
+                MEMORY_FREE(results);
+                throwex_outofmemory(env);
+                return NULL;
+            }
+            results = grown;
+        }
+        results[count++] = head - bytes;
+        results[count++] = tail - bytes;
+        results[count++] = sqlite3_total_changes(db) - changes;
+        results[count++] = monotonic_nanos() - start;
+        head = tail;
+    }
+    results[count++] = rc;
+
+    array = (*env)->NewLongArray(env, count);
+    if (array) {
+        (*env)->SetLongArrayRegion(env, array, 0, count, results);
+    }
+    MEMORY_FREE(bytes);
+    MEMORY_FREE(results);
+    return array;
+}
+
+/* grows a buffer to hold at least `needed` elements of `size` bytes */
+static int ensure_capacity(void **buffer, jsize *capacity, jsize needed, size_t size)
+{
+    jsize grown = *capacity;
+    void *p;
+    if (needed <= grown) return 1;
+    while (grown < needed) grown <<= 1;
+    p = MEMORY_REALLOC(*buffer, grown * size);
+    if (!p) return 0;
+    *buffer = p;
+    *capacity = grown;
+    return 1;
+}
+
+/*
+ * Binds keys[from..to) in turn to the first parameter and steps through all
+ * rows of each. Returns { int[] rows per key + final rc, byte[] column types,
+ * long[] cells, byte[] data }: a cell holds an integer, the bits of a double,
+ * or the offset << 32 | length of text and blob values in data.
+ */
+JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_lookup0(
+    JNIEnv *env, jobject this, jlong stmt, jlongArray keys, jint from, jint to)
+{
+    sqlite3_stmt *s = toref(stmt);
+    int columns = sqlite3_column_count(s);
+    jsize nkeys = to - from, key;
+    jint *rows = (jint *) MEMORY_MALLOC((nkeys + 1) * sizeof(jint));
+    jlong *values = (jlong *) MEMORY_MALLOC(nkeys * sizeof(jlong));
+    jsize ncells = 0, cellcap = 256, ndata = 0, datacap = 1024;
+    jbyte *types = (jbyte *) MEMORY_MALLOC(cellcap);
+    jlong *cells = (jlong *) MEMORY_MALLOC(cellcap * sizeof(jlong));
+    char *data = (char *) MEMORY_MALLOC(datacap);
+    jobjectArray result = NULL;
+    jintArray rowsArray;
+    jbyteArray typesArray, dataArray;
+    jlongArray cellsArray;
+    int rc = SQLITE_DONE;
+
+    if (!rows || !values || !types || !cells || !data) {
+        goto oom;
+    }
+    (*env)->GetLongArrayRegion(env, keys, from, nkeys, values);
+
+    for (key = 0; key < nkeys; key++) {
+        int col;
+        rows[key] = 0;
+        sqlite3_reset(s);
+        rc = sqlite3_bind_int64(s, 1, values[key]);
+        if (rc != SQLITE_OK) break;
+
+        while ((rc = sqlite3_step(s)) == SQLITE_ROW) {
+            if (ncells + columns > cellcap) {
+                void *t = types, *c = cells;
+                jsize tcap = cellcap;
+                if (!ensure_capacity(&t, &tcap, ncells + columns, 1)) goto oom;
+                types = t;
+                if (!ensure_capacity(&c, &cellcap, ncells + columns, sizeof(jlong))) goto oom;
+                cells = c;
+            }
+
+            for (col = 0; col < columns; col++, ncells++) {
+                int type = sqlite3_column_type(s, col);
+                types[ncells] = (jbyte) type;
+                switch (type) {
+                case SQLITE_INTEGER:
+                    cells[ncells] = sqlite3_column_int64(s, col);
+                    break;
+                case SQLITE_FLOAT: {
+                    double d = sqlite3_column_double(s, col);
+                    memcpy(&cells[ncells], &d, sizeof(jlong));
+                    break;
+                }
+                case SQLITE_TEXT:
+                case SQLITE_BLOB: {
+                    const void *bytes = type == SQLITE_TEXT
+                        ? (const void *) sqlite3_column_text(s, col) : sqlite3_column_blob(s, col);
+                    int length = sqlite3_column_bytes(s, col);
+                    void *d = data;
+                    if (!ensure_capacity(&d, &datacap, ndata + length, 1)) goto oom;
+                    data = d;
+                    if (length > 0) memcpy(data + ndata, bytes, length);
+                    cells[ncells] = ((jlong) ndata << 32) | (jlong) length;
+                    ndata += length;
+                    break;
+                }
+                default:
+                    cells[ncells] = 0;
+                }
+            }
+            rows[key]++;
+        }
+        if (rc != SQLITE_DONE) break;
+    }
+    if (rc != SQLITE_DONE) {
+        sqlite3_reset(s);
+        nkeys = key; // keys completed before the error
+    }
+    rows[nkeys] = rc;
+
+    result = (*env)->NewObjectArray(env, 4, (*env)->FindClass(env, "java/lang/Object"), NULL);
+    rowsArray = (*env)->NewIntArray(env, nkeys + 1);
+    typesArray = (*env)->NewByteArray(env, ncells);
+    cellsArray = (*env)->NewLongArray(env, ncells);
+    dataArray = (*env)->NewByteArray(env, ndata);
+    if (result && rowsArray && typesArray && cellsArray && dataArray) {
+        (*env)->SetIntArrayRegion(env, rowsArray, 0, nkeys + 1, rows);
+        (*env)->SetByteArrayRegion(env, typesArray, 0, ncells, types);
+        (*env)->SetLongArrayRegion(env, cellsArray, 0, ncells, cells);
+        (*env)->SetByteArrayRegion(env, dataArray, 0, ndata, (jbyte *) data);
+        (*env)->SetObjectArrayElement(env, result, 0, rowsArray);
+        (*env)->SetObjectArrayElement(env, result, 1, typesArray);
+        (*env)->SetObjectArrayElement(env, result, 2, cellsArray);
+        (*env)->SetObjectArrayElement(env, result, 3, dataArray);
+    }
+    else {
+        result = NULL;
+    }
+    MEMORY_FREE(rows);
+    MEMORY_FREE(values);
+    MEMORY_FREE(types);
+    MEMORY_FREE(cells);
+    MEMORY_FREE(data);
+    return result;
+
+oom:
+    sqlite3_reset(s);
+    MEMORY_FREE(rows);
+    MEMORY_FREE(values);
+    MEMORY_FREE(types);
+    MEMORY_FREE(cells);
+    MEMORY_FREE(data);
+    throwex_outofmemory(env);
+    return NULL;
+}
+
 JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_errmsg0(
     JNIEnv *env, jobject this, jint mode) 
 {
@@ -654,6 +1601,12 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_total_1changes0(
     return sqlite3_total_changes(gethandle(env, this));
 }
 
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_last_1insert_1rowid0(
+    JNIEnv *env, jobject this)
+{
+    return sqlite3_last_insert_rowid(gethandle(env, this));
+}
+
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_finalize0(
     JNIEnv *env, jobject this, jlong stmt)
 {
@@ -690,6 +1643,12 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1count0(
     return sqlite3_column_count(toref(stmt));
 }
 
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_stmt_1reprepares0(
+    JNIEnv *env, jobject this, jlong stmt)
+{
+    return sqlite3_stmt_status(toref(stmt), SQLITE_STMTSTATUS_REPREPARE, 0);
+}
+
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1type0(
     JNIEnv *env, jobject this, jlong stmt, jint col)
 {
@@ -770,20 +1729,117 @@ JNIEXPORT jdouble JNICALL Java_org_sqlite_core_NativeDB_column_1double0(
     return sqlite3_column_double(toref(stmt), col);
 }
 
-JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_column_1long0(
-    JNIEnv *env, jobject this, jlong stmt, jint col)
+// parses count digits, -1 if one is not a digit
+static int parse_digits(const unsigned char *s, int count)
 {
-    return sqlite3_column_int64(toref(stmt), col);
+    int value = 0;
+    while (count--) {
+        if (*s < '0' || *s > '9') return -1;
+        value = value * 10 + (*s++ - '0');
+    }
+    return value;
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1int0(
-    JNIEnv *env, jobject this, jlong stmt, jint col)
+// days since 1970-01-01 in the proleptic Gregorian calendar
+static jlong days_from_civil(int y, int m, int d)
 {
-    return sqlite3_column_int(toref(stmt), col);
+    int era, yoe, doy, doe;
+    y -= m <= 2;
+    era = (y >= 0 ? y : y - 399) / 400;
+    yoe = y - era * 400;
+    doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+    doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return (jlong) era * 146097 + doe - 719468;
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1null0(
-    JNIEnv *env, jobject this, jlong stmt, jint pos)
+// same layouts and results as org.sqlite.date.FixedDateTime.parse
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_column_1datetime0(
+    JNIEnv *env, jobject this, jlong stmt, jint col)
+{
+    const jlong invalid = INT64_MIN;
+    const unsigned char *s = sqlite3_column_text(toref(stmt), col);
+    int n = sqlite3_column_bytes(toref(stmt), col);
+    int y, m, d, hh = 0, mm = 0, ss = 0, ms = 0;
+
+    if (!s || (n != 10 && n != 19 && n != 23)) return invalid;
+    if (s[4] != '-' || s[7] != '-') return invalid;
+    y = parse_digits(s, 4);
+    m = parse_digits(s + 5, 2);
+    d = parse_digits(s + 8, 2);
+    if (n >= 19) {
+        if (s[10] != ' ' || s[13] != ':' || s[16] != ':') return invalid;
+        hh = parse_digits(s + 11, 2);
+        mm = parse_digits(s + 14, 2);
+        ss = parse_digits(s + 17, 2);
+    }
+    if (n == 23) {
+        if (s[19] != '.') return invalid;
+        ms = parse_digits(s + 20, 3);
+    }
+    if (y < 1583 || m < 1 || m > 12 || d < 0 || hh < 0 || mm < 0 || ss < 0 || ms < 0) return invalid;
+    return (((days_from_civil(y, m, d) * 24 + hh) * 60 + mm) * 60 + ss) * 1000 + ms;
+}
+
+// finds the text of a column in the open addressing table of a
+// org.sqlite.core.TextCache: the slot of its key, or -(slot + 1) for the
+// free slot to store it in, or -(capacity + 1) if it cannot be cached
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1text_1find0(
+    JNIEnv *env, jobject this, jlong stmt, jint col, jobjectArray keys, jint maxBytes)
+{
+    const unsigned char *bytes;
+    jbyte key[256];
+    jsize capacity, length, i;
+    uint32_t hash = 0x811c9dc5u;
+    jint slot, probes;
+
+    capacity = (*env)->GetArrayLength(env, keys);
+    bytes = sqlite3_column_text(toref(stmt), col);
+    if (!bytes) {
+        // NULL, or out of memory which column_text0 reports
+        return -(capacity + 1);
+    }
+    length = sqlite3_column_bytes(toref(stmt), col);
+    if (length > maxBytes || length > (jsize) sizeof(key)) {
+        return -(capacity + 1);
+    }
+
+    // FNV-1a, as TextCache.hash
+    for (i = 0; i < length; i++) {
+        hash = (hash ^ bytes[i]) * 0x01000193u;
+    }
+    slot = (jint) (hash & (uint32_t) (capacity - 1));
+    for (probes = 0; probes < capacity; probes++) {
+        jbyteArray k = (jbyteArray) (*env)->GetObjectArrayElement(env, keys, slot);
+        if (!k) {
+            return -(slot + 1);
+        }
+        if ((*env)->GetArrayLength(env, k) == length) {
+            (*env)->GetByteArrayRegion(env, k, 0, length, key);
+            if (memcmp(key, bytes, length) == 0) {
+                (*env)->DeleteLocalRef(env, k);
+                return slot;
+            }
+        }
+        (*env)->DeleteLocalRef(env, k);
+        slot = (slot + 1) & (capacity - 1);
+    }
+    return -(capacity + 1);
+}
+
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_column_1long0(
+    JNIEnv *env, jobject this, jlong stmt, jint col)
+{
+    return sqlite3_column_int64(toref(stmt), col);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1int0(
+    JNIEnv *env, jobject this, jlong stmt, jint col)
+{
+    return sqlite3_column_int(toref(stmt), col);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1null0(
+    JNIEnv *env, jobject this, jlong stmt, jint pos)
 {
     return sqlite3_bind_null(toref(stmt), pos);
 }
@@ -868,6 +1924,7 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_result_1text0(
         } else {
             sqlite3_result_text(toref(context), bytes, length, SQLITE_TRANSIENT);
         }
+        return;
     }
 #endif
     char* bytes = MEMORY_MALLOC(length + 1);
@@ -1002,6 +2059,8 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1function0(
     isAgg = (*env)->IsInstanceOf(env, func, aclass);
     isWindow = (*env)->IsInstanceOf(env, func, wclass);
     udf->func = (*env)->NewGlobalRef(env, func);
+    udf->method = 0;
+    udf->release = 0;
     (*env)->GetJavaVM(env, &udf->vm);
 
     // add new function def to linked list
@@ -1039,6 +2098,131 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1function0(
     }
 }
 
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1typed_1function0(
+    JNIEnv *env, jobject this, jobject name, jobject func, jint kind, jint flags, jint mode)
+{
+    static jfieldID udfdatalist = 0;
+    const char *iface, *signature;
+    void (*call)(sqlite3_context*, int, sqlite3_value**);
+    int nArgs;
+    jclass clazz;
+    struct UDFData *udf;
+
+    switch (kind) {
+    case UDF_LONG_UNARY:
+        iface = "org/sqlite/LongUnaryFunction"; signature = "(J)J"; call = &xLongUnary; nArgs = 1;
+        break;
+    case UDF_DOUBLE_BINARY:
+        iface = "org/sqlite/DoubleBinaryFunction"; signature = "(DD)D"; call = &xDoubleBinary; nArgs = 2;
+        break;
+    case UDF_TEXT:
+        iface = "org/sqlite/TextFunction"; signature = "(Ljava/lang/String;)Ljava/lang/String;"; call = &xText; nArgs = 1;
+        break;
+    default:
+        return SQLITE_MISUSE;
+    }
+
+    clazz = (*env)->FindClass(env, iface);
+    if (!clazz) return SQLITE_ERROR;
+
+    udf = MEMORY_MALLOC(sizeof(struct UDFData));
+    if (!udf) { throwex_outofmemory(env); return 0; }
+
+    if (!udfdatalist)
+        udfdatalist = (*env)->GetFieldID(env, dbclass, "udfdatalist", "J");
+
+    udf->func = (*env)->NewGlobalRef(env, func);
+    udf->method = (*env)->GetMethodID(env, clazz, "apply", signature);
+    udf->release = 0;
+    (*env)->GetJavaVM(env, &udf->vm);
+
+    // add new function def to linked list
+    udf->next = toref((*env)->GetLongField(env, this, udfdatalist));
+    (*env)->SetLongField(env, this, udfdatalist, fromref(udf));
+
+    jsize length = objectLength(env, name, mode);
+    char bytes[length + 1];
+    length = objectToBytes(env, name, length, bytes, mode);
+
+    return sqlite3_create_function(
+            gethandle(env, this),
+            bytes,                 // function name
+            nArgs,                 // number of args
+            SQLITE_UTF8 | flags,   // preferred chars
+            udf,
+            call,
+            0,
+            0
+    );
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1aggregate0(
+    JNIEnv *env, jobject this, jobject name, jobject func, jint nlongs, jint ndoubles, jint batch,
+    jboolean window, jint flags, jint mode)
+{
+    static jfieldID udfdatalist = 0;
+    static jclass pclass = 0, pwclass = 0;
+    struct PrimitiveAggData *agg;
+
+    if (!pclass) {
+        pclass = (*env)->FindClass(env, "org/sqlite/PrimitiveAggregate");
+        if (!pclass) return SQLITE_ERROR;
+        pclass = (*env)->NewGlobalRef(env, pclass);
+        pwclass = (*env)->FindClass(env, "org/sqlite/PrimitiveAggregate$Window");
+        if (!pwclass) return SQLITE_ERROR;
+        pwclass = (*env)->NewGlobalRef(env, pwclass);
+    }
+
+    agg = MEMORY_MALLOC(sizeof(struct PrimitiveAggData));
+    if (!agg) { throwex_outofmemory(env); return 0; }
+
+    if (!udfdatalist)
+        udfdatalist = (*env)->GetFieldID(env, dbclass, "udfdatalist", "J");
+
+    agg->udf.func = (*env)->NewGlobalRef(env, func);
+    agg->udf.method = 0;
+    agg->udf.release = &agg_release;
+    (*env)->GetJavaVM(env, &agg->udf.vm);
+    agg->step = (*env)->GetMethodID(env, pclass, "step", "([J[D[DI)V");
+    agg->value = (*env)->GetMethodID(env, pclass, "value", "([J[D)Ljava/lang/Object;");
+    agg->inverse = window ? (*env)->GetMethodID(env, pwclass, "inverse", "([J[D[DI)V") : 0;
+    agg->nlongs = nlongs;
+    agg->ndoubles = ndoubles;
+    agg->batch = batch;
+    agg->longs = (*env)->NewLongArray(env, nlongs);
+    agg->doubles = (*env)->NewDoubleArray(env, ndoubles);
+    agg->values = (*env)->NewDoubleArray(env, batch);
+    if (!agg->longs || !agg->doubles || !agg->values) {
+        (*env)->DeleteGlobalRef(env, agg->udf.func);
+        MEMORY_FREE(agg);
+        return SQLITE_NOMEM;
+    }
+    agg->longs = (*env)->NewGlobalRef(env, agg->longs);
+    agg->doubles = (*env)->NewGlobalRef(env, agg->doubles);
+    agg->values = (*env)->NewGlobalRef(env, agg->values);
+
+    // add new function def to linked list
+    agg->udf.next = toref((*env)->GetLongField(env, this, udfdatalist));
+    (*env)->SetLongField(env, this, udfdatalist, fromref(agg));
+
+    jsize length = objectLength(env, name, mode);
+    char bytes[length + 1];
+    length = objectToBytes(env, name, length, bytes, mode);
+
+    return sqlite3_create_window_function(
+            gethandle(env, this),
+            bytes,                 // function name
+            1,                     // number of args
+            SQLITE_UTF8 | flags,   // preferred chars
+            agg,
+            &xPrimitiveStep,
+            &xPrimitiveValue,
+            window ? &xPrimitiveValue : 0,
+            window ? &xPrimitiveInverse : 0,
+            0
+    );
+}
+
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_destroy_1function0(
     JNIEnv *env, jobject this, jobject name, jint nArgs, jint mode)
 {
@@ -1065,6 +2249,7 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_free_1functions0(
 
     while (udf) {
         udfpass = udf->next;
+        if (udf->release) udf->release(env, udf);
         (*env)->DeleteGlobalRef(env, udf->func);
         MEMORY_FREE(udf);
         udf = udfpass;
@@ -1077,6 +2262,1279 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_limit0(
     return sqlite3_limit(gethandle(env, this), id, value);
 }
 
+// VIRTUAL TABLES ///////////////////////////////////////////////////
+
+/*
+ * Tables of a module implemented in Java (org.sqlite.vtab). Rows are passed
+ * from a Java cursor in batches: RowBatch.fill adds up to batchSize rows to
+ * primitive arrays, which are copied to the native cursor in one go, and
+ * xNext, xEof, xColumn and xRowid are then served natively until the batch
+ * is consumed.
+ */
+
+struct JavaModule {
+    JavaVM *vm;
+    jobject module;
+};
+
+typedef struct java_vtab {
+    sqlite3_vtab base;
+    JavaVM *vm;
+    jobject table;
+    int columns, batch;
+} java_vtab;
+
+typedef struct java_cursor {
+    sqlite3_vtab_cursor base;
+    jobject cursor, rows;   // VirtualCursor and its RowBatch
+    int row, size;          // current row and number of rows of the batch
+    jbyte *types;
+    jlong *cells, *rowids;
+    char *data;
+    jsize ndata;
+} java_cursor;
+
+static struct {
+    jclass longclass, doubleclass, objectclass, stringclass, infoclass, batchclass;
+    jmethodID connect, schema, columnCount, batchSize, bestIndex, open, tableClose;
+    jmethodID filter, cursorClose, newInfo, newBatch, fill, longOf, doubleOf;
+    jfieldID argvIndex, omit, indexNumber, indexString, orderByConsumed, estimatedCost, estimatedRows;
+    jfieldID types, cells, rowids, data, dataLength;
+} vt;
+
+static int vtab_init(JNIEnv *env)
+{
+    jclass c;
+    if (vt.batchclass) return 1;
+
+#define VT_CLASS(field, name) \
+    if (!(c = (*env)->FindClass(env, name))) return 0; \
+    vt.field = (*env)->NewGlobalRef(env, c)
+
+    VT_CLASS(longclass, "java/lang/Long");
+    VT_CLASS(doubleclass, "java/lang/Double");
+    VT_CLASS(objectclass, "java/lang/Object");
+    VT_CLASS(stringclass, "java/lang/String");
+    VT_CLASS(infoclass, "org/sqlite/vtab/IndexInfo");
+    vt.longOf = (*env)->GetStaticMethodID(env, vt.longclass, "valueOf", "(J)Ljava/lang/Long;");
+    vt.doubleOf = (*env)->GetStaticMethodID(env, vt.doubleclass, "valueOf", "(D)Ljava/lang/Double;");
+    vt.newInfo = (*env)->GetMethodID(env, vt.infoclass, "<init>", "([I[IJDJ)V");
+    vt.argvIndex = (*env)->GetFieldID(env, vt.infoclass, "argvIndex", "[I");
+    vt.omit = (*env)->GetFieldID(env, vt.infoclass, "omit", "[Z");
+    vt.indexNumber = (*env)->GetFieldID(env, vt.infoclass, "indexNumber", "I");
+    vt.indexString = (*env)->GetFieldID(env, vt.infoclass, "indexString", "Ljava/lang/String;");
+    vt.orderByConsumed = (*env)->GetFieldID(env, vt.infoclass, "orderByConsumed", "Z");
+    vt.estimatedCost = (*env)->GetFieldID(env, vt.infoclass, "estimatedCost", "D");
+    vt.estimatedRows = (*env)->GetFieldID(env, vt.infoclass, "estimatedRows", "J");
+
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vtab/Module"))) return 0;
+    vt.connect = (*env)->GetMethodID(env, c, "connect",
+        "(Ljava/lang/String;[Ljava/lang/String;)Lorg/sqlite/vtab/VirtualTable;");
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vtab/VirtualTable"))) return 0;
+    vt.schema = (*env)->GetMethodID(env, c, "schema", "()Ljava/lang/String;");
+    vt.columnCount = (*env)->GetMethodID(env, c, "columnCount", "()I");
+    vt.batchSize = (*env)->GetMethodID(env, c, "batchSize", "()I");
+    vt.bestIndex = (*env)->GetMethodID(env, c, "bestIndex", "(Lorg/sqlite/vtab/IndexInfo;)V");
+    vt.open = (*env)->GetMethodID(env, c, "open", "()Lorg/sqlite/vtab/VirtualCursor;");
+    vt.tableClose = (*env)->GetMethodID(env, c, "close", "()V");
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vtab/VirtualCursor"))) return 0;
+    vt.filter = (*env)->GetMethodID(env, c, "filter", "(ILjava/lang/String;[Ljava/lang/Object;)V");
+    vt.cursorClose = (*env)->GetMethodID(env, c, "close", "()V");
+
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vtab/RowBatch"))) return 0;
+    vt.newBatch = (*env)->GetMethodID(env, c, "<init>", "(II)V");
+    vt.fill = (*env)->GetMethodID(env, c, "fill", "(Lorg/sqlite/vtab/VirtualCursor;)I");
+    vt.types = (*env)->GetFieldID(env, c, "types", "[B");
+    vt.cells = (*env)->GetFieldID(env, c, "cells", "[J");
+    vt.rowids = (*env)->GetFieldID(env, c, "rowids", "[J");
+    vt.data = (*env)->GetFieldID(env, c, "data", "[B");
+    vt.dataLength = (*env)->GetFieldID(env, c, "dataLength", "I");
+    vt.batchclass = (*env)->NewGlobalRef(env, c); // last: marks the table as initialised
+#undef VT_CLASS
+    return vt.batchclass != 0;
+}
+
+static JNIEnv * vm_env(JavaVM *vm)
+{
+    JNIEnv *env = 0;
+    if ((*vm)->GetEnv(vm, (void **)&env, JNI_VERSION_1_2) != JNI_OK) {
+        (*vm)->AttachCurrentThread(vm, (void **)&env, 0);
+    }
+    return env;
+}
+
+/* clears the pending exception and returns its message, allocated with sqlite3_malloc */
+static char * vtab_exception(JNIEnv *env)
+{
+    static jmethodID exp_msg = 0;
+    jthrowable ex = (*env)->ExceptionOccurred(env);
+    jstring msg;
+    char *err;
+
+    (*env)->ExceptionClear(env);
+    if (!exp_msg) {
+        jclass exclass = (*env)->FindClass(env, "java/lang/Throwable");
+        exp_msg = (*env)->GetMethodID(env, exclass, "toString", "()Ljava/lang/String;");
+        (*env)->DeleteLocalRef(env, exclass);
+    }
+    msg = ex ? (jstring)(*env)->CallObjectMethod(env, ex, exp_msg) : 0;
+    if (!msg) {
+        (*env)->ExceptionClear(env);
+        return sqlite3_mprintf("unknown error");
+    }
+
+    jsize length = objectLength(env, msg, STRING);
+    char bytes[length + 1];
+    length = objectToBytes(env, msg, length, bytes, STRING);
+    err = length < 0 ? 0 : sqlite3_mprintf("%.*s", (int) length, bytes);
+    (*env)->DeleteLocalRef(env, msg);
+    (*env)->DeleteLocalRef(env, ex);
+    return err;
+}
+
+/* reports the pending exception as the error of a table */
+static int vtab_error(JNIEnv *env, sqlite3_vtab *vtab)
+{
+    sqlite3_free(vtab->zErrMsg);
+    vtab->zErrMsg = vtab_exception(env);
+    return vtab->zErrMsg ? SQLITE_ERROR : SQLITE_NOMEM;
+}
+
+static jobject vtab_value(JNIEnv *env, sqlite3_value *value)
+{
+    switch (sqlite3_value_type(value)) {
+    case SQLITE_INTEGER:
+        return (*env)->CallStaticObjectMethod(env, vt.longclass, vt.longOf, (jlong) sqlite3_value_int64(value));
+    case SQLITE_FLOAT:
+        return (*env)->CallStaticObjectMethod(env, vt.doubleclass, vt.doubleOf, (jdouble) sqlite3_value_double(value));
+    case SQLITE_TEXT:
+        return bytesToObject(env, (const char *) sqlite3_value_text(value), sqlite3_value_bytes(value), STRING);
+    case SQLITE_BLOB:
+        return bytesToArray(env, sqlite3_value_blob(value), sqlite3_value_bytes(value));
+    default:
+        return 0;
+    }
+}
+
+/* connects a table; the local references are freed by the frame of vtab_connect */
+static int vtab_connect_frame(JNIEnv *env, sqlite3 *db, struct JavaModule *module, int argc,
+                              const char *const *argv, sqlite3_vtab **vtab, char **err)
+{
+    jobject name, args, table, schema;
+    java_vtab *v;
+    int i, rc;
+
+    name = bytesToObject(env, argv[2], strlen(argv[2]), STRING);
+    args = name ? (*env)->NewObjectArray(env, argc - 3, vt.stringclass, 0) : 0;
+    for (i = 3; args && i < argc; i++) {
+        jobject arg = bytesToObject(env, argv[i], strlen(argv[i]), STRING);
+        if (!arg) break;
+        (*env)->SetObjectArrayElement(env, args, i - 3, arg);
+        (*env)->DeleteLocalRef(env, arg);
+    }
+    table = args && i == argc ? (*env)->CallObjectMethod(env, module->module, vt.connect, name, args) : 0;
+    if (!table && !(*env)->ExceptionCheck(env)) {
+        *err = sqlite3_mprintf("no table returned by module %s", argv[0]);
+        return SQLITE_ERROR;
+    }
+    schema = table ? (*env)->CallObjectMethod(env, table, vt.schema) : 0;
+    if ((*env)->ExceptionCheck(env)) {
+        *err = vtab_exception(env);
+        return SQLITE_ERROR;
+    }
+
+    jsize length = objectLength(env, schema, STRING);
+    char bytes[length + 1];
+    length = objectToBytes(env, schema, length, bytes, STRING);
+    if (length < 0) return SQLITE_NOMEM;
+    bytes[length] = '\0';
+    rc = sqlite3_declare_vtab(db, bytes);
+    if (rc != SQLITE_OK) return rc;
+
+    v = (java_vtab *) sqlite3_malloc(sizeof(java_vtab));
+    if (!v) return SQLITE_NOMEM;
+    memset(v, 0, sizeof(java_vtab));
+    v->vm = module->vm;
+    v->columns = (*env)->CallIntMethod(env, table, vt.columnCount);
+    v->batch = (*env)->CallIntMethod(env, table, vt.batchSize);
+    if ((*env)->ExceptionCheck(env) || v->batch < 1) {
+        *err = (*env)->ExceptionCheck(env) ? vtab_exception(env) : sqlite3_mprintf("invalid batch size: %d", v->batch);
+        sqlite3_free(v);
+        return SQLITE_ERROR;
+    }
+    v->table = (*env)->NewGlobalRef(env, table);
+    *vtab = &v->base;
+    return SQLITE_OK;
+}
+
+static int vtab_connect(sqlite3 *db, void *aux, int argc, const char *const *argv,
+                        sqlite3_vtab **vtab, char **err)
+{
+    struct JavaModule *module = (struct JavaModule *) aux;
+    JNIEnv *env = vm_env(module->vm);
+    int rc;
+
+    // the callback may run outside of a Java call, which would keep its
+    // local references alive: free them all, on every path, with a frame
+    if ((*env)->PushLocalFrame(env, 16) < 0) {
+        (*env)->ExceptionClear(env);
+        return SQLITE_NOMEM;
+    }
+    rc = vtab_connect_frame(env, db, module, argc, argv, vtab, err);
+    (*env)->PopLocalFrame(env, 0);
+    return rc;
+}
+
+static int vtab_disconnect(sqlite3_vtab *vtab)
+{
+    java_vtab *v = (java_vtab *) vtab;
+    JNIEnv *env = vm_env(v->vm);
+
+    (*env)->CallVoidMethod(env, v->table, vt.tableClose);
+    if ((*env)->ExceptionCheck(env)) (*env)->ExceptionClear(env); // the table is gone either way
+    (*env)->DeleteGlobalRef(env, v->table);
+    sqlite3_free(v->base.zErrMsg);
+    sqlite3_free(v);
+    return SQLITE_OK;
+}
+
+static int vtab_best_index(sqlite3_vtab *vtab, sqlite3_index_info *info)
+{
+    java_vtab *v = (java_vtab *) vtab;
+    JNIEnv *env = vm_env(v->vm);
+    jintArray constraints, orderBys, argvIndex;
+    jbooleanArray omit;
+    jobject jinfo, idxStr;
+    int i;
+
+    constraints = (*env)->NewIntArray(env, info->nConstraint * 3);
+    orderBys = (*env)->NewIntArray(env, info->nOrderBy * 2);
+    if (!constraints || !orderBys) {
+        (*env)->ExceptionClear(env);
+        if (constraints) (*env)->DeleteLocalRef(env, constraints);
+        if (orderBys) (*env)->DeleteLocalRef(env, orderBys);
+        return SQLITE_NOMEM;
+    }
+    {
+        jint c[info->nConstraint * 3 + 1], o[info->nOrderBy * 2 + 1];
+        for (i = 0; i < info->nConstraint; i++) {
+            c[i * 3] = info->aConstraint[i].iColumn;
+            c[i * 3 + 1] = info->aConstraint[i].op;
+            c[i * 3 + 2] = info->aConstraint[i].usable;
+        }
+        for (i = 0; i < info->nOrderBy; i++) {
+            o[i * 2] = info->aOrderBy[i].iColumn;
+            o[i * 2 + 1] = info->aOrderBy[i].desc;
+        }
+        (*env)->SetIntArrayRegion(env, constraints, 0, info->nConstraint * 3, c);
+        (*env)->SetIntArrayRegion(env, orderBys, 0, info->nOrderBy * 2, o);
+    }
+
+    jinfo = (*env)->NewObject(env, vt.infoclass, vt.newInfo, constraints, orderBys,
+        (jlong) info->colUsed, (jdouble) info->estimatedCost, (jlong) info->estimatedRows);
+    (*env)->DeleteLocalRef(env, constraints);
+    (*env)->DeleteLocalRef(env, orderBys);
+    if (jinfo) (*env)->CallVoidMethod(env, v->table, vt.bestIndex, jinfo);
+    if ((*env)->ExceptionCheck(env)) {
+        if (jinfo) (*env)->DeleteLocalRef(env, jinfo);
+        return vtab_error(env, vtab);
+    }
+
+    argvIndex = (*env)->GetObjectField(env, jinfo, vt.argvIndex);
+    omit = (*env)->GetObjectField(env, jinfo, vt.omit);
+    {
+        jint a[info->nConstraint + 1];
+        jboolean b[info->nConstraint + 1];
+        (*env)->GetIntArrayRegion(env, argvIndex, 0, info->nConstraint, a);
+        (*env)->GetBooleanArrayRegion(env, omit, 0, info->nConstraint, b);
+        for (i = 0; i < info->nConstraint; i++) {
+            info->aConstraintUsage[i].argvIndex = a[i];
+            info->aConstraintUsage[i].omit = b[i];
+        }
+    }
+    (*env)->DeleteLocalRef(env, argvIndex);
+    (*env)->DeleteLocalRef(env, omit);
+
+    info->idxNum = (*env)->GetIntField(env, jinfo, vt.indexNumber);
+    info->orderByConsumed = (*env)->GetBooleanField(env, jinfo, vt.orderByConsumed);
+    info->estimatedCost = (*env)->GetDoubleField(env, jinfo, vt.estimatedCost);
+    info->estimatedRows = (*env)->GetLongField(env, jinfo, vt.estimatedRows);
+    idxStr = (*env)->GetObjectField(env, jinfo, vt.indexString);
+    (*env)->DeleteLocalRef(env, jinfo);
+    if (idxStr) {
+        jsize length = objectLength(env, idxStr, STRING);
+        char bytes[length + 1];
+        length = objectToBytes(env, idxStr, length, bytes, STRING);
+        (*env)->DeleteLocalRef(env, idxStr);
+        if (length < 0) return SQLITE_NOMEM;
+        info->idxStr = sqlite3_mprintf("%.*s", (int) length, bytes);
+        if (!info->idxStr) return SQLITE_NOMEM;
+        info->needToFreeIdxStr = 1;
+    }
+    return SQLITE_OK;
+}
+
+static int vtab_open(sqlite3_vtab *vtab, sqlite3_vtab_cursor **cursor)
+{
+    java_vtab *v = (java_vtab *) vtab;
+    JNIEnv *env = vm_env(v->vm);
+    jobject cur, rows;
+    java_cursor *c;
+
+    cur = (*env)->CallObjectMethod(env, v->table, vt.open);
+    if ((*env)->ExceptionCheck(env)) return vtab_error(env, vtab);
+    if (!cur) {
+        sqlite3_free(vtab->zErrMsg);
+        vtab->zErrMsg = sqlite3_mprintf("no cursor returned by table");
+        return SQLITE_ERROR;
+    }
+    rows = (*env)->NewObject(env, vt.batchclass, vt.newBatch, v->columns, v->batch);
+    if (!rows) {
+        (*env)->DeleteLocalRef(env, cur);
+        return vtab_error(env, vtab);
+    }
+
+    c = (java_cursor *) sqlite3_malloc(sizeof(java_cursor));
+    if (c) {
+        memset(c, 0, sizeof(java_cursor));
+        c->ndata = 256;
+        c->types = MEMORY_MALLOC(v->columns * v->batch * sizeof(jbyte));
+        c->cells = MEMORY_MALLOC(v->columns * v->batch * sizeof(jlong));
+        c->rowids = MEMORY_MALLOC(v->batch * sizeof(jlong));
+        c->data = MEMORY_MALLOC(c->ndata);
+    }
+    if (!c || !c->types || !c->cells || !c->rowids || !c->data) {
+        if (c) {
+            MEMORY_FREE(c->types);
+            MEMORY_FREE(c->cells);
+            MEMORY_FREE(c->rowids);
+            MEMORY_FREE(c->data);
+            sqlite3_free(c);
+        }
+        (*env)->DeleteLocalRef(env, cur);
+        (*env)->DeleteLocalRef(env, rows);
+        return SQLITE_NOMEM;
+    }
+    c->cursor = (*env)->NewGlobalRef(env, cur);
+    c->rows = (*env)->NewGlobalRef(env, rows);
+    (*env)->DeleteLocalRef(env, cur);
+    (*env)->DeleteLocalRef(env, rows);
+    *cursor = &c->base;
+    return SQLITE_OK;
+}
+
+static int vtab_close(sqlite3_vtab_cursor *cursor)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    JNIEnv *env = vm_env(((java_vtab *) cursor->pVtab)->vm);
+
+    (*env)->CallVoidMethod(env, c->cursor, vt.cursorClose);
+    if ((*env)->ExceptionCheck(env)) (*env)->ExceptionClear(env);
+    (*env)->DeleteGlobalRef(env, c->cursor);
+    (*env)->DeleteGlobalRef(env, c->rows);
+    MEMORY_FREE(c->types);
+    MEMORY_FREE(c->cells);
+    MEMORY_FREE(c->rowids);
+    MEMORY_FREE(c->data);
+    sqlite3_free(c);
+    return SQLITE_OK;
+}
+
+/* replaces the rows of the cursor with the next batch of the Java cursor */
+static int vtab_fill(JNIEnv *env, java_cursor *c)
+{
+    java_vtab *v = (java_vtab *) c->base.pVtab;
+    jobject array;
+    jint size, length;
+
+    c->row = c->size = 0;
+    size = (*env)->CallIntMethod(env, c->rows, vt.fill, c->cursor);
+    if ((*env)->ExceptionCheck(env)) return vtab_error(env, &v->base);
+    if (size <= 0) return SQLITE_OK;
+
+    array = (*env)->GetObjectField(env, c->rows, vt.types);
+    (*env)->GetByteArrayRegion(env, array, 0, size * v->columns, c->types);
+    (*env)->DeleteLocalRef(env, array);
+    array = (*env)->GetObjectField(env, c->rows, vt.cells);
+    (*env)->GetLongArrayRegion(env, array, 0, size * v->columns, c->cells);
+    (*env)->DeleteLocalRef(env, array);
+    array = (*env)->GetObjectField(env, c->rows, vt.rowids);
+    (*env)->GetLongArrayRegion(env, array, 0, size, c->rowids);
+    (*env)->DeleteLocalRef(env, array);
+
+    length = (*env)->GetIntField(env, c->rows, vt.dataLength);
+    if (length > 0) {
+        if (!ensure_capacity((void **) &c->data, &c->ndata, length, 1)) return SQLITE_NOMEM;
+        array = (*env)->GetObjectField(env, c->rows, vt.data);
+        (*env)->GetByteArrayRegion(env, array, 0, length, (jbyte *) c->data);
+        (*env)->DeleteLocalRef(env, array);
+    }
+    c->size = size;
+    return SQLITE_OK;
+}
+
+static int vtab_filter(sqlite3_vtab_cursor *cursor, int idxNum, const char *idxStr,
+                       int argc, sqlite3_value **argv)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    JNIEnv *env = vm_env(((java_vtab *) cursor->pVtab)->vm);
+    jobject args, str = 0;
+    int i;
+
+    c->row = c->size = 0;
+    args = (*env)->NewObjectArray(env, argc, vt.objectclass, 0);
+    for (i = 0; args && i < argc; i++) {
+        jobject arg = vtab_value(env, argv[i]);
+        if ((*env)->ExceptionCheck(env)) break;
+        (*env)->SetObjectArrayElement(env, args, i, arg);
+        if (arg) (*env)->DeleteLocalRef(env, arg);
+    }
+    if (idxStr && args && !(*env)->ExceptionCheck(env)) {
+        str = bytesToObject(env, idxStr, strlen(idxStr), STRING);
+    }
+    if (!(*env)->ExceptionCheck(env)) {
+        (*env)->CallVoidMethod(env, c->cursor, vt.filter, idxNum, str, args);
+    }
+    if (str) (*env)->DeleteLocalRef(env, str);
+    if (args) (*env)->DeleteLocalRef(env, args);
+    if ((*env)->ExceptionCheck(env)) return vtab_error(env, cursor->pVtab);
+    return vtab_fill(env, c);
+}
+
+static int vtab_next(sqlite3_vtab_cursor *cursor)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    java_vtab *v = (java_vtab *) cursor->pVtab;
+
+    if (++c->row < c->size) return SQLITE_OK;
+    if (c->size < v->batch) return SQLITE_OK; // a partial batch ends the scan
+    return vtab_fill(vm_env(v->vm), c);
+}
+
+static int vtab_eof(sqlite3_vtab_cursor *cursor)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    return c->row >= c->size;
+}
+
+static int vtab_column(sqlite3_vtab_cursor *cursor, sqlite3_context *context, int col)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    int cell = c->row * ((java_vtab *) cursor->pVtab)->columns + col;
+    jlong value = c->cells[cell];
+    double d;
+
+    switch (c->types[cell]) {
+    case 1: // RowBatch.INTEGER
+        sqlite3_result_int64(context, value);
+        break;
+    case 2: // RowBatch.FLOAT
+        memcpy(&d, &value, sizeof(d));
+        sqlite3_result_double(context, d);
+        break;
+    case 3: // RowBatch.TEXT
+        sqlite3_result_text(context, c->data + (value >> 32), (int) (value & 0xFFFFFFFF), SQLITE_TRANSIENT);
+        break;
+    case 4: // RowBatch.BLOB
+        sqlite3_result_blob(context, c->data + (value >> 32), (int) (value & 0xFFFFFFFF), SQLITE_TRANSIENT);
+        break;
+    default:
+        sqlite3_result_null(context);
+    }
+    return SQLITE_OK;
+}
+
+static int vtab_rowid(sqlite3_vtab_cursor *cursor, sqlite3_int64 *rowid)
+{
+    java_cursor *c = (java_cursor *) cursor;
+    *rowid = c->rowids[c->row];
+    return SQLITE_OK;
+}
+
+static sqlite3_module java_module = {
+    0,                  // iVersion
+    vtab_connect,       // xCreate: same as xConnect, so tables are also eponymous
+    vtab_connect,
+    vtab_best_index,
+    vtab_disconnect,
+    vtab_disconnect,    // xDestroy
+    vtab_open,
+    vtab_close,
+    vtab_filter,
+    vtab_next,
+    vtab_eof,
+    vtab_column,
+    vtab_rowid,
+};
+
+static void vtab_module_free(void *aux)
+{
+    struct JavaModule *module = (struct JavaModule *) aux;
+    JNIEnv *env = vm_env(module->vm);
+    (*env)->DeleteGlobalRef(env, module->module);
+    MEMORY_FREE(module);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1module0(
+    JNIEnv *env, jobject this, jobject name, jobject module, jint mode)
+{
+    struct JavaModule *m;
+
+    if (!vtab_init(env)) return SQLITE_ERROR;
+
+    m = MEMORY_MALLOC(sizeof(struct JavaModule));
+    if (!m) { throwex_outofmemory(env); return 0; }
+    (*env)->GetJavaVM(env, &m->vm);
+    m->module = (*env)->NewGlobalRef(env, module);
+
+    jsize length = objectLength(env, name, mode);
+    char bytes[length + 1];
+    length = objectToBytes(env, name, length, bytes, mode);
+
+    // on failure the module is freed with vtab_module_free
+    return sqlite3_create_module_v2(gethandle(env, this), bytes, &java_module, m, &vtab_module_free);
+}
+
+// COLLATIONS ///////////////////////////////////////////////////////
+
+/*
+ * Collating sequences registered with org.sqlite.Collation. The built-in
+ * kinds compare UTF-8 bytes natively. COLLATION_SORT_KEY compares the sort
+ * keys of a java.text.Collator, computed once per string and kept in a
+ * direct-mapped cache, so only cache misses call Java.
+ * COLLATION_COMPARATOR calls Comparator.compare for every comparison.
+ */
+
+#define COLLATION_NATURAL    1
+#define COLLATION_FOLDED     2
+#define COLLATION_COMPARATOR 16
+#define COLLATION_SORT_KEY   32
+
+#define SORT_KEY_CACHE 2048 // entries, a power of two
+
+struct SortKey {
+    unsigned int hash;
+    int length;     // of the string
+    int keyLength;
+    char bytes[];   // the string, followed by its sort key
+};
+
+struct CollationData {
+    JavaVM *vm;
+    jobject collation;  // Comparator or Collator
+    jclass helper;      // org.sqlite.Collation, for sort keys
+    jmethodID method;
+    int kind;
+    struct SortKey **keys;
+};
+
+#define IS_DIGIT(c) ((c) >= '0' && (c) <= '9')
+#define FOLD(c) ((c) >= 'A' && (c) <= 'Z' ? (c) + 32 : (c))
+
+static int natural_compare(int kind, const unsigned char *a, int na, const unsigned char *b, int nb)
+{
+    int i = 0, j = 0, tie = 0;
+
+    while (i < na && j < nb) {
+        int ca = a[i], cb = b[j];
+        if ((kind & COLLATION_NATURAL) && IS_DIGIT(ca) && IS_DIGIT(cb)) {
+            int si = i, sj = j, ei, ej, c;
+            while (i < na && a[i] == '0') i++;
+            while (j < nb && b[j] == '0') j++;
+            for (ei = i; ei < na && IS_DIGIT(a[ei]); ei++);
+            for (ej = j; ej < nb && IS_DIGIT(b[ej]); ej++);
+            if (ei - i != ej - j) return (ei - i) - (ej - j); // more significant digits
+            c = memcmp(a + i, b + j, ei - i);
+            if (c) return c;
+            if (!tie) tie = (i - si) - (j - sj);              // fewer leading zeros first
+            i = ei;
+            j = ej;
+            continue;
+        }
+        if (kind & COLLATION_FOLDED) {
+            if (!tie) tie = ca - cb;                          // upper case first
+            ca = FOLD(ca);
+            cb = FOLD(cb);
+        }
+        if (ca != cb) return ca - cb;
+        i++;
+        j++;
+    }
+    if (i < na || j < nb) return (i < na) - (j < nb);         // prefix first
+    return tie;
+}
+
+static jobject collation_string(JNIEnv *env, const char *bytes, int length)
+{
+    // bytesToObject expects NUL terminated strings
+    jobject s;
+    char *copy = MEMORY_MALLOC(length + 1);
+    if (!copy) return 0;
+    memcpy(copy, bytes, length);
+    copy[length] = '\0';
+    s = bytesToObject(env, copy, length, STRING);
+    MEMORY_FREE(copy);
+    return s;
+}
+
+/*
+ * Returns the cached sort key of a string, computing it on a miss. The entry
+ * of `pinned` is not evicted: a colliding string then gets a temporary entry
+ * that the caller frees.
+ */
+static struct SortKey * sort_key(JNIEnv *env, struct CollationData *coll, const char *bytes, int length,
+                                 struct SortKey *pinned, int *temporary)
+{
+    unsigned int hash = 2166136261u;
+    struct SortKey **slot, *key;
+    jobject s, array;
+    jsize keyLength;
+    int i;
+
+    for (i = 0; i < length; i++) hash = (hash ^ (unsigned char) bytes[i]) * 16777619u;
+    slot = &coll->keys[hash & (SORT_KEY_CACHE - 1)];
+    key = *slot;
+    *temporary = 0;
+    if (key && key->hash == hash && key->length == length && !memcmp(key->bytes, bytes, length)) {
+        return key;
+    }
+
+    s = collation_string(env, bytes, length);
+    array = s ? (*env)->CallStaticObjectMethod(env, coll->helper, coll->method, coll->collation, s) : 0;
+    if (s) (*env)->DeleteLocalRef(env, s);
+    if (!array || (*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        return 0;
+    }
+    keyLength = (*env)->GetArrayLength(env, array);
+    key = MEMORY_MALLOC(sizeof(struct SortKey) + length + keyLength);
+    if (key) {
+        key->hash = hash;
+        key->length = length;
+        key->keyLength = keyLength;
+        memcpy(key->bytes, bytes, length);
+        (*env)->GetByteArrayRegion(env, array, 0, keyLength, (jbyte *) key->bytes + length);
+        if (pinned && *slot == pinned) {
+            *temporary = 1;
+        } else {
+            MEMORY_FREE(*slot);
+            *slot = key;
+        }
+    }
+    (*env)->DeleteLocalRef(env, array);
+    return key;
+}
+
+static int xCollate(void *data, int na, const void *a, int nb, const void *b)
+{
+    struct CollationData *coll = (struct CollationData *) data;
+    JNIEnv *env;
+    int result = 0;
+
+    if (coll->kind < COLLATION_COMPARATOR) {
+        return natural_compare(coll->kind, a, na, b, nb);
+    }
+
+    env = vm_env(coll->vm);
+    if (coll->kind == COLLATION_SORT_KEY) {
+        int tempa, tempb, n;
+        struct SortKey *ka = sort_key(env, coll, a, na, 0, &tempa);
+        struct SortKey *kb = ka ? sort_key(env, coll, b, nb, ka, &tempb) : 0;
+        if (kb) {
+            n = ka->keyLength < kb->keyLength ? ka->keyLength : kb->keyLength;
+            result = memcmp(ka->bytes + ka->length, kb->bytes + kb->length, n);
+            if (!result) result = ka->keyLength - kb->keyLength;
+            if (tempb) MEMORY_FREE(kb);
+        }
+        // on failure (out of memory or an exception) the strings are equal
+    } else {
+        jobject sa = collation_string(env, a, na);
+        jobject sb = sa ? collation_string(env, b, nb) : 0;
+        if (sb) result = (*env)->CallIntMethod(env, coll->collation, coll->method, sa, sb);
+        (*env)->ExceptionClear(env);
+        if (sa) (*env)->DeleteLocalRef(env, sa);
+        if (sb) (*env)->DeleteLocalRef(env, sb);
+    }
+    return result;
+}
+
+static void collation_free(void *data)
+{
+    struct CollationData *coll = (struct CollationData *) data;
+    int i;
+
+    if (coll->collation) {
+        JNIEnv *env = vm_env(coll->vm);
+        (*env)->DeleteGlobalRef(env, coll->collation);
+        if (coll->helper) (*env)->DeleteGlobalRef(env, coll->helper);
+    }
+    if (coll->keys) {
+        for (i = 0; i < SORT_KEY_CACHE; i++) MEMORY_FREE(coll->keys[i]);
+        MEMORY_FREE(coll->keys);
+    }
+    MEMORY_FREE(coll);
+}
+
+/*
+ * Registers a collation of the given kind; kind 0 removes the collation.
+ */
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1collation0(
+    JNIEnv *env, jobject this, jobject name, jobject collation, jint kind, jint mode)
+{
+    struct CollationData *coll = 0;
+    jclass c;
+    int rc;
+
+    jsize length = objectLength(env, name, mode);
+    char bytes[length + 1];
+    length = objectToBytes(env, name, length, bytes, mode);
+
+    if (kind == 0) {
+        return sqlite3_create_collation_v2(gethandle(env, this), bytes, SQLITE_UTF8, 0, 0, 0);
+    }
+
+    coll = MEMORY_MALLOC(sizeof(struct CollationData));
+    if (!coll) { throwex_outofmemory(env); return 0; }
+    memset(coll, 0, sizeof(struct CollationData));
+    (*env)->GetJavaVM(env, &coll->vm);
+    coll->kind = kind;
+
+    if (kind == COLLATION_SORT_KEY) {
+        c = (*env)->FindClass(env, "org/sqlite/Collation");
+        coll->method = c ? (*env)->GetStaticMethodID(env, c, "sortKey", "(Ljava/text/Collator;Ljava/lang/String;)[B") : 0;
+        coll->helper = c ? (*env)->NewGlobalRef(env, c) : 0;
+        coll->keys = MEMORY_MALLOC(SORT_KEY_CACHE * sizeof(struct SortKey *));
+        if (coll->keys) memset(coll->keys, 0, SORT_KEY_CACHE * sizeof(struct SortKey *));
+    } else if (kind == COLLATION_COMPARATOR) {
+        c = (*env)->FindClass(env, "java/util/Comparator");
+        coll->method = c ? (*env)->GetMethodID(env, c, "compare", "(Ljava/lang/Object;Ljava/lang/Object;)I") : 0;
+    }
+    if (collation) coll->collation = (*env)->NewGlobalRef(env, collation);
+    if ((kind >= COLLATION_COMPARATOR && !coll->method) || (kind == COLLATION_SORT_KEY && !coll->keys)) {
+        collation_free(coll);
+        return SQLITE_ERROR;
+    }
+
+    rc = sqlite3_create_collation_v2(gethandle(env, this), bytes, SQLITE_UTF8, coll, &xCollate, &collation_free);
+    if (rc != SQLITE_OK) collation_free(coll); // not freed by SQLite on failure
+    return rc;
+}
+
+// IN-MEMORY IMAGES /////////////////////////////////////////////////
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_deserialize0(
+    JNIEnv *env, jobject this, jobject schema, jobject image, jlong size, jint mode)
+{
+    unsigned char *data = (*env)->GetDirectBufferAddress(env, image);
+    jsize length = objectLength(env, schema, mode);
+    char bytes[length + 1];
+    length = objectToBytes(env, schema, length, bytes, mode);
+    if (length == -1) { throwex_outofmemory(env); return 0; }
+    if (!data) return SQLITE_MISUSE;
+
+    // The image is owned by the Java buffer, which outlives the connection:
+    // read-only, so SQLite neither resizes, writes nor frees it.
+    return sqlite3_deserialize(gethandle(env, this), bytes, data, size, size,
+                               SQLITE_DESERIALIZE_READONLY);
+}
+
+// JAVA FILE SYSTEMS ////////////////////////////////////////////////
+
+/*
+ * File systems implemented in Java (org.sqlite.vfs). Reads and writes pass
+ * the buffer of SQLite to Java as a direct ByteBuffer, without copying.
+ * Reads smaller than a page, such as the headers and checksums of journal
+ * records, are served from a read-ahead buffer of the file, filled by one
+ * call into Java, until the file is written, truncated or locked again.
+ */
+
+#define VFS_READ_AHEAD 65536
+#define VFS_SMALL_READ 512
+
+struct java_vfs {
+    sqlite3_vfs base;
+    JavaVM *vm;
+    jobject vfs;
+    sqlite3_vfs *parent;    // the native file system, for everything but files
+    int refs;               // the registration and the open files, under SQLITE_MUTEX_STATIC_VFS1
+    char name[1];
+};
+
+typedef struct java_file {
+    sqlite3_file base;
+    JavaVM *vm;
+    struct java_vfs *owner; // kept alive while the file is open
+    jobject file;
+    char *ahead;
+    sqlite3_int64 aheadOffset;
+    int aheadLength;
+} java_file;
+
+static struct {
+    jmethodID openFile, delete, access, fullPathname;
+    jmethodID read, write, truncate, sync, size, closeFile, lock, unlock, isReserved;
+} jv;
+
+static int jvfs_init(JNIEnv *env)
+{
+    jclass c;
+    if (jv.isReserved) return 1;
+
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vfs/VirtualFileSystem"))) return 0;
+    jv.openFile = (*env)->GetMethodID(env, c, "openFile", "(Ljava/lang/String;I)Lorg/sqlite/vfs/VirtualFile;");
+    jv.delete = (*env)->GetMethodID(env, c, "delete", "(Ljava/lang/String;Z)V");
+    jv.access = (*env)->GetMethodID(env, c, "access", "(Ljava/lang/String;I)Z");
+    jv.fullPathname = (*env)->GetMethodID(env, c, "fullPathname", "(Ljava/lang/String;)Ljava/lang/String;");
+    if (!(c = (*env)->FindClass(env, "org/sqlite/vfs/VirtualFile"))) return 0;
+    jv.read = (*env)->GetMethodID(env, c, "read", "(Ljava/nio/ByteBuffer;J)I");
+    jv.write = (*env)->GetMethodID(env, c, "write", "(Ljava/nio/ByteBuffer;J)V");
+    jv.truncate = (*env)->GetMethodID(env, c, "truncate", "(J)V");
+    jv.sync = (*env)->GetMethodID(env, c, "sync", "(Z)V");
+    jv.size = (*env)->GetMethodID(env, c, "size", "()J");
+    jv.closeFile = (*env)->GetMethodID(env, c, "closeFile", "()V");
+    jv.lock = (*env)->GetMethodID(env, c, "lock", "(I)I");
+    jv.unlock = (*env)->GetMethodID(env, c, "unlock", "(I)V");
+    jv.isReserved = (*env)->GetMethodID(env, c, "isReserved", "()Z"); // last: marks the table as initialised
+    return jv.isReserved != 0;
+}
+
+/* clears a pending exception; returns true if there was one */
+static int jvfs_failed(JNIEnv *env)
+{
+    if (!(*env)->ExceptionCheck(env)) return 0;
+    (*env)->ExceptionClear(env);
+    return 1;
+}
+
+/* reads into native memory; returns the number of bytes read, or -1 on error */
+static int jvfs_read_into(JNIEnv *env, java_file *f, void *buf, int amount, sqlite3_int64 offset)
+{
+    jobject b = (*env)->NewDirectByteBuffer(env, buf, amount);
+    int n;
+    if (!b) { (*env)->ExceptionClear(env); return -1; }
+    n = (*env)->CallIntMethod(env, f->file, jv.read, b, (jlong) offset);
+    (*env)->DeleteLocalRef(env, b);
+    if (jvfs_failed(env)) return -1;
+    return n < 0 ? 0 : (n > amount ? amount : n);
+}
+
+/* adds a reference to a file system, or drops one and frees it after the last */
+static void jvfs_retain(struct java_vfs *v)
+{
+    sqlite3_mutex *mutex = sqlite3_mutex_alloc(SQLITE_MUTEX_STATIC_VFS1);
+    sqlite3_mutex_enter(mutex);
+    v->refs++;
+    sqlite3_mutex_leave(mutex);
+}
+
+static void jvfs_release(JNIEnv *env, struct java_vfs *v)
+{
+    sqlite3_mutex *mutex = sqlite3_mutex_alloc(SQLITE_MUTEX_STATIC_VFS1);
+    int refs;
+    sqlite3_mutex_enter(mutex);
+    refs = --v->refs;
+    sqlite3_mutex_leave(mutex);
+    if (refs == 0) {
+        (*env)->DeleteGlobalRef(env, v->vfs);
+        MEMORY_FREE(v);
+    }
+}
+
+static int jvfs_close(sqlite3_file *file)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+    int rc = SQLITE_OK;
+
+    (*env)->CallVoidMethod(env, f->file, jv.closeFile);
+    if (jvfs_failed(env)) rc = SQLITE_IOERR_CLOSE;
+    (*env)->DeleteGlobalRef(env, f->file);
+    sqlite3_free(f->ahead);
+    f->file = 0;
+    f->ahead = 0;
+    jvfs_release(env, f->owner);
+    f->owner = 0;
+    return rc;
+}
+
+static int jvfs_read(sqlite3_file *file, void *buf, int amount, sqlite3_int64 offset)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+    int n;
+
+    if (amount < VFS_SMALL_READ) {
+        if (offset < f->aheadOffset || offset + amount > f->aheadOffset + f->aheadLength) {
+            if (!f->ahead && !(f->ahead = sqlite3_malloc(VFS_READ_AHEAD))) return SQLITE_NOMEM;
+            n = jvfs_read_into(env, f, f->ahead, VFS_READ_AHEAD, offset);
+            f->aheadOffset = offset;
+            f->aheadLength = n < 0 ? 0 : n;
+            if (n < 0) return SQLITE_IOERR_READ;
+        }
+        n = (int) (f->aheadOffset + f->aheadLength - offset);
+        if (n > amount) n = amount;
+        if (n < 0) n = 0;
+        memcpy(buf, f->ahead + (offset - f->aheadOffset), n);
+    } else {
+        n = jvfs_read_into(env, f, buf, amount, offset);
+        if (n < 0) return SQLITE_IOERR_READ;
+    }
+
+    if (n < amount) {
+        memset((char *) buf + n, 0, amount - n);
+        return SQLITE_IOERR_SHORT_READ;
+    }
+    return SQLITE_OK;
+}
+
+static int jvfs_write(sqlite3_file *file, const void *buf, int amount, sqlite3_int64 offset)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+    jobject b;
+
+    f->aheadLength = 0;
+    b = (*env)->NewDirectByteBuffer(env, (void *) buf, amount);
+    if (!b) { (*env)->ExceptionClear(env); return SQLITE_NOMEM; }
+    (*env)->CallVoidMethod(env, f->file, jv.write, b, (jlong) offset);
+    (*env)->DeleteLocalRef(env, b);
+    return jvfs_failed(env) ? SQLITE_IOERR_WRITE : SQLITE_OK;
+}
+
+static int jvfs_truncate(sqlite3_file *file, sqlite3_int64 size)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+
+    f->aheadLength = 0;
+    (*env)->CallVoidMethod(env, f->file, jv.truncate, (jlong) size);
+    return jvfs_failed(env) ? SQLITE_IOERR_TRUNCATE : SQLITE_OK;
+}
+
+static int jvfs_sync(sqlite3_file *file, int flags)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+
+    (*env)->CallVoidMethod(env, f->file, jv.sync, (jboolean) ((flags & SQLITE_SYNC_DATAONLY) != 0));
+    return jvfs_failed(env) ? SQLITE_IOERR_FSYNC : SQLITE_OK;
+}
+
+static int jvfs_file_size(sqlite3_file *file, sqlite3_int64 *size)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+
+    *size = (*env)->CallLongMethod(env, f->file, jv.size);
+    return jvfs_failed(env) ? SQLITE_IOERR_FSTAT : SQLITE_OK;
+}
+
+static int jvfs_lock(sqlite3_file *file, int level)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+    int rc;
+
+    f->aheadLength = 0; // other connections may have written the file
+    rc = (*env)->CallIntMethod(env, f->file, jv.lock, level);
+    return jvfs_failed(env) ? SQLITE_IOERR_LOCK : rc;
+}
+
+static int jvfs_unlock(sqlite3_file *file, int level)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+
+    f->aheadLength = 0;
+    (*env)->CallVoidMethod(env, f->file, jv.unlock, level);
+    return jvfs_failed(env) ? SQLITE_IOERR_UNLOCK : SQLITE_OK;
+}
+
+static int jvfs_check_reserved(sqlite3_file *file, int *out)
+{
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(f->vm);
+
+    *out = (*env)->CallBooleanMethod(env, f->file, jv.isReserved);
+    return jvfs_failed(env) ? SQLITE_IOERR_CHECKRESERVEDLOCK : SQLITE_OK;
+}
+
+static int jvfs_file_control(sqlite3_file *file, int op, void *arg) { return SQLITE_NOTFOUND; }
+static int jvfs_sector_size(sqlite3_file *file) { return 4096; }
+static int jvfs_device_characteristics(sqlite3_file *file) { return 0; }
+
+static const sqlite3_io_methods jvfs_io = {
+    1,  // no shared memory or memory-mapped I/O
+    jvfs_close, jvfs_read, jvfs_write, jvfs_truncate, jvfs_sync, jvfs_file_size,
+    jvfs_lock, jvfs_unlock, jvfs_check_reserved, jvfs_file_control,
+    jvfs_sector_size, jvfs_device_characteristics
+};
+
+static int jvfs_open(sqlite3_vfs *vfs, const char *zName, sqlite3_file *file, int flags, int *outFlags)
+{
+    struct java_vfs *v = (struct java_vfs *) vfs;
+    java_file *f = (java_file *) file;
+    JNIEnv *env = vm_env(v->vm);
+    jobject name = 0, jfile;
+
+    memset(f, 0, sizeof(java_file));
+    if (zName && !(name = bytesToObject(env, zName, strlen(zName), STRING))) {
+        (*env)->ExceptionClear(env);
+        return SQLITE_NOMEM;
+    }
+    jfile = (*env)->CallObjectMethod(env, v->vfs, jv.openFile, name, flags);
+    if (name) (*env)->DeleteLocalRef(env, name);
+    if (jvfs_failed(env) || !jfile) return SQLITE_CANTOPEN;
+
+    f->file = (*env)->NewGlobalRef(env, jfile);
+    (*env)->DeleteLocalRef(env, jfile);
+    if (!f->file) return SQLITE_NOMEM;
+    f->vm = v->vm;
+    f->owner = v;
+    jvfs_retain(v);
+    f->base.pMethods = &jvfs_io;
+    if (outFlags) *outFlags = flags;
+    return SQLITE_OK;
+}
+
+static int jvfs_delete(sqlite3_vfs *vfs, const char *zName, int syncDir)
+{
+    struct java_vfs *v = (struct java_vfs *) vfs;
+    JNIEnv *env = vm_env(v->vm);
+    jobject name = bytesToObject(env, zName, strlen(zName), STRING);
+
+    if (!name) { (*env)->ExceptionClear(env); return SQLITE_NOMEM; }
+    (*env)->CallVoidMethod(env, v->vfs, jv.delete, name, (jboolean) (syncDir != 0));
+    (*env)->DeleteLocalRef(env, name);
+    return jvfs_failed(env) ? SQLITE_IOERR_DELETE : SQLITE_OK;
+}
+
+static int jvfs_access(sqlite3_vfs *vfs, const char *zName, int flags, int *out)
+{
+    struct java_vfs *v = (struct java_vfs *) vfs;
+    JNIEnv *env = vm_env(v->vm);
+    jobject name = bytesToObject(env, zName, strlen(zName), STRING);
+
+    if (!name) { (*env)->ExceptionClear(env); return SQLITE_NOMEM; }
+    *out = (*env)->CallBooleanMethod(env, v->vfs, jv.access, name, flags == SQLITE_ACCESS_READWRITE ? 1 : 0);
+    (*env)->DeleteLocalRef(env, name);
+    return jvfs_failed(env) ? SQLITE_IOERR_ACCESS : SQLITE_OK;
+}
+
+static int jvfs_full_pathname(sqlite3_vfs *vfs, const char *zName, int nOut, char *zOut)
+{
+    struct java_vfs *v = (struct java_vfs *) vfs;
+    JNIEnv *env = vm_env(v->vm);
+    jobject name = bytesToObject(env, zName, strlen(zName), STRING), path;
+
+    if (!name) { (*env)->ExceptionClear(env); return SQLITE_NOMEM; }
+    path = (*env)->CallObjectMethod(env, v->vfs, jv.fullPathname, name);
+    (*env)->DeleteLocalRef(env, name);
+    if (jvfs_failed(env) || !path) return SQLITE_CANTOPEN;
+
+    jsize length = objectLength(env, path, STRING);
+    char bytes[length + 1];
+    length = objectToBytes(env, path, length, bytes, STRING);
+    (*env)->DeleteLocalRef(env, path);
+    if (length < 0 || length >= nOut) return SQLITE_CANTOPEN;
+    memcpy(zOut, bytes, length);
+    zOut[length] = '\0';
+    return SQLITE_OK;
+}
+
+#define JVFS_PARENT(vfs) (((struct java_vfs *) (vfs))->parent)
+
+static void *jvfs_dl_open(sqlite3_vfs *vfs, const char *zPath)
+{
+    return JVFS_PARENT(vfs)->xDlOpen(JVFS_PARENT(vfs), zPath);
+}
+
+static void jvfs_dl_error(sqlite3_vfs *vfs, int nByte, char *zErrMsg)
+{
+    JVFS_PARENT(vfs)->xDlError(JVFS_PARENT(vfs), nByte, zErrMsg);
+}
+
+static void (*jvfs_dl_sym(sqlite3_vfs *vfs, void *handle, const char *zSymbol))(void)
+{
+    return JVFS_PARENT(vfs)->xDlSym(JVFS_PARENT(vfs), handle, zSymbol);
+}
+
+static void jvfs_dl_close(sqlite3_vfs *vfs, void *handle)
+{
+    JVFS_PARENT(vfs)->xDlClose(JVFS_PARENT(vfs), handle);
+}
+
+static int jvfs_randomness(sqlite3_vfs *vfs, int nByte, char *zOut)
+{
+    return JVFS_PARENT(vfs)->xRandomness(JVFS_PARENT(vfs), nByte, zOut);
+}
+
+static int jvfs_sleep(sqlite3_vfs *vfs, int microseconds)
+{
+    return JVFS_PARENT(vfs)->xSleep(JVFS_PARENT(vfs), microseconds);
+}
+
+static int jvfs_current_time(sqlite3_vfs *vfs, double *now)
+{
+    return JVFS_PARENT(vfs)->xCurrentTime(JVFS_PARENT(vfs), now);
+}
+
+static int jvfs_get_last_error(sqlite3_vfs *vfs, int nByte, char *zOut)
+{
+    return JVFS_PARENT(vfs)->xGetLastError ? JVFS_PARENT(vfs)->xGetLastError(JVFS_PARENT(vfs), nByte, zOut) : 0;
+}
+
+static int jvfs_current_time_int64(sqlite3_vfs *vfs, sqlite3_int64 *now)
+{
+    sqlite3_vfs *parent = JVFS_PARENT(vfs);
+    double days;
+    int rc;
+
+    if (parent->iVersion >= 2 && parent->xCurrentTimeInt64) {
+        return parent->xCurrentTimeInt64(parent, now);
+    }
+    rc = parent->xCurrentTime(parent, &days);
+    *now = (sqlite3_int64) (days * 86400000.0);
+    return rc;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_register_1vfs0(
+    JNIEnv *env, jclass cls, jstring name, jobject vfs, jboolean makeDefault)
+{
+    struct java_vfs *v;
+    sqlite3_vfs *old, *parent;
+    const char *chars;
+    size_t length;
+    int rc;
+
+    if (!jvfs_init(env)) return SQLITE_ERROR;
+    chars = (*env)->GetStringUTFChars(env, name, 0);
+    if (!chars) return SQLITE_NOMEM;
+    old = sqlite3_vfs_find(chars);
+
+    if (!vfs) {
+        // unregister a Java file system; it is freed when its last open file is closed
+        (*env)->ReleaseStringUTFChars(env, name, chars);
+        if (!old || old->xOpen != &jvfs_open) return SQLITE_NOTFOUND;
+        rc = sqlite3_vfs_unregister(old);
+        if (rc == SQLITE_OK) jvfs_release(env, (struct java_vfs *) old);
+        return rc;
+    }
+    if (old) {
+        (*env)->ReleaseStringUTFChars(env, name, chars);
+        return SQLITE_ERROR; // names are not reused while connections may use them
+    }
+
+    parent = sqlite3_vfs_find(0);
+    while (parent && parent->xOpen == &jvfs_open) parent = JVFS_PARENT(parent);
+    length = strlen(chars);
+    v = parent ? MEMORY_MALLOC(sizeof(struct java_vfs) + length) : 0;
+    if (!v) {
+        (*env)->ReleaseStringUTFChars(env, name, chars);
+        return parent ? SQLITE_NOMEM : SQLITE_ERROR;
+    }
+    memset(v, 0, sizeof(struct java_vfs));
+    memcpy(v->name, chars, length + 1);
+    (*env)->ReleaseStringUTFChars(env, name, chars);
+
+    v->base.iVersion = 2;
+    v->base.szOsFile = sizeof(java_file);
+    v->base.mxPathname = parent->mxPathname;
+    v->base.zName = v->name;
+    v->base.xOpen = &jvfs_open;
+    v->base.xDelete = &jvfs_delete;
+    v->base.xAccess = &jvfs_access;
+    v->base.xFullPathname = &jvfs_full_pathname;
+    v->base.xDlOpen = &jvfs_dl_open;
+    v->base.xDlError = &jvfs_dl_error;
+    v->base.xDlSym = &jvfs_dl_sym;
+    v->base.xDlClose = &jvfs_dl_close;
+    v->base.xRandomness = &jvfs_randomness;
+    v->base.xSleep = &jvfs_sleep;
+    v->base.xCurrentTime = &jvfs_current_time;
+    v->base.xGetLastError = &jvfs_get_last_error;
+    v->base.xCurrentTimeInt64 = &jvfs_current_time_int64;
+    v->parent = parent;
+    v->refs = 1;
+    (*env)->GetJavaVM(env, &v->vm);
+    v->vfs = (*env)->NewGlobalRef(env, vfs);
+
+    rc = v->vfs ? sqlite3_vfs_register(&v->base, makeDefault) : SQLITE_NOMEM;
+    if (rc != SQLITE_OK) {
+        if (v->vfs) (*env)->DeleteGlobalRef(env, v->vfs);
+        MEMORY_FREE(v);
+    }
+    return rc;
+}
+
+// CONFIGURATION ////////////////////////////////////////////////////
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_config0(
+    JNIEnv *env, jclass cls, jint op, jint arg1, jint arg2)
+{
+    static void *pagecache = 0;
+    int header = 0, rc;
+    void *buffer;
+
+    switch (op) {
+    case SQLITE_CONFIG_MEMSTATUS:
+        return sqlite3_config(SQLITE_CONFIG_MEMSTATUS, arg1);
+    case SQLITE_CONFIG_PAGECACHE:
+        // slots hold a page and its header; the pool lives as long as the process
+        rc = sqlite3_config(SQLITE_CONFIG_PCACHE_HDRSZ, &header);
+        if (rc != SQLITE_OK) return rc;
+        if (pagecache || arg1 <= 0 || arg2 <= 0) return SQLITE_MISUSE;
+        arg1 = (arg1 + header + 7) & ~7;
+        buffer = malloc((size_t) arg1 * arg2);
+        if (!buffer) return SQLITE_NOMEM;
+        rc = sqlite3_config(SQLITE_CONFIG_PAGECACHE, buffer, arg1, arg2);
+        if (rc == SQLITE_OK) pagecache = buffer;
+        else free(buffer);
+        return rc;
+    default:
+        return SQLITE_MISUSE;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_lookaside0(
+    JNIEnv *env, jobject this, jint slotSize, jint slotCount)
+{
+    return sqlite3_db_config(gethandle(env, this), SQLITE_DBCONFIG_LOOKASIDE, (void *) 0, slotSize, slotCount);
+}
+
+JNIEXPORT jintArray JNICALL Java_org_sqlite_core_NativeDB_db_1status0(
+    JNIEnv *env, jobject this, jint op, jboolean reset)
+{
+    int cur = 0, hiwtr = 0;
+    jint status[2];
+    jintArray result;
+
+    if (sqlite3_db_status(gethandle(env, this), op, &cur, &hiwtr, reset) != SQLITE_OK) return NULL;
+
+    result = (*env)->NewIntArray(env, 2);
+    if (!result) return NULL;
+    status[0] = cur;
+    status[1] = hiwtr;
+    (*env)->SetIntArrayRegion(env, result, 0, 2, status);
+    return result;
+}
+
+
+// MEMORY STATUS ////////////////////////////////////////////////////
+
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_heap_1limit0(
+    JNIEnv *env, jclass cls, jboolean hard, jlong limit)
+{
+    return hard ? sqlite3_hard_heap_limit64(limit) : sqlite3_soft_heap_limit64(limit);
+}
+
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_memory_1used0(
+    JNIEnv *env, jclass cls, jboolean highwater, jboolean reset)
+{
+    return highwater ? sqlite3_memory_highwater(reset) : sqlite3_memory_used();
+}
+
+
 // COMPOUND FUNCTIONS ///////////////////////////////////////////////
 
 JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_column_1metadata0(
@@ -1135,6 +3593,42 @@ JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_column_1metadata0(
     return array;
 }
 
+static jboolean setMetadataElement(JNIEnv *env, jobjectArray array, jsize index, const char *str, jint mode)
+{
+    jobject value;
+    if (!str) return JNI_TRUE;
+    value = bytesToObject(env, str, strlen(str), mode);
+    if (!value) return JNI_FALSE;
+    (*env)->SetObjectArrayElement(env, array, index, value);
+    (*env)->DeleteLocalRef(env, value);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_statement_1metadata0(
+    JNIEnv *env, jobject this, jlong stmt, jint mode)
+{
+    int i, colCount;
+    jobjectArray array;
+    sqlite3_stmt *dbstmt = toref(stmt);
+
+    // name, declared type, table name and origin column name of each column
+    colCount = sqlite3_column_count(dbstmt);
+    array = (*env)->NewObjectArray(
+        env, colCount * 4, (*env)->FindClass(env, "java/lang/Object"), NULL);
+    if (!array) { throwex_outofmemory(env); return 0; }
+
+    for (i = 0; i < colCount; i++) {
+        if (!setMetadataElement(env, array, i * 4, sqlite3_column_name(dbstmt, i), mode)
+            || !setMetadataElement(env, array, i * 4 + 1, sqlite3_column_decltype(dbstmt, i), mode)
+            || !setMetadataElement(env, array, i * 4 + 2, sqlite3_column_table_name(dbstmt, i), mode)
+            || !setMetadataElement(env, array, i * 4 + 3, sqlite3_column_origin_name(dbstmt, i), mode)) {
+            return 0;
+        }
+    }
+
+    return array;
+}
+
 /*
 ** Perform an online backup of database pDb to the database file named
 ** by zFilename. This function copies 5 database pages from pDb to
@@ -16,15 +16,21 @@
 
 package org.sqlite.core;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.util.Arrays;
 
 import org.sqlite.BusyHandler;
 import org.sqlite.Function;
+import org.sqlite.PrimitiveAggregate;
 import org.sqlite.ProgressHandler;
+import org.sqlite.RowConsumer;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteJDBCLoader;
+import org.sqlite.vfs.VirtualFileSystem;
+import org.sqlite.vtab.Module;
 
 /** This class provides a thin JNI layer over the SQLite3 C API. */
 public final class NativeDB extends DB
@@ -51,6 +57,31 @@ public final class NativeDB extends DB
 	private static final ThreadLocal<byte[]> byteBuffers;
     private static final ThreadLocal<char[]> charBuffers;
     private static final boolean default_utf8;
+
+    // features of the native library beyond the SQLite C API, as defined in NativeDB.c
+    private static final int STATEMENT_METADATA   = 1;
+    private static final int LAST_INSERT_ROWID    = 1 << 1;
+    private static final int EXEC_SCRIPT          = 1 << 2;
+    private static final int LOOKUP               = 1 << 3;
+    private static final int BIND_ARRAY           = 1 << 4;
+    private static final int TYPED_FUNCTIONS      = 1 << 5;
+    private static final int PRIMITIVE_AGGREGATES = 1 << 6;
+    private static final int VIRTUAL_TABLES       = 1 << 7;
+    private static final int COLLATIONS           = 1 << 8;
+    private static final int DESERIALIZE          = 1 << 9;
+    private static final int VFS                  = 1 << 10;
+    private static final int MEMORY_STATUS        = 1 << 11;
+    private static final int CONFIG               = 1 << 12;
+    private static final int LOOKASIDE            = 1 << 13;
+    private static final int DATETIME             = 1 << 14;
+    private static final int TEXT_FIND            = 1 << 15;
+    private static final int STMT_STATUS          = 1 << 16;
+
+    /** The features of the loaded native library, read once when it is loaded. */
+    private static int capabilities;
+
+    /** Keys looked up per native call, bounding the size of the packed rows. */
+    static final int LOOKUP_CHUNK = 256;
     
 
     static {
@@ -58,6 +89,7 @@ public final class NativeDB extends DB
             System.loadLibrary("sqlitejdbc");
             isLoaded = true;
             loadSucceeded = true;
+            capabilities = loadCapabilities();
         } else {
             // continue with non Android execution path
             isLoaded = false;
@@ -96,9 +128,133 @@ public final class NativeDB extends DB
 
         loadSucceeded = SQLiteJDBCLoader.initialize();
         isLoaded = true;
+        if (loadSucceeded) {
+            capabilities = loadCapabilities();
+        }
         return loadSucceeded;
     }
 
+    private static int loadCapabilities() {
+        try {
+            return capabilities0();
+        }
+        catch (UnsatisfiedLinkError e) {
+            // native library predates capabilities0 and all of the features
+            return 0;
+        }
+    }
+
+    static native int capabilities0();
+
+    /**
+     * @param feature One of the feature bits, e.g. VIRTUAL_TABLES.
+     * @return True if the native library implements the feature.
+     */
+    private static boolean supports(int feature) {
+        return (capabilities & feature) != 0;
+    }
+
+    /**
+     * Registers or unregisters a Java file system for all connections.
+     * @param name The name of the file system.
+     * @param vfs The file system; null to unregister the file system of the name.
+     * @param makeDefault True to make the file system the default one.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLFeatureNotSupportedException If the native library does not support Java file systems.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/c3ref/vfs_find.html">https://www.sqlite.org/c3ref/vfs_find.html</a>
+     */
+    public static synchronized int register_vfs(String name, VirtualFileSystem vfs, boolean makeDefault)
+            throws SQLException {
+        try {
+            load();
+        }
+        catch (Exception e) {
+            throw new SQLException("Error loading native library", e);
+        }
+        if (supports(VFS)) {
+            return register_vfs0(name, vfs, makeDefault);
+        }
+        throw new SQLFeatureNotSupportedException("virtual file systems");
+    }
+
+    static native int register_vfs0(String name, VirtualFileSystem vfs, boolean makeDefault);
+
+    /**
+     * Sets the soft or hard limit of the memory allocated by SQLite in the
+     * process.
+     * @param hard True for the hard limit, false for the soft limit.
+     * @param limit The limit in bytes; 0 for no limit, negative to only read
+     *        the limit.
+     * @return The limit before the call.
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support the call.
+     * @see <a href="https://www.sqlite.org/c3ref/hard_heap_limit64.html">https://www.sqlite.org/c3ref/hard_heap_limit64.html</a>
+     */
+    public static synchronized long heap_limit(boolean hard, long limit) throws SQLException {
+        if (loadMemoryStatus()) {
+            return heap_limit0(hard, limit);
+        }
+        throw new SQLFeatureNotSupportedException("heap limits");
+    }
+
+    /**
+     * @param highwater True for the largest amount of memory allocated since
+     *        the last reset, false for the amount allocated now.
+     * @param reset True to reset the high-water mark.
+     * @return The memory allocated by SQLite in the process, in bytes.
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support the call.
+     * @see <a href="https://www.sqlite.org/c3ref/memory_highwater.html">https://www.sqlite.org/c3ref/memory_highwater.html</a>
+     */
+    public static synchronized long memory_used(boolean highwater, boolean reset) throws SQLException {
+        if (loadMemoryStatus()) {
+            return memory_used0(highwater, reset);
+        }
+        throw new SQLFeatureNotSupportedException("memory status");
+    }
+
+    private static boolean loadMemoryStatus() throws SQLException {
+        try {
+            load();
+        }
+        catch (Exception e) {
+            throw new SQLException("Error loading native library", e);
+        }
+        return supports(MEMORY_STATUS);
+    }
+
+    /**
+     * Changes a global option of SQLite, before the first connection is
+     * opened.
+     * @param op {@link Codes#SQLITE_CONFIG_PAGECACHE} with the page size and
+     *        the number of pages, or {@link Codes#SQLITE_CONFIG_MEMSTATUS}
+     *        with 1 or 0.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>;
+     *         SQLITE_MISUSE once SQLite is initialized.
+     * @throws SQLFeatureNotSupportedException If the native library does not
+     *         support the call.
+     * @see <a href="https://www.sqlite.org/c3ref/config.html">https://www.sqlite.org/c3ref/config.html</a>
+     */
+    public static synchronized int config(int op, int arg1, int arg2) throws SQLException {
+        try {
+            load();
+        }
+        catch (Exception e) {
+            throw new SQLException("Error loading native library", e);
+        }
+        if (supports(CONFIG)) {
+            return config0(op, arg1, arg2);
+        }
+        throw new SQLFeatureNotSupportedException("sqlite3_config");
+    }
+
+    static native int config0(int op, int arg1, int arg2);
+
+    static native long heap_limit0(boolean hard, long limit);
+
+    static native long memory_used0(boolean highwater, boolean reset);
+
     NativeDB checkDatabase() throws SQLException {
         if (pointer == 0) {
             throwex("The database has been closed");
@@ -255,6 +411,94 @@ public final class NativeDB extends DB
 
     native int total_changes0();
 
+    /**
+     * @see org.sqlite.core.DB#last_insert_rowid()
+     */
+    @Override
+    public synchronized long last_insert_rowid() throws SQLException {
+        if (supports(LAST_INSERT_ROWID)) {
+            return checkDatabase().last_insert_rowid0();
+        }
+        return super.last_insert_rowid();
+    }
+
+    native long last_insert_rowid0();
+
+    /**
+     * @see org.sqlite.core.DB#exec_script(java.lang.String)
+     */
+    @Override
+    synchronized long[] exec_script(String sql) throws SQLException {
+        if (!supports(EXEC_SCRIPT)) {
+            return super.exec_script(sql);
+        }
+        long[] results = checkDatabase().exec_script0(toObject(sql), stringEncoding.value);
+        toCharOffsets(sql, results);
+        return results;
+    }
+
+    native long[] exec_script0(Object sql, int mode);
+
+    /**
+     * Converts the UTF-8 byte offsets of the statements returned by
+     * exec_script0 to char offsets, in a single pass over the script.
+     */
+    private static void toCharOffsets(String sql, long[] results) {
+        int chars = 0;
+        long bytes = 0;
+        int len = sql.length();
+        for (int i = 0; i + 1 < results.length; i++) {
+            if (i % 4 > 1) {
+                continue; // changes and nanos
+            }
+            long target = results[i];
+            while (bytes < target && chars < len) {
+                char c = sql.charAt(chars);
+                if (c < 0x80) {
+                    bytes += 1;
+                }
+                else if (c < 0x800) {
+                    bytes += 2;
+                }
+                else if (Character.isHighSurrogate(c) && chars + 1 < len
+                        && Character.isLowSurrogate(sql.charAt(chars + 1))) {
+                    bytes += 4;
+                    chars++;
+                }
+                else {
+                    bytes += 3;
+                }
+                chars++;
+            }
+            results[i] = chars;
+        }
+    }
+
+    /**
+     * @see org.sqlite.core.DB#lookup(long, long[], org.sqlite.RowConsumer)
+     */
+    @Override
+    synchronized void lookup(long stmt, long[] keys, RowConsumer consumer) throws SQLException {
+        if (!supports(LOOKUP)) {
+            super.lookup(stmt, keys, consumer);
+            return;
+        }
+        int columns = column_count(stmt);
+        for (int from = 0; from < keys.length; from += LOOKUP_CHUNK) {
+            int to = Math.min(keys.length, from + LOOKUP_CHUNK);
+            PackedRows rows = new PackedRows(columns, checkDatabase().lookup0(checkStatement(stmt), keys, from, to));
+            int rc = rows.resultCode();
+            // the error message is read before the consumer runs other statements
+            SQLException error = rc == SQLITE_DONE ? null : newSQLException(rc, errmsg());
+            rows.forEach(keys, from, consumer);
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    native Object[] lookup0(long stmt, long[] keys, int from, int to);
+
     /**
      * @see org.sqlite.core.DB#finalize(long)
      */
@@ -315,6 +559,19 @@ public final class NativeDB extends DB
 
     native int column_count0(long stmt);
 
+    /**
+     * @see org.sqlite.core.DB#stmt_reprepares(long)
+     */
+    @Override
+    synchronized int stmt_reprepares(long stmt) throws SQLException {
+        if (supports(STMT_STATUS)) {
+            return checkDatabase().stmt_reprepares0(checkStatement(stmt));
+        }
+        return super.stmt_reprepares(stmt);
+    }
+
+    native int stmt_reprepares0(long stmt);
+
     /**
      * @see org.sqlite.core.DB#column_type(long, int)
      */
@@ -365,6 +622,33 @@ public final class NativeDB extends DB
 
     native Object column_text0(long stmt, int col, int mode);
 
+    /**
+     * @see org.sqlite.core.DB#column_text(long, int, TextCache)
+     */
+    @Override
+    synchronized String column_text(long stmt, int col, TextCache cache) throws SQLException {
+        if (!supports(TEXT_FIND)) {
+            return super.column_text(stmt, col, cache);
+        }
+        int slot = checkDatabase().column_text_find0(checkStatement(stmt), col, cache.keys, TextCache.MAX_BYTES);
+        if (slot >= 0) {
+            return cache.hit(slot);
+        }
+        slot = -slot - 1;
+        if (slot == cache.keys.length) {
+            // NULL or too long to be cached
+            String text = column_text(stmt, col);
+            if (text != null) {
+                cache.miss();
+            }
+            return text;
+        }
+        byte[] bytes = (byte[]) column_text0(stmt, col, SQLITEJDBC_STRING_CODING.ARRAY.value);
+        return cache.put(slot, bytes, decode(bytes));
+    }
+
+    native int column_text_find0(long stmt, int col, byte[][] keys, int maxBytes);
+
     /**
      * @see org.sqlite.core.DB#column_blob(long, int)
      */
@@ -385,6 +669,19 @@ public final class NativeDB extends DB
 
     native double column_double0(long stmt, int col);
 
+    /**
+     * @see org.sqlite.core.DB#column_datetime(long, int)
+     */
+    @Override
+    public synchronized long column_datetime(long stmt, int col) throws SQLException {
+        if (supports(DATETIME)) {
+            return checkDatabase().column_datetime0(checkStatement(stmt), col);
+        }
+        return super.column_datetime(stmt, col);
+    }
+
+    native long column_datetime0(long stmt, int col);
+
     /**
      * @see org.sqlite.core.DB#column_long(long, int)
      */
@@ -465,6 +762,55 @@ public final class NativeDB extends DB
     
     native int bind_blob0(long stmt, int pos, byte[] v);
 
+    // element types of bound arrays, as defined in NativeDB.c
+    private static final int CARRAY_INT64  = 1;
+    private static final int CARRAY_DOUBLE = 2;
+    private static final int CARRAY_TEXT   = 3;
+    private static final int CARRAY_BLOB   = 4;
+
+    /**
+     * @see org.sqlite.core.DB#bind_array(long, int, java.lang.Object)
+     */
+    @Override
+    synchronized int bind_array(long stmt, int pos, Object v) throws SQLException {
+        if (!supports(BIND_ARRAY)) {
+            throw new SQLFeatureNotSupportedException("array parameters are not supported by the native library");
+        }
+        if (v instanceof long[]) {
+            long[] a = (long[]) v;
+            return checkDatabase().bind_array0(checkStatement(stmt), pos, CARRAY_INT64, a, null, a.length);
+        }
+        if (v instanceof double[]) {
+            double[] a = (double[]) v;
+            return checkDatabase().bind_array0(checkStatement(stmt), pos, CARRAY_DOUBLE, a, null, a.length);
+        }
+
+        // text and blobs are concatenated so the array is copied in one call
+        boolean text = v instanceof String[];
+        Object[] a = (Object[]) v;
+        byte[][] elements = text ? new byte[a.length][] : (byte[][]) v;
+        int[] lengths = new int[a.length];
+        int size = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (text && a[i] != null) {
+                elements[i] = ((String) a[i]).getBytes(StandardCharsets.UTF_8);
+            }
+            lengths[i] = elements[i] == null ? -1 : elements[i].length;
+            size += elements[i] == null ? 0 : elements[i].length;
+        }
+        byte[] data = new byte[size];
+        for (int i = 0, offset = 0; i < a.length; i++) {
+            if (elements[i] != null) {
+                System.arraycopy(elements[i], 0, data, offset, elements[i].length);
+                offset += elements[i].length;
+            }
+        }
+        return checkDatabase().bind_array0(checkStatement(stmt), pos, text ? CARRAY_TEXT : CARRAY_BLOB, data,
+            lengths, a.length);
+    }
+
+    native int bind_array0(long stmt, int pos, int type, Object values, int[] lengths, int n);
+
     /**
      * @see org.sqlite.core.DB#result_null(long)
      */
@@ -619,6 +965,118 @@ public final class NativeDB extends DB
 
     native int create_function0(Object name, Function func, int nArgs, int flags, int mode);
 
+    /**
+     * @see org.sqlite.core.DB#create_typed_function(java.lang.String, java.lang.Object, int, int)
+     */
+    @Override
+    public synchronized int create_typed_function(String name, Object func, int kind, int flags) throws SQLException {
+        if (supports(TYPED_FUNCTIONS)) {
+            return checkDatabase().create_typed_function0(toObject(name), func, kind, flags, stringEncoding.value);
+        }
+        return super.create_typed_function(name, func, kind, flags);
+    }
+
+    native int create_typed_function0(Object name, Object func, int kind, int flags, int mode);
+
+    /**
+     * @see org.sqlite.core.DB#create_aggregate(java.lang.String, org.sqlite.PrimitiveAggregate, int)
+     */
+    @Override
+    public synchronized int create_aggregate(String name, PrimitiveAggregate func, int flags) throws SQLException {
+        if (supports(PRIMITIVE_AGGREGATES)) {
+            return checkDatabase().create_aggregate0(toObject(name), func, func.longSlots(), func.doubleSlots(),
+                func.batchSize(), func instanceof PrimitiveAggregate.Window, flags, stringEncoding.value);
+        }
+        return super.create_aggregate(name, func, flags);
+    }
+
+    native int create_aggregate0(Object name, PrimitiveAggregate func, int longSlots, int doubleSlots, int batchSize,
+            boolean window, int flags, int mode);
+
+    /**
+     * @see org.sqlite.core.DB#create_module(java.lang.String, org.sqlite.vtab.Module)
+     */
+    @Override
+    public synchronized int create_module(String name, Module module) throws SQLException {
+        if (supports(VIRTUAL_TABLES)) {
+            return checkDatabase().create_module0(toObject(name), module, stringEncoding.value);
+        }
+        return super.create_module(name, module);
+    }
+
+    native int create_module0(Object name, Module module, int mode);
+
+    /**
+     * @see org.sqlite.core.DB#create_collation(java.lang.String, java.lang.Object, int)
+     */
+    @Override
+    public synchronized int create_collation(String name, Object collation, int kind) throws SQLException {
+        if (supports(COLLATIONS)) {
+            return checkDatabase().create_collation0(toObject(name), collation, kind, stringEncoding.value);
+        }
+        return super.create_collation(name, collation, kind);
+    }
+
+    native int create_collation0(Object name, Object collation, int kind, int mode);
+
+    /**
+     * @see org.sqlite.core.DB#destroy_collation(java.lang.String)
+     */
+    @Override
+    public synchronized int destroy_collation(String name) throws SQLException {
+        if (supports(COLLATIONS)) {
+            return checkDatabase().create_collation0(toObject(name), null, 0, stringEncoding.value);
+        }
+        return super.destroy_collation(name);
+    }
+
+    /**
+     * @see org.sqlite.core.DB#deserialize(java.lang.String, java.nio.ByteBuffer)
+     */
+    @Override
+    public synchronized int deserialize(String schema, ByteBuffer image) throws SQLException {
+        if (!image.isDirect()) {
+            throw new SQLException("image must be a direct buffer");
+        }
+        if (supports(DESERIALIZE)) {
+            return checkDatabase().deserialize0(toObject(schema), image, image.capacity(), stringEncoding.value);
+        }
+        return super.deserialize(schema, image);
+    }
+
+    native int deserialize0(Object schema, ByteBuffer image, long size, int mode);
+
+    /**
+     * @see org.sqlite.core.DB#lookaside(int, int)
+     */
+    @Override
+    public synchronized int lookaside(int slotSize, int slotCount) throws SQLException {
+        if (supports(LOOKASIDE)) {
+            return checkDatabase().lookaside0(slotSize, slotCount);
+        }
+        return super.lookaside(slotSize, slotCount);
+    }
+
+    native int lookaside0(int slotSize, int slotCount);
+
+    /**
+     * @see org.sqlite.core.DB#db_status(int, boolean)
+     */
+    @Override
+    public synchronized int[] db_status(int op, boolean reset) throws SQLException {
+        if (supports(LOOKASIDE)) {
+            // db_status0 was added with lookaside0
+            int[] status = checkDatabase().db_status0(op, reset);
+            if (status == null) {
+                throw new SQLException("invalid status counter: " + op);
+            }
+            return status;
+        }
+        return super.db_status(op, reset);
+    }
+
+    native int[] db_status0(int op, boolean reset);
+
     /**
      * @see org.sqlite.core.DB#destroy_function(java.lang.String, int)
      */
@@ -674,14 +1132,7 @@ public final class NativeDB extends DB
             return null;
         switch (stringEncoding) {
         case ARRAY:
-            byte[] arr = (byte[]) object;
-            int limit = arr.length;
-            if (limit == 0)
-                return "";
-            if (default_utf8) {
-                return new String(arr, 0, limit, StandardCharsets.UTF_8);
-            }
-            return UTF8ToUTF16(charBuffers.get(), arr, limit);
+            return decode((byte[]) object);
         case STRING:
             return (String)object;
         default:
@@ -689,11 +1140,27 @@ public final class NativeDB extends DB
     	}
     }
     
+    String decode(byte[] arr) {
+        int limit = arr.length;
+        if (limit == 0)
+            return "";
+        if (isAscii(arr, limit)) {
+            return new String(arr, 0, limit, StandardCharsets.ISO_8859_1);
+        }
+        if (default_utf8) {
+            return new String(arr, 0, limit, StandardCharsets.UTF_8);
+        }
+        return UTF8ToUTF16(charBuffers.get(), arr, limit);
+    }
+    
     Object toObject(String string) {
     	if (string == null)
     		return null;
     	switch (stringEncoding) {
             case ARRAY:
+                if (isAscii(string)) {
+                    return string.getBytes(StandardCharsets.ISO_8859_1);
+                }
                 if (default_utf8) {
                     return string.getBytes(StandardCharsets.UTF_8);
                 }
@@ -705,6 +1172,42 @@ public final class NativeDB extends DB
 		}
     }
 
+    /**
+     * Checks whether the first <code>size</code> bytes are 7-bit ASCII. The
+     * sign bits are accumulated eight bytes at a time so the loop only
+     * branches once per word.
+     */
+    static boolean isAscii(byte[] src, int size) {
+        int i = 0, bound = size & ~7;
+        for (; i < bound; i += 8) {
+            if ((src[i] | src[i + 1] | src[i + 2] | src[i + 3]
+                    | src[i + 4] | src[i + 5] | src[i + 6] | src[i + 7]) < 0)
+                return false;
+        }
+        int bits = 0;
+        for (; i < size; i++) {
+            bits |= src[i];
+        }
+        return bits >= 0;
+    }
+
+    /**
+     * Checks whether every char of the string is 7-bit ASCII, in which case
+     * its UTF-8 and ISO-8859-1 encodings are identical.
+     */
+    static boolean isAscii(String src) {
+        int i = 0, size = src.length(), bound = size & ~3;
+        for (; i < bound; i += 4) {
+            if (((src.charAt(i) | src.charAt(i + 1) | src.charAt(i + 2) | src.charAt(i + 3)) & 0xFF80) != 0)
+                return false;
+        }
+        int bits = 0;
+        for (; i < size; i++) {
+            bits |= src.charAt(i);
+        }
+        return (bits & 0xFF80) == 0;
+    }
+
 	byte[] UTF16ToUTF8(byte[] buf, String src) {
         int size = src.length(), 
             sp = 0, limit = size * 4;
@@ -790,6 +1293,31 @@ public final class NativeDB extends DB
 
     native boolean[][] column_metadata0(long stmt);
 
+    /**
+     * @see org.sqlite.core.DB#statement_metadata(long)
+     */
+    @Override
+    synchronized StatementMetadata statement_metadata(long stmt) throws SQLException {
+        if (!supports(STATEMENT_METADATA)) {
+            return super.statement_metadata(stmt);
+        }
+        Object[] values = checkDatabase().statement_metadata0(checkStatement(stmt), stringEncoding.value);
+        int count = values.length / 4;
+        String[] names = new String[count];
+        String[] declTypes = new String[count];
+        String[] tableNames = new String[count];
+        String[] originNames = new String[count];
+        for (int i = 0, j = 0; i < count; i++) {
+            names[i] = toString(values[j++]);
+            declTypes[i] = toString(values[j++]);
+            tableNames[i] = toString(values[j++]);
+            originNames[i] = toString(values[j++]);
+        }
+        return new StatementMetadata(names, declTypes, tableNames, originNames);
+    }
+
+    native Object[] statement_metadata0(long stmt, int mode);
+
     @Override
     synchronized void set_commit_listener(boolean enabled) throws SQLException {
         checkDatabase().set_commit_listener0(enabled);
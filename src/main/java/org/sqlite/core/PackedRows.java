@@ -0,0 +1,154 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import org.sqlite.RowConsumer;
+
+/**
+ * Rows of a point lookup, copied out of the statement by the native library
+ * in one call. Every value is a cell with a type tag: integers as is, doubles
+ * as their bits, and text and blobs as the offset and length of their bytes
+ * in a shared buffer, so rows are decoded only when read.
+ */
+final class PackedRows implements RowConsumer.Row
+{
+    private final int    columns;
+    private final int[]  rows;  // rows per key, then the result code
+    private final byte[] types;
+    private final long[] cells;
+    private final byte[] data;
+
+    private int base;           // first cell of the current row
+
+    /**
+     * @param packed { int[] rows, byte[] types, long[] cells, byte[] data }
+     *        as returned by NativeDB.lookup0.
+     */
+    PackedRows(int columns, Object[] packed) {
+        this.columns = columns;
+        this.rows = (int[]) packed[0];
+        this.types = (byte[]) packed[1];
+        this.cells = (long[]) packed[2];
+        this.data = (byte[]) packed[3];
+    }
+
+    /**
+     * @return SQLITE_DONE, or the error that stopped the lookup after the
+     *         completed keys.
+     */
+    int resultCode() {
+        return rows[rows.length - 1];
+    }
+
+    /**
+     * Passes the rows of the completed keys, starting at keys[from], to the consumer.
+     */
+    void forEach(long[] keys, int from, RowConsumer consumer) throws SQLException {
+        int keyCount = rows.length - 1;
+        base = 0;
+        for (int k = 0; k < keyCount; k++) {
+            for (int r = rows[k]; r > 0; r--) {
+                consumer.accept(from + k, keys[from + k], this);
+                base += columns;
+            }
+        }
+    }
+
+    public int getColumnCount() {
+        return columns;
+    }
+
+    public int getType(int col) throws SQLException {
+        return types[cell(col)];
+    }
+
+    public boolean isNull(int col) throws SQLException {
+        return types[cell(col)] == Codes.SQLITE_NULL;
+    }
+
+    public int getInt(int col) throws SQLException {
+        return (int) getLong(col);
+    }
+
+    public long getLong(int col) throws SQLException {
+        int i = cell(col);
+        switch (types[i]) {
+        case Codes.SQLITE_INTEGER:
+            return cells[i];
+        case Codes.SQLITE_FLOAT:
+            return (long) Double.longBitsToDouble(cells[i]);
+        case Codes.SQLITE_TEXT:
+            try {
+                return Long.parseLong(text(i).trim());
+            }
+            catch (NumberFormatException e) {
+                return (long) getDouble(col);
+            }
+        default:
+            return 0;
+        }
+    }
+
+    public double getDouble(int col) throws SQLException {
+        int i = cell(col);
+        switch (types[i]) {
+        case Codes.SQLITE_INTEGER:
+            return cells[i];
+        case Codes.SQLITE_FLOAT:
+            return Double.longBitsToDouble(cells[i]);
+        case Codes.SQLITE_TEXT:
+            try {
+                return Double.parseDouble(text(i).trim());
+            }
+            catch (NumberFormatException e) {
+                return 0;
+            }
+        default:
+            return 0;
+        }
+    }
+
+    public String getString(int col) throws SQLException {
+        int i = cell(col);
+        switch (types[i]) {
+        case Codes.SQLITE_INTEGER:
+            return Long.toString(cells[i]);
+        case Codes.SQLITE_FLOAT:
+            return Double.toString(Double.longBitsToDouble(cells[i]));
+        case Codes.SQLITE_TEXT:
+        case Codes.SQLITE_BLOB:
+            return text(i);
+        default:
+            return null;
+        }
+    }
+
+    public byte[] getBytes(int col) throws SQLException {
+        int i = cell(col);
+        switch (types[i]) {
+        case Codes.SQLITE_TEXT:
+        case Codes.SQLITE_BLOB: {
+            int offset = (int) (cells[i] >>> 32);
+            byte[] bytes = new byte[(int) cells[i]];
+            System.arraycopy(data, offset, bytes, 0, bytes.length);
+            return bytes;
+        }
+        case Codes.SQLITE_NULL:
+            return null;
+        default:
+            return getString(col).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private String text(int i) {
+        return new String(data, (int) (cells[i] >>> 32), (int) cells[i], StandardCharsets.UTF_8);
+    }
+
+    private int cell(int col) throws SQLException {
+        if (col < 1 || col > columns) {
+            throw new SQLException("column " + col + " out of bounds [1," + columns + "]");
+        }
+        return base + col - 1;
+    }
+}
@@ -0,0 +1,229 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Parameter values of a prepared statement, one row of
+ * <code>paramCount</code> values per batch entry. Values are kept in
+ * parallel arrays by kind, so primitives are stored without boxing, and a
+ * type tag per value selects the bind function.
+ */
+public final class ParameterBatch
+{
+    static final byte NULL   = 0;
+    static final byte INT    = 1;
+    static final byte LONG   = 2;
+    static final byte DOUBLE = 3;
+    static final byte TEXT   = 4;
+    static final byte BLOB   = 5;
+    static final byte ARRAY  = 6;
+
+    byte[]   tags;
+    long[]   longs;   // allocated on first INT or LONG value
+    double[] doubles; // allocated on first DOUBLE value
+    Object[] refs;    // allocated on first TEXT or BLOB value
+
+    ParameterBatch(int size) {
+        tags = new byte[size];
+    }
+
+    /**
+     * @return The number of values the batch can hold without growing.
+     */
+    int capacity() {
+        return tags.length;
+    }
+
+    /**
+     * Grows the arrays to hold at least <code>size</code> values.
+     */
+    void ensureCapacity(int size) {
+        if (size <= tags.length) {
+            return;
+        }
+        int capacity = Math.max(size, tags.length << 1);
+        tags = Arrays.copyOf(tags, capacity);
+        if (longs != null) longs = Arrays.copyOf(longs, capacity);
+        if (doubles != null) doubles = Arrays.copyOf(doubles, capacity);
+        if (refs != null) refs = Arrays.copyOf(refs, capacity);
+    }
+
+    void setNull(int index) {
+        tags[index] = NULL;
+        if (refs != null) refs[index] = null;
+    }
+
+    void setInt(int index, int value) {
+        setLong(index, value, INT);
+    }
+
+    void setLong(int index, long value) {
+        setLong(index, value, LONG);
+    }
+
+    private void setLong(int index, long value, byte tag) {
+        if (longs == null) longs = new long[tags.length];
+        longs[index] = value;
+        tags[index] = tag;
+        if (refs != null) refs[index] = null;
+    }
+
+    void setDouble(int index, double value) {
+        if (doubles == null) doubles = new double[tags.length];
+        doubles[index] = value;
+        tags[index] = DOUBLE;
+        if (refs != null) refs[index] = null;
+    }
+
+    void setText(int index, String value) {
+        setRef(index, value, TEXT);
+    }
+
+    void setBlob(int index, byte[] value) {
+        setRef(index, value, BLOB);
+    }
+
+    void setArray(int index, Object value) {
+        setRef(index, value, ARRAY);
+    }
+
+    private void setRef(int index, Object value, byte tag) {
+        if (value == null) {
+            setNull(index);
+            return;
+        }
+        if (refs == null) refs = new Object[tags.length];
+        refs[index] = value;
+        tags[index] = tag;
+    }
+
+    /**
+     * Stores a value of one of the types accepted by
+     * {@link DB#sqlbind(long, int, Object)}.
+     */
+    void set(int index, Object value) throws SQLException {
+        if (value == null) {
+            setNull(index);
+        }
+        else if (value instanceof Integer || value instanceof Short) {
+            setInt(index, ((Number) value).intValue());
+        }
+        else if (value instanceof Long) {
+            setLong(index, ((Long) value).longValue());
+        }
+        else if (value instanceof Float || value instanceof Double) {
+            setDouble(index, ((Number) value).doubleValue());
+        }
+        else if (value instanceof String) {
+            setText(index, (String) value);
+        }
+        else if (value instanceof byte[]) {
+            setBlob(index, (byte[]) value);
+        }
+        else if (isArray(value)) {
+            setArray(index, value);
+        }
+        else {
+            throw new SQLException("unexpected param type: " + value.getClass());
+        }
+    }
+
+    /**
+     * @return True if the value can be bound to a carray(?) parameter.
+     */
+    static boolean isArray(Object value) {
+        return value instanceof long[] || value instanceof double[] || value instanceof String[]
+            || value instanceof byte[][];
+    }
+
+    /**
+     * Converts an array to one of the types accepted by {@link #isArray(Object)}:
+     * int arrays and arrays of integral numbers to long[], arrays of other
+     * numbers to double[], and arrays of strings or byte arrays to String[]
+     * or byte[][].
+     */
+    static Object toArray(Object value) throws SQLException {
+        if (isArray(value)) {
+            return value;
+        }
+        if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            long[] longs = new long[ints.length];
+            for (int i = 0; i < ints.length; i++) {
+                longs[i] = ints[i];
+            }
+            return longs;
+        }
+        if (value instanceof Object[]) {
+            Object[] elements = (Object[]) value;
+            boolean integral = true, numeric = true, text = true, bytes = true;
+            for (Object e : elements) {
+                integral &= e instanceof Long || e instanceof Integer || e instanceof Short || e instanceof Byte;
+                numeric &= e instanceof Number;
+                text &= e == null || e instanceof String;
+                bytes &= e == null || e instanceof byte[];
+            }
+            if (text) {
+                return Arrays.copyOf(elements, elements.length, String[].class);
+            }
+            if (bytes) {
+                return Arrays.copyOf(elements, elements.length, byte[][].class);
+            }
+            if (integral) {
+                long[] longs = new long[elements.length];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = ((Number) elements[i]).longValue();
+                }
+                return longs;
+            }
+            if (numeric) {
+                double[] doubles = new double[elements.length];
+                for (int i = 0; i < doubles.length; i++) {
+                    doubles[i] = ((Number) elements[i]).doubleValue();
+                }
+                return doubles;
+            }
+        }
+        throw new SQLException("unexpected array type: " + (value == null ? null : value.getClass()));
+    }
+
+    /**
+     * @return The value at the index, boxed if it is a primitive.
+     */
+    Object get(int index) {
+        switch (tags[index]) {
+        case INT:
+            return (int) longs[index];
+        case LONG:
+            return longs[index];
+        case DOUBLE:
+            return doubles[index];
+        case TEXT:
+        case BLOB:
+        case ARRAY:
+            return refs[index];
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Resets the values in [from, to) to NULL.
+     */
+    void clear(int from, int to) {
+        Arrays.fill(tags, from, to, NULL);
+        if (refs != null) Arrays.fill(refs, from, to, null);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < tags.length; i++) {
+            if (i > 0) sb.append(", ");
+            Object value = get(i);
+            sb.append(value instanceof byte[] ? Arrays.toString((byte[]) value) : String.valueOf(value));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,117 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+
+/**
+ * Outcome of {@link DB#executeScript(String, boolean)}: the position, number
+ * of changed rows and execution time of every executed statement of a
+ * script, and the error that stopped the script, if any. Positions are char
+ * offsets into the script.
+ */
+public final class ScriptResult
+{
+    private final String       script;
+    private final long[]       results; // { start, end, changes, nanos } per statement
+    private final int          count;
+    private final SQLException error;
+
+    ScriptResult(String script, long[] results, int count, SQLException error) {
+        this.script = script;
+        this.results = results;
+        this.count = count;
+        this.error = error;
+    }
+
+    /**
+     * @return The number of executed statements, including the failed one.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i Statement index in [0, size()-1].
+     * @return The offset of the first char of the statement in the script.
+     */
+    public int start(int i) {
+        return (int) results[check(i) * 4];
+    }
+
+    /**
+     * @param i Statement index in [0, size()-1].
+     * @return The offset just past the last char of the statement in the script.
+     */
+    public int end(int i) {
+        return (int) results[check(i) * 4 + 1];
+    }
+
+    /**
+     * @param i Statement index in [0, size()-1].
+     * @return The SQL of the statement, as written in the script.
+     */
+    public String statement(int i) {
+        return script.substring(start(i), end(i)).trim();
+    }
+
+    /**
+     * @param i Statement index in [0, size()-1].
+     * @return The number of rows changed by the statement, including changes made by triggers.
+     */
+    public int changes(int i) {
+        return (int) results[check(i) * 4 + 2];
+    }
+
+    /**
+     * @param i Statement index in [0, size()-1].
+     * @return The time spent preparing and executing the statement, in nanoseconds.
+     */
+    public long elapsedNanos(int i) {
+        return results[check(i) * 4 + 3];
+    }
+
+    /**
+     * @return The number of rows changed by the whole script.
+     */
+    public int totalChanges() {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += (int) results[i * 4 + 2];
+        }
+        return total;
+    }
+
+    /**
+     * @return True if every statement of the script was executed.
+     */
+    public boolean succeeded() {
+        return error == null;
+    }
+
+    /**
+     * @return The error that stopped the script; null if it succeeded.
+     */
+    public SQLException error() {
+        return error;
+    }
+
+    /**
+     * @return The index of the statement that failed; -1 if the script succeeded.
+     */
+    public int failedStatement() {
+        return error == null ? -1 : count - 1;
+    }
+
+    /**
+     * @return The offset of the statement that failed in the script; -1 if the script succeeded.
+     */
+    public int errorOffset() {
+        return error == null ? -1 : start(count - 1);
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("statement " + i + " of " + count);
+        }
+        return i;
+    }
+}
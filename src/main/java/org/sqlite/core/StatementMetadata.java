@@ -0,0 +1,316 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Column metadata of a prepared statement. It is fetched from SQLite once,
+ * cached on the statement until the statement is finalized or re-prepared
+ * with other columns, and shared by every ResultSet it produces.
+ */
+public final class StatementMetadata implements Codes
+{
+    /**
+     * Pattern used to extract the column type name from table column definition.
+     */
+    public final static Pattern COLUMN_TYPENAME = Pattern.compile("([^\\(]*)");
+
+    /**
+     * Pattern used to extract the column type name from a cast(col as type)
+     */
+    public final static Pattern COLUMN_TYPECAST = Pattern.compile("cast\\(.*?\\s+as\\s+(.*?)\\s*\\)");
+
+    /**
+     * Pattern used to extract the precision and scale from column meta returned by the JDBC driver.
+     */
+    public final static Pattern COLUMN_PRECISION = Pattern.compile(".*?\\((.*?)\\)");
+
+    /** Column names, as returned by sqlite3_column_name. */
+    public final String[] names;
+    /** Declared column types; null for expressions. */
+    public final String[] declTypes;
+    /** Tables the columns originate from; null for expressions. */
+    public final String[] tableNames;
+    /** Table columns the result columns originate from; null for expressions. */
+    public final String[] originNames;
+
+    private ColumnTypes types;
+    private ColumnIndex index;
+    private boolean[][] attributes;
+
+    public StatementMetadata(String[] names, String[] declTypes, String[] tableNames, String[] originNames) {
+        this.names = names;
+        this.declTypes = declTypes;
+        this.tableNames = tableNames;
+        this.originNames = originNames;
+    }
+
+    /**
+     * @return The number of columns in the result set.
+     */
+    public int columnCount() {
+        return names.length;
+    }
+
+    /**
+     * Looks up a column by name ignoring case. The lookup table is built on
+     * first use and shared by every ResultSet of the statement; it belongs to
+     * this metadata, so it is rebuilt with it when the statement is
+     * re-prepared with other columns.
+     * @param name Column name.
+     * @return The column index in [0,x-1] form; -1 if there is no such column.
+     */
+    public int findColumn(String name) {
+        ColumnIndex i = index;
+        if (i == null) {
+            index = i = new ColumnIndex(names);
+        }
+        return i.indexOf(name);
+    }
+
+    /**
+     * @param col Column index in [0,x-1] form.
+     * @return The declared type or CAST(expr AS TYPE) target of the column; null if neither is known.
+     */
+    public String declType(int col) {
+        return types().declTypes[col];
+    }
+
+    /**
+     * @param col Column index in [0,x-1] form.
+     * @return The upper-cased declared type name without size; null if no type is declared.
+     */
+    public String typeName(int col) {
+        return types().typeNames[col];
+    }
+
+    /**
+     * @param col Column index in [0,x-1] form.
+     * @return The precision from the declared type; 0 if none.
+     */
+    public int precision(int col) {
+        return types().precisions[col];
+    }
+
+    /**
+     * @param col Column index in [0,x-1] form.
+     * @return The scale from the declared type; 0 if none.
+     */
+    public int scale(int col) {
+        return types().scales[col];
+    }
+
+    /**
+     * @param col Column index in [0,x-1] form.
+     * @param valueType The SQLite storage class of the current value.
+     * @return The java.sql.Types constant for the column.
+     */
+    public int jdbcType(int col, int valueType) {
+        if (valueType < SQLITE_INTEGER || valueType > SQLITE_NULL) {
+            return Types.NUMERIC;
+        }
+        return types().jdbcTypes[col * SQLITE_NULL + valueType - 1];
+    }
+
+    /**
+     * Returns the not null, primary key and auto increment attributes of the
+     * columns, loading them on first use.
+     * @param db The database the statement belongs to.
+     * @param stmt Pointer to the statement.
+     * @see DB#column_metadata(long)
+     */
+    boolean[][] attributes(DB db, long stmt) throws SQLException {
+        boolean[][] a = attributes;
+        if (a == null) {
+            attributes = a = db.column_metadata(stmt);
+        }
+        return a;
+    }
+
+    private ColumnTypes types() {
+        ColumnTypes t = types;
+        if (t == null) {
+            types = t = new ColumnTypes(this);
+        }
+        return t;
+    }
+
+    /**
+     * Type information derived from the declared types, resolved on first use.
+     */
+    private static final class ColumnTypes
+    {
+        final String[] declTypes;
+        final String[] typeNames;
+        final int[] precisions;
+        final int[] scales;
+        final int[] jdbcTypes;
+
+        ColumnTypes(StatementMetadata meta) {
+            int count = meta.names.length;
+            declTypes = new String[count];
+            typeNames = new String[count];
+            precisions = new int[count];
+            scales = new int[count];
+            jdbcTypes = new int[count * SQLITE_NULL];
+
+            for (int col = 0; col < count; col++) {
+                String declType = meta.declTypes[col];
+                if (declType == null && meta.names[col] != null) {
+                    Matcher matcher = COLUMN_TYPECAST.matcher(meta.names[col]);
+                    declType = matcher.find() ? matcher.group(1) : null;
+                }
+                declTypes[col] = declType;
+
+                if (declType != null) {
+                    Matcher matcher = COLUMN_TYPENAME.matcher(declType);
+                    matcher.find();
+                    typeNames[col] = matcher.group(1).toUpperCase(Locale.ENGLISH);
+
+                    matcher = COLUMN_PRECISION.matcher(declType);
+                    if (matcher.find()) {
+                        String[] array = matcher.group(1).split(",");
+                        try {
+                            precisions[col] = Integer.parseInt(array[0].trim());
+                            if (array.length == 2) {
+                                scales[col] = Integer.parseInt(array[1].trim());
+                            }
+                        }
+                        catch (NumberFormatException e) {
+                            // not a numeric size, e.g. a user defined type
+                        }
+                    }
+                }
+
+                for (int valueType = SQLITE_INTEGER; valueType <= SQLITE_NULL; valueType++) {
+                    jdbcTypes[col * SQLITE_NULL + valueType - 1] = toJdbcType(typeName(typeNames[col], valueType), valueType);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The declared type name, or the name of the storage class if no type is declared.
+     */
+    public static String typeName(String declaredTypeName, int valueType) {
+        if (declaredTypeName != null) {
+            return declaredTypeName;
+        }
+
+        switch (valueType) {
+        case SQLITE_INTEGER:
+            return "INTEGER";
+        case SQLITE_FLOAT:
+            return "FLOAT";
+        case SQLITE_BLOB:
+            return "BLOB";
+        case SQLITE_NULL:
+            return "NUMERIC";
+        case SQLITE_TEXT:
+            return "TEXT";
+        default:
+            return "NUMERIC";
+        }
+    }
+
+    /**
+     * Maps a column type name and the storage class of its value to a java.sql.Types constant.
+     */
+    static int toJdbcType(String typeName, int valueType) {
+        if (valueType == SQLITE_INTEGER || valueType == SQLITE_NULL) {
+            if ("BOOLEAN".equals(typeName)) {
+                return Types.BOOLEAN;
+            }
+
+            if ("TINYINT".equals(typeName)) {
+                return Types.TINYINT;
+            }
+
+            if ("SMALLINT".equals(typeName) || "INT2".equals(typeName)) {
+                return Types.SMALLINT;
+            }
+
+            if ("BIGINT".equals(typeName) || "INT8".equals(typeName) ||
+                "UNSIGNED BIG INT".equals(typeName)) {
+                return  Types.BIGINT;
+            }
+
+            if ("DATE".equals(typeName) || "DATETIME".equals(typeName)) {
+                return Types.DATE;
+            }
+
+            if ("TIMESTAMP".equals(typeName)) {
+                return Types.TIMESTAMP;
+            }
+
+            if (valueType == SQLITE_INTEGER ||
+                "INT".equals(typeName) ||
+                "INTEGER".equals(typeName) ||
+                "MEDIUMINT".equals(typeName)) {
+                return Types.INTEGER;
+            }
+        }
+
+        if (valueType == SQLITE_FLOAT || valueType == SQLITE_NULL) {
+            if ("DECIMAL".equals(typeName)) {
+                return Types.DECIMAL;
+            }
+
+            if ("DOUBLE".equals(typeName) || "DOUBLE PRECISION".equals(typeName)) {
+                return Types.DOUBLE;
+            }
+
+            if ("NUMERIC".equals(typeName)) {
+                return Types.NUMERIC;
+            }
+
+            if ("REAL".equals(typeName)) {
+                return Types.REAL;
+            }
+
+            if (valueType == SQLITE_FLOAT ||
+                "FLOAT".equals(typeName)) {
+                return Types.FLOAT;
+            }
+        }
+
+        if (valueType == SQLITE_TEXT || valueType == SQLITE_NULL) {
+            if ("CHARACTER".equals(typeName) || "NCHAR".equals(typeName) ||
+                "NATIVE CHARACTER".equals(typeName) || "CHAR".equals(typeName)) {
+                return Types.CHAR;
+            }
+
+            if ("CLOB".equals(typeName)) {
+                return Types.CLOB;
+            }
+
+            if ("DATE".equals(typeName) || "DATETIME".equals(typeName)) {
+                return Types.DATE;
+            }
+
+            if (valueType == SQLITE_TEXT ||
+                "VARCHAR".equals(typeName) ||
+                "VARYING CHARACTER".equals(typeName) ||
+                "NVARCHAR".equals(typeName) ||
+                "TEXT".equals(typeName)) {
+                    return Types.VARCHAR;
+            }
+        }
+
+        if (valueType == SQLITE_BLOB || valueType == SQLITE_NULL) {
+            if ("BINARY".equals(typeName)) {
+                return Types.BINARY;
+            }
+
+            if (valueType == SQLITE_BLOB ||
+                "BLOB".equals(typeName)) {
+                return Types.BLOB;
+            }
+        }
+
+        return Types.NUMERIC;
+    }
+}
@@ -0,0 +1,159 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The distinct values of a TEXT column, so that a result set returns the same
+ * String for every row holding the same text instead of a new copy per row.
+ * Values are keyed by their UTF-8 bytes in an open addressing table, which
+ * the native library probes without creating a String. The table starts
+ * small and doubles as values are added, keeping at least half of its slots
+ * free, up to a bounded number of values; the cache turns itself off when
+ * less than half of the lookups of a window hit, as for columns of mostly
+ * distinct values.
+ */
+final class TextCache
+{
+    /** Longer values are not cached. */
+    static final int MAX_BYTES = 64;
+
+    /** The lookups after which the hit rate is checked. */
+    static final int WINDOW = 1024;
+
+    /** The initial number of slots. */
+    static final int INITIAL_CAPACITY = 64;
+
+    byte[][]             keys;      // UTF-8 bytes, null if the slot is free
+    private String[]     values;
+    private final int    maxEntries;
+    private final int    maxCapacity;
+    private int          size;
+    private int          lookups;   // in the current window
+    private int          hits;
+
+    /**
+     * @param maxEntries The maximum number of distinct values.
+     */
+    TextCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.maxCapacity = Integer.highestOneBit(Math.max(maxEntries, 1)) << 2;
+        int capacity = Math.min(INITIAL_CAPACITY, maxCapacity);
+        keys = new byte[capacity][];
+        values = new String[capacity];
+    }
+
+    /**
+     * @return False once the cache turned itself off.
+     */
+    boolean isEnabled() {
+        return keys != null;
+    }
+
+    /**
+     * @return The cached value of a slot found by {@link #find(byte[])}.
+     */
+    String hit(int slot) {
+        String value = values[slot];
+        count(true);
+        return value;
+    }
+
+    /**
+     * Caches a value, unless the cache is full.
+     * @param slot The free slot found for the key.
+     * @return The value.
+     */
+    String put(int slot, byte[] key, String value) {
+        if (size < maxEntries && keys != null && keys[slot] == null) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length && keys.length < maxCapacity) {
+                grow();
+            }
+        }
+        count(false);
+        return value;
+    }
+
+    /**
+     * Doubles the table, so that at least half of its slots stay free.
+     */
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new byte[oldKeys.length << 1][];
+        values = new String[oldKeys.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = -find(oldKeys[i]) - 1;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Counts a lookup of a value that cannot be cached.
+     */
+    void miss() {
+        count(false);
+    }
+
+    /**
+     * Looks up a value read as a String, when the native library cannot
+     * probe the table.
+     * @return The cached copy of the value; the value if it was not cached.
+     */
+    String intern(String text) {
+        byte[] key = text.getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_BYTES) {
+            miss();
+            return text;
+        }
+        int slot = find(key);
+        return slot >= 0 ? hit(slot) : put(-slot - 1, key, text);
+    }
+
+    /**
+     * Probes the table like NativeDB.column_text_find0.
+     * @return The slot of the key, or -(slot + 1) for the free slot to store it.
+     */
+    int find(byte[] key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null) {
+            if (Arrays.equals(keys[slot], key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    /**
+     * 32-bit FNV-1a of the bytes.
+     */
+    static int hash(byte[] key) {
+        int hash = 0x811c9dc5;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private void count(boolean hit) {
+        if (hit) {
+            hits++;
+        }
+        if (++lookups == WINDOW) {
+            if (hits < WINDOW / 2) {
+                keys = null; // mostly distinct values: stop caching
+                values = null;
+                size = 0;
+            }
+            lookups = 0;
+            hits = 0;
+        }
+    }
+}
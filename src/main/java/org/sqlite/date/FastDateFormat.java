@@ -365,6 +365,47 @@ public class FastDateFormat extends Format implements DateParser, DatePrinter {
         return cache.getDateTimeInstance(dateStyle, timeStyle, timeZone, locale);
     }
 
+    // Cache statistics
+    //-----------------------------------------------------------------------
+    /**
+     * <p>Gets the number of {@code getInstance} calls answered from the
+     * cache of formatters.</p>
+     *
+     * @return the number of cache hits
+     */
+    public static long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * <p>Gets the number of formatters created by {@code getInstance}
+     * calls because they were not in the cache.</p>
+     *
+     * @return the number of cache misses
+     */
+    public static long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * <p>Gets the number of formatters removed from the cache, which keeps
+     * the most recently used ones only.</p>
+     *
+     * @return the number of cache evictions
+     */
+    public static long getCacheEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * <p>Gets the number of formatters in the cache.</p>
+     *
+     * @return the size of the cache
+     */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
     // Constructor
     //-----------------------------------------------------------------------
     /**
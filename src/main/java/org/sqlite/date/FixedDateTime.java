@@ -0,0 +1,197 @@
+package org.sqlite.date;
+
+import java.util.TimeZone;
+
+/**
+ * <p>Parses and prints date-times in the default layout of the driver,
+ * <code>yyyy-MM-dd HH:mm:ss.SSS</code>, without a {@link java.util.Calendar}
+ * or a pattern. Parsing also accepts <code>yyyy-MM-dd HH:mm:ss</code> and
+ * <code>yyyy-MM-dd</code>, the layouts of the SQLite date and time
+ * functions.</p>
+ *
+ * <p>Date-times are handled as <em>local milliseconds</em>: the milliseconds
+ * since 1970-01-01 00:00:00.000 of the same wall clock in UTC, which are
+ * converted from and to instants with the offsets of a time zone. The
+ * fields are those of the Gregorian calendar, so years before 1583, which
+ * {@link FastDateFormat} reads in the Julian calendar, are left to it.</p>
+ */
+public final class FixedDateTime {
+
+    /**
+     * The layout, equal to the default date string format.
+     */
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * Returned for text not in the layout.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    /** The Julian day number of 1970-01-01 00:00:00 UTC. */
+    private static final double JULIAN_EPOCH = 2440587.5;
+
+    private static final int MIN_YEAR = 1583;
+    private static final int MAX_YEAR = 9999;
+
+    private FixedDateTime() {
+    }
+
+    /**
+     * <p>Parses a date-time.</p>
+     *
+     * @param text the text
+     * @return the local milliseconds, or {@link #INVALID}
+     */
+    public static long parse(final CharSequence text) {
+        final int length = text.length();
+        if (length != 10 && length != 19 && length != 23) {
+            return INVALID;
+        }
+        if (text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return INVALID;
+        }
+        final int year = digits(text, 0, 4);
+        final int month = digits(text, 5, 2);
+        final int day = digits(text, 8, 2);
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        if (length >= 19) {
+            if (text.charAt(10) != ' ' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+                return INVALID;
+            }
+            hour = digits(text, 11, 2);
+            minute = digits(text, 14, 2);
+            second = digits(text, 17, 2);
+        }
+        if (length == 23) {
+            if (text.charAt(19) != '.') {
+                return INVALID;
+            }
+            millis = digits(text, 20, 3);
+        }
+        if (year < MIN_YEAR || month < 1 || month > 12 || day < 0
+                || hour < 0 || minute < 0 || second < 0 || millis < 0) {
+            return INVALID;
+        }
+        // out of range days and times roll over, like a lenient calendar
+        return (((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * <p>Prints a date-time in the layout.</p>
+     *
+     * @param localMillis the local milliseconds
+     * @return the text, or null if the year is out of the range of the
+     *  layout
+     */
+    public static String format(final long localMillis) {
+        final long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        int millis = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+
+        // civil from days, see daysFromCivil
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final int doe = (int) (z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return null;
+        }
+
+        final char[] c = new char[23];
+        put(c, 0, (int) year, 4);
+        c[4] = '-';
+        put(c, 5, month, 2);
+        c[7] = '-';
+        put(c, 8, day, 2);
+        c[10] = ' ';
+        put(c, 11, millis / 3600000, 2);
+        millis %= 3600000;
+        c[13] = ':';
+        put(c, 14, millis / 60000, 2);
+        millis %= 60000;
+        c[16] = ':';
+        put(c, 17, millis / 1000, 2);
+        c[19] = '.';
+        put(c, 20, millis % 1000, 3);
+        return new String(c);
+    }
+
+    /**
+     * @param epochMillis milliseconds since the epoch
+     * @param zone the time zone
+     * @return the local milliseconds of the instant in the time zone
+     */
+    public static long toLocalMillis(final long epochMillis, final TimeZone zone) {
+        return epochMillis + zone.getOffset(epochMillis);
+    }
+
+    /**
+     * <p>Converts a wall clock time to an instant. In a gap of daylight
+     * saving time, the offset before the gap applies.</p>
+     *
+     * @param localMillis the local milliseconds
+     * @param zone the time zone
+     * @return the milliseconds since the epoch
+     */
+    public static long toEpochMillis(final long localMillis, final TimeZone zone) {
+        final long guess = localMillis - zone.getOffset(localMillis - zone.getRawOffset());
+        return localMillis - zone.getOffset(guess);
+    }
+
+    /**
+     * <p>Converts a Julian day number to the local milliseconds of the same
+     * date-time, like the SQLite date and time functions.</p>
+     *
+     * @param julianDay the Julian day number
+     * @return the local milliseconds
+     */
+    public static long fromJulianDay(final double julianDay) {
+        return Math.round((julianDay - JULIAN_EPOCH) * MILLIS_PER_DAY);
+    }
+
+    /**
+     * @param millis milliseconds since the epoch, or local milliseconds
+     * @return the Julian day number of the same date-time
+     */
+    public static double toJulianDay(final long millis) {
+        return millis / (double) MILLIS_PER_DAY + JULIAN_EPOCH;
+    }
+
+    /**
+     * <p>Counts the days from 1970-01-01 in the proleptic Gregorian calendar,
+     * with the eras of 400 years of Howard Hinnant's algorithm.</p>
+     */
+    static long daysFromCivil(int year, final int month, final int day) {
+        year -= month <= 2 ? 1 : 0;
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yoe = year - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int digits(final CharSequence text, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void put(final char[] c, final int offset, int value, final int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            c[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -20,13 +20,18 @@ import java.text.DateFormat;
 import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>FormatCache is a cache and factory for {@link Format}s.</p>
+ *
+ * <p>The cache keeps the least recently used formats up to a maximum size,
+ * so that ad-hoc time zones and locales do not grow it without bound.</p>
  * 
  * @since 3.0
  * @version $Id: FormatCache 892161 2009-12-18 07:21:10Z  $
@@ -37,9 +42,41 @@ abstract class FormatCache<F extends Format> {
      * No date or no time.  Used in same parameters as DateFormat.SHORT or DateFormat.LONG
      */
     static final int NONE= -1;
-    
-    private final ConcurrentMap<MultipartKey, F> cInstanceCache 
-        = new ConcurrentHashMap<MultipartKey, F>(7);
+
+    /**
+     * The default number of formats kept by the cache.
+     */
+    static final int DEFAULT_MAX_SIZE = 128;
+
+    private final int maxSize;
+    private final Map<MultipartKey, F> cInstanceCache; // guarded by itself
+    private long hits, misses, evictions; // guarded by cInstanceCache
+
+    FormatCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the number of formats kept by the cache
+     */
+    FormatCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("invalid cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.cInstanceCache = new LinkedHashMap<MultipartKey, F>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<MultipartKey, F> eldest) {
+                if (size() > FormatCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
     
     private static final ConcurrentMap<MultipartKey, String> cDateTimeInstanceCache 
         = new ConcurrentHashMap<MultipartKey, String>(7);
@@ -77,18 +114,64 @@ abstract class FormatCache<F extends Format> {
             locale = Locale.getDefault();
         }
         final MultipartKey key = new MultipartKey(pattern, timeZone, locale);
-        F format = cInstanceCache.get(key);
-        if (format == null) {           
-            format = createInstance(pattern, timeZone, locale);
-            final F previousValue= cInstanceCache.putIfAbsent(key, format);
+        F format;
+        synchronized (cInstanceCache) {
+            format = cInstanceCache.get(key);
+            if (format != null) {
+                hits++;
+                return format;
+            }
+            misses++;
+        }
+        // created outside of the lock: creating a format parses its pattern
+        format = createInstance(pattern, timeZone, locale);
+        synchronized (cInstanceCache) {
+            final F previousValue = cInstanceCache.get(key);
             if (previousValue != null) {
                 // another thread snuck in and did the same work
-                // we should return the instance that is in ConcurrentMap
-                format= previousValue;              
+                // we should return the instance that is in the cache
+                return previousValue;
             }
+            cInstanceCache.put(key, format);
         }
         return format;
     }
+
+    /**
+     * @return the number of formats found in the cache
+     */
+    long getHits() {
+        synchronized (cInstanceCache) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of formats created because they were not cached
+     */
+    long getMisses() {
+        synchronized (cInstanceCache) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return the number of formats removed to keep the cache bounded
+     */
+    long getEvictions() {
+        synchronized (cInstanceCache) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return the number of formats in the cache
+     */
+    int size() {
+        synchronized (cInstanceCache) {
+            return cInstanceCache.size();
+        }
+    }
     
     /**
      * <p>Create a format instance using the specified pattern, time zone
@@ -15,6 +15,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sqlite.SQLiteConnection;
 import org.sqlite.SQLiteOpenMode;
+import org.sqlite.core.CorePreparedStatement;
+import org.sqlite.core.GeneratedKeys;
 
 public abstract class JDBC3Connection
         extends SQLiteConnection
@@ -211,7 +213,11 @@ public abstract class JDBC3Connection
     public PreparedStatement prepareStatement(String sql, int autoC)
             throws SQLException
     {
-        return prepareStatement(sql);
+        PreparedStatement prep = prepareStatement(sql);
+        if (autoC == Statement.RETURN_GENERATED_KEYS) {
+            ((CorePreparedStatement) prep).returnGeneratedKeys(null);
+        }
+        return prep;
     }
 
     /**
@@ -229,7 +235,13 @@ public abstract class JDBC3Connection
     public PreparedStatement prepareStatement(String sql, String[] colNames)
             throws SQLException
     {
-        return prepareStatement(sql);
+        String returning = colNames == null || colNames.length == 0 ? null : GeneratedKeys.returning(sql, colNames);
+        if (returning == null) {
+            return prepareStatement(sql);
+        }
+        PreparedStatement prep = prepareStatement(returning);
+        ((CorePreparedStatement) prep).returnGeneratedKeys(colNames);
+        return prep;
     }
 
     /**
@@ -19,9 +19,14 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
-import java.util.Arrays;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.Calendar;
 
+import org.sqlite.RowConsumer;
 import org.sqlite.SQLiteConnection;
 import org.sqlite.core.CorePreparedStatement;
 
@@ -37,9 +42,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
     public void clearParameters() throws SQLException {
         checkOpen();
         conn.getDatabase().clear_bindings(pointer);
-        if (batch != null)
-            for (int i = batchPos; i < batchPos + paramCount; i++)
-                batch[i] = null;
+        clearBatchRow();
     }
 
     /**
@@ -53,10 +56,14 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         if (batchQueryCount != 0) {
             throw new SQLException("Query is in batch mode");
         }
+        if (generatedKeys != null && columnCount == 0) {
+            executeUpdate();
+            return false;
+        }
 
         boolean success = false;
         try {
-            resultsWaiting = conn.getDatabase().execute(this, batch);
+            resultsWaiting = conn.getDatabase().execute(this, params, paramCount);
             success = true;
             return columnCount != 0;
         } finally {
@@ -82,7 +89,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
 
         boolean success = false;
         try {
-            resultsWaiting = conn.getDatabase().execute(this, batch);
+            resultsWaiting = conn.getDatabase().execute(this, params, paramCount);
             success = true;
         } finally {
             if (!success && pointer != 0) conn.getDatabase().reset(pointer);
@@ -90,6 +97,37 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         return getResultSet();
     }
 
+    /**
+     * Executes the query once per key, with the key bound to the first
+     * parameter, and passes every returned row to the consumer. The other
+     * parameters keep their current values for all keys. The keys are bound
+     * and stepped in chunks, each in a single native call, and the rows of a
+     * chunk are handed over together.
+     * <p>
+     * The consumer must not execute this statement again.
+     * @param keys The keys to look up.
+     * @param consumer Receives the rows of each key, in key order.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library does not support lookups.
+     * @throws SQLException
+     */
+    public void executeForEach(long[] keys, RowConsumer consumer) throws SQLException {
+        checkOpen();
+
+        if (columnCount == 0) {
+            throw new SQLException("Query does not return results");
+        }
+        if (batchQueryCount != 0) {
+            throw new SQLException("Query is in batch mode");
+        }
+        if (paramCount == 0) {
+            throw new SQLException("Query has no parameter for the key");
+        }
+
+        rs.close();
+        conn.getDatabase().reset(pointer);
+        conn.getDatabase().executeForEach(this, params, paramCount, keys, consumer);
+    }
+
     /**
      * @see java.sql.PreparedStatement#executeUpdate()
      */
@@ -106,7 +144,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         rs.close();
         conn.getDatabase().reset(pointer);
 
-        return conn.getDatabase().executeUpdate(this, batch);
+        return conn.getDatabase().executeUpdate(this, params, paramCount);
     }
 
     /**
@@ -114,15 +152,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
      */
     public void addBatch() throws SQLException {
         checkOpen();
-        batchPos += paramCount;
-        batchQueryCount++;
-        if (batch == null) {
-            batch = new Object[paramCount];
-        }
-        if (batchPos + paramCount > batch.length) {
-            batch = Arrays.copyOf(batch, batch.length << 1);
-        }
-        //System.arraycopy(batch, batchPos - paramCount, batch, batchPos, paramCount);
+        nextBatchRow();
     }
 
     // ParameterMetaData FUNCTIONS //////////////////////////////////
@@ -315,28 +345,28 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
      * @see java.sql.PreparedStatement#setDouble(int, double)
      */
     public void setDouble(int pos, double value) throws SQLException {
-        batch(pos, new Double(value));
+        batchDouble(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setFloat(int, float)
      */
     public void setFloat(int pos, float value) throws SQLException {
-        batch(pos, new Float(value));
+        batchDouble(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setInt(int, int)
      */
     public void setInt(int pos, int value) throws SQLException {
-        batch(pos, new Integer(value));
+        batchInt(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setLong(int, long)
      */
     public void setLong(int pos, long value) throws SQLException {
-        batch(pos, new Long(value));
+        batchLong(pos, value);
     }
 
     /**
@@ -361,7 +391,20 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
             batch(pos, null);
         }
         else if (value instanceof java.util.Date) {
-            setDateByMilliseconds(pos, ((java.util.Date)value).getTime(), Calendar.getInstance());
+            setDateByMilliseconds(pos, ((java.util.Date)value).getTime(), null);
+        }
+        else if (value instanceof LocalDateTime) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            setDateByLocalMillis(pos, dateTime.toEpochSecond(ZoneOffset.UTC) * 1000 + dateTime.getNano() / 1000000);
+        }
+        else if (value instanceof LocalDate) {
+            setDateByLocalMillis(pos, ((LocalDate) value).toEpochDay() * 86400000L);
+        }
+        else if (value instanceof Instant) {
+            setDateByMilliseconds(pos, ((Instant) value).toEpochMilli(), null);
+        }
+        else if (value instanceof OffsetDateTime) {
+            setDateByMilliseconds(pos, ((OffsetDateTime) value).toInstant().toEpochMilli(), null);
         }
         else if (value instanceof Long) {
             batch(pos, value);
@@ -370,7 +413,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
             batch(pos, value);
         }
         else if (value instanceof Short) {
-            batch(pos, new Integer(((Short) value).intValue()));
+            batchInt(pos, ((Short) value).intValue());
         }
         else if (value instanceof Float) {
             batch(pos, value);
@@ -384,6 +427,12 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         else if (value instanceof byte[]) {
             batch(pos, value);
         }
+        else if (value.getClass().isArray()) {
+            batchArray(pos, value);
+        }
+        else if (value instanceof Array) {
+            setArray(pos, (Array) value);
+        }
         else if (value instanceof BigDecimal) {
             setBigDecimal(pos, (BigDecimal)value);
         }
@@ -446,7 +495,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
      * @see java.sql.PreparedStatement#setDate(int, java.sql.Date)
      */
     public void setDate(int pos, Date x) throws SQLException {
-        setDate(pos, x, Calendar.getInstance());
+        setDate(pos, x, null);
     }
 
     /**
@@ -465,7 +514,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
       * @see java.sql.PreparedStatement#setTime(int, java.sql.Time)
       */
      public void setTime(int pos, Time x) throws SQLException {
-         setTime(pos, x, Calendar.getInstance());
+         setTime(pos, x, null);
      }
 
      /**
@@ -483,7 +532,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
       * @see java.sql.PreparedStatement#setTimestamp(int, java.sql.Timestamp)
       */
      public void setTimestamp(int pos, Timestamp x) throws SQLException {
-         setTimestamp(pos, x, Calendar.getInstance());
+         setTimestamp(pos, x, null);
      }
 
      /**
@@ -497,6 +546,21 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
          }
      }
 
+    /**
+     * Binds an array to a parameter of the carray table-valued function, e.g.
+     * <code>select * from t where id in carray(?)</code>. The statement is
+     * the same for any number of elements.
+     * @see java.sql.PreparedStatement#setArray(int, java.sql.Array)
+     */
+    public void setArray(int pos, Array x) throws SQLException {
+        if (x == null) {
+            batch(pos, null);
+        }
+        else {
+            batchArray(pos, x.getArray());
+        }
+    }
+
      /**
       * @see java.sql.PreparedStatement#getMetaData()
       */
@@ -513,8 +577,6 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
 
     // PreparedStatement ////////////////////////////////////////////
 
-    public void setArray(int i, Array x)
-        throws SQLException { throw unused(); }
 //    public void setBigDecimal(int parameterIndex, BigDecimal x)
 //        throws SQLException { throw unused(); }
     public void setBlob(int i, Blob x)
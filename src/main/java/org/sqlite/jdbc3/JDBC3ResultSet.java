@@ -13,16 +13,15 @@ import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.sql.Types;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.Locale;
-import java.util.regex.Matcher;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
+import org.sqlite.SQLiteConnectionConfig;
 import org.sqlite.core.CoreResultSet;
 import org.sqlite.core.CoreStatement;
 import org.sqlite.core.DB;
-import org.sqlite.date.FastDateFormat;
+import org.sqlite.core.StatementMetadata;
+import org.sqlite.date.FixedDateTime;
 
 public abstract class JDBC3ResultSet extends CoreResultSet {
     // ResultSet Functions //////////////////////////////////////////
@@ -37,16 +36,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      */
     public int findColumn(String col) throws SQLException {
         checkOpen();
-        Integer index = findColumnIndexInCache(col);
-        if (index != null) {
-            return index;
+        int index = getStatementMetadata().findColumn(col);
+        if (index < 0) {
+            throw new SQLException("no such column: '"+col+"'");
         }
-        for (int i=0; i < cols.length; i++) {
-            if (col.equalsIgnoreCase(cols[i])) {
-                return addColumnIndexInCache(col, i+1);
-            }
-        }
-        throw new SQLException("no such column: '"+col+"'");
+        return index + 1;
     }
 
     /**
@@ -278,28 +272,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getDate(int)
      */
     public Date getDate(int col) throws SQLException {
-        DB db = getDatabase();
-        switch(db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-    
-            case SQLITE_TEXT:
-                try {
-                    return new Date(getConnectionConfig().getDateFormat().parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing date");
-                    error.initCause(e);
-
-                    throw error;
-                }
-    
-            case SQLITE_FLOAT:
-                return new Date(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col))).getTimeInMillis());
-    
-            default: //SQLITE_INTEGER:
-                return new Date(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Date(getEpochMillis(col, type, null, "Error parsing date"));
     }
 
     /**
@@ -307,39 +284,18 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      */
     public Date getDate(int col, Calendar cal) throws SQLException {
         checkCalendar(cal);
-
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-    
-            case SQLITE_TEXT:
-                try {
-                	FastDateFormat dateFormat = FastDateFormat.getInstance(getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
-
-                    return new java.sql.Date(dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing time stamp");
-                    error.initCause(e);
-
-                    throw error;
-                }
-    
-            case SQLITE_FLOAT:
-                return new Date(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal).getTimeInMillis());
-    
-            default: // SQLITE_INTEGER: 
-                cal.setTimeInMillis(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
-                return new Date(cal.getTime().getTime());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Date(getEpochMillis(col, type, cal.getTimeZone(), "Error parsing time stamp"));
     }
 
     /**
      * @see java.sql.ResultSet#getDate(java.lang.String)
      */
     public Date getDate(String col) throws SQLException {
-        return getDate(findColumn(col), Calendar.getInstance());
+        return getDate(findColumn(col));
     }
 
     /**
@@ -433,8 +389,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getString(int)
      */
     public String getString(int col) throws SQLException {
-        DB db = getDatabase();
-        return db.column_text(stmt.pointer, markCol(col));
+        return columnText(markCol(col));
     }
 
     /**
@@ -448,28 +403,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getTime(int)
      */
     public Time getTime(int col) throws SQLException {
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-    
-            case SQLITE_TEXT:
-                try {
-                    return new Time(getConnectionConfig().getDateFormat().parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing time");
-                    error.initCause(e);
-
-                    throw error;
-                }
-    
-            case SQLITE_FLOAT:
-                return new Time(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col))).getTimeInMillis());
-    
-            default:// SQLITE_INTEGER
-                return new Time(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Time(getEpochMillis(col, type, null, "Error parsing time"));
     }
 
     /**
@@ -477,31 +415,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      */
     public Time getTime(int col, Calendar cal) throws SQLException {
         checkCalendar(cal);
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-
-            case SQLITE_TEXT:
-                try {
-                	FastDateFormat dateFormat = FastDateFormat.getInstance(getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
-
-                    return new Time(dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing time");
-                    error.initCause(e);
-
-                    throw error;
-                }
-    
-            case SQLITE_FLOAT:
-                return new Time(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal).getTimeInMillis());
-
-            default: //SQLITE_INTEGER
-                cal.setTimeInMillis(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
-                return new Time(cal.getTime().getTime());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Time(getEpochMillis(col, type, cal.getTimeZone(), "Error parsing time"));
     }
 
     /**
@@ -522,28 +440,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getTimestamp(int)
      */
     public Timestamp getTimestamp(int col) throws SQLException {
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-    
-            case SQLITE_TEXT:
-                try {
-                    return new Timestamp(getConnectionConfig().getDateFormat().parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing time stamp");
-                    error.initCause(e);
-
-                    throw error;
-                }
-    
-            case SQLITE_FLOAT:
-                return new Timestamp(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col))).getTimeInMillis());
-    
-            default: //SQLITE_INTEGER:
-                return new Timestamp(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Timestamp(getEpochMillis(col, type, null, "Error parsing time stamp"));
     }
 
     /**
@@ -553,33 +454,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
         if (cal == null) {
             return getTimestamp(col);
         }
-
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
-            case SQLITE_NULL:
-                return null;
-    
-            case SQLITE_TEXT:
-                try {
-                	FastDateFormat dateFormat = FastDateFormat.getInstance(getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
-
-                    return new Timestamp(dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
-                }
-                catch (Exception e) {
-                    SQLException error = new SQLException("Error parsing time stamp");
-                    error.initCause(e);
-
-                    throw error;
-                }
-            
-            case SQLITE_FLOAT:
-                return new Timestamp(julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal).getTimeInMillis());
-    
-            default: //SQLITE_INTEGER
-                cal.setTimeInMillis(db.column_long(stmt.pointer, markCol(col)) * getConnectionConfig().getDateMultiplier());
-
-                return new Timestamp(cal.getTime().getTime());
+        int type = getDatabase().column_type(stmt.pointer, markCol(col));
+        if (type == SQLITE_NULL) {
+            return null;
         }
+        return new Timestamp(getEpochMillis(col, type, cal.getTimeZone(), "Error parsing time stamp"));
     }
 
     /**
@@ -659,17 +538,17 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     /**
      * Pattern used to extract the column type name from table column definition.
      */
-    protected final static Pattern COLUMN_TYPENAME = Pattern.compile("([^\\(]*)");
+    protected final static Pattern COLUMN_TYPENAME = StatementMetadata.COLUMN_TYPENAME;
 
     /**
      * Pattern used to extract the column type name from a cast(col as type)
      */
-    protected final static Pattern COLUMN_TYPECAST = Pattern.compile("cast\\(.*?\\s+as\\s+(.*?)\\s*\\)");
+    protected final static Pattern COLUMN_TYPECAST = StatementMetadata.COLUMN_TYPECAST;
 
     /**
      * Pattern used to extract the precision and scale from column meta returned by the JDBC driver.
      */
-    protected final static Pattern COLUMN_PRECISION = Pattern.compile(".*?\\((.*?)\\)");
+    protected final static Pattern COLUMN_PRECISION = StatementMetadata.COLUMN_PRECISION;
 
     // we do not need to check the RS is open, only that colsMeta
     // is not null, done with checkCol(int).
@@ -685,7 +564,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSetMetaData#getCatalogName(int)
      */
     public String getCatalogName(int col) throws SQLException {
-        return getDatabase().column_table_name(stmt.pointer, checkCol(col));
+        return getStatementMetadata().tableNames[checkCol(col)];
     }
 
     /**
@@ -722,108 +601,15 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSetMetaData#getColumnName(int)
      */
     public String getColumnName(int col) throws SQLException {
-        return getDatabase().column_name(stmt.pointer, checkCol(col));
+        return getStatementMetadata().names[checkCol(col)];
     }
 
     /**
      * @see java.sql.ResultSetMetaData#getColumnType(int)
      */
     public int getColumnType(int col) throws SQLException {
-        String typeName = getColumnTypeName(col);
-        int valueType = getDatabase().column_type(stmt.pointer, checkCol(col));
-
-        if (valueType == SQLITE_INTEGER || valueType == SQLITE_NULL) {
-            if ("BOOLEAN".equals(typeName)) {
-                return Types.BOOLEAN;
-            }
-
-            if ("TINYINT".equals(typeName)) {
-                return Types.TINYINT;
-            }
-
-            if ("SMALLINT".equals(typeName) || "INT2".equals(typeName)) {
-                return Types.SMALLINT;
-            }
-
-            if ("BIGINT".equals(typeName) || "INT8".equals(typeName) ||
-                "UNSIGNED BIG INT".equals(typeName)) {
-                return  Types.BIGINT;
-            }
-
-            if ("DATE".equals(typeName) || "DATETIME".equals(typeName)) {
-                return Types.DATE;
-            }
-
-            if ("TIMESTAMP".equals(typeName)) {
-                return Types.TIMESTAMP;
-            }
-
-            if (valueType == SQLITE_INTEGER ||
-                "INT".equals(typeName) ||
-                "INTEGER".equals(typeName) ||
-                "MEDIUMINT".equals(typeName)) {
-                return Types.INTEGER;
-            }
-        }
-
-        if (valueType == SQLITE_FLOAT || valueType == SQLITE_NULL) {
-            if ("DECIMAL".equals(typeName)) {
-                return Types.DECIMAL;
-            }
-
-            if ("DOUBLE".equals(typeName) || "DOUBLE PRECISION".equals(typeName)) {
-                return Types.DOUBLE;
-            }
-
-            if ("NUMERIC".equals(typeName)) {
-                return Types.NUMERIC;
-            }
-
-            if ("REAL".equals(typeName)) {
-                return Types.REAL;
-            }
-    
-            if (valueType == SQLITE_FLOAT ||
-                "FLOAT".equals(typeName)) {
-                return Types.FLOAT;
-            }
-        }
-
-        if (valueType == SQLITE_TEXT || valueType == SQLITE_NULL) {
-            if ("CHARACTER".equals(typeName) || "NCHAR".equals(typeName) ||
-                "NATIVE CHARACTER".equals(typeName) || "CHAR".equals(typeName)) {
-                return Types.CHAR;
-            }
-
-            if ("CLOB".equals(typeName)) {
-                return Types.CLOB;
-            }
-
-            if ("DATE".equals(typeName) || "DATETIME".equals(typeName)) {
-                return Types.DATE;
-            }
-    
-            if (valueType == SQLITE_TEXT ||
-                "VARCHAR".equals(typeName) ||
-                "VARYING CHARACTER".equals(typeName) ||
-                "NVARCHAR".equals(typeName) ||
-                "TEXT".equals(typeName)) {
-                    return Types.VARCHAR;
-            }
-        }
-
-        if (valueType == SQLITE_BLOB || valueType == SQLITE_NULL) {
-            if ("BINARY".equals(typeName)) {
-                return Types.BINARY;
-            }
-
-            if (valueType == SQLITE_BLOB ||
-                "BLOB".equals(typeName)) {
-                return Types.BLOB;
-            }
-        }
-
-        return Types.NUMERIC;
+        col = checkCol(col);
+        return getStatementMetadata().jdbcType(col, getDatabase().column_type(stmt.pointer, col));
     }
 
     /**
@@ -832,76 +618,28 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSetMetaData#getColumnTypeName(int)
      */
     public String getColumnTypeName(int col) throws SQLException {
-        String declType = getColumnDeclType(col);
-
-        if (declType != null) {
-            Matcher matcher = COLUMN_TYPENAME.matcher(declType);
+        col = checkCol(col);
+        String typeName = getStatementMetadata().typeName(col);
 
-            matcher.find();
-            return matcher.group(1).toUpperCase(Locale.ENGLISH);
+        if (typeName != null) {
+            return typeName;
         }
 
-        switch (getDatabase().column_type(stmt.pointer, checkCol(col))) {
-        case SQLITE_INTEGER:
-            return "INTEGER";
-        case SQLITE_FLOAT:
-            return "FLOAT";
-        case SQLITE_BLOB:
-            return "BLOB";
-        case SQLITE_NULL:
-            return "NUMERIC";
-        case SQLITE_TEXT:
-        	return "TEXT";
-        default:
-            return "NUMERIC";
-        }
+        return StatementMetadata.typeName(null, getDatabase().column_type(stmt.pointer, col));
     }
 
     /**
      * @see java.sql.ResultSetMetaData#getPrecision(int)
      */
     public int getPrecision(int col) throws SQLException {
-        String declType = getColumnDeclType(col);
-
-        if (declType != null) {
-            Matcher matcher = COLUMN_PRECISION.matcher(declType);
-
-            return matcher.find() ? Integer.parseInt(matcher.group(1).split(",")[0].trim()) : 0;
-        }
-
-        return 0;
+        return getStatementMetadata().precision(checkCol(col));
     }
 
-    private String getColumnDeclType(int col) throws SQLException {
-        DB db = getDatabase();
-        String declType = db.column_decltype(stmt.pointer, checkCol(col));
-
-        if (declType == null) {
-            Matcher matcher = COLUMN_TYPECAST.matcher(db.column_name(stmt.pointer, checkCol(col)));
-            declType = matcher.find() ? matcher.group(1) : null;
-        }
-
-        return declType;
-    }
     /**
      * @see java.sql.ResultSetMetaData#getScale(int)
      */
     public int getScale(int col) throws SQLException {
-        String declType = getColumnDeclType(col);
-
-        if (declType != null) {
-            Matcher matcher = COLUMN_PRECISION.matcher(declType);
-
-            if (matcher.find()) {
-                String array[] = matcher.group(1).split(",");
-
-                if (array.length == 2) {
-                    return Integer.parseInt(array[1].trim());
-                }
-            }
-        }
-
-        return 0;
+        return getStatementMetadata().scale(checkCol(col));
     }
 
     /**
@@ -915,7 +653,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSetMetaData#getTableName(int)
      */
     public String getTableName(int col) throws SQLException {
-        final String tableName = getDatabase().column_table_name(stmt.pointer, checkCol(col));
+        final String tableName = getStatementMetadata().tableNames[checkCol(col)];
 		if(tableName == null)
 		{
 			//JDBC specifies an empty string instead of null
@@ -1022,76 +760,70 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     }
 
     /**
-     * Transforms a Julian Date to java.util.Calendar object.
-     */
-    private Calendar julianDateToCalendar(Double jd) {
-        return julianDateToCalendar(jd, Calendar.getInstance());
-    }
-
-    /**
-     * Transforms a Julian Date to java.util.Calendar object.
-     * Based on Guine Christian's function found here:
-     * http://java.ittoolbox.com/groups/technical-functional/java-l/java-function-to-convert-julian-date-to-calendar-date-1947446
+     * Reads a date value, of a column that is not NULL, as milliseconds since
+     * the epoch: TEXT in the date string format, REAL as a Julian day number
+     * of the wall clock time and INTEGER as a multiple of the date precision.
+     * @param col The column.
+     * @param type The type of the value, from column_type.
+     * @param zone The time zone of TEXT and REAL values; null for the time
+     *        zone of the date string format.
+     * @param message The message of the error raised for invalid TEXT.
      */
-    private Calendar julianDateToCalendar(Double jd, Calendar cal) {
-        if (jd == null) {
-            return null;
-        }
+    protected long getEpochMillis(int col, int type, TimeZone zone, String message) throws SQLException {
+        DB db = getDatabase();
+        SQLiteConnectionConfig config = getConnectionConfig();
+        switch (type) {
+            case SQLITE_TEXT:
+                if (config.isFixedDateFormat()) {
+                    long local = db.column_datetime(stmt.pointer, markCol(col));
+                    if (local != FixedDateTime.INVALID) {
+                        return FixedDateTime.toEpochMillis(local, zone == null ? config.getDateFormat().getTimeZone() : zone);
+                    }
+                }
+                try {
+                    return config.getDateFormat(zone).parse(db.column_text(stmt.pointer, markCol(col))).getTime();
+                }
+                catch (Exception e) {
+                    SQLException error = new SQLException(message);
+                    error.initCause(e);
 
-        int yyyy, dd, mm, hh, mn, ss, ms , A;
+                    throw error;
+                }
 
-        double w = jd + 0.5;
-        int Z = (int)w;
-        double F = w - Z;
+            case SQLITE_FLOAT:
+                return FixedDateTime.toEpochMillis(FixedDateTime.fromJulianDay(db.column_double(stmt.pointer, markCol(col))),
+                        zone == null ? config.getDateFormat().getTimeZone() : zone);
 
-        if (Z < 2299161) {
-            A = Z;
-        }
-        else {
-            int alpha = (int)((Z - 1867216.25) / 36524.25);
-            A = Z + 1 + alpha - (int)(alpha / 4.0);
+            default: //SQLITE_INTEGER
+                return db.column_long(stmt.pointer, markCol(col)) * config.getDateMultiplier();
         }
+    }
 
-        int B = A + 1524;
-        int C = (int)((B - 122.1) / 365.25);
-        int D = (int)(365.25 * C);
-        int E = (int)((B - D) / 30.6001);
-
-        //  month
-        mm = E - ((E < 13.5) ? 1 : 13);
-
-        // year
-        yyyy = C - ((mm > 2.5) ? 4716 : 4715);
-
-        // Day
-        double jjd = B - D - (int)(30.6001 * E) + F;
-        dd = (int)jjd;
-
-        // Hour
-        double hhd = jjd - dd;
-        hh = (int)(24 * hhd);
-
-        // Minutes
-        double mnd = (24 * hhd) - hh;
-        mn = (int)(60 * mnd);
-
-        // Seconds
-        double ssd = (60 * mnd) - mn;
-        ss = (int)(60 * ssd);
-
-        // Milliseconds
-        double msd = (60 * ssd) - ss;
-        ms = (int)(1000 * msd);
-
-        cal.set(yyyy, mm-1, dd, hh, mn, ss);
-        cal.set(Calendar.MILLISECOND, ms);
+    /**
+     * Reads a date value, of a column that is not NULL, as the local
+     * milliseconds of its wall clock time in the time zone of the date
+     * string format, see {@link FixedDateTime}.
+     * @param col The column.
+     * @param type The type of the value, from column_type.
+     * @param message The message of the error raised for invalid TEXT.
+     */
+    protected long getLocalMillis(int col, int type, String message) throws SQLException {
+        DB db = getDatabase();
+        SQLiteConnectionConfig config = getConnectionConfig();
+        switch (type) {
+            case SQLITE_TEXT:
+                if (config.isFixedDateFormat()) {
+                    long local = db.column_datetime(stmt.pointer, markCol(col));
+                    if (local != FixedDateTime.INVALID) {
+                        return local;
+                    }
+                }
+                break;
 
-        if (yyyy<1) {
-            cal.set(Calendar.ERA, GregorianCalendar.BC);
-            cal.set(Calendar.YEAR, -(yyyy-1));
+            case SQLITE_FLOAT:
+                return FixedDateTime.fromJulianDay(db.column_double(stmt.pointer, markCol(col)));
         }
-
-        return cal;
+        return FixedDateTime.toLocalMillis(getEpochMillis(col, type, null, message), config.getDateFormat().getTimeZone());
     }
 
     public void checkCalendar(Calendar cal) throws SQLException {
@@ -3,15 +3,19 @@ package org.sqlite.jdbc3;
 import org.sqlite.ExtendedCommand;
 import org.sqlite.ExtendedCommand.SQLExtension;
 import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteConnectionConfig;
 import org.sqlite.core.CoreStatement;
 import org.sqlite.core.DB;
 import org.sqlite.core.DB.ProgressObserver;
+import org.sqlite.core.GeneratedKeys;
+import org.sqlite.core.StatementMetadata;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.sql.Statement;
 
 public abstract class JDBC3Statement extends CoreStatement {
     // PUBLIC INTERFACE /////////////////////////////////////////////
@@ -121,17 +125,14 @@ public abstract class JDBC3Statement extends CoreStatement {
         if (rs.isOpen()) {
             throw new SQLException("ResultSet already requested");
         }
-        DB db = conn.getDatabase();
-
-        if (db.column_count(pointer) == 0) {
+        StatementMetadata meta = getExecutedMetadata();
+        if (meta.columnCount() == 0) {
             return null;
         }
 
-        if (rs.colsMeta == null) {
-            rs.colsMeta = db.column_names(pointer);
-        }
-
+        rs.colsMeta = meta.names;
         rs.cols = rs.colsMeta;
+        rs.setTextCache(textCacheSize, textCacheColumns);
         rs.open = resultsWaiting;
         resultsWaiting = false;
 
@@ -175,6 +176,22 @@ public abstract class JDBC3Statement extends CoreStatement {
                 batch[i] = null;
     }
 
+    /**
+     * Makes the result sets of this statement return the same String for
+     * every row holding the same text in a column, instead of a new copy per
+     * row. Overrides the setting of the connection, see
+     * {@link org.sqlite.SQLiteConfig#setTextCache(int)}; applies to the
+     * result sets opened afterwards.
+     * @param maxEntries The number of distinct values cached per column; 0 to
+     *        disable.
+     * @param columns The labels of the columns to cache; none for all columns.
+     */
+    public void setTextCache(int maxEntries, String... columns) {
+        SQLiteConnectionConfig.checkTextCache(maxEntries);
+        textCacheSize = maxEntries;
+        textCacheColumns = columns == null || columns.length == 0 ? null : columns.clone();
+    }
+
     /**
      * @see java.sql.Statement#executeBatch()
      */
@@ -187,12 +204,20 @@ public abstract class JDBC3Statement extends CoreStatement {
         int[] changes = new int[batchPos];
         DB db = conn.getDatabase();
         synchronized (db) {
+            boolean transaction = db.beginBatch(conn.getAutoCommit(), getConnectionConfig().isBatchTransaction());
+            boolean failed = true;
             try {
                 for (int i = 0; i < changes.length; i++) {
                     try {
+                        if (transaction) {
+                            db.beginBatchRow();
+                        }
                         this.sql = (String) batch[i];
                         db.prepare(this);
                         changes[i] = db.executeUpdate(this, null);
+                        if (transaction) {
+                            db.endBatchRow(false);
+                        }
                     }
                     catch (SQLException e) {
                         throw new BatchUpdateException("batch entry " + i + ": " + e.getMessage(), changes);
@@ -201,8 +226,15 @@ public abstract class JDBC3Statement extends CoreStatement {
                         db.finalize(this);
                     }
                 }
+                failed = false;
             }
             finally {
+                if (transaction) {
+                    if (failed) {
+                        db.endBatchRow(true);
+                    }
+                    db.endBatch(failed);
+                }
                 clearBatch();
             }
         }
@@ -320,12 +352,17 @@ public abstract class JDBC3Statement extends CoreStatement {
     }
 
     /**
-     * As SQLite's last_insert_rowid() function is DB-specific not statement
-     * specific, this function introduces a race condition if the same
+     * Returns the keys captured by the last execution if they were requested
+     * with {@link #RETURN_GENERATED_KEYS} or key column names. Otherwise falls
+     * back to SQLite's last_insert_rowid() function, which is DB-specific not
+     * statement specific, and so introduces a race condition if the same
      * connection is used by two threads and both insert.
      * @see java.sql.Statement#getGeneratedKeys()
      */
     public ResultSet getGeneratedKeys() throws SQLException {
+        if (generatedKeys != null) {
+            return generatedKeys.toResultSet((Statement) this);
+        }
         return conn.getSQLiteDatabaseMetaData().getGeneratedKeys();
     }
 
@@ -385,15 +422,74 @@ public abstract class JDBC3Statement extends CoreStatement {
 
     public boolean execute(String sql, int[] colinds)
         throws SQLException { throw unused(); }
-    public boolean execute(String sql, String[] colnames)
-        throws SQLException { throw unused(); }
-    public int executeUpdate(String sql, int autoKeys)
-        throws SQLException { throw unused(); }
     public int executeUpdate(String sql, int[] colinds)
         throws SQLException { throw unused(); }
-    public int executeUpdate(String sql, String[] cols)
-        throws SQLException { throw unused(); }
-    public boolean execute(String sql, int autokeys)
-        throws SQLException { throw unused(); }
+
+    /**
+     * @see java.sql.Statement#execute(java.lang.String, java.lang.String[])
+     */
+    public boolean execute(String sql, String[] colnames) throws SQLException {
+        if (colnames == null || colnames.length == 0 || GeneratedKeys.returning(sql, colnames) == null) {
+            return execute(sql);
+        }
+        executeUpdate(sql, colnames);
+        return false;
+    }
+
+    /**
+     * @see java.sql.Statement#executeUpdate(java.lang.String, int)
+     */
+    public int executeUpdate(String sql, int autoKeys) throws SQLException {
+        long rowid = autoKeys == Statement.RETURN_GENERATED_KEYS ? conn.getDatabase().last_insert_rowid() : 0;
+        int changes = executeUpdate(sql);
+        if (autoKeys == Statement.RETURN_GENERATED_KEYS) {
+            captureRowid(sql, changes, rowid);
+        }
+        return changes;
+    }
+
+    /**
+     * @see java.sql.Statement#executeUpdate(java.lang.String, java.lang.String[])
+     */
+    public int executeUpdate(String sql, String[] cols) throws SQLException {
+        String returning = cols == null || cols.length == 0 ? null : GeneratedKeys.returning(sql, cols);
+        if (returning == null) {
+            return executeUpdate(sql);
+        }
+        internalClose();
+        this.sql = returning;
+        DB db = conn.getDatabase();
+        db.prepare(this);
+        generatedKeys = new GeneratedKeys(cols, sql);
+        try {
+            return db.executeUpdate(this, null);
+        }
+        finally {
+            db.finalize(this);
+        }
+    }
+
+    /**
+     * @see java.sql.Statement#execute(java.lang.String, int)
+     */
+    public boolean execute(String sql, int autoKeys) throws SQLException {
+        long rowid = autoKeys == Statement.RETURN_GENERATED_KEYS ? conn.getDatabase().last_insert_rowid() : 0;
+        if (execute(sql)) {
+            return true;
+        }
+        if (autoKeys == Statement.RETURN_GENERATED_KEYS) {
+            captureRowid(sql, conn.getDatabase().changes(), rowid);
+        }
+        return false;
+    }
+
+    /**
+     * Captures the rowid of the row inserted by the last execution, if it inserted one.
+     * @param rowidBefore The last inserted rowid before the execution.
+     */
+    private void captureRowid(String sql, int changes, long rowidBefore) throws SQLException {
+        generatedKeys = new GeneratedKeys(null, sql);
+        generatedKeys.captureRowid(changes, rowidBefore, conn.getDatabase().last_insert_rowid());
+    }
 
 }
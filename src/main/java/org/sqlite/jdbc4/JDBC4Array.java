@@ -0,0 +1,92 @@
+package org.sqlite.jdbc4;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An array created with {@link java.sql.Connection#createArrayOf(String, Object[])},
+ * to be bound to a carray(?) parameter with
+ * {@link java.sql.PreparedStatement#setArray(int, Array)}.
+ */
+public class JDBC4Array implements Array {
+
+    private final String   typeName;
+    private Object[]       elements;
+
+    public JDBC4Array(String typeName, Object[] elements) {
+        this.typeName = typeName;
+        this.elements = elements;
+    }
+
+    public String getBaseTypeName() throws SQLException {
+        checkFree();
+        return typeName;
+    }
+
+    public int getBaseType() throws SQLException {
+        checkFree();
+        String type = typeName == null ? "" : typeName.toUpperCase();
+        if (type.contains("INT")) {
+            return Types.BIGINT;
+        }
+        if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) {
+            return Types.DOUBLE;
+        }
+        if (type.contains("BLOB") || type.contains("BINARY")) {
+            return Types.BLOB;
+        }
+        return Types.VARCHAR;
+    }
+
+    public Object getArray() throws SQLException {
+        checkFree();
+        return elements;
+    }
+
+    public Object getArray(Map<String, Class<?>> map) throws SQLException {
+        return getArray();
+    }
+
+    public Object getArray(long index, int count) throws SQLException {
+        checkFree();
+        if (index < 1 || count < 0 || index - 1 + count > elements.length) {
+            throw new SQLException("array slice out of bounds");
+        }
+        return Arrays.copyOfRange(elements, (int) index - 1, (int) index - 1 + count);
+    }
+
+    public Object getArray(long index, int count, Map<String, Class<?>> map) throws SQLException {
+        return getArray(index, count);
+    }
+
+    public ResultSet getResultSet() throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public ResultSet getResultSet(Map<String, Class<?>> map) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public ResultSet getResultSet(long index, int count) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public ResultSet getResultSet(long index, int count, Map<String, Class<?>> map) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public void free() {
+        elements = null;
+    }
+
+    private void checkFree() throws SQLException {
+        if (elements == null) {
+            throw new SQLException("array has been freed");
+        }
+    }
+}
@@ -106,9 +106,13 @@ public class JDBC4Connection extends JDBC3Connection {
         return null;
     }
 
+    /**
+     * Creates an array to bind to a carray(?) parameter.
+     * @see org.sqlite.jdbc3.JDBC3PreparedStatement#setArray(int, Array)
+     */
     public Array createArrayOf(String typeName, Object[] elements)
             throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+        checkOpen();
+        return new JDBC4Array(typeName, elements);
     }
 }
@@ -23,6 +23,10 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Map;
 
 import org.sqlite.core.CoreStatement;
@@ -335,12 +339,62 @@ public class JDBC4ResultSet extends JDBC3ResultSet implements ResultSet, ResultS
         throw new SQLFeatureNotSupportedException();
     }
     public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        if (type == null) {
+            throw new SQLException("type must not be null");
+        }
+        Object value;
+        int columnType;
+        if (type == String.class) {
+            value = getString(columnIndex);
+        }
+        else if ((columnType = getDatabase().column_type(stmt.pointer, markCol(columnIndex))) == SQLITE_NULL) {
+            return null;
+        }
+        else if (type == LocalDateTime.class) {
+            long local = getLocalMillis(columnIndex, columnType, "Error parsing time stamp");
+            value = LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000L),
+                    (int) Math.floorMod(local, 1000L) * 1000000, ZoneOffset.UTC);
+        }
+        else if (type == LocalDate.class) {
+            value = LocalDate.ofEpochDay(Math.floorDiv(getLocalMillis(columnIndex, columnType, "Error parsing date"), 86400000L));
+        }
+        else if (type == Instant.class) {
+            value = Instant.ofEpochMilli(getEpochMillis(columnIndex, columnType, null, "Error parsing time stamp"));
+        }
+        else if (type == Timestamp.class) {
+            value = new Timestamp(getEpochMillis(columnIndex, columnType, null, "Error parsing time stamp"));
+        }
+        else if (type == Date.class) {
+            value = new Date(getEpochMillis(columnIndex, columnType, null, "Error parsing date"));
+        }
+        else if (type == Time.class) {
+            value = new Time(getEpochMillis(columnIndex, columnType, null, "Error parsing time"));
+        }
+        else if (type == Long.class) {
+            value = getLong(columnIndex);
+        }
+        else if (type == Integer.class) {
+            value = getInt(columnIndex);
+        }
+        else if (type == Double.class) {
+            value = getDouble(columnIndex);
+        }
+        else if (type == Boolean.class) {
+            value = getBoolean(columnIndex);
+        }
+        else if (type == BigDecimal.class) {
+            value = getBigDecimal(columnIndex);
+        }
+        else if (type == byte[].class) {
+            value = getBytes(columnIndex);
+        }
+        else {
+            throw new SQLException("unsupported type " + type.getName());
+        }
+        return type.cast(value);
     }
     public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        return getObject(findColumn(columnLabel), type);
     }
 
     protected SQLException unused() {
@@ -25,11 +25,14 @@
 package org.sqlite.util;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Provides OS name and architecture name.
@@ -114,58 +117,143 @@ public class OSInfo
         return System.getProperty("java.runtime.name", "").toLowerCase().contains("android");
     }
 
-    public static boolean isAlpine() {
-        try {
-            Process p = Runtime.getRuntime().exec("cat /etc/os-release | grep ^ID");
-            p.waitFor(300, TimeUnit.MILLISECONDS);
+    private static Boolean alpine;
 
-            InputStream in = p.getInputStream();
-            try {
-                int readLen = 0;
-                ByteArrayOutputStream b = new ByteArrayOutputStream();
-                byte[] buf = new byte[32];
-                while((readLen = in.read(buf, 0, buf.length)) >= 0) {
-                    b.write(buf, 0, readLen);
-                }
-                return b.toString().toLowerCase().contains("alpine");
-            }
-            finally {
-                if(in != null) {
-                    in.close();
+    public static boolean isAlpine() {
+        if (alpine == null) {
+            boolean found = false;
+            String osRelease = readFile("/etc/os-release", 4096);
+            if (osRelease != null) {
+                for (String line : osRelease.split("\n")) {
+                    if (line.startsWith("ID") && line.toLowerCase(Locale.US).contains("alpine")) {
+                        found = true;
+                    }
                 }
             }
-                
-        } catch (Throwable e) {
-            return false;
+            alpine = found;
         }
-        
+        return alpine;
     }
 
+    /**
+     * @return The machine hardware name, as printed by <code>uname -m</code>,
+     *         read from /proc rather than by running uname.
+     */
     static String getHardwareName() {
-        try {
-            Process p = Runtime.getRuntime().exec("uname -m");
-            p.waitFor();
+        // Linux 6.1 and later
+        String arch = readFile("/proc/sys/kernel/arch", 64);
+        if (arch != null && arch.trim().length() > 0) {
+            return arch.trim();
+        }
 
-            InputStream in = p.getInputStream();
+        // older kernels: derive it from the processor description
+        String cpuinfo = readFile("/proc/cpuinfo", 4096);
+        if (cpuinfo != null) {
+            if (cpuinfo.contains("ARMv5")) {
+                return "armv5tel";
+            }
+            if (cpuinfo.contains("ARMv6")) {
+                return "armv6l";
+            }
+            if (cpuinfo.contains("ARMv7")) {
+                return "armv7l";
+            }
+            if (cpuinfo.contains("AArch64") || cpuinfo.matches("(?s).*CPU architecture\\s*:\\s*8.*")) {
+                return "aarch64";
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Reads the start of a file.
+     * @return Up to <code>limit</code> bytes of the file as ASCII text; null
+     *         if it cannot be read.
+     */
+    static String readFile(String path, int limit) {
+        byte[] bytes = readBytes(path, limit);
+        return bytes == null ? null : new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readBytes(String path, int limit) {
+        try {
+            InputStream in = new FileInputStream(path);
             try {
-                int readLen = 0;
                 ByteArrayOutputStream b = new ByteArrayOutputStream();
-                byte[] buf = new byte[32];
-                while((readLen = in.read(buf, 0, buf.length)) >= 0) {
+                byte[] buf = new byte[Math.min(limit, 4096)];
+                int readLen;
+                while (b.size() < limit && (readLen = in.read(buf, 0, Math.min(buf.length, limit - b.size()))) >= 0) {
                     b.write(buf, 0, readLen);
                 }
-                return b.toString();
+                return b.toByteArray();
             }
             finally {
-                if(in != null) {
-                    in.close();
-                }
+                in.close();
             }
         }
-        catch (Throwable e) {
-            System.err.println("Error while running uname -m: " + e.getMessage());
-            return "unknown";
+        catch (IOException e) {
+            return null;
         }
+        catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    private static final int EM_ARM                = 40;
+    private static final int PT_INTERP             = 3;
+    private static final int EF_ARM_ABI_FLOAT_HARD = 0x400;
+
+    /**
+     * @return The ELF header and program headers of the running JVM; null if
+     *         they cannot be read, e.g. on other systems than Linux.
+     */
+    static ByteBuffer readJvmElfHeader() {
+        byte[] bytes = readBytes("/proc/self/exe", 4096);
+        if (bytes == null || bytes.length < 52 || bytes[0] != 0x7f || bytes[1] != 'E' || bytes[2] != 'L' || bytes[3] != 'F') {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes).order(bytes[5] == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return True if the ELF header is of a 64-bit executable.
+     */
+    static boolean is64Bit(ByteBuffer elf) {
+        return elf.get(4) == 2;
+    }
+
+    /**
+     * Checks whether a 32-bit ARM executable uses the hard-float ABI: either
+     * its header flags say so, or its program interpreter is the armhf
+     * dynamic linker, as in /lib/ld-linux-armhf.so.3.
+     */
+    static boolean isHardFloat(ByteBuffer elf) {
+        if (is64Bit(elf) || (elf.getShort(18) & 0xFFFF) != EM_ARM) {
+            return false;
+        }
+        if ((elf.getInt(36) & EF_ARM_ABI_FLOAT_HARD) != 0) {
+            return true;
+        }
+        int phoff = elf.getInt(28);
+        int phentsize = elf.getShort(42) & 0xFFFF;
+        int phnum = elf.getShort(44) & 0xFFFF;
+        for (int i = 0; i < phnum; i++) {
+            int ph = phoff + i * phentsize;
+            if (ph < 0 || ph + 20 > elf.limit()) {
+                break;
+            }
+            if (elf.getInt(ph) == PT_INTERP) {
+                int offset = elf.getInt(ph + 4);
+                int size = elf.getInt(ph + 16);
+                if (offset < 0 || size < 0 || offset + size > elf.limit()) {
+                    break;
+                }
+                byte[] interp = new byte[size];
+                ((ByteBuffer) elf.duplicate().position(offset)).get(interp);
+                return new String(interp, StandardCharsets.ISO_8859_1).contains("armhf");
+            }
+        }
+        return false;
     }
 
     static String resolveArmArchType() {
@@ -185,8 +273,11 @@ public class OSInfo
                 return "arm";
             }
             else if (armType.startsWith("aarch64")) {
-                // Use arm64
-                return "aarch64";
+                // Use arm64, unless the JVM is a 32-bit one on a 64-bit kernel
+                ByteBuffer elf = readJvmElfHeader();
+                if (elf == null || is64Bit(elf)) {
+                    return "aarch64";
+                }
             }
 
             // Java 1.8 introduces a system property to determine armel or armhf
@@ -196,29 +287,10 @@ public class OSInfo
                 return "armv7";
             }
 
-            // For java7, we stil need to if run some shell commands to determine ABI of JVM
-            String javaHome = System.getProperty("java.home");
-            try {
-                // determine if first JVM found uses ARM hard-float ABI
-                int exitCode = Runtime.getRuntime().exec("which readelf").waitFor();
-                if(exitCode == 0) {
-                    String[] cmdarray = {"/bin/sh", "-c", "find '" + javaHome +
-                        "' -name 'libjvm.so' | head -1 | xargs readelf -A | " +
-                        "grep 'Tag_ABI_VFP_args: VFP registers'"};
-                    exitCode = Runtime.getRuntime().exec(cmdarray).waitFor();
-                    if (exitCode == 0) {
-                        return "armv7";
-                    }
-                } else {
-                    System.err.println("WARNING! readelf not found. Cannot check if running on an armhf system, " +
-                        "armel architecture will be presumed.");
-                }
-            }
-            catch(IOException e) {
-                // ignored: fall back to "arm" arch (soft-float ABI)
-            }
-            catch(InterruptedException e) {
-                // ignored: fall back to "arm" arch (soft-float ABI)
+            // Otherwise determine if the running JVM uses ARM hard-float ABI from its ELF header
+            ByteBuffer elf = readJvmElfHeader();
+            if (elf != null && isHardFloat(elf)) {
+                return "armv7";
             }
         }
         // Use armv5, soft-float ABI
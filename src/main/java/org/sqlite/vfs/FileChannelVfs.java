@@ -0,0 +1,166 @@
+package org.sqlite.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A file system of local files, read and written with positional
+ * {@link FileChannel} I/O. Files opened read-only can be memory-mapped, so
+ * that SQLite reads pages of read-mostly databases from the page cache of the
+ * operating system without a system call.
+ *
+ * <p>A mapped file must not be truncated while it is open, by this or any
+ * other process.</p>
+ */
+public class FileChannelVfs extends VirtualFileSystem
+{
+    private final long mapLimit;
+
+    /**
+     * Creates a file system that does not map files.
+     */
+    public FileChannelVfs() {
+        this(0);
+    }
+
+    /**
+     * @param mapLimit The size up to which files opened read-only are mapped
+     *        when opened; 0 to read every file with the channel.
+     */
+    public FileChannelVfs(long mapLimit) {
+        if (mapLimit < 0 || mapLimit > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid map limit: " + mapLimit);
+        }
+        this.mapLimit = mapLimit;
+    }
+
+    @Override
+    protected String fullPathname(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    @Override
+    protected VirtualFile open(String path, int flags) throws IOException {
+        Path file = path == null ? Files.createTempFile("sqlite-vfs-", ".tmp") : Paths.get(path);
+        Set<OpenOption> options = new HashSet<OpenOption>();
+        options.add(StandardOpenOption.READ);
+        if ((flags & OPEN_READWRITE) != 0) {
+            options.add(StandardOpenOption.WRITE);
+        }
+        if ((flags & OPEN_CREATE) != 0) {
+            options.add((flags & OPEN_EXCLUSIVE) != 0 ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE);
+        }
+        if (path == null || (flags & OPEN_DELETEONCLOSE) != 0) {
+            options.add(StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        FileChannel channel = FileChannel.open(file, options);
+        MappedByteBuffer map = null;
+        try {
+            long size = channel.size();
+            if ((flags & OPEN_READONLY) != 0 && size > 0 && size <= mapLimit) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ChannelFile(channel, map);
+    }
+
+    @Override
+    protected void delete(String path, boolean syncDirectory) throws IOException {
+        Path file = Paths.get(path);
+        Files.deleteIfExists(file);
+        Path dir = file.toAbsolutePath().getParent();
+        if (syncDirectory && dir != null) {
+            try {
+                FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ);
+                try {
+                    channel.force(true);
+                }
+                finally {
+                    channel.close();
+                }
+            }
+            catch (IOException e) {
+                // directories cannot be opened on some platforms
+            }
+        }
+    }
+
+    @Override
+    protected boolean access(String path, int flags) {
+        Path file = Paths.get(path);
+        return flags == ACCESS_READWRITE ? Files.isWritable(file) : Files.exists(file);
+    }
+
+    private static final class ChannelFile extends VirtualFile
+    {
+        private final FileChannel      channel;
+        private final MappedByteBuffer map;
+
+        ChannelFile(FileChannel channel, MappedByteBuffer map) {
+            this.channel = channel;
+            this.map = map;
+        }
+
+        @Override
+        protected int read(ByteBuffer dst, long offset) throws IOException {
+            int total = 0;
+            if (map != null && offset < map.capacity()) {
+                ByteBuffer src = map.duplicate();
+                src.position((int) offset);
+                src.limit((int) Math.min(map.capacity(), offset + dst.remaining()));
+                total = src.remaining();
+                dst.put(src);
+            }
+            // beyond the mapping: written after the file was opened
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, offset + total);
+                if (n < 0) {
+                    break;
+                }
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        protected void write(ByteBuffer src, long offset) throws IOException {
+            while (src.hasRemaining()) {
+                offset += channel.write(src, offset);
+            }
+        }
+
+        @Override
+        protected void truncate(long size) throws IOException {
+            channel.truncate(size);
+        }
+
+        @Override
+        protected void sync(boolean dataOnly) throws IOException {
+            channel.force(!dataOnly);
+        }
+
+        @Override
+        protected long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        protected void close() throws IOException {
+            channel.close();
+        }
+    }
+}
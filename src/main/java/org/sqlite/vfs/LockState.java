@@ -0,0 +1,102 @@
+package org.sqlite.vfs;
+
+/**
+ * The locks held on a file by the open {@link VirtualFile}s of the process,
+ * following the levels of the SQLite file locking protocol: any number of
+ * SHARED locks, or one RESERVED lock alongside them, or one PENDING lock
+ * waiting for the SHARED locks to go, or one EXCLUSIVE lock.
+ *
+ * @see <a href="https://www.sqlite.org/lockingv3.html">https://www.sqlite.org/lockingv3.html</a>
+ */
+final class LockState
+{
+    static final int NONE      = 0;
+    static final int SHARED    = 1;
+    static final int RESERVED  = 2;
+    static final int PENDING   = 3;
+    static final int EXCLUSIVE = 4;
+
+    static final int OK   = 0;
+    static final int BUSY = 5;
+
+    final String path;
+    int          files;     // open files, guarded by the file system
+
+    private int         shared;
+    private VirtualFile reserved, pending, exclusive;
+
+    LockState(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Raises the lock of a file.
+     * @return {@link #OK} or {@link #BUSY}.
+     */
+    synchronized int lock(VirtualFile file, int level) {
+        if (file.lockLevel >= level) {
+            return OK;
+        }
+        switch (level) {
+        case SHARED:
+            if (pending != null || exclusive != null) {
+                return BUSY;
+            }
+            shared++;
+            break;
+        case RESERVED:
+            if (reserved != null || exclusive != null) {
+                return BUSY;
+            }
+            reserved = file;
+            break;
+        default:
+            if (pending == null) {
+                if (exclusive != null || (reserved != null && reserved != file)) {
+                    return BUSY;
+                }
+                pending = file;
+            }
+            else if (pending != file) {
+                return BUSY;
+            }
+            if (shared > 1) {
+                file.lockLevel = PENDING; // new readers are kept out until the others leave
+                return BUSY;
+            }
+            exclusive = file;
+            break;
+        }
+        file.lockLevel = level;
+        return OK;
+    }
+
+    /**
+     * Lowers the lock of a file to SHARED or NONE.
+     */
+    synchronized void unlock(VirtualFile file, int level) {
+        if (file.lockLevel <= level) {
+            return;
+        }
+        if (reserved == file) {
+            reserved = null;
+        }
+        if (pending == file) {
+            pending = null;
+        }
+        if (exclusive == file) {
+            exclusive = null;
+        }
+        if (level == NONE && file.lockLevel >= SHARED) {
+            shared--;
+        }
+        file.lockLevel = level;
+    }
+
+    /**
+     * @return True if a file holds a RESERVED or higher lock.
+     */
+    synchronized boolean isReserved() {
+        return reserved != null || pending != null || exclusive != null;
+    }
+}
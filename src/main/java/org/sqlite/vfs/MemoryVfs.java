@@ -0,0 +1,250 @@
+package org.sqlite.vfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A file system whose files are kept in memory, on the Java heap or off-heap
+ * in direct buffers. Files are stored in fixed-size chunks, so they grow
+ * without copying; chunks released by truncated and deleted files are kept
+ * in an arena and reused by the files of the file system.
+ *
+ * <p>Files live until they are deleted, independently of connections, and
+ * are shared by all connections of the process opening the same name.</p>
+ */
+public class MemoryVfs extends VirtualFileSystem
+{
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final boolean              direct;
+    private final int                  chunkSize;
+    private final int                  maxFreeChunks;
+    private final Map<String, Storage> files = new HashMap<String, Storage>();
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+    private long                       allocated; // guarded by free
+
+    /**
+     * Creates a file system on the heap, with 64 KiB chunks.
+     */
+    public MemoryVfs() {
+        this(false, 64 * 1024, 256);
+    }
+
+    /**
+     * @param direct True to allocate chunks off-heap.
+     * @param chunkSize The size of the chunks, in bytes.
+     * @param maxFreeChunks The number of released chunks kept for reuse.
+     */
+    public MemoryVfs(boolean direct, int chunkSize, int maxFreeChunks) {
+        if (chunkSize < 512) {
+            throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+        }
+        this.direct = direct;
+        this.chunkSize = chunkSize;
+        this.maxFreeChunks = maxFreeChunks;
+    }
+
+    /**
+     * @return The number of bytes allocated for files and free chunks.
+     */
+    public long allocatedBytes() {
+        synchronized (free) {
+            return allocated;
+        }
+    }
+
+    @Override
+    protected VirtualFile open(String path, int flags) throws IOException {
+        Storage storage;
+        synchronized (this) {
+            storage = path == null ? null : files.get(path);
+            if (storage == null) {
+                if (path != null && (flags & OPEN_CREATE) == 0) {
+                    throw new FileNotFoundException(path);
+                }
+                storage = new Storage();
+                if (path != null) {
+                    files.put(path, storage);
+                }
+            }
+            else if ((flags & OPEN_EXCLUSIVE) != 0) {
+                throw new FileAlreadyExistsException(path);
+            }
+            storage.opened++;
+        }
+        return new MemoryFile(path, storage, path == null || (flags & OPEN_DELETEONCLOSE) != 0);
+    }
+
+    @Override
+    protected synchronized void delete(String path, boolean syncDirectory) {
+        Storage storage = files.remove(path);
+        if (storage != null && storage.opened == 0) {
+            storage.clear();
+        }
+    }
+
+    @Override
+    protected synchronized boolean access(String path, int flags) {
+        return files.containsKey(path);
+    }
+
+    private ByteBuffer allocate() {
+        synchronized (free) {
+            ByteBuffer chunk = free.poll();
+            if (chunk != null) {
+                return chunk;
+            }
+            allocated += chunkSize;
+        }
+        return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+    }
+
+    private void release(ByteBuffer chunk) {
+        zero(chunk, 0, chunkSize);
+        synchronized (free) {
+            if (free.size() < maxFreeChunks) {
+                free.push(chunk);
+            }
+            else {
+                allocated -= chunkSize;
+            }
+        }
+    }
+
+    private static void zero(ByteBuffer chunk, int from, int to) {
+        ByteBuffer b = chunk.duplicate();
+        b.position(from);
+        while (b.position() < to) {
+            b.put(ZEROS, 0, Math.min(ZEROS.length, to - b.position()));
+        }
+    }
+
+    /**
+     * The chunks of a file. Bytes past the size of the file are zero.
+     */
+    private final class Storage
+    {
+        private ByteBuffer[] chunks = new ByteBuffer[0];
+        private long         size;
+        int                  opened; // guarded by the file system
+
+        synchronized int read(ByteBuffer dst, long offset) {
+            int total = 0;
+            while (dst.hasRemaining() && offset < size) {
+                ByteBuffer src = chunks[(int) (offset / chunkSize)].duplicate();
+                int pos = (int) (offset % chunkSize);
+                src.position(pos);
+                src.limit(pos + (int) Math.min(Math.min(chunkSize - pos, dst.remaining()), size - offset));
+                offset += src.remaining();
+                total += src.remaining();
+                dst.put(src);
+            }
+            return total;
+        }
+
+        synchronized void write(ByteBuffer src, long offset) {
+            long end = offset + src.remaining();
+            int needed = (int) ((end + chunkSize - 1) / chunkSize);
+            if (needed > chunks.length) {
+                int n = chunks.length;
+                chunks = Arrays.copyOf(chunks, Math.max(needed, n + (n >> 1)));
+                for (int i = n; i < chunks.length; i++) {
+                    chunks[i] = allocate();
+                }
+            }
+            while (src.hasRemaining()) {
+                ByteBuffer dst = chunks[(int) (offset / chunkSize)].duplicate();
+                dst.position((int) (offset % chunkSize));
+                int n = Math.min(dst.remaining(), src.remaining());
+                ByteBuffer part = src.duplicate();
+                part.limit(part.position() + n);
+                dst.put(part);
+                src.position(src.position() + n);
+                offset += n;
+            }
+            size = Math.max(size, end);
+        }
+
+        synchronized void truncate(long newSize) {
+            if (newSize >= size) {
+                return;
+            }
+            int keep = (int) ((newSize + chunkSize - 1) / chunkSize);
+            for (int i = keep; i < chunks.length; i++) {
+                release(chunks[i]);
+            }
+            chunks = Arrays.copyOf(chunks, keep);
+            if (newSize % chunkSize != 0) {
+                zero(chunks[keep - 1], (int) (newSize % chunkSize), chunkSize);
+            }
+            size = newSize;
+        }
+
+        synchronized void clear() {
+            for (ByteBuffer chunk : chunks) {
+                release(chunk);
+            }
+            chunks = new ByteBuffer[0];
+            size = 0;
+        }
+
+        synchronized long size() {
+            return size;
+        }
+    }
+
+    private final class MemoryFile extends VirtualFile
+    {
+        private final String  path;
+        private final Storage storage;
+        private final boolean deleteOnClose;
+
+        MemoryFile(String path, Storage storage, boolean deleteOnClose) {
+            this.path = path;
+            this.storage = storage;
+            this.deleteOnClose = deleteOnClose;
+        }
+
+        @Override
+        protected int read(ByteBuffer dst, long offset) {
+            return storage.read(dst, offset);
+        }
+
+        @Override
+        protected void write(ByteBuffer src, long offset) {
+            storage.write(src, offset);
+        }
+
+        @Override
+        protected void truncate(long size) {
+            storage.truncate(size);
+        }
+
+        @Override
+        protected void sync(boolean dataOnly) {
+        }
+
+        @Override
+        protected long size() {
+            return storage.size();
+        }
+
+        @Override
+        protected void close() {
+            synchronized (MemoryVfs.this) {
+                if (deleteOnClose && path != null && files.get(path) == storage) {
+                    files.remove(path);
+                }
+                if (--storage.opened == 0 && (path == null || files.get(path) != storage)) {
+                    storage.clear();
+                }
+            }
+        }
+    }
+}
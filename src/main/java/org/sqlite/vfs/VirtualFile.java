@@ -0,0 +1,101 @@
+package org.sqlite.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A file opened by a {@link VirtualFileSystem}. SQLite reads and writes
+ * whole pages of the database, and smaller records of the journals; small
+ * reads are batched by the native library, which reads ahead into a buffer
+ * of its own until the file is written or unlocked.
+ *
+ * <p>The buffers passed to {@link #read(ByteBuffer, long)} and
+ * {@link #write(ByteBuffer, long)} are direct buffers over the memory of
+ * SQLite, only valid during the call.</p>
+ */
+public abstract class VirtualFile
+{
+    private VirtualFileSystem vfs;
+    private LockState         lock;
+    int                       lockLevel;
+
+    final void attach(VirtualFileSystem vfs, LockState lock) {
+        this.vfs = vfs;
+        this.lock = lock;
+    }
+
+    /**
+     * Reads bytes at the given position until the buffer is full or the end
+     * of the file is reached.
+     * @param dst The buffer to read into, from its position to its limit.
+     * @param offset The position in the file.
+     * @return The number of bytes read, less than requested at the end of
+     *         the file.
+     */
+    protected abstract int read(ByteBuffer dst, long offset) throws IOException;
+
+    /**
+     * Writes all remaining bytes of a buffer at the given position, extending
+     * the file as needed.
+     * @param src The bytes to write, from its position to its limit.
+     * @param offset The position in the file.
+     */
+    protected abstract void write(ByteBuffer src, long offset) throws IOException;
+
+    /**
+     * @param size The new size of the file, not larger than its size.
+     */
+    protected abstract void truncate(long size) throws IOException;
+
+    /**
+     * Makes the writes to the file durable.
+     * @param dataOnly True if the metadata of the file, other than its size,
+     *        need not be written.
+     */
+    protected abstract void sync(boolean dataOnly) throws IOException;
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    protected abstract long size() throws IOException;
+
+    /**
+     * Called when SQLite closes the file.
+     */
+    protected void close() throws IOException {
+    }
+
+    /**
+     * Called by the native library to raise the lock of the file.
+     */
+    final int lock(int level) {
+        return lock.lock(this, level);
+    }
+
+    /**
+     * Called by the native library to lower the lock of the file.
+     */
+    final void unlock(int level) {
+        lock.unlock(this, level);
+    }
+
+    /**
+     * Called by the native library to check for a writer.
+     */
+    final boolean isReserved() {
+        return lock.isReserved();
+    }
+
+    /**
+     * Called by the native library to close the file and release its locks.
+     */
+    final void closeFile() throws IOException {
+        try {
+            close();
+        }
+        finally {
+            lock.unlock(this, LockState.NONE);
+            vfs.detach(lock);
+        }
+    }
+}
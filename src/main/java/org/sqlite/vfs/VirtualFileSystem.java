@@ -0,0 +1,162 @@
+package org.sqlite.vfs;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sqlite.core.Codes;
+import org.sqlite.core.NativeDB;
+
+/**
+ * A file system implemented in Java, through which SQLite reads and writes
+ * its database, journal and temporary files. A file system is registered
+ * once per process with {@link #register(String, VirtualFileSystem, boolean)}
+ * and used by the connections opening <code>file:name.db?vfs=name</code>,
+ * or by every connection when it is the default.
+ *
+ * Eg.
+ *
+ * <pre>
+ *      VirtualFileSystem.register("nio", new FileChannelVfs(), false);
+ *      Connection conn = DriverManager.getConnection("jdbc:sqlite:file:data.db?vfs=nio");
+ * </pre>
+ *
+ * <p>Files are locked between the connections of the process only, so a
+ * database must not be written by other processes while it is opened through
+ * a Java file system. Shared memory is not supported: a database in WAL mode
+ * needs <code>locking_mode=exclusive</code>.</p>
+ *
+ * <p>The file system and its files are called on the thread executing a
+ * statement, possibly by several connections at once.</p>
+ *
+ * @see <a href="https://www.sqlite.org/vfs.html">https://www.sqlite.org/vfs.html</a>
+ */
+public abstract class VirtualFileSystem
+{
+    /** Open flags, see {@link #open(String, int)}. */
+    public static final int OPEN_READONLY      = 0x00000001;
+    public static final int OPEN_READWRITE     = 0x00000002;
+    public static final int OPEN_CREATE        = 0x00000004;
+    public static final int OPEN_DELETEONCLOSE = 0x00000008;
+    public static final int OPEN_EXCLUSIVE     = 0x00000010;
+    public static final int OPEN_MAIN_DB       = 0x00000100;
+    public static final int OPEN_TEMP_DB       = 0x00000200;
+    public static final int OPEN_TRANSIENT_DB  = 0x00000400;
+    public static final int OPEN_MAIN_JOURNAL  = 0x00000800;
+    public static final int OPEN_TEMP_JOURNAL  = 0x00001000;
+    public static final int OPEN_SUBJOURNAL    = 0x00002000;
+    public static final int OPEN_SUPER_JOURNAL = 0x00004000;
+    public static final int OPEN_WAL           = 0x00080000;
+
+    /** Access checks, see {@link #access(String, int)}. */
+    public static final int ACCESS_EXISTS      = 0;
+    public static final int ACCESS_READWRITE   = 1;
+
+    private final Map<String, LockState> locks = new HashMap<String, LockState>();
+
+    /**
+     * Registers a file system for all connections of the process.
+     * @param name The name of the file system, used as <code>vfs=name</code>;
+     *        not the name of another registered file system.
+     * @param vfs The file system.
+     * @param makeDefault True to use the file system for connections not
+     *        naming one.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library
+     *         does not support Java file systems.
+     * @throws SQLException
+     */
+    public static void register(String name, VirtualFileSystem vfs, boolean makeDefault) throws SQLException {
+        if (vfs == null) {
+            throw new SQLException("file system must not be null");
+        }
+        if (name == null || name.isEmpty() || name.length() > 255) {
+            throw new SQLException("invalid file system name: '" + name + "'");
+        }
+        if (NativeDB.register_vfs(name, vfs, makeDefault) != Codes.SQLITE_OK) {
+            throw new SQLException("error registering file system " + name);
+        }
+    }
+
+    /**
+     * Unregisters a Java file system, so new connections can no longer name
+     * it. Connections that are still open keep using it until they close
+     * their files; the native file system is freed after the last of them.
+     * @param name The name of the file system.
+     * @throws SQLException
+     */
+    public static void unregister(String name) throws SQLException {
+        if (NativeDB.register_vfs(name, null, false) != Codes.SQLITE_OK) {
+            throw new SQLException("no Java file system " + name);
+        }
+    }
+
+    /**
+     * Opens a file.
+     * @param path The full path name of the file; null for a temporary file,
+     *        which is deleted when closed.
+     * @param flags The {@link #OPEN_READONLY} or {@link #OPEN_READWRITE}
+     *        mode, {@link #OPEN_CREATE} and the other open flags.
+     * @return The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    protected abstract VirtualFile open(String path, int flags) throws IOException;
+
+    /**
+     * Deletes a file, if it exists.
+     * @param path The full path name of the file.
+     * @param syncDirectory True if the deletion must be durable when this
+     *        call returns.
+     */
+    protected abstract void delete(String path, boolean syncDirectory) throws IOException;
+
+    /**
+     * @param path The full path name of a file.
+     * @param flags {@link #ACCESS_EXISTS} or {@link #ACCESS_READWRITE}.
+     * @return True if the file exists, and can be written for
+     *         {@link #ACCESS_READWRITE}.
+     */
+    protected abstract boolean access(String path, int flags) throws IOException;
+
+    /**
+     * @param path The name of a file, as given in the connection URL.
+     * @return The full path name of the file, which identifies it for
+     *         locking.
+     */
+    protected String fullPathname(String path) throws IOException {
+        return path;
+    }
+
+    /**
+     * Called by the native library to open a file and attach its locks.
+     */
+    final VirtualFile openFile(String path, int flags) throws IOException {
+        VirtualFile file = open(path, flags);
+        if (file == null) {
+            throw new IOException("no file returned for " + path);
+        }
+        synchronized (locks) {
+            LockState lock = path == null ? null : locks.get(path);
+            if (lock == null) {
+                lock = new LockState(path);
+                if (path != null) {
+                    locks.put(path, lock);
+                }
+            }
+            lock.files++;
+            file.attach(this, lock);
+        }
+        return file;
+    }
+
+    /**
+     * Releases the locks of a closed file.
+     */
+    final void detach(LockState lock) {
+        synchronized (locks) {
+            if (--lock.files == 0 && lock.path != null) {
+                locks.remove(lock.path);
+            }
+        }
+    }
+}
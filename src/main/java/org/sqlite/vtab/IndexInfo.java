@@ -0,0 +1,184 @@
+package org.sqlite.vtab;
+
+/**
+ * The constraints and ordering of a query on a {@link VirtualTable}, and the
+ * plan chosen for them by {@link VirtualTable#bestIndex(IndexInfo)}.
+ *
+ * <p>A constraint compares a column to a value, e.g. <code>id = ?</code> or
+ * <code>price &gt;= 10</code>. Its value is only known when the scan starts:
+ * constraints passed to {@link #use(int, boolean)} have their values passed
+ * to {@link VirtualCursor#filter(int, String, Object[])}. Unless omitted,
+ * SQLite checks used constraints again on the returned rows, so a table may
+ * use a constraint to narrow its scan without handling it exactly.</p>
+ *
+ * @see <a href="https://www.sqlite.org/vtab.html#the_xbestindex_method">https://www.sqlite.org/vtab.html#the_xbestindex_method</a>
+ */
+public final class IndexInfo
+{
+    /** Constraint operators. */
+    public static final int EQ        = 2;
+    public static final int GT        = 4;
+    public static final int LE        = 8;
+    public static final int LT        = 16;
+    public static final int GE        = 32;
+    public static final int MATCH     = 64;
+    public static final int LIKE      = 65;
+    public static final int GLOB      = 66;
+    public static final int REGEXP    = 67;
+    public static final int NE        = 68;
+    public static final int ISNOT     = 69;
+    public static final int ISNOTNULL = 70;
+    public static final int ISNULL    = 71;
+    public static final int IS        = 72;
+
+    private final int[] constraints; // { column, op, usable } per constraint
+    private final int[] orderBys;    // { column, desc } per term
+    private final long  columnsUsed;
+
+    // read by the native library
+    private final int[]     argvIndex;
+    private final boolean[] omit;
+    private int             args;
+    private int             indexNumber;
+    private String          indexString;
+    private boolean         orderByConsumed;
+    private double          estimatedCost;
+    private long            estimatedRows;
+
+    IndexInfo(int[] constraints, int[] orderBys, long columnsUsed, double estimatedCost, long estimatedRows) {
+        this.constraints = constraints;
+        this.orderBys = orderBys;
+        this.columnsUsed = columnsUsed;
+        this.estimatedCost = estimatedCost;
+        this.estimatedRows = estimatedRows;
+        argvIndex = new int[constraints.length / 3];
+        omit = new boolean[constraints.length / 3];
+    }
+
+    /**
+     * @return The number of constraints.
+     */
+    public int constraintCount() {
+        return argvIndex.length;
+    }
+
+    /**
+     * @param i Constraint index in [0, constraintCount()-1].
+     * @return The constrained column; -1 for the rowid.
+     */
+    public int constraintColumn(int i) {
+        return constraints[check(i) * 3];
+    }
+
+    /**
+     * @param i Constraint index in [0, constraintCount()-1].
+     * @return The operator of the constraint, such as {@link #EQ}.
+     */
+    public int constraintOp(int i) {
+        return constraints[check(i) * 3 + 1];
+    }
+
+    /**
+     * @param i Constraint index in [0, constraintCount()-1].
+     * @return True if the constraint can be used by this plan; unusable
+     *         constraints depend on tables the planner puts after this one.
+     */
+    public boolean isUsable(int i) {
+        return constraints[check(i) * 3 + 2] != 0;
+    }
+
+    /**
+     * @return The number of ORDER BY terms.
+     */
+    public int orderByCount() {
+        return orderBys.length / 2;
+    }
+
+    /**
+     * @param i Term index in [0, orderByCount()-1].
+     * @return The ordered column; -1 for the rowid.
+     */
+    public int orderByColumn(int i) {
+        return orderBys[i * 2];
+    }
+
+    /**
+     * @param i Term index in [0, orderByCount()-1].
+     * @return True for descending order.
+     */
+    public boolean isDescending(int i) {
+        return orderBys[i * 2 + 1] != 0;
+    }
+
+    /**
+     * @param col Column index.
+     * @return True if the query may read the column; columns that are not
+     *         used can be left NULL in the returned rows.
+     */
+    public boolean isColumnUsed(int col) {
+        return (columnsUsed & (1L << Math.min(col, 63))) != 0;
+    }
+
+    /**
+     * Passes the value of a usable constraint to the scan.
+     * @param i Constraint index in [0, constraintCount()-1].
+     * @param omit True if the scan returns only rows meeting the constraint,
+     *        so SQLite need not check it.
+     * @return The index of the value in the arguments of
+     *         {@link VirtualCursor#filter(int, String, Object[])}.
+     */
+    public int use(int i, boolean omit) {
+        if (!isUsable(i)) {
+            throw new IllegalArgumentException("constraint " + i + " is not usable");
+        }
+        if (argvIndex[i] == 0) {
+            argvIndex[i] = ++args;
+        }
+        this.omit[i] = omit;
+        return argvIndex[i] - 1;
+    }
+
+    /**
+     * @param indexNumber The index number passed to the scan.
+     */
+    public void setIndexNumber(int indexNumber) {
+        this.indexNumber = indexNumber;
+    }
+
+    /**
+     * @param indexString The index string passed to the scan.
+     */
+    public void setIndexString(String indexString) {
+        this.indexString = indexString;
+    }
+
+    /**
+     * @param consumed True if the scan returns the rows in the order of the
+     *        ORDER BY terms, so SQLite need not sort them.
+     */
+    public void setOrderByConsumed(boolean consumed) {
+        this.orderByConsumed = consumed;
+    }
+
+    /**
+     * @param cost The estimated cost of the plan, about the number of disk
+     *        accesses of an equivalent scan; lower costs are preferred.
+     */
+    public void setEstimatedCost(double cost) {
+        this.estimatedCost = cost;
+    }
+
+    /**
+     * @param rows The estimated number of rows returned by the plan.
+     */
+    public void setEstimatedRows(long rows) {
+        this.estimatedRows = rows;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= argvIndex.length) {
+            throw new IndexOutOfBoundsException("constraint " + i + " of " + argvIndex.length);
+        }
+        return i;
+    }
+}
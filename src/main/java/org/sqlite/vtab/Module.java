@@ -0,0 +1,74 @@
+package org.sqlite.vtab;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.Codes;
+
+/**
+ * A virtual table module implemented in Java, registered on a connection
+ * with {@link #create(Connection, String, Module)}. Tables of the module are
+ * created with <code>CREATE VIRTUAL TABLE t USING name(arg, ...)</code>, or
+ * used directly as <code>name</code>, without arguments.
+ *
+ * Eg. exposing an in-memory map:
+ *
+ * <pre>
+ *      Module.create(conn, "prices", new Module() {
+ *          protected VirtualTable connect(String table, String[] args) {
+ *              return new PriceTable(cache); // extends VirtualTable
+ *          }
+ *      });
+ *      ResultSet rs = conn.createStatement().executeQuery(
+ *          "select p.price from orders o join prices p on p.id = o.item");
+ * </pre>
+ *
+ * <p>The module and its tables are called on the thread executing the
+ * statement, with the connection locked, so they must not use the
+ * connection.</p>
+ *
+ * @see <a href="https://www.sqlite.org/vtab.html">https://www.sqlite.org/vtab.html</a>
+ */
+public abstract class Module
+{
+    /**
+     * Registers a module on the given connection, replacing the module of
+     * the same name. The module is released when the connection is closed.
+     * @param conn The connection to register the module on.
+     * @param name The name of the module.
+     * @param module The module.
+     * @throws java.sql.SQLFeatureNotSupportedException If the native library
+     *         does not support Java virtual tables.
+     * @throws SQLException
+     */
+    public static void create(Connection conn, String name, Module module) throws SQLException {
+        if (conn == null || !(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (module == null) {
+            throw new SQLException("module must not be null");
+        }
+        if (name == null || name.length() > 255) {
+            throw new SQLException("invalid module name: '" + name + "'");
+        }
+
+        if (((SQLiteConnection) conn).getDatabase().create_module(name, module) != Codes.SQLITE_OK) {
+            throw new SQLException("error creating module");
+        }
+    }
+
+    /**
+     * Called when a table of the module is created or first used by a
+     * connection.
+     * @param table The name of the table; the module name when the module is
+     *        used directly.
+     * @param args The module arguments of the CREATE VIRTUAL TABLE statement,
+     *        as written.
+     * @return The table.
+     */
+    protected abstract VirtualTable connect(String table, String[] args) throws SQLException;
+}
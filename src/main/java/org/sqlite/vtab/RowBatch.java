@@ -0,0 +1,164 @@
+package org.sqlite.vtab;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Rows passed from a {@link VirtualCursor} to SQLite. Values are kept in
+ * primitive arrays, a type and a cell per column of each row, with text and
+ * blobs appended to one byte array, so a batch is copied to native memory
+ * with a few array copies. Columns not set in a row are NULL.
+ */
+public final class RowBatch
+{
+    static final byte NULL    = 0;
+    static final byte INTEGER = 1;
+    static final byte FLOAT   = 2;
+    static final byte TEXT    = 3;
+    static final byte BLOB    = 4;
+
+    private final int columns;
+    private final int capacity;
+
+    // read by the native library
+    private final byte[] types;  // row-major
+    private final long[] cells;  // values; raw double bits; or offset << 32 | length in data
+    private final long[] rowids;
+    private byte[]       data = new byte[256];
+    private int          dataLength;
+    private int          size;
+
+    RowBatch(int columns, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid batch size: " + capacity);
+        }
+        this.columns = columns;
+        this.capacity = capacity;
+        types = new byte[columns * capacity];
+        cells = new long[columns * capacity];
+        rowids = new long[capacity];
+    }
+
+    /**
+     * Empties the batch and adds the next rows of the cursor.
+     * @return The number of rows added.
+     */
+    int fill(VirtualCursor cursor) throws SQLException {
+        Arrays.fill(types, 0, size * columns, NULL);
+        size = 0;
+        dataLength = 0;
+        cursor.fill(this);
+        return size;
+    }
+
+    /**
+     * @return The number of columns of a row.
+     */
+    public int columnCount() {
+        return columns;
+    }
+
+    /**
+     * @return The largest number of rows of the batch.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of rows added.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Adds a row whose columns are set by the following set calls.
+     * @param rowid The rowid of the row.
+     * @throws IllegalStateException If the batch is full.
+     */
+    public RowBatch addRow(long rowid) {
+        if (size == capacity) {
+            throw new IllegalStateException("batch full");
+        }
+        rowids[size++] = rowid;
+        return this;
+    }
+
+    public RowBatch setNull(int col) {
+        types[cell(col)] = NULL;
+        return this;
+    }
+
+    public RowBatch setLong(int col, long value) {
+        int cell = cell(col);
+        types[cell] = INTEGER;
+        cells[cell] = value;
+        return this;
+    }
+
+    public RowBatch setDouble(int col, double value) {
+        int cell = cell(col);
+        types[cell] = FLOAT;
+        cells[cell] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public RowBatch setText(int col, String value) {
+        return value == null ? setNull(col) : setBytes(col, TEXT, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public RowBatch setBlob(int col, byte[] value) {
+        return value == null ? setNull(col) : setBytes(col, BLOB, value);
+    }
+
+    /**
+     * Sets a column to a Long, Integer, Short, Byte, Double, Float, String,
+     * byte[] or null value.
+     */
+    public RowBatch set(int col, Object value) {
+        if (value == null) {
+            return setNull(col);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return setLong(col, ((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return setDouble(col, ((Number) value).doubleValue());
+        }
+        if (value instanceof String) {
+            return setText(col, (String) value);
+        }
+        if (value instanceof byte[]) {
+            return setBlob(col, (byte[]) value);
+        }
+        throw new IllegalArgumentException("unexpected column type: " + value.getClass());
+    }
+
+    private RowBatch setBytes(int col, byte type, byte[] value) {
+        int cell = cell(col);
+        if (dataLength + value.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(dataLength + value.length, data.length << 1));
+        }
+        System.arraycopy(value, 0, data, dataLength, value.length);
+        types[cell] = type;
+        cells[cell] = (long) dataLength << 32 | value.length;
+        dataLength += value.length;
+        return this;
+    }
+
+    private int cell(int col) {
+        if (size == 0) {
+            throw new IllegalStateException("no row added");
+        }
+        if (col < 0 || col >= columns) {
+            throw new IndexOutOfBoundsException("column " + col + " of " + columns);
+        }
+        return (size - 1) * columns + col;
+    }
+}
@@ -0,0 +1,36 @@
+package org.sqlite.vtab;
+
+import java.sql.SQLException;
+
+/**
+ * A scan of a {@link VirtualTable}, returned by {@link VirtualTable#open()}.
+ * A cursor is positioned by {@link #filter(int, String, Object[])} and then
+ * delivers its rows through {@link #fill(RowBatch)}, a batch at a time, so
+ * rows are copied to SQLite in chunks rather than one JNI call per column.
+ */
+public abstract class VirtualCursor
+{
+    /**
+     * Starts a scan, possibly after a previous one.
+     * @param indexNumber The index number chosen by {@link VirtualTable#bestIndex(IndexInfo)}.
+     * @param indexString The index string chosen by {@link VirtualTable#bestIndex(IndexInfo)}; may be null.
+     * @param args The values of the constraints passed with
+     *        {@link IndexInfo#use(int, boolean)}, in that order: Long, Double,
+     *        String, byte[] or null.
+     */
+    protected abstract void filter(int indexNumber, String indexString, Object[] args) throws SQLException;
+
+    /**
+     * Adds the next rows of the scan to an empty batch, until the batch is
+     * full or the scan ends. Adding fewer rows than the capacity of the
+     * batch ends the scan.
+     * @param batch The batch to add rows to.
+     */
+    protected abstract void fill(RowBatch batch) throws SQLException;
+
+    /**
+     * Called when the cursor is no longer used.
+     */
+    protected void close() throws SQLException {
+    }
+}
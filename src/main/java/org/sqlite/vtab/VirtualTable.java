@@ -0,0 +1,84 @@
+package org.sqlite.vtab;
+
+import java.sql.SQLException;
+
+/**
+ * A read-only table whose rows are produced by Java code, returned by
+ * {@link Module#connect(String, String[])}.
+ *
+ * <p>Columns are declared as in CREATE TABLE, e.g. <code>"id integer"</code>,
+ * and numbered from 0 in {@link IndexInfo} and {@link RowBatch}. Columns
+ * declared <code>hidden</code> can only be used in constraints, which makes
+ * the table a table-valued function, e.g. <code>select * from t('key')</code>
+ * for a hidden column <code>"k hidden"</code>.</p>
+ *
+ * <p>{@link #bestIndex(IndexInfo)} chooses which constraints and orderings
+ * of a query the table handles itself; the cursors returned by
+ * {@link #open()} then receive the values of the chosen constraints and
+ * deliver the rows in batches.</p>
+ */
+public abstract class VirtualTable
+{
+    private final String[] columns;
+
+    /**
+     * @param columns The column definitions of the table.
+     */
+    protected VirtualTable(String... columns) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("no columns");
+        }
+        this.columns = columns.clone();
+    }
+
+    /**
+     * @return The number of columns of the table.
+     */
+    public final int columnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return The statement declaring the columns to SQLite.
+     */
+    final String schema() {
+        StringBuilder sb = new StringBuilder("create table x(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * @return The largest number of rows passed from a cursor to SQLite at a
+     *         time; the capacity of the {@link RowBatch} of each cursor.
+     */
+    protected int batchSize() {
+        return 64;
+    }
+
+    /**
+     * Chooses a plan for a query: the constraints whose values are passed to
+     * {@link VirtualCursor#filter(int, String, Object[])}, whether the rows
+     * are delivered in the requested order, and the estimated cost. Called
+     * by the query planner, possibly several times per query with different
+     * sets of usable constraints. The default plan is a full scan.
+     * @param info The constraints and ordering of the query.
+     */
+    protected void bestIndex(IndexInfo info) throws SQLException {
+    }
+
+    /**
+     * @return A new cursor over the rows of the table.
+     */
+    protected abstract VirtualCursor open() throws SQLException;
+
+    /**
+     * Called when the table is dropped or its connection is closed.
+     */
+    protected void close() throws SQLException {
+    }
+}
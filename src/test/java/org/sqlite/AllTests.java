@@ -27,9 +27,13 @@ import org.sqlite.util.OSInfoTest;
     StatementTest.class,
     TransactionTest.class,
     UDFTest.class,
+    VirtualTableTest.class,
     JSON1Test.class,
     ProgressHandlerTest.class,
-    BusyHandlerTest.class
+    BusyHandlerTest.class,
+    CollationTest.class,
+    VirtualFileSystemTest.class,
+    SQLiteMemoryManagerTest.class
     
 })
 public class AllTests {
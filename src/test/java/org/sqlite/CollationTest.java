@@ -0,0 +1,185 @@
+package org.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests user-defined collations. */
+public class CollationTest
+{
+    private Connection conn;
+    private Statement  stat;
+
+    @Before
+    public void connect() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite:");
+        stat = conn.createStatement();
+        try {
+            Collation.create(conn, "numeric", Collation.NATURAL);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without collations
+        }
+    }
+
+    @After
+    public void close() throws SQLException {
+        stat.close();
+        conn.close();
+    }
+
+    private List<String> sort(String collation, String... values) throws SQLException {
+        stat.executeUpdate("drop table if exists s;");
+        stat.executeUpdate("create table s (v text);");
+        PreparedStatement prep = conn.prepareStatement("insert into s values (?);");
+        for (String v : values) {
+            prep.setString(1, v);
+            prep.executeUpdate();
+        }
+        prep.close();
+
+        List<String> sorted = new ArrayList<String>();
+        ResultSet rs = stat.executeQuery("select v from s order by v collate " + collation + ", rowid;");
+        while (rs.next()) {
+            sorted.add(rs.getString(1));
+        }
+        rs.close();
+        return sorted;
+    }
+
+    private String sorted(String collation, String... values) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        for (String v : sort(collation, values)) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void builtIn() throws SQLException {
+        assertEquals("a1 a2 a02 a10 a10b a10c b", sorted("numeric", "a10", "b", "a2", "a10c", "a1", "a10b", "a02"));
+        assertEquals("B a", sorted("numeric", "a", "B"));
+
+        Collation.create(conn, "folded", Collation.ASCII_FOLDED);
+        assertEquals("A a ab AC ad b", sorted("folded", "b", "ad", "a", "AC", "ab", "A"));
+        assertEquals("File10 file10 file9", sorted("folded", "file10", "File10", "file9"));
+
+        Collation.create(conn, "nat", Collation.NATURAL_FOLDED);
+        assertEquals("file9 File10 file10", sorted("nat", "file10", "File10", "file9"));
+        assertEquals("x9\u00e9 x10\u00e9", sorted("nat", "x10\u00e9", "x9\u00e9"));
+
+        // differently cased values are distinct in a unique index, unlike NOCASE
+        stat.executeUpdate("create table u (v text collate folded unique);");
+        stat.executeUpdate("insert into u values ('abc'), ('ABC');");
+        ResultSet rs = stat.executeQuery("select count(*) from u where v = 'Abc' collate nocase;");
+        assertEquals(2, rs.getInt(1));
+        rs.close();
+        try {
+            stat.executeUpdate("insert into u values ('abc');");
+            fail("expected unique constraint violation");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("UNIQUE"));
+        }
+
+        try {
+            Collation.create(conn, "bad", 42);
+            fail("expected invalid collation");
+        }
+        catch (SQLException e) {
+            assertEquals("invalid collation: 42", e.getMessage());
+        }
+    }
+
+    @Test
+    public void comparator() throws SQLException {
+        Collation.create(conn, "reverse", new Comparator<String>() {
+            public int compare(String a, String b) {
+                return b.compareTo(a);
+            }
+        });
+        assertEquals("\u00e9 c a", sorted("reverse", "a", "\u00e9", "c"));
+
+        Collation.create(conn, "byLength", new Comparator<String>() {
+            public int compare(String a, String b) {
+                return a.length() - b.length();
+            }
+        });
+        ResultSet rs = stat.executeQuery("select 'abc' = 'xyz' collate byLength, 'ab' < 'x' collate byLength;");
+        assertEquals(1, rs.getInt(1));
+        assertEquals(0, rs.getInt(2));
+        rs.close();
+
+        Collation.destroy(conn, "byLength");
+        try {
+            stat.executeQuery("select 'a' = 'b' collate byLength;");
+            fail("expected missing collation");
+        }
+        catch (SQLException e) {
+            // no such collation sequence
+        }
+    }
+
+    @Test
+    public void sortKeys() throws SQLException {
+        Collator collator = Collator.getInstance(Locale.FRENCH);
+        Collation.create(conn, "fr", collator);
+        collator.setStrength(Collator.PRIMARY); // the registered collator is a copy
+        assertEquals("cote c\u00f4te c\u00f4t\u00e9 d", sorted("fr", "d", "c\u00f4t\u00e9", "cote", "c\u00f4te"));
+        ResultSet rs = stat.executeQuery("select 'e' = '\u00e9' collate fr;");
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+
+        Collation.create(conn, "fr1", collator);
+        rs = stat.executeQuery("select 'e' = '\u00c9' collate fr1;");
+        assertEquals(1, rs.getInt(1));
+        rs.close();
+
+        // more distinct values than cached keys
+        Random random = new Random(7);
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            char[] chars = new char[1 + random.nextInt(6)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = "aAeE\u00e9\u00c9zZ1 -".charAt(random.nextInt(11));
+            }
+            values.add(new String(chars));
+        }
+        // ordered as the collation keys, which differ from Collator.compare for some ignorable chars
+        final Collator fr = Collator.getInstance(Locale.FRENCH);
+        List<String> actual = sort("fr", values.toArray(new String[0]));
+        List<String> expected = new ArrayList<String>(values);
+        Collections.sort(expected, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return fr.getCollationKey(a).compareTo(fr.getCollationKey(b));
+            }
+        });
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(0, fr.getCollationKey(expected.get(i)).compareTo(fr.getCollationKey(actual.get(i))));
+        }
+    }
+}
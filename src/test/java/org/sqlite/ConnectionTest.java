@@ -25,6 +25,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.sqlite.SQLiteConfig.JournalMode;
 import org.sqlite.SQLiteConfig.Pragma;
@@ -227,6 +228,46 @@ public class ConnectionTest
         conn.close();
     }
 
+    @Test
+    public void openJARResourceInMemory() throws Exception {
+        File testJAR = copyToTemp("testdb.jar");
+        String url = String.format("jdbc:sqlite::resource:jar:%s!/sample.db", testJAR.toURI().toURL());
+
+        Connection conn1 = DriverManager.getConnection(url);
+        Connection conn2 = DriverManager.getConnection(url);
+        Statement stat1 = conn1.createStatement();
+        Statement stat2 = conn2.createStatement();
+        ResultSet rs = stat1.executeQuery("pragma database_list;");
+        assertTrue(rs.next());
+        String file = rs.getString("file");
+        rs.close();
+        Assume.assumeFalse("native library without in-memory images", new File(file).isAbsolute());
+
+        rs = stat2.executeQuery("select count(*) from coordinate;");
+        int rows = rs.getInt(1);
+        assertTrue(rows > 0);
+        rs.close();
+        try {
+            stat1.execute("delete from coordinate;");
+            fail("expected read-only database");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("readonly"));
+        }
+        rs = stat1.executeQuery("select count(*) from coordinate;");
+        assertEquals(rows, rs.getInt(1));
+        rs.close();
+
+        stat1.close();
+        conn1.close();
+        // the shared image outlives the connections
+        rs = stat2.executeQuery("select count(*) from coordinate;");
+        assertEquals(rows, rs.getInt(1));
+        rs.close();
+        stat2.close();
+        conn2.close();
+    }
+
     @Test
     public void openFile() throws Exception {
 
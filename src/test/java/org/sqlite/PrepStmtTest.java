@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -16,12 +17,24 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.StringTokenizer;
+import java.util.TimeZone;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import org.sqlite.date.FastDateFormat;
+import org.sqlite.date.FixedDateTime;
 
 /** These tests are designed to stress PreparedStatements on memory dbs. */
 public class PrepStmtTest
@@ -378,6 +391,536 @@ public class PrepStmtTest
         rs.close();
     }
 
+    @Test
+    public void asciiAndMixedText() throws SQLException {
+        // non-ASCII chars placed around the word boundaries of the ASCII scan
+        String[] values = new String[] {
+            "", "a", "identifier", "0123456", "01234567", "012345678",
+            "\u00e90123456789", "0123456\u00e9", "01234567\u00e9",
+            "0123456789abcdef\u00fc", "abcdefgh\uD840\uDC40abcdefgh",
+            "tab\tand\nnewline\u007f"
+        };
+        PreparedStatement prep = conn.prepareStatement("select ?, cast(? as blob);");
+        for (String v : values) {
+            prep.setString(1, v);
+            prep.setString(2, v);
+            ResultSet rs = prep.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(v, rs.getString(1));
+            assertArrayEq(getUtf8Bytes(v), rs.getBytes(2));
+            rs.close();
+        }
+        prep.close();
+    }
+
+    @Test
+    public void largeText() throws SQLException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i);
+            sb.append(i % 7 == 0 ? " \u00e4\u4e2d\uD840\uDC40" : "").append("\"},");
+        }
+        String json = sb.append("{}]").toString();
+
+        PreparedStatement prep = conn.prepareStatement("select ?, cast(? as blob), length(?);");
+        prep.setString(1, json);
+        prep.setString(2, json);
+        prep.setString(3, json);
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(json, rs.getString(1));
+        assertArrayEq(getUtf8Bytes(json), rs.getBytes(2));
+        assertEquals(json.codePointCount(0, json.length()), rs.getInt(3));
+        rs.close();
+        prep.close();
+    }
+
+    @Test
+    public void batchMixedTypes() throws SQLException {
+        stat.executeUpdate("create table test (c1, c2, c3, c4);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?,?,?,?);");
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                prep.setLong(1, Long.MAX_VALUE - i);
+                prep.setDouble(2, i / 4.0);
+                prep.setString(3, "row " + i);
+                prep.setBytes(4, new byte[] { (byte) i });
+            } else {
+                prep.setString(1, "row " + i);
+                prep.setInt(2, i);
+                prep.setNull(3, 0);
+                prep.setFloat(4, i);
+            }
+            prep.addBatch();
+        }
+        assertEquals(100, prep.executeBatch().length);
+
+        // a plain execution after a batch binds only the current parameters
+        prep.setInt(1, -1);
+        prep.setInt(2, -2);
+        prep.setString(3, "last");
+        prep.setNull(4, 0);
+        assertEquals(1, prep.executeUpdate());
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select typeof(c1), c1, typeof(c2), c2, c3, c4 from test order by rowid;");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rs.next());
+            if (i % 2 == 0) {
+                assertEquals("integer", rs.getString(1));
+                assertEquals(Long.MAX_VALUE - i, rs.getLong(2));
+                assertEquals("real", rs.getString(3));
+                assertEquals(i / 4.0, rs.getDouble(4), 0.0);
+                assertEquals("row " + i, rs.getString(5));
+                assertArrayEq(new byte[] { (byte) i }, rs.getBytes(6));
+            } else {
+                assertEquals("text", rs.getString(1));
+                assertEquals("row " + i, rs.getString(2));
+                assertEquals("integer", rs.getString(3));
+                assertEquals(i, rs.getInt(4));
+                assertNull(rs.getString(5));
+                assertEquals(i, rs.getFloat(6), 0.0f);
+            }
+        }
+        assertTrue(rs.next());
+        assertEquals(-1, rs.getInt(2));
+        assertEquals("last", rs.getString(5));
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void batchTransaction() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBatchTransaction(true);
+        SQLiteConnection conn = (SQLiteConnection) config.createConnection("jdbc:sqlite:");
+        final int[] commits = new int[1];
+        conn.addCommitListener(new SQLiteCommitListener() {
+            public void onCommit() {
+                commits[0]++;
+            }
+
+            public void onRollback() {}
+        });
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table test (id integer primary key, c1);");
+
+        commits[0] = 0;
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?, ?);");
+        for (int i = 1; i <= 10; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "row " + i);
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, prep.executeBatch());
+        assertEquals(1, commits[0]);
+
+        // the failing row is rolled back, the rows before it are committed
+        for (int i : new int[] { 11, 12, 5, 13 }) {
+            prep.setInt(1, i);
+            prep.setString(2, "row " + i);
+            prep.addBatch();
+        }
+        try {
+            prep.executeBatch();
+            fail("duplicate key accepted");
+        }
+        catch (SQLException e) {
+            assertEquals(SQLiteErrorCode.SQLITE_CONSTRAINT.code, e.getErrorCode());
+        }
+        assertEquals(2, commits[0]);
+        ResultSet rs = stat.executeQuery("select count(*), max(id) from test;");
+        assertEquals(12, rs.getInt(1));
+        assertEquals(12, rs.getInt(2));
+        rs.close();
+
+        // batches keep running row by row inside an explicit transaction
+        conn.setAutoCommit(false);
+        commits[0] = 0;
+        prep.setInt(1, 20);
+        prep.setString(2, "row 20");
+        prep.addBatch();
+        assertArrayEq(new int[] { 1 }, prep.executeBatch());
+        assertEquals(0, commits[0]);
+        conn.rollback();
+
+        prep.close();
+        stat.close();
+        conn.close();
+    }
+
+    @Test
+    public void executeForEach() throws SQLException {
+        stat.executeUpdate("create table kv (k integer, v text, d float, b blob, tag text);");
+        PreparedStatement insert = conn.prepareStatement("insert into kv values (?, ?, ?, ?, ?);");
+        for (int i = 0; i < 600; i++) {
+            insert.setInt(1, i);
+            insert.setString(2, i == 7 ? utf06 : "v" + i);
+            insert.setDouble(3, i / 2.0);
+            insert.setBytes(4, i == 7 ? b1 : null);
+            insert.setString(5, i % 2 == 0 ? "even" : "odd");
+            insert.addBatch();
+        }
+        insert.setInt(1, 3);
+        insert.setString(2, "v3 again");
+        insert.setNull(3, java.sql.Types.DOUBLE);
+        insert.setNull(4, java.sql.Types.BLOB);
+        insert.setString(5, "odd");
+        insert.addBatch();
+        insert.executeBatch();
+        insert.close();
+
+        PreparedStatement prep = conn.prepareStatement("select v, d, b from kv where k = ? and tag = ? order by rowid;");
+        prep.setString(2, "odd");
+        final StringBuilder seen = new StringBuilder();
+        try {
+            ((org.sqlite.jdbc3.JDBC3PreparedStatement) prep).executeForEach(new long[] { 3, 4, 7, 1000, 3 },
+                new RowConsumer() {
+                    public void accept(int index, long key, Row row) throws SQLException {
+                        assertEquals(3, row.getColumnCount());
+                        seen.append(index).append(':').append(key).append('=').append(row.getString(1));
+                        if (row.isNull(2)) {
+                            seen.append(",null");
+                        }
+                        else {
+                            seen.append(',').append(row.getDouble(2));
+                        }
+                        if (key == 7) {
+                            assertEquals(utf06, row.getString(1));
+                            assertArrayEq(b1, row.getBytes(3));
+                            assertEquals(3, row.getLong(2));
+                        }
+                        else {
+                            assertNull(row.getBytes(3));
+                        }
+                        seen.append(';');
+                    }
+                });
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without lookups
+        }
+        assertEquals("0:3=v3,1.5;0:3=v3 again,null;2:7=" + utf06 + ",3.5;4:3=v3,1.5;4:3=v3 again,null;",
+            seen.toString());
+
+        // more keys than fit in one native call
+        long[] keys = new long[600];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keys.length - 1 - i;
+        }
+        final long[] sum = new long[2];
+        prep.setString(2, "even");
+        ((org.sqlite.jdbc3.JDBC3PreparedStatement) prep).executeForEach(keys, new RowConsumer() {
+            public void accept(int index, long key, Row row) throws SQLException {
+                assertEquals("v" + key, row.getString(1));
+                sum[0]++;
+                sum[1] += key;
+            }
+        });
+        assertEquals(300, sum[0]);
+        assertEquals(299 * 300, sum[1]);
+
+        // the statement can still be used as usual
+        prep.setLong(1, 4);
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals("v4", rs.getString(1));
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+
+        // rows of the keys before a failed key are delivered
+        prep = conn.prepareStatement("select abs(? - 9223372036854775807 - 1);");
+        final int[] rows = new int[1];
+        try {
+            ((org.sqlite.jdbc3.JDBC3PreparedStatement) prep).executeForEach(new long[] { 1, 0, 2 }, new RowConsumer() {
+                public void accept(int index, long key, Row row) throws SQLException {
+                    assertEquals(0, index);
+                    assertEquals(Long.MAX_VALUE, row.getLong(1));
+                    rows[0]++;
+                }
+            });
+            fail("integer overflow not reported");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("overflow"));
+        }
+        assertEquals(1, rows[0]);
+        prep.close();
+    }
+
+    @Test
+    public void carray() throws SQLException {
+        PreparedStatement prep;
+        try {
+            prep = conn.prepareStatement("select value from carray(?) order by rowid;");
+        }
+        catch (SQLException e) {
+            Assume.assumeNoException(e); // native library without carray
+            return;
+        }
+
+        prep.setObject(1, new long[] { 3, Long.MIN_VALUE, 42 });
+        assertColumn(prep.executeQuery(), "3", String.valueOf(Long.MIN_VALUE), "42");
+        prep.setObject(1, new double[] { 0.5, -1.25 });
+        assertColumn(prep.executeQuery(), "0.5", "-1.25");
+        prep.setObject(1, new String[] { "a", null, utf06, "" });
+        assertColumn(prep.executeQuery(), "a", null, utf06, "");
+        prep.setObject(1, new byte[][] { b1, null, b2 });
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertArrayEq(b1, rs.getBytes(1));
+        assertTrue(rs.next());
+        assertNull(rs.getBytes(1));
+        assertTrue(rs.next());
+        assertArrayEq(b2, rs.getBytes(1));
+        assertFalse(rs.next());
+        rs.close();
+        prep.setObject(1, new long[0]);
+        assertColumn(prep.executeQuery());
+        prep.setArray(1, conn.createArrayOf("integer", new Object[] { 7, 8L }));
+        assertColumn(prep.executeQuery(), "7", "8");
+        prep.close();
+
+        // one statement for any number of keys
+        stat.executeUpdate("create table ca (id integer primary key, name text);");
+        for (int i = 0; i < 100; i++) {
+            stat.executeUpdate("insert into ca values (" + i + ", 'n" + i + "');");
+        }
+        prep = conn.prepareStatement("select name from ca where id in carray(?) order by id;");
+        prep.setObject(1, new long[] { 99, 5, 1000, 5 });
+        assertColumn(prep.executeQuery(), "n5", "n99");
+        long[] ids = new long[50];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 2 * i;
+        }
+        prep.setObject(1, ids);
+        rs = prep.executeQuery();
+        int count = 0;
+        while (rs.next()) {
+            assertEquals("n" + 2 * count++, rs.getString(1));
+        }
+        assertEquals(50, count);
+        rs.close();
+        prep.close();
+    }
+
+    private static void assertColumn(ResultSet rs, String... expected) throws SQLException {
+        for (String value : expected) {
+            assertTrue(rs.next());
+            assertEquals(value, rs.getString(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void rewriteBatchedInserts() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setRewriteBatchedInserts(true);
+        Connection conn = config.createConnection("jdbc:sqlite:");
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table test (id integer primary key, c1, c2);");
+
+        PreparedStatement prep = conn.prepareStatement(
+                "insert into test (id, c1, c2) values (?, /* text */ ?, coalesce(?, 'none'));");
+        int count = 3 * 1024 + 7;
+        for (int i = 0; i < count; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "row (" + i + ")?");
+            if (i % 3 == 0) {
+                prep.setNull(3, 0);
+            }
+            else {
+                prep.setDouble(3, i / 2.0);
+            }
+            prep.addBatch();
+        }
+        int[] changes = prep.executeBatch();
+        assertEquals(count, changes.length);
+        for (int change : changes) {
+            assertEquals(1, change);
+        }
+
+        ResultSet rs = stat.executeQuery("select id, c1, c2 from test order by id;");
+        for (int i = 0; i < count; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("row (" + i + ")?", rs.getString(2));
+            assertEquals(i % 3 == 0 ? "none" : Double.toString(i / 2.0), rs.getString(3));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+
+        // rows skipped by the conflict clause leave the counts of their statement unknown
+        prep = conn.prepareStatement("insert or ignore into test values (?, ?, ?)");
+        for (int i : new int[] { 0, -1, -2, -3, -4 }) {
+            prep.setInt(1, i);
+            prep.setString(2, "dup");
+            prep.setString(3, "dup");
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO,
+                Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO, 1 }, prep.executeBatch());
+        prep.close();
+
+        // statements that cannot be rewritten run row by row
+        prep = conn.prepareStatement("insert into test (c1, c2) select ?, ? where 1");
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "select");
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1, 1 }, prep.executeBatch());
+        prep.close();
+
+        rs = stat.executeQuery("select count(*) from test;");
+        assertEquals(count + 4 + 3, rs.getInt(1));
+        rs.close();
+
+        // a subquery of each row sees the rows inserted before it
+        stat.executeUpdate("create table counted (id, x);");
+        prep = conn.prepareStatement("insert into counted (id, x) values (?, (select count(*) from counted));");
+        for (int i = 0; i < 4; i++) {
+            prep.setInt(1, i);
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1, 1, 1 }, prep.executeBatch());
+        prep.close();
+        rs = stat.executeQuery("select x from counted order by id;");
+        for (int i = 0; i < 4; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        rs.close();
+
+        // an upsert clause after the row is not merged into the rows
+        prep = conn.prepareStatement("insert into test (id, c1) values (?, ?) on conflict (id) do update set c1 = 'upsert';");
+        for (int i = 0; i < 2; i++) {
+            prep.setInt(1, 0);
+            prep.setString(2, "new");
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1 }, prep.executeBatch());
+        prep.close();
+        rs = stat.executeQuery("select c1 from test where id = 0;");
+        assertEquals("upsert", rs.getString(1));
+        rs.close();
+        stat.close();
+        conn.close();
+    }
+
+    @Test
+    public void generatedKeys() throws SQLException {
+        stat.executeUpdate("create table test (id integer primary key, c1, c2 default 'default');");
+
+        PreparedStatement prep = conn.prepareStatement("insert into test (c1) values (?);", Statement.RETURN_GENERATED_KEYS);
+        prep.setString(1, "single");
+        assertEquals(1, prep.executeUpdate());
+        ResultSet rs = prep.getGeneratedKeys();
+        assertSame(prep, rs.getStatement());
+        assertTrue(rs.next());
+        assertEquals(1, rs.getLong(1));
+        assertFalse(rs.next());
+        rs.close();
+
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, i);
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1, 1 }, prep.executeBatch());
+        rs = prep.getGeneratedKeys();
+        for (int i = 2; i <= 4; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getLong("last_insert_rowid()"));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+
+        // key columns are returned by a RETURNING clause
+        prep = conn.prepareStatement("insert into test (id, c1) values (?, ?)", new String[] { "id", "c2" });
+        prep.setInt(1, 10);
+        prep.setString(2, "returning");
+        assertFalse(prep.execute());
+        assertEquals(1, prep.getUpdateCount());
+        rs = prep.getGeneratedKeys();
+        assertSame(prep, rs.getStatement());
+        assertEquals(2, rs.getMetaData().getColumnCount());
+        assertEquals("c2", rs.getMetaData().getColumnLabel(2));
+        assertEquals(Types.VARCHAR, rs.getMetaData().getColumnType(2));
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt("id"));
+        assertEquals("default", rs.getString("c2"));
+        assertFalse(rs.next());
+        rs.close();
+
+        for (int i = 20; i < 23; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "it's " + i);
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] { 1, 1, 1 }, prep.executeBatch());
+        rs = prep.getGeneratedKeys();
+        for (int i = 20; i < 23; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("default", rs.getString(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+
+        rs = stat.executeQuery("select count(*) from test;");
+        assertEquals(8, rs.getInt(1));
+        rs.close();
+
+        // statements that cannot take a RETURNING clause run as they are
+        prep = conn.prepareStatement("select 1", new String[] { "id" });
+        rs = prep.executeQuery();
+        assertEquals(1, rs.getInt(1));
+        rs.close();
+        prep.close();
+        prep = conn.prepareStatement("create table other (id integer primary key) -- returning", new String[] { "id" });
+        assertFalse(prep.execute());
+        prep.close();
+        prep = conn.prepareStatement("insert into test (id, c1) values (30, 'returning') returning c1", new String[] { "id" });
+        rs = prep.executeQuery();
+        assertEquals("returning", rs.getString(1));
+        rs.close();
+        prep.close();
+
+        // a trailing comment does not swallow the appended clause
+        prep = conn.prepareStatement("delete from test where id = 30; -- done", new String[] { "c1" });
+        assertEquals(1, prep.executeUpdate());
+        rs = prep.getGeneratedKeys();
+        assertTrue(rs.next());
+        assertEquals("returning", rs.getString("c1"));
+        rs.close();
+        prep.close();
+    }
+
+    @Test
+    public void generatedKeysOfLargeBatch() throws SQLException {
+        stat.executeUpdate("create table test (id integer primary key, c1);");
+        PreparedStatement prep = conn.prepareStatement("insert into test (c1) values (?);", Statement.RETURN_GENERATED_KEYS);
+        for (int i = 0; i < 50000; i++) {
+            prep.setInt(1, i);
+            prep.addBatch();
+        }
+        prep.executeBatch();
+        ResultSet rs = prep.getGeneratedKeys();
+        assertEquals("last_insert_rowid()", rs.getMetaData().getColumnLabel(1));
+        for (int i = 1; i <= 50000; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getLong(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+    }
+
     @Test
     public void batch() throws SQLException {
         ResultSet rs;
@@ -530,6 +1073,250 @@ public class PrepStmtTest
         assertTrue(rs.getDate(1).equals(d1));
     }
 
+    @Test
+    public void textDatesWithCalendars() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setDateClass("text");
+        Connection textConn = config.createConnection("jdbc:sqlite:");
+        try {
+            Statement textStat = textConn.createStatement();
+            textStat.execute("create table t (id integer, c1 text);");
+            Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            Calendar tokyo = Calendar.getInstance(TimeZone.getTimeZone("Asia/Tokyo"));
+            Timestamp ts = new Timestamp(1092941466123L);
+
+            PreparedStatement prep = textConn.prepareStatement("insert into t values (?, ?);");
+            prep.setInt(1, 1);
+            prep.setTimestamp(2, ts, utc);
+            prep.executeUpdate();
+            prep.setInt(1, 2);
+            prep.setTimestamp(2, ts, tokyo);
+            prep.executeUpdate();
+            long misses = FastDateFormat.getCacheMisses();
+            long hits = FastDateFormat.getCacheHits();
+            for (int i = 0; i < 100; i++) {
+                prep.setInt(1, 3);
+                prep.setTimestamp(2, ts, tokyo);
+                prep.executeUpdate();
+            }
+            // the format of the calendar zone is kept by the connection
+            assertEquals(misses, FastDateFormat.getCacheMisses());
+            assertEquals(hits, FastDateFormat.getCacheHits());
+            prep.setInt(1, 4);
+            prep.setTimestamp(2, ts);
+            prep.executeUpdate();
+            prep.close();
+
+            ResultSet rs = textStat.executeQuery("select c1 from t where id = 1;");
+            assertTrue(rs.next());
+            assertEquals("2004-08-19 18:51:06.123", rs.getString(1));
+            assertEquals(ts, rs.getTimestamp(1, utc));
+            rs.close();
+            rs = textStat.executeQuery("select c1 from t where id = 2;");
+            assertTrue(rs.next());
+            assertEquals("2004-08-20 03:51:06.123", rs.getString(1));
+            assertEquals(ts, rs.getTimestamp(1, tokyo));
+            rs.close();
+            rs = textStat.executeQuery("select c1 from t where id = 4;");
+            assertTrue(rs.next());
+            assertEquals(ts, rs.getTimestamp(1));
+            rs.close();
+            textStat.close();
+        }
+        finally {
+            textConn.close();
+        }
+    }
+
+    @Test
+    public void textDatesFollowDefaultTimeZone() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setDateClass("text");
+        Connection textConn = config.createConnection("jdbc:sqlite:");
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            Timestamp ts = new Timestamp(1092941466123L);
+            PreparedStatement prep = textConn.prepareStatement("select ?;");
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            prep.setTimestamp(1, ts);
+            ResultSet rs = prep.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("2004-08-19 18:51:06.123", rs.getString(1));
+            rs.close();
+            // the zone is resolved on each call, not when the connection was opened
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            prep.setTimestamp(1, ts);
+            rs = prep.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("2004-08-20 03:51:06.123", rs.getString(1));
+            rs.close();
+            prep.close();
+        }
+        finally {
+            TimeZone.setDefault(defaultZone);
+            textConn.close();
+        }
+    }
+
+    @Test
+    public void javaTimeDates() throws SQLException {
+        LocalDateTime dateTime = LocalDateTime.of(2004, 8, 19, 18, 51, 6, 123000000);
+        Instant instant = Instant.ofEpochMilli(1092941466123L);
+        for (String dateClass : new String[] { "integer", "text", "real" }) {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setDateClass(dateClass);
+            config.setDatePrecision("milliseconds");
+            Connection dateConn = config.createConnection("jdbc:sqlite:");
+            try {
+                Statement dateStat = dateConn.createStatement();
+                dateStat.execute("create table t (c1, c2, c3, c4);");
+                PreparedStatement prep = dateConn.prepareStatement("insert into t values (?, ?, ?, ?);");
+                prep.setObject(1, dateTime);
+                prep.setObject(2, LocalDate.of(2004, 8, 19));
+                prep.setObject(3, instant);
+                prep.setObject(4, null);
+                prep.executeUpdate();
+                prep.close();
+
+                ResultSet rs = dateStat.executeQuery("select * from t;");
+                assertTrue(rs.next());
+                assertEquals(dateClass, dateTime, rs.getObject(1, LocalDateTime.class));
+                assertEquals(dateClass, LocalDate.of(2004, 8, 19), rs.getObject(2, LocalDate.class));
+                assertEquals(dateClass, instant, rs.getObject(3, Instant.class));
+                assertEquals(dateClass, new Timestamp(1092941466123L), rs.getTimestamp(3));
+                assertEquals(dateClass, instant, rs.getObject(1, Instant.class).plusMillis(
+                        TimeZone.getDefault().getOffset(instant.toEpochMilli())));
+                assertNull(rs.getObject(4, LocalDateTime.class));
+                assertNull(rs.getObject(4, Instant.class));
+                rs.close();
+                dateStat.close();
+            }
+            finally {
+                dateConn.close();
+            }
+        }
+    }
+
+    @Test
+    public void julianDaysBeforeGregorianCalendar() throws SQLException {
+        // the days before 1582-10-15 are read in the Julian calendar, as by
+        // GregorianCalendar, for the same instants as the SQLite functions
+        Calendar cal = new GregorianCalendar();
+        cal.clear();
+        cal.set(1582, Calendar.OCTOBER, 3, 18, 0, 0);
+        long lastJulian = cal.getTimeInMillis();
+        cal.set(1, Calendar.JANUARY, 3, 0, 0, 0);
+        long firstYear = cal.getTimeInMillis();
+
+        ResultSet rs = stat.executeQuery("select 2299159.25, 1721425.5, julianday('1582-10-13 18:00:00');");
+        assertTrue(rs.next());
+        assertEquals(new Timestamp(lastJulian), rs.getTimestamp(1));
+        assertEquals(new Timestamp(firstYear), rs.getTimestamp(2));
+        assertEquals(rs.getTimestamp(1), rs.getTimestamp(3));
+        // java.time values are in the proleptic Gregorian calendar
+        assertEquals(LocalDateTime.of(1582, 10, 13, 18, 0), rs.getObject(1, LocalDateTime.class));
+        rs.close();
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setDateClass("real");
+        config.setDatePrecision("milliseconds");
+        Connection realConn = config.createConnection("jdbc:sqlite:");
+        try {
+            PreparedStatement prep = realConn.prepareStatement("select ?;");
+            prep.setTimestamp(1, new Timestamp(lastJulian));
+            rs = prep.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(new Timestamp(lastJulian), rs.getTimestamp(1));
+            rs.close();
+            prep.close();
+        }
+        finally {
+            realConn.close();
+        }
+    }
+
+    @Test
+    public void fixedDateTimeLayouts() throws SQLException {
+        ResultSet rs = stat.executeQuery("select '2004-08-19', '2004-08-19 18:51:06', "
+                + "'2004-08-19 18:51:06.123', julianday('2004-08-19 18:51:06.123'), '19/08/2004';");
+        assertTrue(rs.next());
+        assertEquals(LocalDate.of(2004, 8, 19), rs.getObject(1, LocalDate.class));
+        assertEquals(LocalDateTime.of(2004, 8, 19, 18, 51, 6), rs.getObject(2, LocalDateTime.class));
+        assertEquals(LocalDateTime.of(2004, 8, 19, 18, 51, 6, 123000000), rs.getObject(3, LocalDateTime.class));
+        assertEquals(LocalDateTime.of(2004, 8, 19, 18, 51, 6, 123000000), rs.getObject(4, LocalDateTime.class));
+        assertEquals(Timestamp.valueOf("2004-08-19 18:51:06.123"), rs.getTimestamp(3));
+        assertEquals(Timestamp.valueOf("2004-08-19 18:51:06.123"), rs.getTimestamp(4));
+        try {
+            rs.getTimestamp(5);
+            fail("invalid date-time parsed");
+        }
+        catch (SQLException e) {
+            assertEquals("Error parsing time stamp", e.getMessage());
+        }
+        rs.close();
+
+        // the printer agrees with the pattern, across days and years
+        FastDateFormat format = FastDateFormat.getInstance(FixedDateTime.PATTERN, TimeZone.getTimeZone("UTC"));
+        for (long millis = -11670000000000L; millis < 253370000000000L; millis += 9876543210987L) {
+            String text = FixedDateTime.format(millis);
+            assertEquals(format.format(millis), text);
+            assertEquals(millis, FixedDateTime.parse(text));
+        }
+        assertEquals(FixedDateTime.INVALID, FixedDateTime.parse("2004-8-19"));
+        assertEquals(FixedDateTime.INVALID, FixedDateTime.parse("1200-08-19 00:00:00"));
+        assertNull(FixedDateTime.format(-12300000000000L));
+    }
+
+    @Test
+    public void boundedDateFormatCache() {
+        long evictions = FastDateFormat.getCacheEvictions();
+        String[] ids = TimeZone.getAvailableIDs();
+        for (int i = 0; i < 200 && i < ids.length; i++) {
+            FastDateFormat.getInstance("yyyy-MM-dd", TimeZone.getTimeZone(ids[i]));
+        }
+        assertTrue(FastDateFormat.getCacheSize() <= 128);
+        assertTrue(FastDateFormat.getCacheEvictions() > evictions);
+    }
+
+    @Test
+    public void columnsAfterSchemaChange() throws SQLException {
+        stat.execute("create table t (a);");
+        stat.execute("insert into t values (1);");
+        PreparedStatement prep = conn.prepareStatement("select * from t;");
+        ResultSet rs = prep.executeQuery();
+        assertEquals(1, rs.getMetaData().getColumnCount());
+        rs.close();
+
+        stat.execute("alter table t add column b default 'x';");
+        rs = prep.executeQuery();
+        assertEquals(2, rs.getMetaData().getColumnCount());
+        assertEquals("b", rs.getMetaData().getColumnName(2));
+        assertTrue(rs.next());
+        assertEquals("x", rs.getString(2));
+        assertEquals(2, rs.findColumn("B"));
+        assertEquals("x", rs.getString("b"));
+        rs.close();
+
+        // same number of columns
+        stat.execute("alter table t rename column a to c;");
+        rs = prep.executeQuery();
+        assertEquals("c", rs.getMetaData().getColumnName(1));
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt("c"));
+        rs.close();
+
+        stat.execute("drop table t;");
+        stat.execute("create table t (c integer, b text);");
+        stat.execute("insert into t values (7, 'y');");
+        rs = prep.executeQuery();
+        assertEquals("integer", rs.getMetaData().getColumnTypeName(1).toLowerCase());
+        assertEquals("text", rs.getMetaData().getColumnTypeName(2).toLowerCase());
+        assertTrue(rs.next());
+        assertEquals(7, rs.getInt("c"));
+        rs.close();
+        prep.close();
+    }
+
     @Test
     public void changeSchema() throws SQLException {
         stat.execute("create table t (c1);");
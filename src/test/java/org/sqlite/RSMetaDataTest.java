@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -146,6 +147,41 @@ public class RSMetaDataTest
         assertEquals(meta.getColumnName(4), "dob");
     }
 
+    @Test
+    public void reusedPreparedStatement() throws SQLException
+    {
+        PreparedStatement prep = conn.prepareStatement("select pid, firstname, surname, ? from people;");
+        for (Object value : new Object[] { 1, "text", null }) {
+            prep.setObject(1, value);
+            ResultSet rs = prep.executeQuery();
+            assertTrue(rs.next());
+            ResultSetMetaData m = rs.getMetaData();
+            assertEquals(4, m.getColumnCount());
+            assertEquals("surname", m.getColumnName(3));
+            assertEquals("STRING", m.getColumnTypeName(3));
+            assertEquals(25, m.getPrecision(3));
+            assertEquals(5, m.getScale(3));
+            assertTrue(m.isAutoIncrement(1));
+            assertEquals(2, rs.findColumn("firstname"));
+            rs.close();
+        }
+
+        prep.setInt(1, 1);
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(Types.INTEGER, rs.getMetaData().getColumnType(4));
+        assertEquals("INTEGER", rs.getMetaData().getColumnTypeName(4));
+        rs.close();
+
+        prep.setString(1, "text");
+        rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(Types.VARCHAR, rs.getMetaData().getColumnType(4));
+        assertEquals("TEXT", rs.getMetaData().getColumnTypeName(4));
+        rs.close();
+        prep.close();
+    }
+
     @Test
     public void nullable() throws SQLException
     {
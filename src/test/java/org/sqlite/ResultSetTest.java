@@ -2,6 +2,8 @@ package org.sqlite;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
@@ -13,6 +15,7 @@ import java.sql.Statement;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.sqlite.jdbc3.JDBC3Statement;
 
 public class ResultSetTest {
 
@@ -142,6 +145,38 @@ public class ResultSetTest {
         resultSet.findColumn("test.id");
     }
 
+    @Test
+    public void testDuplicateColumnNameNowFindFirstColumn()
+            throws SQLException {
+        ResultSet resultSet = stat.executeQuery("select id, fOo as ID, 3 as \u00c4pfel from test");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.findColumn("Id"));
+        assertEquals(3, resultSet.findColumn("\u00e4PFEL"));
+    }
+
+    @Test
+    public void testFindColumnOnReexecutedPreparedStatement()
+            throws SQLException {
+        PreparedStatement pstat = conn.prepareStatement("select * from test where id = ?");
+        for (int i = 0; i < 3; i++) {
+            pstat.setInt(1, 1);
+            ResultSet resultSet = pstat.executeQuery();
+            assertTrue(resultSet.next());
+            assertEquals("bar", resultSet.getString("FOO"));
+            assertEquals(2, resultSet.findColumn("description"));
+            resultSet.close();
+        }
+        pstat.close();
+    }
+
+    @Test(expected = SQLException.class)
+    public void testFindUnknownColumn()
+            throws SQLException {
+        ResultSet resultSet = stat.executeQuery("select * from test");
+        assertTrue(resultSet.next());
+        resultSet.findColumn("bar");
+    }
+
     @Test
     public void testCloseStatement()
         throws SQLException {
@@ -170,4 +205,117 @@ public class ResultSetTest {
         assertEquals(nonAsciiString, resultSet.getString(1));
         assertFalse(resultSet.next());
     }
+
+    @Test
+    public void textCacheSharesRepeatedValues() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setTextCache(16);
+        Connection cacheConn = config.createConnection("jdbc:sqlite:");
+        try {
+            Statement cacheStat = cacheConn.createStatement();
+            String[] statuses = { "open", "closed", "caf\u00e9", null };
+            cacheStat.executeUpdate("create table t (id integer, status text, name text);");
+            PreparedStatement prep = cacheConn.prepareStatement("insert into t values (?, ?, ?);");
+            for (int i = 0; i < 5000; i++) {
+                prep.setInt(1, i);
+                prep.setString(2, statuses[i % statuses.length]);
+                prep.setString(3, "name" + i);
+                prep.addBatch();
+            }
+            prep.executeBatch();
+            prep.close();
+
+            ResultSet rs = cacheStat.executeQuery("select status, name from t order by id;");
+            String[] first = new String[statuses.length];
+            int row = 0;
+            while (rs.next()) {
+                String status = rs.getString(1);
+                assertEquals(statuses[row % statuses.length], status);
+                assertEquals("name" + row, rs.getString(2));
+                if (status != null) {
+                    if (row < statuses.length) {
+                        first[row] = status;
+                    }
+                    else {
+                        assertSame(first[row % statuses.length], status);
+                    }
+                }
+                row++;
+            }
+            assertEquals(5000, row);
+            rs.close();
+
+            // per statement and column
+            ((JDBC3Statement) cacheStat).setTextCache(0);
+            rs = cacheStat.executeQuery("select status from t where id in (0, 4);");
+            assertTrue(rs.next());
+            String status = rs.getString(1);
+            assertTrue(rs.next());
+            assertEquals(status, rs.getString(1));
+            assertNotSame(status, rs.getString(1));
+            rs.close();
+            ((JDBC3Statement) cacheStat).setTextCache(2, "STATUS");
+            rs = cacheStat.executeQuery("select status, name, name from t where id in (0, 4, 8);");
+            assertTrue(rs.next());
+            status = rs.getString(1);
+            assertTrue(rs.next());
+            assertSame(status, rs.getString(1));
+            assertEquals(rs.getString(2), rs.getString(3));
+            assertNotSame(rs.getString(2), rs.getString(3));
+            rs.close();
+            cacheStat.close();
+        }
+        finally {
+            cacheConn.close();
+        }
+    }
+
+    @Test
+    public void textCacheKeepsDistinctAndLongValues() throws SQLException {
+        ((JDBC3Statement) stat).setTextCache(4);
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append('x');
+        }
+        ResultSet rs = stat.executeQuery("with recursive n(i) as (select 0 union all select i + 1 from n where i < 2999) "
+                + "select 'v' || (i % 50), '" + longValue + "' || (i % 2), 'dup', 'u' || i from n;");
+        int row = 0;
+        while (rs.next()) {
+            assertEquals("v" + (row % 50), rs.getString(1));
+            assertEquals(longValue.toString() + (row % 2), rs.getString(2));
+            assertEquals("dup", rs.getString(3));
+            assertEquals("u" + row, rs.getString(4));
+            row++;
+        }
+        assertEquals(3000, row);
+        rs.close();
+    }
+
+    @Test
+    public void textCacheGrows() throws SQLException {
+        // more distinct values than the initial table holds
+        ((JDBC3Statement) stat).setTextCache(4096);
+        ResultSet rs = stat.executeQuery("with recursive n(i) as (select 0 union all select i + 1 from n where i < 2999) "
+                + "select 'v' || (i % 500) from n;");
+        String[] first = new String[500];
+        int row = 0;
+        while (rs.next()) {
+            String value = rs.getString(1);
+            assertEquals("v" + (row % 500), value);
+            if (row < 500) {
+                first[row] = value;
+            }
+            else {
+                assertSame(first[row % 500], value);
+            }
+            row++;
+        }
+        assertEquals(3000, row);
+        rs.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTextCache() {
+        new SQLiteConfig().setTextCache(-1);
+    }
 }
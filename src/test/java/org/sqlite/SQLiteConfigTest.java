@@ -2,10 +2,16 @@ package org.sqlite;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
 import java.util.Properties;
 
 import org.junit.Test;
+import org.sqlite.core.Codes;
 
 public class SQLiteConfigTest {
 
@@ -28,4 +34,130 @@ public class SQLiteConfigTest {
         assertEquals(SQLiteConfig.DateClass.REAL.name(),
             properties.getProperty(SQLiteConfig.Pragma.DATE_CLASS.getPragmaName()));
     }
+
+    @Test
+    public void lookaside() throws SQLException
+    {
+        SQLiteConfig config = new SQLiteConfig();
+        assertNull(config.getLookaside());
+        config.setLookaside(128, 16);
+        assertArrayEquals(new int[] { 128, 16 }, config.getLookaside());
+        assertEquals("128,16", config.toProperties().getProperty(SQLiteConfig.Pragma.LOOKASIDE.getPragmaName()));
+
+        Properties properties = new Properties();
+        properties.setProperty("lookaside", "0,0");
+        assertArrayEquals(new int[] { 0, 0 }, new SQLiteConfig(properties).getLookaside());
+
+        int[][] lookasides = { { 128, 16 }, { 0, 0 }, { 4096, 256 } };
+        for (int[] lookaside : lookasides) {
+            config.setLookaside(lookaside[0], lookaside[1]);
+            Connection conn = config.createConnection("jdbc:sqlite:");
+            try {
+                Statement stat = conn.createStatement();
+                stat.executeUpdate("create table t (id integer primary key, v text)");
+                stat.executeUpdate("insert into t values (1, 'a'), (2, 'b')");
+                ResultSet rs = stat.executeQuery("select count(*) from t");
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+
+                // the connection allocated from its lookaside memory, unless it has none
+                int[] used = lookasideUsed(conn);
+                if (used != null) {
+                    assertEquals(lookaside[1] > 0, used[1] > 0);
+                    assertTrue(used[1] <= lookaside[1]);
+                }
+                rs.close();
+                stat.close();
+            }
+            finally {
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * @return The lookaside slots in use and their highwater mark; null if the
+     *         native library cannot tell or SQLite was built without lookaside.
+     */
+    private static int[] lookasideUsed(Connection conn) throws SQLException
+    {
+        Statement stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("select sqlite_compileoption_used('OMIT_LOOKASIDE')");
+            if (rs.next() && rs.getBoolean(1)) {
+                return null;
+            }
+        }
+        finally {
+            stat.close();
+        }
+        try {
+            return ((SQLiteConnection) conn).getDatabase().db_status(Codes.SQLITE_DBSTATUS_LOOKASIDE_USED, false);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void mmapSizeAndWarmup() throws Exception
+    {
+        File tmp = File.createTempFile("warmup", ".db");
+        tmp.deleteOnExit();
+        Connection conn = new SQLiteConfig().createConnection("jdbc:sqlite:" + tmp.getAbsolutePath());
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (id integer primary key, v text)");
+        stat.executeUpdate("with recursive c(x) as (select 1 union all select x + 1 from c where x < 20000) "
+            + "insert into t select x, hex(randomblob(32)) from c");
+        stat.executeUpdate("create index t_v on t (v)");
+        stat.close();
+        conn.close();
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setMmapSize(1 << 20);
+        config.setWarmup(SQLiteConfig.WarmupMode.INTERIOR);
+        assertEquals(1 << 20, config.getMmapSize());
+        assertEquals(SQLiteConfig.WarmupMode.INTERIOR, config.getWarmup());
+        assertEquals("interior", config.toProperties().getProperty(SQLiteConfig.Pragma.WARMUP.getPragmaName()));
+
+        SQLiteConnection sconn = (SQLiteConnection) config.createConnection("jdbc:sqlite:" + tmp.getAbsolutePath());
+        try {
+            stat = sconn.createStatement();
+            ResultSet rs = stat.executeQuery("pragma mmap_size");
+            assertTrue(rs.next());
+            long mmapSize = rs.getLong(1);
+            assertTrue(mmapSize == 0 || mmapSize == 1 << 20); // 0 if not supported by the build
+            rs.close();
+            stat.close();
+
+            long interior = SQLiteWarmup.warmup(sconn, SQLiteConfig.WarmupMode.INTERIOR, true);
+            assertTrue(interior > 0);
+            assertTrue(interior < tmp.length() / 4);
+            assertEquals(0, SQLiteWarmup.warmup(sconn, SQLiteConfig.WarmupMode.INTERIOR, false));
+
+            // the same file through another path is not read again
+            File dir = tmp.getParentFile();
+            String other = dir.getPath() + File.separator + ".." + File.separator + dir.getName()
+                    + File.separator + tmp.getName();
+            SQLiteConnection sconn2 = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:" + other);
+            try {
+                assertEquals(0, SQLiteWarmup.warmup(sconn2, SQLiteConfig.WarmupMode.INTERIOR, false));
+            }
+            finally {
+                sconn2.close();
+            }
+            assertEquals(mmapSize == 0 ? tmp.length() : Math.min(tmp.length(), mmapSize), SQLiteWarmup.warmup(sconn, SQLiteConfig.WarmupMode.FULL, true));
+        }
+        finally {
+            sconn.close();
+        }
+
+        try {
+            config.setMmapSize(-1);
+            fail("negative mmap size");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
 }
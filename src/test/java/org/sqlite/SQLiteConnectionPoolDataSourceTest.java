@@ -21,8 +21,15 @@ import javax.sql.ConnectionPoolDataSource;
 import javax.sql.PooledConnection;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -64,6 +71,57 @@ public class SQLiteConnectionPoolDataSourceTest
         assertTrue(handle.isClosed());
     }
 
+    @Test
+    public void memoryDatabase()
+            throws Exception
+    {
+        SQLiteConnectionPoolDataSource ds = new SQLiteConnectionPoolDataSource();
+        ds.setMemoryDatabase("pooltest");
+
+        PooledConnection writer = ds.getPooledConnection();
+        Statement stat = writer.getConnection().createStatement();
+        stat.executeUpdate("create table lookup (k integer primary key, v)");
+        stat.executeUpdate("with recursive n(k) as (select 1 union all select k + 1 from n where k < 1000) "
+            + "insert into lookup select k, 'v' || k from n");
+        stat.close();
+        writer.close(); // every pooled connection closed: kept alive by the data source
+
+        final PooledConnection[] readers = new PooledConnection[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = ds.getPooledConnection();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(readers.length);
+        try {
+            List<Future<Long>> sums = new ArrayList<Future<Long>>();
+            for (int i = 0; i < readers.length; i++) {
+                final PooledConnection reader = readers[i];
+                sums.add(pool.submit(new Callable<Long>() {
+                    public Long call() throws SQLException {
+                        long sum = 0;
+                        for (int n = 0; n < 50; n++) {
+                            Connection conn = reader.getConnection();
+                            ResultSet rs = conn.createStatement().executeQuery("select sum(k) from lookup");
+                            sum += rs.getLong(1);
+                            rs.close();
+                            conn.close();
+                        }
+                        return sum;
+                    }
+                }));
+            }
+            for (Future<Long> sum : sums) {
+                assertEquals(50 * 500500L, sum.get().longValue());
+            }
+        }
+        finally {
+            pool.shutdown();
+            for (PooledConnection reader : readers) {
+                reader.close();
+            }
+            ds.releaseMemoryDatabase();
+        }
+    }
+
     @Ignore
     @Test
     public void proxyConnectionCloseTest()
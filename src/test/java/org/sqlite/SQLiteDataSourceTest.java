@@ -14,7 +14,9 @@ import static org.junit.Assert.*;
 import java.nio.ByteOrder;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.junit.After;
@@ -93,4 +95,76 @@ public class SQLiteDataSourceTest
             }
         }
     }
+
+    @Test
+    public void memoryDatabase() throws Exception {
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setMemoryDatabase("dstest");
+        assertEquals("dstest", ds.getMemoryDatabase());
+
+        Connection conn = ds.getConnection();
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table lookup (k, v)");
+        stat.executeUpdate("insert into lookup values (1, 'one'), (2, 'two')");
+        stat.close();
+        conn.close();
+
+        // kept alive by the data source, and shared with other connections of the process
+        SQLiteConfig config = new SQLiteConfig();
+        config.setMemoryDatabase("dstest");
+        Connection other = config.createConnection("jdbc:sqlite:");
+        conn = ds.getConnection();
+        stat = conn.createStatement();
+        Statement otherStat = other.createStatement();
+        try {
+            ResultSet rs = otherStat.executeQuery("select count(*) from lookup");
+            assertEquals(2, rs.getInt(1));
+            rs.close();
+
+            // readers with open read transactions at the same time
+            ResultSet rs1 = stat.executeQuery("select v from lookup order by k");
+            ResultSet rs2 = otherStat.executeQuery("select v from lookup order by k desc");
+            assertTrue(rs1.next());
+            assertTrue(rs2.next());
+            assertEquals("one", rs1.getString(1));
+            assertEquals("two", rs2.getString(1));
+            assertTrue(rs1.next());
+            assertEquals("two", rs1.getString(1));
+            rs1.close();
+            rs2.close();
+            stat.executeUpdate("insert into lookup values (3, 'three')");
+            rs = otherStat.executeQuery("select count(*) from lookup");
+            assertEquals(3, rs.getInt(1));
+            rs.close();
+        }
+        finally {
+            otherStat.close();
+            other.close();
+            stat.close();
+            conn.close();
+        }
+
+        // freed with the last connection once released; a new one starts empty
+        ds.releaseMemoryDatabase();
+        conn = ds.getConnection();
+        stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("select count(*) from sqlite_master");
+            assertEquals(0, rs.getInt(1));
+            rs.close();
+        }
+        finally {
+            stat.close();
+            conn.close();
+        }
+        ds.releaseMemoryDatabase();
+
+        try {
+            DriverManager.getConnection("jdbc:sqlite:sample.db?memory_database=dstest");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            assertEquals("memory database dstest cannot be opened with file sample.db", e.getMessage());
+        }
+    }
 }
@@ -24,15 +24,24 @@
 //--------------------------------------
 package org.sqlite;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -146,4 +155,67 @@ public class SQLiteJDBCLoaderTest
         pool.awaitTermination(3, TimeUnit.SECONDS);
         assertEquals(32, completedThreads.get());
     }
+
+    @Test
+    public void cleanup() throws Exception {
+        File dir = new File("target/sqlite-tmp-" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        String prefix = "sqlite-" + SQLiteJDBCLoader.getVersion() + "-";
+        File cached = new File(dir, prefix + SQLiteJDBCLoader.sha256(new byte[] { 1 }) + "-libsqlitejdbc.so");
+        File cachedLck = new File(dir, cached.getName() + ".lck");
+        File orphan = new File(dir, prefix + UUID.randomUUID() + "-libsqlitejdbc.so");
+        File running = new File(dir, cached.getName() + "." + UUID.randomUUID() + ".tmp");
+        File stale = new File(dir, cached.getName() + "." + UUID.randomUUID() + ".tmp");
+        for (File f : new File[] { cached, cachedLck, orphan, running, stale }) {
+            assertTrue(f.createNewFile());
+        }
+        assertTrue(stale.setLastModified(System.currentTimeMillis() - 3600000));
+
+        String tmpdir = System.getProperty("org.sqlite.tmpdir");
+        System.setProperty("org.sqlite.tmpdir", dir.getPath());
+        try {
+            SQLiteJDBCLoader.cleanup();
+        }
+        finally {
+            if (tmpdir == null) {
+                System.clearProperty("org.sqlite.tmpdir");
+            }
+            else {
+                System.setProperty("org.sqlite.tmpdir", tmpdir);
+            }
+        }
+
+        assertTrue(cached.exists());
+        assertTrue(cachedLck.exists());
+        assertTrue(running.exists());
+        assertFalse(orphan.exists());
+        assertFalse(stale.exists());
+        assertEquals(64, SQLiteJDBCLoader.sha256(new byte[0]).length());
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", SQLiteJDBCLoader.sha256(new byte[0]));
+    }
+
+    @Test
+    public void cachedLibraryIsVerified() throws Exception {
+        File dir = new File("target/sqlite-tmp-" + System.nanoTime()).getAbsoluteFile();
+        assertTrue(dir.mkdirs());
+        File cacheDir = SQLiteJDBCLoader.getCacheDir(dir);
+        assertNotNull(cacheDir);
+        assertEquals(dir, cacheDir.getParentFile());
+
+        // a planted file of the same length is replaced, not loaded
+        byte[] library = "library".getBytes("UTF-8");
+        File cached = new File(cacheDir, "sqlite-" + SQLiteJDBCLoader.sha256(library) + "-libsqlitejdbc.so");
+        Files.write(cached.toPath(), "planted".getBytes("UTF-8"));
+        SQLiteJDBCLoader.extractCachedLibraryFile(library, SQLiteJDBCLoader.digest(library), cached);
+        assertArrayEquals(library, Files.readAllBytes(cached.toPath()));
+        SQLiteJDBCLoader.extractCachedLibraryFile(library, SQLiteJDBCLoader.digest(library), cached);
+        assertArrayEquals(library, Files.readAllBytes(cached.toPath()));
+
+        if (Files.getFileStore(dir.toPath()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(cacheDir.toPath()));
+            // a directory others can write to is not used
+            Files.setPosixFilePermissions(cacheDir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+            assertNull(SQLiteJDBCLoader.getCacheDir(dir));
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package org.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+/** Tests the process-wide memory limits and cache budget. */
+public class SQLiteMemoryManagerTest
+{
+    @After
+    public void tearDown() {
+        SQLiteMemoryManager.setCacheBudget(0);
+    }
+
+    @Test
+    public void heapLimits() throws SQLException {
+        long soft = SQLiteMemoryManager.getSoftHeapLimit();
+        long hard = SQLiteMemoryManager.getHardHeapLimit();
+        try {
+            assertEquals(soft, SQLiteMemoryManager.setSoftHeapLimit(64L << 20));
+            assertEquals(64L << 20, SQLiteMemoryManager.getSoftHeapLimit());
+            assertEquals(hard, SQLiteMemoryManager.setHardHeapLimit(512L << 20));
+            assertEquals(512L << 20, SQLiteMemoryManager.getHardHeapLimit());
+        }
+        finally {
+            SQLiteMemoryManager.setHardHeapLimit(hard);
+            SQLiteMemoryManager.setSoftHeapLimit(soft);
+        }
+        long used = SQLiteMemoryManager.getMemoryUsed();
+        assertTrue(used >= -1); // 0 without memory statistics
+    }
+
+    @Test
+    public void allocatorsAfterInitialization() throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:");
+        conn.close();
+        try {
+            SQLiteMemoryManager.setMemoryStatus(true);
+            fail("configured after the first connection");
+        }
+        catch (SQLException e) {
+            // expected, also if not supported by the native library
+        }
+        try {
+            SQLiteMemoryManager.setPageCache(4096, 64);
+            fail("configured after the first connection");
+        }
+        catch (SQLException e) {
+            // expected
+        }
+        try {
+            SQLiteMemoryManager.setPageCache(100, 64);
+            fail("invalid page size");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cacheBudget() throws Exception {
+        SQLiteMemoryManager.setCacheBudget(16L << 20);
+        List<Connection> conns = new ArrayList<Connection>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                Connection conn = DriverManager.getConnection("jdbc:sqlite:");
+                conns.add(conn);
+                // the new connection gets its part right away
+                long share = SQLiteMemoryManager.getConnectionCacheSize();
+                assertTrue(Math.abs(-cacheSize(conn) - share) * 4 <= share);
+            }
+            long share = SQLiteMemoryManager.getConnectionCacheSize();
+            assertTrue(share <= 2048);
+
+            // the others are adjusted when next used, within a quarter
+            for (Connection conn : conns) {
+                long size = cacheSize(conn);
+                assertTrue("cache size not adjusted: " + size, Math.abs(-size - share) * 4 <= share);
+            }
+
+            for (Connection conn : conns.subList(1, conns.size())) {
+                conn.close();
+            }
+            assertTrue(SQLiteMemoryManager.getConnectionCacheSize() > share);
+        }
+        finally {
+            for (Connection conn : conns) {
+                conn.close();
+            }
+        }
+
+        try {
+            SQLiteMemoryManager.setCacheBudget(-1);
+            fail("negative budget");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void explicitCacheSize() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setCacheSize(-1000);
+        Connection configured = config.createConnection("jdbc:sqlite:");
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:");
+        try {
+            SQLiteMemoryManager.setCacheBudget(64L << 20);
+            assertEquals(-1000, cacheSize(configured));
+            long share = SQLiteMemoryManager.getConnectionCacheSize();
+            assertTrue(Math.abs(-cacheSize(conn) - share) * 4 <= share);
+
+            // a cache size set with a pragma is kept as well
+            Statement stat = conn.createStatement();
+            stat.execute("pragma cache_size=-2000");
+            stat.close();
+            SQLiteMemoryManager.setCacheBudget(32L << 20);
+            assertEquals(-2000, cacheSize(conn));
+            assertEquals(-1000, cacheSize(configured));
+        }
+        finally {
+            conn.close();
+            configured.close();
+        }
+    }
+
+    @Test
+    public void heapPressureKeepsThresholds() {
+        MemoryPoolMXBean preset = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && pool.getCollectionUsageThreshold() == 0 && pool.getUsage().getMax() > 0) {
+                preset = pool;
+                break;
+            }
+        }
+        Assume.assumeTrue(preset != null);
+        long threshold = preset.getUsage().getMax() / 3;
+        preset.setCollectionUsageThreshold(threshold);
+        try {
+            SQLiteMemoryManager.releaseMemoryOnHeapPressure(0.9);
+            assertEquals(threshold, preset.getCollectionUsageThreshold());
+        }
+        finally {
+            preset.setCollectionUsageThreshold(0);
+        }
+    }
+
+    @Test
+    public void releaseMemory() throws Exception {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:");
+        try {
+            cacheSize(conn);
+            long releases = SQLiteMemoryManager.getReleaseCount();
+            SQLiteMemoryManager.releaseMemory();
+            // released at once, although the connection is idle
+            long released = SQLiteMemoryManager.getReleaseCount();
+            assertTrue(released > releases);
+            cacheSize(conn);
+            assertEquals(released, SQLiteMemoryManager.getReleaseCount());
+        }
+        finally {
+            conn.close();
+        }
+
+        try {
+            SQLiteMemoryManager.releaseMemoryOnHeapPressure(1.5);
+            fail("invalid fraction");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static long cacheSize(Connection conn) throws SQLException {
+        Statement stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("pragma cache_size");
+            rs.next();
+            return rs.getLong(1);
+        }
+        finally {
+            stat.close();
+        }
+    }
+}
@@ -11,12 +11,15 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.sqlite.core.ScriptResult;
 import org.sqlite.jdbc3.JDBC3Statement;
 import org.sqlite.jdbc4.JDBC4Statement;
 
@@ -242,6 +245,165 @@ public class StatementTest
         rs.close();
     }
 
+    @Test
+    public void executeScript() throws SQLException {
+        SQLiteConnection sconn = (SQLiteConnection) conn;
+        String script = "create table s (c1 integer, c2 text); -- comment; not a statement\n"
+            + "create trigger s_ins after insert on s begin\n"
+            + "  update s set c2 = 'x;y' where rowid = new.rowid;\n"
+            + "end;\n"
+            + "/* é; */ insert into s (c1) values (1), (2);\n"
+            + "select * from s;";
+        ScriptResult result = null;
+        try {
+            result = sconn.executeScript(script);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without scripts
+        }
+        assertTrue(result.succeeded());
+        assertNull(result.error());
+        assertEquals(4, result.size());
+        assertTrue(result.statement(1).contains("create trigger"));
+        assertTrue(result.statement(1).endsWith("end;"));
+        assertEquals(script.indexOf("end;") + 4, result.start(2));
+        assertEquals(script.indexOf("select"), result.end(2) + 1);
+        assertEquals(4, result.changes(2)); // 2 inserts and 2 updates by the trigger
+        assertEquals(0, result.changes(3));
+        assertEquals(4, result.totalChanges());
+        assertTrue(result.elapsedNanos(0) >= 0);
+        assertEquals(-1, result.failedStatement());
+
+        result = sconn.executeScript("insert into s values (3, 'a'); insert into nosuch values (1); insert into s values (4, 'b');");
+        assertFalse(result.succeeded());
+        assertEquals(2, result.size());
+        assertEquals(1, result.failedStatement());
+        assertEquals(30, result.errorOffset());
+        assertTrue(result.error().getMessage(), result.error().getMessage().contains("nosuch"));
+
+        result = sconn.executeScript("insert into s values (5, 'c'); insert into nosuch values (1);", true);
+        assertFalse(result.succeeded());
+        ResultSet rs = stat.executeQuery("select count(*), max(c1) from s;");
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertEquals(3, rs.getInt(2));
+        rs.close();
+
+        result = sconn.executeScript("insert into s values (6, 'd'); insert into s values (7, 'e');", true);
+        assertTrue(result.succeeded());
+        assertEquals(4, result.totalChanges());
+        assertTrue(conn.getAutoCommit());
+        rs = stat.executeQuery("select count(*) from s;");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        rs.close();
+    }
+
+    @Test
+    public void batchTransaction() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBatchTransaction(true);
+        SQLiteConnection conn = (SQLiteConnection) config.createConnection("jdbc:sqlite:");
+        final int[] commits = new int[1];
+        conn.addCommitListener(new SQLiteCommitListener() {
+            public void onCommit() {
+                commits[0]++;
+            }
+
+            public void onRollback() {}
+        });
+        Statement stat = conn.createStatement();
+
+        stat.addBatch("create table batch (c1 unique);");
+        stat.addBatch("insert into batch values (1);");
+        stat.addBatch("insert into batch values (2);");
+        stat.addBatch("insert into batch values (3);");
+        assertArrayEq(new int[] { 0, 1, 1, 1 }, stat.executeBatch());
+        assertEquals(1, commits[0]);
+
+        stat.addBatch("insert into batch values (4);");
+        stat.addBatch("insert into batch values (1);");
+        stat.addBatch("insert into batch values (5);");
+        try {
+            stat.executeBatch();
+            fail("unique constraint not enforced");
+        }
+        catch (BatchUpdateException e) {
+            assertArrayEq(new int[] { 1, 0, 0 }, e.getUpdateCounts());
+        }
+        assertEquals(2, commits[0]);
+
+        ResultSet rs = stat.executeQuery("select count(*), max(c1) from batch;");
+        assertTrue(rs.next());
+        assertEquals(4, rs.getInt(1));
+        assertEquals(4, rs.getInt(2));
+        rs.close();
+        stat.close();
+        conn.close();
+    }
+
+    @Test
+    public void getGeneratedKeysRequested() throws SQLException {
+        stat.executeUpdate("create table t1 (c1 integer primary key, v);");
+        assertEquals(1, stat.executeUpdate("insert into t1 (v) values ('red');", Statement.RETURN_GENERATED_KEYS));
+        ResultSet rs = stat.getGeneratedKeys();
+        assertTrue(rs.next());
+        assertEquals(1, rs.getLong(1));
+        assertFalse(rs.next());
+        rs.close();
+
+        // an update without inserted rows generates no key
+        assertEquals(0, stat.executeUpdate("update t1 set v = 'blue' where 0;", Statement.RETURN_GENERATED_KEYS));
+        rs = stat.getGeneratedKeys();
+        assertFalse(rs.next());
+        rs.close();
+
+        // updates, deletes and DDL after an insert generate no key either
+        assertEquals(1, stat.executeUpdate("update t1 set v = 'blue';", Statement.RETURN_GENERATED_KEYS));
+        rs = stat.getGeneratedKeys();
+        assertFalse(rs.next());
+        rs.close();
+        assertFalse(stat.execute("create table t2 (c);", Statement.RETURN_GENERATED_KEYS));
+        rs = stat.getGeneratedKeys();
+        assertFalse(rs.next());
+        rs.close();
+        PreparedStatement prep = conn.prepareStatement("delete from t1 where c1 = ?;", Statement.RETURN_GENERATED_KEYS);
+        prep.setInt(1, 1);
+        assertEquals(1, prep.executeUpdate());
+        rs = prep.getGeneratedKeys();
+        assertFalse(rs.next());
+        rs.close();
+        prep.close();
+        assertEquals(1, stat.executeUpdate(" /* again */ insert into t1 (c1, v) values (1, 'red');",
+                Statement.RETURN_GENERATED_KEYS));
+        rs = stat.getGeneratedKeys();
+        assertTrue(rs.next());
+        assertEquals(1, rs.getLong(1));
+        rs.close();
+
+        assertFalse(stat.execute("insert into t1 (v) values ('green'), ('white');", new String[] { "c1", "v" }));
+        rs = stat.getGeneratedKeys();
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt("c1"));
+        assertEquals("green", rs.getString("v"));
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt("c1"));
+        assertEquals("white", rs.getString("v"));
+        assertFalse(rs.next());
+        rs.close();
+
+        // statements that cannot take a RETURNING clause run as they are
+        assertTrue(stat.execute("select 1;", new String[] { "c1" }));
+        rs = stat.getResultSet();
+        assertEquals(1, rs.getInt(1));
+        rs.close();
+        assertFalse(stat.execute("create table t3 (c);", new String[] { "c1" }));
+        assertTrue(stat.execute("insert into t1 (v) values ('black') returning v;", new String[] { "c1" }));
+        rs = stat.getResultSet();
+        assertEquals("black", rs.getString(1));
+        rs.close();
+    }
+
     @Test
     public void closeOnFalseNext() throws SQLException {
         stat.executeUpdate("create table t1 (c1);");
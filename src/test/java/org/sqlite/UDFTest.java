@@ -7,11 +7,13 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -71,6 +73,75 @@ public class UDFTest
         }
     }
 
+    @Test
+    public void typedFunctions() throws SQLException {
+        try {
+            Function.createLongUnary(conn, "twice", new LongUnaryFunction() {
+                public long apply(long value) {
+                    return value * 2;
+                }
+            }, Function.FLAG_DETERMINISTIC);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without typed functions
+        }
+        Function.createDoubleBinary(conn, "hypot", new DoubleBinaryFunction() {
+            public double apply(double a, double b) {
+                return Math.hypot(a, b);
+            }
+        }, 0);
+        Function.createText(conn, "rev", new TextFunction() {
+            public String apply(String value) {
+                if (value.isEmpty()) {
+                    return null;
+                }
+                if (value.equals("fail")) {
+                    throw new IllegalArgumentException("bad value");
+                }
+                return new StringBuilder(value).reverse().toString();
+            }
+        }, 0);
+
+        ResultSet rs = stat.executeQuery("select twice(21), twice(null), twice('4'), twice(" + Long.MIN_VALUE
+            + " / 2), hypot(3, 4), hypot(3, null), rev('abc\u00e9'), rev(null), rev('');");
+        assertTrue(rs.next());
+        assertEquals(42, rs.getLong(1));
+        assertNull(rs.getObject(2));
+        assertEquals(8, rs.getLong(3));
+        assertEquals(Long.MIN_VALUE, rs.getLong(4));
+        assertEquals(5.0, rs.getDouble(5), 0);
+        assertNull(rs.getObject(6));
+        assertEquals("\u00e9cba", rs.getString(7));
+        assertNull(rs.getObject(8));
+        assertNull(rs.getObject(9));
+        rs.close();
+
+        stat.executeUpdate("create table typed (n integer);");
+        for (int i = 0; i < 100; i++) {
+            stat.executeUpdate("insert into typed values (" + i + ");");
+        }
+        rs = stat.executeQuery("select count(*), sum(twice(n)) from typed where twice(n) > 100;");
+        assertTrue(rs.next());
+        assertEquals(49, rs.getInt(1));
+        assertEquals(2 * (51 + 99) * 49 / 2, rs.getInt(2));
+        rs.close();
+
+        try {
+            stat.executeQuery("select rev('fail');");
+            fail("exception in function not reported");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("bad value"));
+        }
+        try {
+            stat.executeQuery("select twice(1, 2);");
+            fail("wrong number of arguments accepted");
+        }
+        catch (SQLException e) {
+            // expected
+        }
+    }
+
     @Test
     public void accessArgs() throws SQLException {
         Function.create(conn, "f3", new Function() {
@@ -337,6 +408,104 @@ public class UDFTest
         assertEquals(9, rs.getInt(1));
     }
 
+    @Test
+    public void primitiveAggregate() throws SQLException {
+        createAggregate("myAvg", new PrimitiveAggregate(1, 1, 16) {
+            @Override
+            protected void step(long[] longs, double[] doubles, double[] values, int count) {
+                assertTrue(count <= 16);
+                longs[0] += count;
+                for (int i = 0; i < count; i++)
+                    doubles[0] += values[i];
+            }
+
+            @Override
+            protected Object value(long[] longs, double[] doubles) {
+                return longs[0] == 0 ? null : doubles[0] / longs[0];
+            }
+        }, 0);
+        createAggregate("myCount", new PrimitiveAggregate(1, 0) {
+            @Override
+            protected void step(long[] longs, double[] doubles, double[] values, int count) {
+                longs[0] += count;
+            }
+
+            @Override
+            protected Object value(long[] longs, double[] doubles) {
+                return longs[0];
+            }
+        }, 0);
+
+        stat.executeUpdate("create table g (k, v);");
+        for (int i = 0; i < 1000; i++) {
+            stat.executeUpdate("insert into g values (" + (i % 7) + ", " + (i % 3 == 0 ? "null" : i) + ");");
+        }
+        ResultSet rs = stat.executeQuery(
+            "select k, myAvg(v), avg(v), myCount(v), count(v) from g group by k order by k;");
+        for (int k = 0; k < 7; k++) {
+            assertTrue(rs.next());
+            assertEquals(k, rs.getInt(1));
+            assertEquals(rs.getDouble(3), rs.getDouble(2), 1e-9);
+            assertEquals(rs.getLong(5), rs.getLong(4));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        rs = stat.executeQuery("select myAvg(v), myCount(v) from g where k > 10;");
+        assertTrue(rs.next());
+        assertNull(rs.getObject(1));
+        assertEquals(0, rs.getLong(2));
+        rs.close();
+    }
+
+    @Test
+    public void primitiveWindow() throws SQLException {
+        createAggregate("mySum", new PrimitiveAggregate.Window(1, 0, 8) {
+            @Override
+            protected void step(long[] longs, double[] doubles, double[] values, int count) {
+                for (int i = 0; i < count; i++)
+                    longs[0] += (long) values[i];
+            }
+
+            @Override
+            protected void inverse(long[] longs, double[] doubles, double[] values, int count) {
+                for (int i = 0; i < count; i++)
+                    longs[0] -= (long) values[i];
+            }
+
+            @Override
+            protected Object value(long[] longs, double[] doubles) {
+                if (longs[0] < 0) {
+                    throw new IllegalStateException("negative sum");
+                }
+                return longs[0];
+            }
+        }, 0);
+
+        stat.executeUpdate("create table t (x);");
+        for (int i = 1; i <= 5; i++) {
+            stat.executeUpdate("insert into t values(" + i + ");");
+        }
+        ResultSet rs = stat.executeQuery(
+            "select mySum(x) over (order by x rows between 1 preceding and 1 following), mySum(x) over () from t order by x;");
+        int[] expected = { 3, 6, 9, 12, 9 };
+        for (int e : expected) {
+            assertTrue(rs.next());
+            assertEquals(e, rs.getInt(1));
+            assertEquals(15, rs.getInt(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        try {
+            stat.executeQuery("select mySum(-x) from t;");
+            fail("exception in aggregate not reported");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("negative sum"));
+        }
+    }
+
     @Test
     public void destroy() throws SQLException {
         Function.create(conn, "f1", new Function() {
@@ -491,4 +660,13 @@ public class UDFTest
         for (int i = 0; i < a.length; i++)
             assertEquals(a[i], b[i]);
     }
+
+    private void createAggregate(String name, PrimitiveAggregate f, int flags) throws SQLException {
+        try {
+            Function.createAggregate(conn, name, f, flags);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without primitive aggregates
+        }
+    }
 }
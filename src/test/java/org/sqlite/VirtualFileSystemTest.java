@@ -0,0 +1,222 @@
+package org.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sqlite.vfs.FileChannelVfs;
+import org.sqlite.vfs.MemoryVfs;
+import org.sqlite.vfs.VirtualFileSystem;
+
+/** Tests file systems implemented in Java. */
+public class VirtualFileSystemTest
+{
+    private static MemoryVfs memory;
+
+    @BeforeClass
+    public static void register() throws SQLException {
+        memory = new MemoryVfs(true, 4096, 16);
+        try {
+            VirtualFileSystem.register("jmem", memory, false);
+            VirtualFileSystem.register("jnio", new FileChannelVfs(1 << 20), false);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            memory = null;
+        }
+    }
+
+    @AfterClass
+    public static void unregister() throws SQLException {
+        if (memory != null) {
+            VirtualFileSystem.unregister("jmem");
+            VirtualFileSystem.unregister("jnio");
+        }
+    }
+
+    private static void assumeSupported() {
+        Assume.assumeTrue("native library without Java file systems", memory != null);
+    }
+
+    private static void fill(Connection conn, int rows) throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (id integer primary key, v text)");
+        stat.close();
+        conn.setAutoCommit(false);
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?)");
+        for (int i = 1; i <= rows; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "value" + i);
+            prep.executeUpdate();
+        }
+        prep.close();
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static long sum(Connection conn) throws SQLException {
+        Statement stat = conn.createStatement();
+        ResultSet rs = stat.executeQuery("select sum(id), count(distinct v) from t");
+        long sum = rs.getLong(1) * 1000000 + rs.getLong(2);
+        rs.close();
+        stat.close();
+        return sum;
+    }
+
+    @Test
+    public void memory() throws SQLException {
+        assumeSupported();
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:file:/mem.db?vfs=jmem");
+        fill(conn, 5000);
+        assertTrue(memory.allocatedBytes() > 5000 * 10);
+
+        // rolled back through the journal, also kept in memory
+        Statement stat = conn.createStatement();
+        conn.setAutoCommit(false);
+        stat.executeUpdate("delete from t where id > 10");
+        stat.executeUpdate("update t set v = 'x'");
+        conn.rollback();
+        conn.setAutoCommit(true);
+        assertEquals(12502500L * 1000000 + 5000, sum(conn));
+
+        // shared with other connections; locked between them
+        Connection other = DriverManager.getConnection("jdbc:sqlite:file:/mem.db?vfs=jmem");
+        assertEquals(12502500L * 1000000 + 5000, sum(other));
+        stat.execute("pragma busy_timeout = 0");
+        conn.setAutoCommit(false);
+        stat.executeUpdate("insert into t values (5001, 'value5001')");
+        Statement otherStat = other.createStatement();
+        otherStat.execute("pragma busy_timeout = 0");
+        try {
+            otherStat.execute("insert into t values (5002, 'value5002')");
+            fail("expected busy");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("locked"));
+        }
+        conn.commit();
+        otherStat.execute("insert into t values (5002, 'value5002')");
+        assertEquals((12502500L + 5001 + 5002) * 1000000 + 5002, sum(conn));
+
+        stat.close();
+        otherStat.close();
+        other.close();
+        conn.close();
+
+        // the file outlives its connections
+        conn = DriverManager.getConnection("jdbc:sqlite:file:/mem.db?vfs=jmem");
+        assertEquals((12502500L + 5001 + 5002) * 1000000 + 5002, sum(conn));
+        conn.close();
+    }
+
+    @Test
+    public void fileChannel() throws Exception {
+        assumeSupported();
+        File file = File.createTempFile("vfs-", ".db");
+        file.delete();
+        try {
+            Connection conn = DriverManager.getConnection("jdbc:sqlite:file:" + file + "?vfs=jnio");
+            fill(conn, 2000);
+            Statement stat = conn.createStatement();
+            // sorted through temporary files of the file system
+            stat.execute("pragma temp_store = file");
+            stat.execute("pragma cache_size = 10");
+            ResultSet rs = stat.executeQuery("select v from t order by v desc limit 1");
+            assertEquals("value999", rs.getString(1));
+            rs.close();
+            stat.close();
+            conn.close();
+            assertFalse(new File(file + "-journal").exists());
+
+            // read by the native file system, and mapped when read-only
+            conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+            assertEquals(2001000L * 1000000 + 2000, sum(conn));
+            conn.close();
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            conn = config.createConnection("jdbc:sqlite:file:" + file + "?vfs=jnio");
+            assertEquals(2001000L * 1000000 + 2000, sum(conn));
+            try {
+                conn.createStatement().execute("delete from t");
+                fail("expected read-only database");
+            }
+            catch (SQLException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("readonly"));
+            }
+            conn.close();
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void unregisterWhileOpen() throws SQLException {
+        assumeSupported();
+        VirtualFileSystem.register("jtmp", new MemoryVfs(), false);
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:file:/open.db?vfs=jtmp");
+        try {
+            fill(conn, 10);
+            VirtualFileSystem.unregister("jtmp");
+            // the open connection keeps the file system, and opens journals through it
+            Statement stat = conn.createStatement();
+            assertEquals(1, stat.executeUpdate("insert into t values (11, 'value11')"));
+            ResultSet rs = stat.executeQuery("select count(*) from t");
+            assertEquals(11, rs.getInt(1));
+            rs.close();
+            stat.close();
+        }
+        finally {
+            conn.close();
+        }
+        try {
+            DriverManager.getConnection("jdbc:sqlite:file:/open.db?vfs=jtmp");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            // no such vfs
+        }
+        // the name can be registered again
+        VirtualFileSystem.register("jtmp", new MemoryVfs(), false);
+        VirtualFileSystem.unregister("jtmp");
+    }
+
+    @Test
+    public void errors() throws SQLException {
+        assumeSupported();
+        try {
+            VirtualFileSystem.register("jmem", new MemoryVfs(), false);
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            assertEquals("error registering file system jmem", e.getMessage());
+        }
+        try {
+            VirtualFileSystem.unregister("unix");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            assertEquals("no Java file system unix", e.getMessage());
+        }
+        try {
+            DriverManager.getConnection("jdbc:sqlite:file:/missing.db?vfs=jmem&mode=ro");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            // cannot open
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.sqlite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.vtab.IndexInfo;
+import org.sqlite.vtab.Module;
+import org.sqlite.vtab.RowBatch;
+import org.sqlite.vtab.VirtualCursor;
+import org.sqlite.vtab.VirtualTable;
+
+/** Tests Java virtual tables. */
+public class VirtualTableTest
+{
+    private Connection conn;
+    private Statement  stat;
+
+    private final TreeMap<Long, String> items   = new TreeMap<Long, String>();
+    private final List<String>          filters = new ArrayList<String>();
+
+    @Before
+    public void connect() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite:");
+        stat = conn.createStatement();
+        for (long id = 1; id <= 9; id++) {
+            items.put(id, "item" + id);
+        }
+        try {
+            Module.create(conn, "items", new ItemModule());
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            Assume.assumeNoException(e); // native library without virtual tables
+        }
+    }
+
+    @After
+    public void close() throws SQLException {
+        stat.close();
+        conn.close();
+    }
+
+    /** Items by id: handles equality and range constraints on id, and ordering by id. */
+    private class ItemModule extends Module
+    {
+        @Override
+        protected VirtualTable connect(String table, String[] args) {
+            final int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+            return new VirtualTable("id integer", "name text", "price real", "tag blob") {
+                @Override
+                protected int batchSize() {
+                    return batchSize;
+                }
+
+                @Override
+                protected void bestIndex(IndexInfo info) {
+                    StringBuilder ops = new StringBuilder();
+                    for (int i = 0; i < info.constraintCount(); i++) {
+                        int op = info.constraintOp(i);
+                        if (info.constraintColumn(i) == 0 && info.isUsable(i)
+                                && (op == IndexInfo.EQ || op == IndexInfo.GT || op == IndexInfo.GE
+                                    || op == IndexInfo.LT || op == IndexInfo.LE)) {
+                            info.use(i, true);
+                            ops.append(op).append(',');
+                        }
+                    }
+                    info.setIndexString(ops.toString());
+                    info.setEstimatedCost(ops.length() == 0 ? 1e6 : 1);
+                    info.setEstimatedRows(ops.length() == 0 ? 1000000 : 1);
+                    if (info.orderByCount() == 1 && info.orderByColumn(0) == 0) {
+                        info.setOrderByConsumed(true);
+                        info.setIndexNumber(info.isDescending(0) ? -1 : 1);
+                    }
+                }
+
+                @Override
+                protected VirtualCursor open() {
+                    return new ItemCursor();
+                }
+            };
+        }
+    }
+
+    private class ItemCursor extends VirtualCursor
+    {
+        private Iterator<Map.Entry<Long, String>> rows;
+
+        @Override
+        protected void filter(int indexNumber, String indexString, Object[] args) {
+            filters.add(indexString + Arrays.toString(args));
+            long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+            String[] ops = indexString.split(",");
+            for (int i = 0; i < args.length; i++) {
+                long value = (Long) args[i];
+                switch (Integer.parseInt(ops[i])) {
+                case IndexInfo.EQ: from = Math.max(from, value); to = Math.min(to, value); break;
+                case IndexInfo.GT: from = Math.max(from, value + 1); break;
+                case IndexInfo.GE: from = Math.max(from, value); break;
+                case IndexInfo.LT: to = Math.min(to, value - 1); break;
+                case IndexInfo.LE: to = Math.min(to, value); break;
+                }
+            }
+            NavigableMap<Long, String> range = from > to ? new TreeMap<Long, String>() : items.subMap(from, true, to, true);
+            rows = (indexNumber < 0 ? range.descendingMap() : range).entrySet().iterator();
+        }
+
+        @Override
+        protected void fill(RowBatch batch) {
+            while (!batch.isFull() && rows.hasNext()) {
+                Map.Entry<Long, String> row = rows.next();
+                batch.addRow(row.getKey())
+                    .setLong(0, row.getKey())
+                    .setText(1, row.getValue())
+                    .setDouble(2, row.getKey() * 1.5);
+                if (row.getKey() % 2 == 0) {
+                    batch.setBlob(3, new byte[] { row.getKey().byteValue() });
+                }
+            }
+        }
+    }
+
+    private String column(String sql) throws SQLException {
+        ResultSet rs = stat.executeQuery(sql);
+        StringBuilder sb = new StringBuilder();
+        while (rs.next()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(rs.getString(1));
+        }
+        rs.close();
+        return sb.toString();
+    }
+
+    @Test
+    public void scan() throws SQLException {
+        assertEquals("1 2 3 4 5 6 7 8 9", column("select id from items;"));
+        assertEquals("9", column("select count(*) from items;"));
+        assertEquals("[[], []]", filters.toString()); // one full scan per query
+        filters.clear();
+
+        ResultSet rs = stat.executeQuery("select rowid, id, name, price, tag from items where name = 'item4';");
+        assertTrue(rs.next());
+        assertEquals(4, rs.getLong(1));
+        assertEquals(4, rs.getLong(2));
+        assertEquals("item4", rs.getString(3));
+        assertEquals(6.0, rs.getDouble(4), 0);
+        assertArrayEquals(new byte[] { 4 }, rs.getBytes(5));
+        assertFalse(rs.next());
+        rs.close();
+        assertEquals("1", column("select tag is null from items where id = 3;"));
+
+        // batches ending exactly at the last row, and single-row batches
+        for (String size : new String[] { "3", "9", "1", "100" }) {
+            stat.executeUpdate("create virtual table t" + size + " using items(" + size + ");");
+            assertEquals("45", column("select sum(id) from t" + size + ";"));
+        }
+    }
+
+    @Test
+    public void constraints() throws SQLException {
+        assertEquals("item5", column("select name from items where id = 5;"));
+        assertEquals("4 5 6", column("select id from items where id > 3 and id <= 6;"));
+        assertEquals("", column("select id from items where id >= 7 and id < 7;"));
+        assertEquals("[2,[5], 4,8,[3, 6], 32,16,[7, 7]]", filters.toString());
+
+        // bound parameters are passed to filter
+        filters.clear();
+        java.sql.PreparedStatement prep = conn.prepareStatement("select name from items where id = ?;");
+        prep.setLong(1, 2);
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals("item2", rs.getString(1));
+        rs.close();
+        prep.close();
+        assertEquals("[2,[2]]", filters.toString());
+
+        // a join looks up every key of the other table
+        filters.clear();
+        stat.executeUpdate("create table orders (item integer, qty integer);");
+        stat.executeUpdate("insert into orders values (3, 1), (8, 2), (42, 3);");
+        assertEquals("item3 item8", column(
+            "select i.name from orders o join items i on i.id = o.item order by o.qty;"));
+        assertEquals("[2,[3], 2,[8], 2,[42]]", filters.toString());
+    }
+
+    @Test
+    public void orderBy() throws SQLException {
+        assertEquals("9 8 7 6 5 4 3 2 1", column("select id from items order by id desc;"));
+        assertEquals("3 2", column("select id from items where id < 4 and id > 1 order by id desc;"));
+        assertEquals("1 2 3", column("select id from items where id < 4 order by id;"));
+        // not consumed: sorted by SQLite
+        assertEquals("9 8", column("select id from items where id > 7 order by name desc;"));
+        ResultSet rs = stat.executeQuery("explain query plan select id from items order by id desc;");
+        assertTrue(rs.next());
+        assertFalse(rs.getString(4).contains("ORDER BY"));
+        rs.close();
+    }
+
+    @Test
+    public void errors() throws SQLException {
+        Module.create(conn, "failing", new Module() {
+            @Override
+            protected VirtualTable connect(String table, String[] args) throws SQLException {
+                if (args.length > 0) {
+                    throw new SQLException("bad args " + Arrays.toString(args));
+                }
+                return new VirtualTable("x") {
+                    @Override
+                    protected VirtualCursor open() {
+                        return new VirtualCursor() {
+                            @Override
+                            protected void filter(int indexNumber, String indexString, Object[] args) {
+                            }
+
+                            @Override
+                            protected void fill(RowBatch batch) {
+                                throw new IllegalStateException("store offline");
+                            }
+                        };
+                    }
+                };
+            }
+        });
+
+        try {
+            stat.executeQuery("select * from failing;");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("store offline"));
+        }
+        try {
+            stat.execute("create virtual table f using failing(a, 'b c');");
+            fail("expected exception");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("bad args [a, 'b c']"));
+        }
+        // the connection is still usable
+        assertEquals("5", column("select id from items where id = 5;"));
+    }
+}
@@ -13,9 +13,14 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.logging.Logger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class OSInfoTest {
     private static Logger logger = Logger.getLogger(OSInfoTest.class.getName());
@@ -100,4 +105,40 @@ public class OSInfoTest {
         logger.info("Hardware name: " + hardware);
     }
 
+    /** A 32-bit little-endian ARM executable header with one PT_INTERP program header. */
+    private static ByteBuffer armElf(int flags, String interp) {
+        ByteBuffer elf = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        elf.put(new byte[] { 0x7f, 'E', 'L', 'F', 1, 1, 1 });
+        elf.putShort(18, (short) 40);         // e_machine: EM_ARM
+        elf.putInt(28, 52);                   // e_phoff
+        elf.putInt(36, 0x05000000 | flags);   // e_flags
+        elf.putShort(42, (short) 32);         // e_phentsize
+        elf.putShort(44, (short) 1);          // e_phnum
+        elf.putInt(52, 3);                    // p_type: PT_INTERP
+        elf.putInt(56, 84);                   // p_offset
+        elf.putInt(68, interp.length());      // p_filesz
+        for (int i = 0; i < interp.length(); i++) {
+            elf.put(84 + i, (byte) interp.charAt(i));
+        }
+        return elf;
+    }
+
+    @Test
+    public void elfHeader() {
+        assertTrue(OSInfo.isHardFloat(armElf(0x400, "/lib/ld-linux.so.3")));
+        assertTrue(OSInfo.isHardFloat(armElf(0, "/lib/ld-linux-armhf.so.3")));
+        assertFalse(OSInfo.isHardFloat(armElf(0x200, "/lib/ld-linux.so.3")));
+        assertFalse(OSInfo.is64Bit(armElf(0, "")));
+
+        ByteBuffer elf = OSInfo.readJvmElfHeader();
+        if (elf != null) {
+            // the running JVM
+            assertEquals(System.getProperty("os.arch").contains("64"), OSInfo.is64Bit(elf));
+        }
+        else {
+            assertFalse(System.getProperty("os.name").contains("Linux"));
+        }
+        assertNull(OSInfo.readFile("/nonexistent/file", 10));
+    }
+
 }